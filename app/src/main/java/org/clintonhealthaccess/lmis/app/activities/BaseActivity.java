@@ -45,6 +45,7 @@ import com.google.inject.Inject;
 
 import org.apache.commons.lang3.StringUtils;
 import org.clintonhealthaccess.lmis.app.R;
+import org.clintonhealthaccess.lmis.app.events.AlertChangeEvent;
 import org.clintonhealthaccess.lmis.app.events.SyncedEvent;
 import org.clintonhealthaccess.lmis.app.models.User;
 import org.clintonhealthaccess.lmis.app.services.AlertsService;
@@ -136,6 +137,13 @@ public class BaseActivity extends OrmLiteActivity {
         Toast.makeText(this, "Sync data with server successfully!", Toast.LENGTH_LONG).show();
     }
 
+    public void onEventMainThread(AlertChangeEvent event) {
+        if (this.menuAlertItem != null) {
+            TextView textViewNumberOfAlerts = (TextView) this.menuAlertItem.findViewById(R.id.textViewAlertNumber);
+            updateAlertCount(event.getSummary().getTotal(), textViewNumberOfAlerts);
+        }
+    }
+
     public void updateAlertCount(){
         if (this.menuAlertItem !=null ){
             setupAlertCount(this.menuAlertItem);
@@ -55,6 +55,7 @@ import org.clintonhealthaccess.lmis.app.events.AlertChangeEvent;
 import org.clintonhealthaccess.lmis.app.listeners.AlertClickListener;
 import org.clintonhealthaccess.lmis.app.listeners.NotificationClickListener;
 import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.alerts.AlertSummary;
 import org.clintonhealthaccess.lmis.app.models.alerts.LowStockAlert;
 import org.clintonhealthaccess.lmis.app.models.alerts.NotificationMessage;
 import org.clintonhealthaccess.lmis.app.services.AlertsService;
@@ -169,9 +170,20 @@ public class HomeActivity extends BaseActivity implements Serializable {
     }
 
 
-    public void onEvent(AlertChangeEvent event){
-        setupAlerts();
-        updateAlertCount();
+    @Override
+    public void onEventMainThread(AlertChangeEvent event) {
+        super.onEventMainThread(event);
+        AlertSummary summary = event.getSummary();
+        if (summary.getLowStockAlerts() == 0) {
+            listViewAlerts.setAdapter(new AlertsAdapter(getApplicationContext(), R.layout.alert_list_item, new ArrayList<LowStockAlert>()));
+        } else {
+            createAlertsTask().execute();
+        }
+        if (summary.getNotificationMessages() == 0) {
+            linearLayoutNotificationsContainer.setVisibility(INVISIBLE);
+        } else {
+            createNotificationsMessageTask().execute();
+        }
     }
 
 
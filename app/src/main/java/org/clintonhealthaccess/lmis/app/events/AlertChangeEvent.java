@@ -1,6 +1,15 @@
 package org.clintonhealthaccess.lmis.app.events;
 
+import org.clintonhealthaccess.lmis.app.models.alerts.AlertSummary;
+
 public class AlertChangeEvent {
-    public AlertChangeEvent(){
+    private final AlertSummary summary;
+
+    public AlertChangeEvent(AlertSummary summary) {
+        this.summary = summary;
+    }
+
+    public AlertSummary getSummary() {
+        return summary;
     }
 }
@@ -29,11 +29,11 @@
 
 package org.clintonhealthaccess.lmis.app.models;
 
-import com.j256.ormlite.field.DataType;
 import com.j256.ormlite.field.DatabaseField;
 import com.j256.ormlite.table.DatabaseTable;
 import com.thoughtworks.dhis.models.DataElementType;
 
+import org.clintonhealthaccess.lmis.app.persistence.EpochDayType;
 import org.clintonhealthaccess.lmis.app.services.Snapshotable;
 
 import java.io.Serializable;
@@ -62,7 +62,7 @@ public class Adjustment implements Serializable, Snapshotable {
     @DatabaseField(canBeNull = false)
     private String reason;
 
-    @DatabaseField(canBeNull = false, dataType = DataType.DATE_STRING, format = "yyyy-MM-dd")
+    @DatabaseField(canBeNull = false, persisterClass = EpochDayType.class)
     private Date created;
 
     public Adjustment() {
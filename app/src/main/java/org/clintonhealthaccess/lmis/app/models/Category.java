@@ -57,6 +57,8 @@ public class Category implements Serializable, Comparable<Category> {
 
     private List<Commodity> transientCommodities = new ArrayList<>();
 
+    private transient List<Commodity> commodities;
+
     public Category() {
         // ormlite likes it
     }
@@ -78,7 +80,10 @@ public class Category implements Serializable, Comparable<Category> {
         if (commoditiesCollection == null) {
             return newArrayList();
         }
-        return ImmutableList.copyOf(commoditiesCollection);
+        if (commodities == null) {
+            commodities = ImmutableList.copyOf(commoditiesCollection);
+        }
+        return commodities;
     }
 
     public void setCommodities(List<Commodity> commodities) {
@@ -44,13 +44,18 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static com.google.common.collect.ImmutableList.copyOf;
 import static com.google.common.collect.Lists.newArrayList;
 
 @DatabaseTable(tableName = "commodities")
 public class Commodity implements Serializable {
+    public static final String TABLE = "commodities";
+    public static final String STOCK_ON_HAND = "stock_on_hand";
+
     @DatabaseField(id = true, uniqueIndex = true)
     private String id;
 
@@ -72,6 +77,10 @@ public class Commodity implements Serializable {
     @DatabaseField(canBeNull = false)
     private boolean isVaccine = false;
 
+    // read only: saving a commodity must never overwrite stock, which only moves with an in-SQL increment
+    @DatabaseField(canBeNull = false, columnName = STOCK_ON_HAND, defaultValue = "0", readOnly = true)
+    private int stockOnHand;
+
     @ForeignCollectionField
     private ForeignCollection<StockItem> stockItems;
 
@@ -81,6 +90,8 @@ public class Commodity implements Serializable {
 
     private List<CommodityAction> commodityActions = newArrayList();
 
+    private transient Map<String, Integer> latestActionValues;
+
     public Commodity() {
         // ormlite wants it
     }
@@ -143,14 +154,7 @@ public class Commodity implements Serializable {
     }
 
     public boolean isOutOfStock() {
-        if (stockItems != null) {
-            List<StockItem> items = ImmutableList.copyOf(stockItems);
-            if (!items.isEmpty()) {
-                return items.get(0).isFinished();
-            }
-        }
-
-        return true;
+        return stockOnHand <= 0;
     }
 
     public boolean isLGA() {
@@ -158,19 +162,11 @@ public class Commodity implements Serializable {
     }
 
     public int getStockOnHand() {
-        return getStockItem().getQuantity();
-    }
-
-    public StockItem reduceStockOnHandBy(int quantity) {
-        StockItem stockItem = getStockItem();
-        stockItem.reduceQuantityBy(quantity);
-        return stockItem;
+        return stockOnHand;
     }
 
-    public StockItem increaseStockOnHandBy(int quantity) {
-        StockItem stockItem = getStockItem();
-        stockItem.increaseQuantityBy(quantity);
-        return stockItem;
+    public void setStockOnHand(int stockOnHand) {
+        this.stockOnHand = stockOnHand;
     }
 
     public String getOrderFrequency() {
@@ -217,19 +213,33 @@ public class Commodity implements Serializable {
     }
 
     public int getLatestValueFromCommodityActionByName(String actionName) {
+        Map<String, Integer> values = latestActionValues;
+        if (values == null) {
+            values = new HashMap<>();
+            latestActionValues = values;
+        }
+        String key = actionName.toUpperCase();
+        Integer latestValue = values.get(key);
+        if (latestValue == null) {
+            latestValue = findLatestValueFromCommodityActionByName(actionName);
+            values.put(key, latestValue);
+        }
+        return latestValue;
+    }
+
+    private int findLatestValueFromCommodityActionByName(String actionName) {
         CommodityAction commodityAction = getCommodityAction(actionName);
-        int defaultValue = 0;
         if (commodityAction != null) {
             CommodityActionValue actionLatestValue = commodityAction.getActionLatestValue();
-
-            if (actionLatestValue != null && actionLatestValue.getValue() != null) {
-                String value = (actionLatestValue.getValue().contains(".")) ? actionLatestValue.getValue()
-                        .substring(0, actionLatestValue.getValue().indexOf(".")) : actionLatestValue.getValue();
-
-                return Integer.parseInt(value);
+            if (actionLatestValue != null) {
+                return CommodityActionValue.intValueOf(actionLatestValue.getValue());
             }
         }
-        return defaultValue;
+        return 0;
+    }
+
+    public void setLatestActionValues(Map<String, Integer> latestActionValues) {
+        this.latestActionValues = new HashMap<>(latestActionValues);
     }
 
     public int calculateRoutinePrePopulatedQuantity() {
@@ -38,8 +38,6 @@ import com.j256.ormlite.table.DatabaseTable;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 
 import static com.google.common.collect.Lists.newArrayList;
@@ -90,18 +88,15 @@ public class CommodityAction implements Serializable {
     }
 
     public CommodityActionValue getActionLatestValue() {
-        List<CommodityActionValue> commodityActionValueList = getCommodityActionValueList();
-        if (commodityActionValueList != null && !commodityActionValueList.isEmpty()) {
-            Collections.sort(commodityActionValueList, new Comparator<CommodityActionValue>() {
-                @Override
-                public int compare(CommodityActionValue lhs, CommodityActionValue rhs) {
-                    return rhs.getPeriod().compareTo(lhs.getPeriod());
+        CommodityActionValue latestValue = null;
+        if (commodityActionValueCollection != null) {
+            for (CommodityActionValue value : commodityActionValueCollection) {
+                if (latestValue == null || value.getPeriod().compareTo(latestValue.getPeriod()) > 0) {
+                    latestValue = value;
                 }
-            });
-
-            return commodityActionValueList.get(0);
+            }
         }
-        return null;
+        return latestValue;
     }
 
     public List<CommodityActionDataSet> getCommodityActionDataSets() {
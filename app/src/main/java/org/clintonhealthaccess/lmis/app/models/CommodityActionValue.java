@@ -69,10 +69,21 @@ public class CommodityActionValue implements Serializable {
         this.dateCreated = new Date();
     }
 
+    public String getId() {
+        return id;
+    }
+
     public String getValue() {
         return value;
     }
 
+    public static int intValueOf(String value) {
+        if (value == null) {
+            return 0;
+        }
+        return Integer.parseInt(value.contains(".") ? value.substring(0, value.indexOf(".")) : value);
+    }
+
     public String getPeriod() {
         return period;
     }
@@ -29,15 +29,17 @@
 
 package org.clintonhealthaccess.lmis.app.models;
 
-import com.j256.ormlite.field.DataType;
 import com.j256.ormlite.field.DatabaseField;
 import com.j256.ormlite.table.DatabaseTable;
 import com.thoughtworks.dhis.models.DataValue;
 import com.thoughtworks.dhis.models.DataValueSet;
 
+import org.clintonhealthaccess.lmis.app.persistence.EpochDayType;
+
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -66,7 +68,7 @@ public class CommoditySnapshot {
     @DatabaseField(canBeNull = false, foreign = true)
     private Commodity commodity;
 
-    @DatabaseField(canBeNull = false, dataType = DataType.DATE_STRING, format = "yyyy-MM-dd", columnName = PERIOD_DATE)
+    @DatabaseField(canBeNull = false, persisterClass = EpochDayType.class, columnName = PERIOD_DATE)
     private Date periodDate;
 
     @DatabaseField(canBeNull = true)
@@ -116,10 +118,30 @@ public class CommoditySnapshot {
         return dataValueSet;
     }
 
+    public static DataValueSet toDataValueSet(List<CommoditySnapshot> snapshotsToSync, String orgUnit,
+                                              Map<String, List<DataSet>> dataSetsByAction) {
+        DataValueSet dataValueSet = new DataValueSet();
+        for (CommoditySnapshot snapshot : snapshotsToSync) {
+            List<DataSet> dataSets = dataSetsByAction.get(snapshot.getCommodityAction().getId());
+            if (dataSets != null) {
+                dataValueSet.getDataValues().addAll(snapshot.toDataValues(orgUnit, dataSets));
+            }
+        }
+        return dataValueSet;
+    }
+
     public List<DataValue> toDataValues(String orgUnit) {
-        List<DataValue> dataValues = new ArrayList<>();
+        List<DataSet> dataSets = new ArrayList<>();
         for (CommodityActionDataSet commodityActionDataSet : commodityAction.getCommodityActionDataSets()) {
-            dataValues.add(toDataValue(orgUnit, commodityActionDataSet.getDataSet()));
+            dataSets.add(commodityActionDataSet.getDataSet());
+        }
+        return toDataValues(orgUnit, dataSets);
+    }
+
+    public List<DataValue> toDataValues(String orgUnit, List<DataSet> dataSets) {
+        List<DataValue> dataValues = new ArrayList<>();
+        for (DataSet dataSet : dataSets) {
+            dataValues.add(toDataValue(orgUnit, dataSet));
         }
         return dataValues;
     }
@@ -159,4 +181,8 @@ public class CommoditySnapshot {
     public CommodityAction getCommodityAction() {
         return commodityAction;
     }
+
+    public Long getId() {
+        return id;
+    }
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.models;
+
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.table.DatabaseTable;
+
+import org.clintonhealthaccess.lmis.app.persistence.EpochDayType;
+import org.clintonhealthaccess.lmis.app.utils.DateUtil;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+@DatabaseTable(tableName = "daily_ledger")
+@Getter
+@Setter
+@ToString(exclude = "commodity")
+public class DailyLedger {
+    public static final String TABLE = "daily_ledger";
+    public static final String DAY = "day";
+    public static final String RECEIVED = "received";
+    public static final String DISPENSED = "dispensed";
+    public static final String LOST = "lost";
+    public static final String PHYSICAL_COUNT = "physicalCount";
+    public static final String RECEIVED_FROM_FACILITY = "receivedFromFacility";
+    public static final String SENT_TO_FACILITY = "sentToFacility";
+    public static final String RETURNED_TO_LGA = "returnedToLga";
+    public static final String CLOSING_BALANCE = "closingBalance";
+    // net of every adjustment, signed, whatever its reason
+    public static final String ADJUSTED = "adjusted";
+
+    private static final Map<String, String> ADJUSTMENT_COLUMNS = new HashMap<String, String>() {
+        {
+            put(AdjustmentReason.PHYSICAL_COUNT_TEXT, PHYSICAL_COUNT);
+            put(AdjustmentReason.RECEIVED_FROM_ANOTHER_FACILITY_TEXT, RECEIVED_FROM_FACILITY);
+            put(AdjustmentReason.SENT_TO_ANOTHER_FACILITY_TEXT, SENT_TO_FACILITY);
+            put(AdjustmentReason.RETURNED_TO_LGA_TEXT, RETURNED_TO_LGA);
+        }
+    };
+
+    @DatabaseField(id = true)
+    private String id;
+
+    @DatabaseField(foreign = true, canBeNull = false, index = true)
+    private Commodity commodity;
+
+    @DatabaseField(canBeNull = false, persisterClass = EpochDayType.class)
+    private Date day;
+
+    @DatabaseField(canBeNull = false)
+    private int received, dispensed, lost, physicalCount, receivedFromFacility, sentToFacility, returnedToLga, adjusted;
+
+    @DatabaseField(canBeNull = true)
+    private Integer closingBalance;
+
+    public DailyLedger() {
+        //Orm lite likes
+    }
+
+    public DailyLedger(Commodity commodity, Date day) {
+        this.id = idFor(commodity, day);
+        this.commodity = commodity;
+        this.day = day;
+    }
+
+    public int adjusted(AdjustmentReason reason) {
+        String column = columnFor(reason.getName());
+        if (PHYSICAL_COUNT.equals(column)) return physicalCount;
+        if (RECEIVED_FROM_FACILITY.equals(column)) return receivedFromFacility;
+        if (SENT_TO_FACILITY.equals(column)) return sentToFacility;
+        if (RETURNED_TO_LGA.equals(column)) return returnedToLga;
+        return 0;
+    }
+
+    public static String columnFor(String adjustmentReason) {
+        return ADJUSTMENT_COLUMNS.get(adjustmentReason);
+    }
+
+    public static String idFor(Commodity commodity, Date day) {
+        return commodity.getId() + "|" + dayKey(day);
+    }
+
+    public static String dayKey(Date day) {
+        return String.valueOf(DateUtil.toEpochDay(day));
+    }
+}
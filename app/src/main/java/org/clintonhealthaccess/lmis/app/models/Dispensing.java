@@ -29,10 +29,11 @@
 
 package org.clintonhealthaccess.lmis.app.models;
 
-import com.j256.ormlite.field.DataType;
 import com.j256.ormlite.field.DatabaseField;
 import com.j256.ormlite.table.DatabaseTable;
 
+import org.clintonhealthaccess.lmis.app.persistence.EpochDayType;
+
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Date;
@@ -52,7 +53,7 @@ public class Dispensing implements Serializable {
     @DatabaseField
     private String prescriptionId;
 
-    @DatabaseField(canBeNull = false, dataType = DataType.DATE_STRING, format = "yyyy-MM-dd")
+    @DatabaseField(canBeNull = false, persisterClass = EpochDayType.class)
     private Date created;
 
     public Dispensing() {
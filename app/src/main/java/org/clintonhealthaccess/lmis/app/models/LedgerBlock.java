@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.models;
+
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.table.DatabaseTable;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * A commodity's daily ledger movements summed over a block of consecutive days.
+ * Range totals read whole blocks from here and only the days at either end from the daily ledger.
+ */
+@DatabaseTable(tableName = "ledger_blocks")
+@Getter
+@ToString(exclude = "commodity")
+public class LedgerBlock {
+    public static final String TABLE = "ledger_blocks";
+    public static final String BLOCK = "block";
+    public static final int BLOCK_DAYS = 32;
+
+    @DatabaseField(id = true)
+    private String id;
+
+    @DatabaseField(foreign = true, canBeNull = false, uniqueIndexName = "ledger_blocks_commodity_block")
+    private Commodity commodity;
+
+    @DatabaseField(canBeNull = false, columnName = BLOCK, uniqueIndexName = "ledger_blocks_commodity_block")
+    private int block;
+
+    @DatabaseField(canBeNull = false)
+    private int received, dispensed, lost, physicalCount, receivedFromFacility, sentToFacility, returnedToLga, adjusted;
+
+    public LedgerBlock() {
+        //Orm lite likes
+    }
+
+    public static int blockOf(int day) {
+        return day / BLOCK_DAYS;
+    }
+
+    public static int firstDayOf(int block) {
+        return block * BLOCK_DAYS;
+    }
+
+    public static String idFor(String commodityId, int block) {
+        return commodityId + "|" + block;
+    }
+}
@@ -31,11 +31,12 @@ package org.clintonhealthaccess.lmis.app.models;
 
 import com.google.common.collect.ImmutableList;
 import com.j256.ormlite.dao.ForeignCollection;
-import com.j256.ormlite.field.DataType;
 import com.j256.ormlite.field.DatabaseField;
 import com.j256.ormlite.field.ForeignCollectionField;
 import com.j256.ormlite.table.DatabaseTable;
 
+import org.clintonhealthaccess.lmis.app.persistence.EpochDayType;
+
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Date;
@@ -58,7 +59,7 @@ public class Receive implements Serializable {
 
     private List<ReceiveItem> receiveItems = new ArrayList<>();
 
-    @DatabaseField(canBeNull = false, dataType = DataType.DATE_STRING, format = "yyyy-MM-dd")
+    @DatabaseField(canBeNull = false, persisterClass = EpochDayType.class)
     private Date created;
 
     private Allocation allocation;
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.models;
+
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.table.DatabaseTable;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * A run of days over which a commodity's closing balance did not change.
+ * Only the first day can be a stock out while the balance is positive: that is a day stock ran out and was restocked.
+ */
+@DatabaseTable(tableName = "stock_intervals")
+@Getter
+@ToString(exclude = "commodity")
+public class StockInterval {
+    public static final String TABLE = "stock_intervals";
+    public static final String FROM_DAY = "fromDay";
+    public static final String TO_DAY = "toDay";
+    public static final String QUANTITY = "quantity";
+    public static final String FIRST_DAY_STOCK_OUT = "firstDayStockOut";
+    public static final int OPEN = Integer.MAX_VALUE;
+
+    @DatabaseField(generatedId = true)
+    private int id;
+
+    @DatabaseField(foreign = true, canBeNull = false, uniqueIndexName = "stock_intervals_commodity_from_day")
+    private Commodity commodity;
+
+    @DatabaseField(canBeNull = false, columnName = FROM_DAY, uniqueIndexName = "stock_intervals_commodity_from_day")
+    private int fromDay;
+
+    @DatabaseField(canBeNull = false, columnName = TO_DAY)
+    private int toDay;
+
+    @DatabaseField(canBeNull = false, columnName = QUANTITY)
+    private int quantity;
+
+    @DatabaseField(canBeNull = false, columnName = FIRST_DAY_STOCK_OUT)
+    private boolean firstDayStockOut;
+
+    public StockInterval() {
+        //Orm lite likes
+    }
+
+    public StockInterval(Commodity commodity, int fromDay, int toDay, int quantity, boolean firstDayStockOut) {
+        this.commodity = commodity;
+        this.fromDay = fromDay;
+        this.toDay = toDay;
+        set(quantity, firstDayStockOut);
+    }
+
+    public void set(int quantity, boolean firstDayStockOut) {
+        this.quantity = quantity;
+        this.firstDayStockOut = firstDayStockOut || quantity <= 0;
+    }
+
+    public void setToDay(int toDay) {
+        this.toDay = toDay;
+    }
+
+    public boolean contains(int day) {
+        return fromDay <= day && day <= toDay;
+    }
+
+    public boolean isStockOutOn(int day) {
+        return contains(day) && (quantity <= 0 || day == fromDay && firstDayStockOut);
+    }
+
+    public int stockOutDaysBetween(int startDay, int endDay) {
+        int first = Math.max(fromDay, startDay);
+        int last = Math.min(toDay, endDay);
+        if (first > last) {
+            return 0;
+        }
+        if (quantity <= 0) {
+            return last - first + 1;
+        }
+        return firstDayStockOut && first == fromDay ? 1 : 0;
+    }
+
+    /**
+     * True when this interval's first day looks just like a day carried over from the previous one.
+     */
+    public boolean continues(StockInterval previous) {
+        return previous.toDay == fromDay - 1 && previous.quantity == quantity && firstDayStockOut == (quantity <= 0);
+    }
+}
@@ -29,11 +29,12 @@
 
 package org.clintonhealthaccess.lmis.app.models;
 
-import com.j256.ormlite.field.DataType;
 import com.j256.ormlite.field.DatabaseField;
 import com.j256.ormlite.table.DatabaseTable;
 
-import java.text.SimpleDateFormat;
+import org.clintonhealthaccess.lmis.app.persistence.EpochDayType;
+import org.clintonhealthaccess.lmis.app.utils.DateUtil;
+
 import java.util.Date;
 
 import lombok.ToString;
@@ -48,7 +49,7 @@ public class StockItemSnapshot {
     @DatabaseField(foreign = true, canBeNull = false, foreignAutoRefresh = true)
     private Commodity commodity;
 
-    @DatabaseField(canBeNull = false, dataType = DataType.DATE_STRING, format = "yyyy-MM-dd")
+    @DatabaseField(canBeNull = false, persisterClass = EpochDayType.class)
     private Date created;
 
     @DatabaseField(canBeNull = false)
@@ -122,8 +123,7 @@ public class StockItemSnapshot {
 
         if (quantity != that.quantity) return false;
         if (!commodity.equals(that.commodity)) return false;
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
-        if (!dateFormat.format(created).equals(dateFormat.format(that.created))) return false;
+        if (!DateUtil.equal(created, that.created)) return false;
 
         return true;
     }
@@ -131,7 +131,7 @@ public class StockItemSnapshot {
     @Override
     public int hashCode() {
         int result = commodity.hashCode();
-        result = 31 * result + created.hashCode();
+        result = 31 * result + DateUtil.toEpochDay(created);
         result = 31 * result + quantity;
         return result;
     }
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.models.alerts;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+@Getter
+@EqualsAndHashCode
+@ToString
+public class AlertSummary {
+    public static final AlertSummary EMPTY = new AlertSummary(0, 0, 0, 0);
+
+    private final int lowStockAlerts;
+    private final int routineOrderAlerts;
+    private final int allocationAlerts;
+    private final int monthlyStockCountAlerts;
+
+    public AlertSummary(int lowStockAlerts, int routineOrderAlerts, int allocationAlerts, int monthlyStockCountAlerts) {
+        this.lowStockAlerts = lowStockAlerts;
+        this.routineOrderAlerts = routineOrderAlerts;
+        this.allocationAlerts = allocationAlerts;
+        this.monthlyStockCountAlerts = monthlyStockCountAlerts;
+    }
+
+    public int getNotificationMessages() {
+        return routineOrderAlerts + allocationAlerts + monthlyStockCountAlerts;
+    }
+
+    public int getTotal() {
+        return lowStockAlerts + getNotificationMessages();
+    }
+}
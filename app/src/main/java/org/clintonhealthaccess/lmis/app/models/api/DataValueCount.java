@@ -29,6 +29,13 @@
 
 package org.clintonhealthaccess.lmis.app.models.api;
 
+import lombok.Getter;
+
+@Getter
 public class DataValueCount {
     private double imported, updated, ignored, deleted;
+
+    public int getProcessed() {
+        return (int) (imported + updated + ignored + deleted);
+    }
 }
@@ -42,4 +42,8 @@ public class DataValueSetPushResponse {
     public boolean isSuccess() {
         return getStatus().equalsIgnoreCase("SUCCESS");
     }
+
+    public boolean acknowledges(int pushedValues) {
+        return isSuccess() && (dataValueCount == null || dataValueCount.getProcessed() >= pushedValues);
+    }
 }
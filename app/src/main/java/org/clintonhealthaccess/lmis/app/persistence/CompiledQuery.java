@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.persistence;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A named, parameterised query that DaoRegistry prepares once and binds per call.
+ * Build the statement with SelectArg placeholders; arguments are bound in the same order.
+ */
+public class CompiledQuery<DomainType> {
+    private final Class<DomainType> domainClass;
+    private final String name;
+    private final DaoRegistry.Preparer<DomainType> preparer;
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong nanos = new AtomicLong();
+
+    public CompiledQuery(Class<DomainType> domainClass, String name, DaoRegistry.Preparer<DomainType> preparer) {
+        this.domainClass = domainClass;
+        this.name = name;
+        this.preparer = preparer;
+    }
+
+    public Class<DomainType> getDomainClass() {
+        return domainClass;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    DaoRegistry.Preparer<DomainType> getPreparer() {
+        return preparer;
+    }
+
+    public long getExecutions() {
+        return executions.get();
+    }
+
+    public long getTotalNanos() {
+        return nanos.get();
+    }
+
+    public long getTotalMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(nanos.get());
+    }
+
+    void record(long elapsedNanos) {
+        executions.incrementAndGet();
+        nanos.addAndGet(elapsedNanos);
+    }
+
+    @Override
+    public String toString() {
+        return name + ": " + getExecutions() + " runs, " + getTotalMillis() + "ms";
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.persistence;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.inject.Inject;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.PreparedQuery;
+import com.j256.ormlite.support.ConnectionSource;
+
+import org.clintonhealthaccess.lmis.app.LmisException;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.j256.ormlite.dao.DaoManager.createDao;
+
+/**
+ * Hands out one typed DAO per domain class for the life of the open database,
+ * and runs CompiledQuery statements that are prepared once per database and thread
+ * and timed on every execution. Query names must be unique across the app.
+ */
+public class DaoRegistry {
+    public interface Preparer<DomainType> {
+        PreparedQuery<DomainType> prepare(Dao<DomainType, String> dao) throws SQLException;
+    }
+
+    private static final Map<String, CompiledQuery<?>> COMPILED_QUERIES = new ConcurrentHashMap<>();
+    private static volatile Registry registry;
+
+    @Inject
+    private Context context;
+
+    public <DomainType> Dao<DomainType, String> get(Class<DomainType> domainClass) {
+        try {
+            return lookup(LmisSqliteOpenHelper.getInstance(context).getConnectionSource(), domainClass);
+        } catch (SQLException e) {
+            throw new LmisException(e);
+        }
+    }
+
+    public <DomainType> List<DomainType> query(CompiledQuery<DomainType> compiled, Object... arguments) {
+        long started = System.nanoTime();
+        try {
+            Dao<DomainType, String> dao = get(compiled.getDomainClass());
+            PreparedQuery<DomainType> query = prepared(compiled);
+            bind(query, arguments);
+            return dao.query(query);
+        } catch (SQLException e) {
+            throw new LmisException(e);
+        } finally {
+            compiled.record(System.nanoTime() - started);
+        }
+    }
+
+    public <DomainType> DomainType queryForFirst(CompiledQuery<DomainType> compiled, Object... arguments) {
+        long started = System.nanoTime();
+        try {
+            Dao<DomainType, String> dao = get(compiled.getDomainClass());
+            PreparedQuery<DomainType> query = prepared(compiled);
+            bind(query, arguments);
+            return dao.queryForFirst(query);
+        } catch (SQLException e) {
+            throw new LmisException(e);
+        } finally {
+            compiled.record(System.nanoTime() - started);
+        }
+    }
+
+    public static List<CompiledQuery<?>> getQueryStats() {
+        List<CompiledQuery<?>> queries = new ArrayList<>(COMPILED_QUERIES.values());
+        Collections.sort(queries, new Comparator<CompiledQuery<?>>() {
+            @Override
+            public int compare(CompiledQuery<?> lhs, CompiledQuery<?> rhs) {
+                return Long.valueOf(rhs.getTotalNanos()).compareTo(lhs.getTotalNanos());
+            }
+        });
+        return queries;
+    }
+
+    public static void logQueryStats() {
+        for (CompiledQuery<?> query : getQueryStats()) {
+            Log.i("DaoRegistry", query.toString());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <DomainType> PreparedQuery<DomainType> prepared(CompiledQuery<DomainType> compiled) throws SQLException {
+        ConnectionSource connectionSource = LmisSqliteOpenHelper.getInstance(context).getConnectionSource();
+        Registry current = registryFor(connectionSource);
+        Map<String, PreparedQuery<?>> queries = current.queries.get();
+        PreparedQuery<DomainType> query = (PreparedQuery<DomainType>) queries.get(compiled.getName());
+        if (query == null) {
+            query = compiled.getPreparer().prepare(lookup(connectionSource, compiled.getDomainClass()));
+            queries.put(compiled.getName(), query);
+            COMPILED_QUERIES.put(compiled.getName(), compiled);
+        }
+        return query;
+    }
+
+    private static void bind(PreparedQuery<?> query, Object[] arguments) throws SQLException {
+        for (int i = 0; i < arguments.length; i++) {
+            query.setArgumentHolderValue(i, arguments[i]);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <DomainType> Dao<DomainType, String> lookup(ConnectionSource connectionSource, Class<DomainType> domainClass)
+            throws SQLException {
+        Registry current = registryFor(connectionSource);
+        Dao<DomainType, String> dao = (Dao<DomainType, String>) current.daos.get(domainClass);
+        if (dao == null) {
+            dao = createDao(connectionSource, domainClass);
+            current.daos.put(domainClass, dao);
+        }
+        return dao;
+    }
+
+    public static void clear() {
+        registry = null;
+    }
+
+    private static Registry registryFor(ConnectionSource connectionSource) {
+        Registry current = registry;
+        if (current == null || current.connectionSource != connectionSource) {
+            synchronized (DaoRegistry.class) {
+                current = registry;
+                if (current == null || current.connectionSource != connectionSource) {
+                    current = new Registry(connectionSource);
+                    registry = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private static class Registry {
+        private final ConnectionSource connectionSource;
+        private final Map<Class<?>, Dao<?, String>> daos = new ConcurrentHashMap<>();
+        // a prepared query holds its bound arguments, so each thread binds and runs its own copy
+        private final ThreadLocal<Map<String, PreparedQuery<?>>> queries = new ThreadLocal<Map<String, PreparedQuery<?>>>() {
+            @Override
+            protected Map<String, PreparedQuery<?>> initialValue() {
+                return new HashMap<>();
+            }
+        };
+
+        private Registry(ConnectionSource connectionSource) {
+            this.connectionSource = connectionSource;
+        }
+    }
+}
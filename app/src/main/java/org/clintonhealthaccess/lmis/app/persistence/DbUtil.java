@@ -35,7 +35,7 @@ import android.database.sqlite.SQLiteOpenHelper;
 import com.google.inject.Inject;
 import com.j256.ormlite.android.AndroidConnectionSource;
 import com.j256.ormlite.dao.Dao;
-import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.misc.TransactionManager;
 
 import org.clintonhealthaccess.lmis.app.LmisException;
 
@@ -55,7 +55,6 @@ public class DbUtil {
 
     public <DomainType, ReturnType> ReturnType withDao(
             Class<DomainType> domainClass, Operation<DomainType, ReturnType> operation) {
-        //SQLiteOpenHelper openHelper = getHelper(context, LmisSqliteOpenHelper.class);
         SQLiteOpenHelper openHelper = LmisSqliteOpenHelper.getInstance(context);
         try {
             Dao<DomainType, String> dao = initialiseDao(openHelper, domainClass);
@@ -78,34 +77,37 @@ public class DbUtil {
 
     public <DomainType, ReturnType> ReturnType withDaoAsBatch(
             Context context, Class<DomainType> domainClass, final Operation<DomainType, ReturnType> operation) {
-        SQLiteOpenHelper openHelper = LmisSqliteOpenHelper.getInstance(context);
+        return batch(LmisSqliteOpenHelper.getInstance(context), domainClass, operation);
+    }
+
+    public <DomainType, ReturnType> ReturnType withDaoAsBatch(
+            Class<DomainType> domainClass, final Operation<DomainType, ReturnType> operation) {
+        return batch(LmisSqliteOpenHelper.getInstance(context), domainClass, operation);
+    }
+
+    public <ReturnType> ReturnType inTransaction(Callable<ReturnType> work) {
+        return inTransaction("transaction", work);
+    }
+
+    public <ReturnType> ReturnType inTransaction(String operation, Callable<ReturnType> work) {
+        LmisSqliteOpenHelper openHelper = LmisSqliteOpenHelper.getInstance(context);
         try {
-            final Dao<DomainType, String> dao = initialiseDao(openHelper, domainClass);
-            return dao.callBatchTasks(new Callable<ReturnType>() {
-                @Override
-                public ReturnType call() throws Exception {
-                    return operation.operate(dao);
-                }
-            });
+            return TransactionManager.callInTransaction(openHelper.getConnectionSource(), timed(operation, work));
         } catch (SQLException e) {
             throw new LmisException(e);
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new LmisException(e);
-        } 
+        }
     }
 
-    public <DomainType, ReturnType> ReturnType withDaoAsBatch(
-            Class<DomainType> domainClass, final Operation<DomainType, ReturnType> operation) {
-        SQLiteOpenHelper openHelper = LmisSqliteOpenHelper.getInstance(context);
+    private <DomainType, ReturnType> ReturnType batch(
+            SQLiteOpenHelper openHelper, Class<DomainType> domainClass, final Operation<DomainType, ReturnType> operation) {
         try {
             final Dao<DomainType, String> dao = initialiseDao(openHelper, domainClass);
-            return dao.callBatchTasks(new Callable<ReturnType>() {
+            return dao.callBatchTasks(timed(domainClass.getSimpleName(), new Callable<ReturnType>() {
                 @Override
                 public ReturnType call() throws Exception {
                     return operation.operate(dao);
                 }
-            });
+            }));
         } catch (SQLException e) {
             throw new LmisException(e);
         } catch (Exception e) {
@@ -114,14 +116,21 @@ public class DbUtil {
         }
     }
 
+    private static <ReturnType> Callable<ReturnType> timed(final String operation, final Callable<ReturnType> work) {
+        final long requested = System.nanoTime();
+        return new Callable<ReturnType>() {
+            @Override
+            public ReturnType call() throws Exception {
+                LockWaitMonitor.record(operation, System.nanoTime() - requested);
+                return work.call();
+            }
+        };
+    }
+
     public static <T> Dao<T, String> initialiseDao(SQLiteOpenHelper openHelper, Class<T> domainClass) throws SQLException {
-        ConnectionSource connectionSource;
-        if(openHelper instanceof  LmisSqliteOpenHelper){
-            LmisSqliteOpenHelper helper = (LmisSqliteOpenHelper) openHelper;
-            connectionSource = helper.getConnectionSource();
-        }else{
-            connectionSource = new AndroidConnectionSource(openHelper);
+        if (openHelper instanceof LmisSqliteOpenHelper) {
+            return DaoRegistry.lookup(((LmisSqliteOpenHelper) openHelper).getConnectionSource(), domainClass);
         }
-        return createDao(connectionSource, domainClass);
+        return createDao(new AndroidConnectionSource(openHelper), domainClass);
     }
 }
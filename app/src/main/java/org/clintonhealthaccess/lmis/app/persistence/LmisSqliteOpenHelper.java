@@ -36,7 +36,15 @@ import android.util.Log;
 import com.j256.ormlite.android.apptools.OrmLiteSqliteOpenHelper;
 import com.j256.ormlite.support.ConnectionSource;
 
+import org.clintonhealthaccess.lmis.app.persistence.migrations.AddNetAdjustmentToDailyLedger;
+import org.clintonhealthaccess.lmis.app.persistence.migrations.AddStockOnHandToCommodities;
+import org.clintonhealthaccess.lmis.app.persistence.migrations.ConvertDatesToEpochDays;
+import org.clintonhealthaccess.lmis.app.persistence.migrations.CreateDailyLedger;
 import org.clintonhealthaccess.lmis.app.persistence.migrations.CreateInitTables;
+import org.clintonhealthaccess.lmis.app.persistence.migrations.CreateLedgerBlocks;
+import org.clintonhealthaccess.lmis.app.persistence.migrations.CreateQueryIndexes;
+import org.clintonhealthaccess.lmis.app.persistence.migrations.CreateStockIntervals;
+import org.clintonhealthaccess.lmis.app.services.AlertsService;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -48,6 +56,13 @@ public class LmisSqliteOpenHelper extends OrmLiteSqliteOpenHelper {
     private static final List<Migration> MIGRATIONS = new ArrayList<Migration>() {
         {
             add(new CreateInitTables());
+            add(new CreateDailyLedger());
+            add(new CreateQueryIndexes());
+            add(new ConvertDatesToEpochDays());
+            add(new AddStockOnHandToCommodities());
+            add(new CreateStockIntervals());
+            add(new AddNetAdjustmentToDailyLedger());
+            add(new CreateLedgerBlocks());
         }
     };
 
@@ -57,6 +72,15 @@ public class LmisSqliteOpenHelper extends OrmLiteSqliteOpenHelper {
         Log.d("LmisSqliteOpenHelper", "Instance Created : total count : " + instanceCount);
     }
 
+    @Override
+    public void onOpen(SQLiteDatabase database) {
+        super.onOpen(database);
+        if (!database.isReadOnly() && !database.inTransaction()) {
+            boolean enabled = database.enableWriteAheadLogging();
+            Log.i("LmisSqliteOpenHelper", "Write-ahead logging enabled : " + enabled);
+        }
+    }
+
     @Override
     public void onCreate(SQLiteDatabase database, ConnectionSource connectionSource) {
         for (Migration migration : MIGRATIONS) {
@@ -94,6 +118,8 @@ public class LmisSqliteOpenHelper extends OrmLiteSqliteOpenHelper {
 
     public static void closeHelper() {
         _helperInstance = null;
+        DaoRegistry.clear();
+        AlertsService.clearCache();
         -- instanceCount;
         Log.d("LmisSqliteOpenHelper", "Instance Destroyed : total count : " + instanceCount);
     }
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.persistence;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records how long each write waited for the database's single writer connection
+ * before its transaction began. Reads run on WAL's pooled connections and never wait here.
+ */
+public class LockWaitMonitor {
+
+    private static final ConcurrentMap<String, Stats> STATS = new ConcurrentHashMap<>();
+
+    public static void record(String operation, long waitNanos) {
+        Stats stats = STATS.get(operation);
+        if (stats == null) {
+            Stats created = new Stats(operation);
+            stats = STATS.putIfAbsent(operation, created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+        stats.add(waitNanos);
+    }
+
+    public static Stats get(String operation) {
+        return STATS.get(operation);
+    }
+
+    public static List<Stats> getStats() {
+        List<Stats> stats = new ArrayList<>(STATS.values());
+        Collections.sort(stats, new Comparator<Stats>() {
+            @Override
+            public int compare(Stats left, Stats right) {
+                return Long.compare(right.getMaxNanos(), left.getMaxNanos());
+            }
+        });
+        return stats;
+    }
+
+    public static void logStats() {
+        for (Stats stats : getStats()) {
+            Log.i("LockWaitMonitor", stats.toString());
+        }
+    }
+
+    public static void reset() {
+        STATS.clear();
+    }
+
+    public static class Stats {
+        private final String operation;
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+
+        private Stats(String operation) {
+            this.operation = operation;
+        }
+
+        private synchronized void add(long waitNanos) {
+            count++;
+            totalNanos += waitNanos;
+            maxNanos = Math.max(maxNanos, waitNanos);
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        public synchronized long getMaxNanos() {
+            return maxNanos;
+        }
+
+        public synchronized long getTotalMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(totalNanos);
+        }
+
+        public synchronized long getMaxMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(maxNanos);
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("%s: %d writes, waited %d ms in total, %d ms at most",
+                    operation, count, getTotalMillis(), getMaxMillis());
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.persistence.migrations;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.j256.ormlite.support.ConnectionSource;
+
+import org.clintonhealthaccess.lmis.app.persistence.Migration;
+import org.clintonhealthaccess.lmis.app.services.DailyLedgerService;
+
+import static org.clintonhealthaccess.lmis.app.models.DailyLedger.ADJUSTED;
+import static org.clintonhealthaccess.lmis.app.models.DailyLedger.TABLE;
+
+public class AddNetAdjustmentToDailyLedger implements Migration {
+    @Override
+    public void up(SQLiteDatabase db, ConnectionSource connectionSource) {
+        // ledgers rebuilt by an earlier migration in this upgrade already have the column
+        if (!hasAdjustedColumn(db)) {
+            db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN " + ADJUSTED + " INTEGER NOT NULL DEFAULT 0");
+        }
+        db.execSQL("UPDATE " + TABLE + " SET " + ADJUSTED + " = " + DailyLedgerService.NET_ADJUSTED_SQL);
+    }
+
+    @Override
+    public void down(SQLiteDatabase db, ConnectionSource connectionSource) {
+        db.execSQL("UPDATE " + TABLE + " SET " + ADJUSTED + " = 0");
+    }
+
+    private static boolean hasAdjustedColumn(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("PRAGMA table_info(" + TABLE + ")", null);
+        try {
+            int name = cursor.getColumnIndex("name");
+            while (cursor.moveToNext()) {
+                if (ADJUSTED.equals(cursor.getString(name))) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            cursor.close();
+        }
+    }
+}
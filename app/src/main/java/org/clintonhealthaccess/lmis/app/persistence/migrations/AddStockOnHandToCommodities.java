@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.persistence.migrations;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.j256.ormlite.support.ConnectionSource;
+
+import org.clintonhealthaccess.lmis.app.persistence.Migration;
+
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.clintonhealthaccess.lmis.app.models.Commodity.STOCK_ON_HAND;
+import static org.clintonhealthaccess.lmis.app.models.Commodity.TABLE;
+
+public class AddStockOnHandToCommodities implements Migration {
+
+    // keeps the legacy stock rows and the denormalised column in step whichever one a writer touches
+    public static final List<String> TRIGGERS = asList(
+            "CREATE TRIGGER IF NOT EXISTS stock_created_on_hand AFTER INSERT ON stock BEGIN " +
+                    "UPDATE " + TABLE + " SET " + STOCK_ON_HAND + " = NEW.quantity WHERE id = NEW.commodity_id; END",
+            "CREATE TRIGGER IF NOT EXISTS stock_on_hand_changed AFTER UPDATE OF " + STOCK_ON_HAND + " ON " + TABLE + " BEGIN " +
+                    "UPDATE stock SET quantity = NEW." + STOCK_ON_HAND + " WHERE commodity_id = NEW.id; END"
+    );
+
+    @Override
+    public void up(SQLiteDatabase db, ConnectionSource connectionSource) {
+        if (!hasStockOnHandColumn(db)) {
+            db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN " + STOCK_ON_HAND + " INTEGER NOT NULL DEFAULT 0");
+        }
+        db.execSQL("UPDATE " + TABLE + " SET " + STOCK_ON_HAND + " = " +
+                "COALESCE((SELECT quantity FROM stock WHERE stock.commodity_id = " + TABLE + ".id), 0)");
+        for (String trigger : TRIGGERS) {
+            db.execSQL(trigger);
+        }
+    }
+
+    @Override
+    public void down(SQLiteDatabase db, ConnectionSource connectionSource) {
+        db.execSQL("DROP TRIGGER IF EXISTS stock_created_on_hand");
+        db.execSQL("DROP TRIGGER IF EXISTS stock_on_hand_changed");
+    }
+
+    private static boolean hasStockOnHandColumn(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("PRAGMA table_info(" + TABLE + ")", null);
+        try {
+            int name = cursor.getColumnIndex("name");
+            while (cursor.moveToNext()) {
+                if (STOCK_ON_HAND.equals(cursor.getString(name))) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.persistence.migrations;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.google.common.base.Joiner;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.table.DatabaseTableConfig;
+
+import org.clintonhealthaccess.lmis.app.LmisException;
+import org.clintonhealthaccess.lmis.app.models.Adjustment;
+import org.clintonhealthaccess.lmis.app.models.CommoditySnapshot;
+import org.clintonhealthaccess.lmis.app.models.DailyLedger;
+import org.clintonhealthaccess.lmis.app.models.Dispensing;
+import org.clintonhealthaccess.lmis.app.models.Loss;
+import org.clintonhealthaccess.lmis.app.models.Receive;
+import org.clintonhealthaccess.lmis.app.models.StockItemSnapshot;
+import org.clintonhealthaccess.lmis.app.persistence.Migration;
+import org.clintonhealthaccess.lmis.app.services.DailyLedgerService;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.j256.ormlite.table.TableUtils.createTable;
+import static com.j256.ormlite.table.TableUtils.dropTable;
+
+public class ConvertDatesToEpochDays implements Migration {
+
+    public static final Map<Class<?>, String> DATE_COLUMNS = new LinkedHashMap<Class<?>, String>() {
+        {
+            put(Dispensing.class, "created");
+            put(Receive.class, "created");
+            put(Loss.class, "created");
+            put(Adjustment.class, "created");
+            put(StockItemSnapshot.class, "created");
+            put(CommoditySnapshot.class, CommoditySnapshot.PERIOD_DATE);
+        }
+    };
+
+    private static final String TO_EPOCH_DAY = "CASE WHEN typeof(%1$s) = 'text' " +
+            "THEN CAST(julianday(%1$s) - 2440587.5 AS INTEGER) ELSE %1$s END";
+    private static final String TO_DATE_STRING = "date(%1$s * 86400, 'unixepoch')";
+    private static final Joiner JOINER = Joiner.on(", ");
+
+    @Override
+    public void up(SQLiteDatabase db, ConnectionSource connectionSource) {
+        try {
+            for (Map.Entry<Class<?>, String> dateColumn : DATE_COLUMNS.entrySet()) {
+                rebuild(db, connectionSource, dateColumn.getKey(), dateColumn.getValue());
+            }
+            dropTable(connectionSource, DailyLedger.class, true);
+            createTable(connectionSource, DailyLedger.class);
+            for (String statement : DailyLedgerService.REBUILD_STATEMENTS) {
+                db.execSQL(statement);
+            }
+            new CreateQueryIndexes().up(db, connectionSource);
+        } catch (SQLException e) {
+            throw new LmisException(e);
+        }
+    }
+
+    @Override
+    public void down(SQLiteDatabase db, ConnectionSource connectionSource) {
+        for (Map.Entry<Class<?>, String> dateColumn : DATE_COLUMNS.entrySet()) {
+            String column = dateColumn.getValue();
+            db.execSQL("UPDATE " + DatabaseTableConfig.extractTableName(dateColumn.getKey()) + " SET " + column + " = " +
+                    String.format(TO_DATE_STRING, column) + " WHERE typeof(" + column + ") = 'integer'");
+        }
+        String day = String.format(TO_DATE_STRING, DailyLedger.DAY);
+        db.execSQL("UPDATE " + DailyLedger.TABLE + " SET id = commodity_id || '|' || " + day + ", " +
+                DailyLedger.DAY + " = " + day + " WHERE typeof(" + DailyLedger.DAY + ") = 'integer'");
+    }
+
+    // SQLite cannot change a column's type in place, so the table is recreated from the model and the rows copied across
+    private <T> void rebuild(SQLiteDatabase db, ConnectionSource connectionSource, Class<T> type, String dateColumn)
+            throws SQLException {
+        String table = DatabaseTableConfig.extractTableName(type);
+        String previous = table + "_previous";
+        db.execSQL("ALTER TABLE " + table + " RENAME TO " + previous);
+        for (String index : indexesOf(db, previous)) {
+            db.execSQL("DROP INDEX IF EXISTS " + index);
+        }
+        createTable(connectionSource, type);
+
+        List<String> targetColumns = columnsOf(db, table);
+        List<String> columns = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        for (String column : columnsOf(db, previous)) {
+            if (targetColumns.contains(column)) {
+                String quoted = "`" + column + "`";
+                columns.add(quoted);
+                values.add(column.equals(dateColumn) ? String.format(TO_EPOCH_DAY, quoted) : quoted);
+            }
+        }
+        db.execSQL("INSERT INTO " + table + " (" + JOINER.join(columns) + ") SELECT " + JOINER.join(values) + " FROM " + previous);
+        db.execSQL("DROP TABLE " + previous);
+    }
+
+    private static List<String> indexesOf(SQLiteDatabase db, String table) {
+        List<String> indexes = new ArrayList<>();
+        Cursor cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type = 'index' AND sql IS NOT NULL AND tbl_name = ?",
+                new String[]{table});
+        while (cursor.moveToNext()) {
+            indexes.add(cursor.getString(0));
+        }
+        cursor.close();
+        return indexes;
+    }
+
+    private static List<String> columnsOf(SQLiteDatabase db, String table) {
+        List<String> columns = new ArrayList<>();
+        Cursor cursor = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+        int name = cursor.getColumnIndex("name");
+        while (cursor.moveToNext()) {
+            columns.add(cursor.getString(name));
+        }
+        cursor.close();
+        return columns;
+    }
+}
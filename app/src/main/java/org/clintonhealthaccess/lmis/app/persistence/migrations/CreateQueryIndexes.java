@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.persistence.migrations;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import com.j256.ormlite.support.ConnectionSource;
+
+import org.clintonhealthaccess.lmis.app.persistence.Migration;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class CreateQueryIndexes implements Migration {
+
+    public static final Map<String, String> INDEXES = new LinkedHashMap<String, String>() {
+        {
+            put("stockitemsnapshot_commodity_created", "stockitemsnapshot (commodity_id, created)");
+            put("commoditysnapshot_commodity_activity_period", "commoditysnapshot (commodity_id, commodityActivity_id, period_date)");
+            put("commoditysnapshot_synced_smssent", "commoditysnapshot (synced, smsSent)");
+            put("commodityactionvalue_action_period", "commodityactionvalue (commodityAction_id, period)");
+            put("adjustment_commodity_created", "adjustment (commodity_id, created)");
+            put("dispensingitems_commodity", "dispensingItems (commodity_id)");
+            put("receive_items_commodity", "receive_items (commodity_id)");
+            put("loss_items_commodity", "loss_items (commodity_id)");
+            put("dispensings_created", "dispensings (created)");
+            put("receives_created", "receives (created)");
+            put("losses_created", "losses (created)");
+        }
+    };
+
+    @Override
+    public void up(SQLiteDatabase db, ConnectionSource connectionSource) {
+        for (Map.Entry<String, String> index : INDEXES.entrySet()) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS " + index.getKey() + " ON " + index.getValue());
+        }
+    }
+
+    @Override
+    public void down(SQLiteDatabase db, ConnectionSource connectionSource) {
+        for (String name : INDEXES.keySet()) {
+            db.execSQL("DROP INDEX IF EXISTS " + name);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.remote;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.thoughtworks.dhis.models.DataValue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the dataValues array of a DHIS2 dataValueSets response one element at a time, handing
+ * out bounded batches so the full value set never has to be held in memory.
+ */
+public class DataValueStreamReader {
+    private final int batchSize;
+
+    public DataValueStreamReader(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int read(InputStream in, LmisServer.BatchHandler<DataValue> handler) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+        int count = 0;
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("dataValues".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    count += readDataValues(reader, handler);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } finally {
+            reader.close();
+        }
+        return count;
+    }
+
+    private int readDataValues(JsonReader reader, LmisServer.BatchHandler<DataValue> handler) throws IOException {
+        int count = 0;
+        List<DataValue> batch = new ArrayList<>(batchSize);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            batch.add(readDataValue(reader));
+            count++;
+            if (batch.size() == batchSize) {
+                handler.handle(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        reader.endArray();
+        if (!batch.isEmpty()) {
+            handler.handle(batch);
+        }
+        return count;
+    }
+
+    private DataValue readDataValue(JsonReader reader) throws IOException {
+        DataValue.DataValueBuilder builder = DataValue.builder();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "dataSet":
+                    builder.dataSet(reader.nextString());
+                    break;
+                case "dataElement":
+                    builder.dataElement(reader.nextString());
+                    break;
+                case "value":
+                    builder.value(reader.nextString());
+                    break;
+                case "period":
+                    builder.period(reader.nextString());
+                    break;
+                case "orgUnit":
+                    builder.orgUnit(reader.nextString());
+                    break;
+                case "attributeOptionCombo":
+                    builder.attributeOptionCombo(reader.nextString());
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return builder.build();
+    }
+}
@@ -34,11 +34,10 @@ import android.util.Log;
 import android.util.TimingLogger;
 
 import com.google.common.base.Function;
+import com.google.common.base.Joiner;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
 import com.google.inject.Inject;
-import com.thoughtworks.dhis.models.Attribute;
-import com.thoughtworks.dhis.models.AttributeValue;
 import com.thoughtworks.dhis.models.DataElement;
 import com.thoughtworks.dhis.models.DataElementGroup;
 import com.thoughtworks.dhis.models.DataElementGroupSet;
@@ -68,24 +67,36 @@ import org.clintonhealthaccess.lmis.app.remote.endpoints.Dhis2EndPointFactory;
 import org.clintonhealthaccess.lmis.app.remote.endpoints.Dhis2Endpoint;
 import org.clintonhealthaccess.lmis.app.remote.endpoints.FDroidEndPoint;
 import org.clintonhealthaccess.lmis.app.remote.endpoints.FDroidEndPointFactory;
+import org.clintonhealthaccess.lmis.app.remote.responses.DataElementGroupSearchResponse;
 import org.clintonhealthaccess.lmis.app.remote.responses.DataElementGroupSetSearchResponse;
+import org.clintonhealthaccess.lmis.app.remote.responses.DataElementSearchResponse;
 import org.clintonhealthaccess.lmis.app.remote.responses.DataSetSearchResponse;
 import org.clintonhealthaccess.lmis.app.remote.responses.IndicatorGroupResponse;
 import org.clintonhealthaccess.lmis.app.remote.responses.IndicatorValueResponse;
 import org.clintonhealthaccess.lmis.app.services.CommodityActionService;
 import org.clintonhealthaccess.lmis.app.services.DataSetService;
 import org.clintonhealthaccess.lmis.app.utils.DateUtil;
+import org.clintonhealthaccess.lmis.app.utils.StageTimer;
 import org.json.JSONException;
 
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import retrofit.client.Response;
 import roboguice.inject.InjectResource;
 
 import static android.util.Log.e;
@@ -96,12 +107,20 @@ import static com.google.common.collect.Lists.newArrayList;
 import static com.thoughtworks.dhis.models.DataElementType.ALLOCATED;
 import static com.thoughtworks.dhis.models.DataElementType.ALLOCATION_ID;
 import static com.thoughtworks.dhis.models.DataElementType.STOCK_ON_HAND;
-import static org.clintonhealthaccess.lmis.app.models.CommodityActionDataSet.generateCommodityActionDataSets;
+import static org.clintonhealthaccess.lmis.app.utils.Helpers.await;
 import static org.clintonhealthaccess.lmis.app.utils.Helpers.isEmpty;
 
 public class Dhis2 implements LmisServer {
     public static final String SYNC = "SYNC";
     public static final SimpleDateFormat SIMPLE_DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd");
+    public static final SimpleDateFormat LAST_UPDATED_FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+    static final int METADATA_FETCH_THREADS = 3;
+    static final String GROUP_SET_FIELDS = "id,name, dataElementGroups[id,name, attributeValues[value,attribute[id,name]], dataElements[name,id,attributeValues[value,attribute[id,name]]]";
+    static final String DATA_SET_FIELDS = "id,name,periodType,description,dataElements[name,id,attributeValues[value,attribute[id,name]],dataElementGroups[id,name,dataElementGroupSet[id,name],attributeValues[value,attribute[id,name]]";
+    static final String INDICATOR_GROUP_FIELDS = "id,name,indicators[id, name]";
+    static final String CHANGED_GROUP_FIELDS = "id,dataElementGroupSet[id]";
+    static final String CHANGED_ELEMENT_FIELDS = "id,dataElementGroups[id,dataElementGroupSet[id]]";
+    static final int VALUE_BATCH_SIZE = 500;
     @Inject
     private Dhis2EndPointFactory dhis2EndPointFactory;
 
@@ -122,7 +141,7 @@ public class Dhis2 implements LmisServer {
 
     @Override
     public UserProfile validateLogin(User user) {
-        Dhis2Endpoint service = dhis2EndPointFactory.createNewEndPoint(user);
+        Dhis2Endpoint service = dhis2EndPointFactory.getEndPoint(user);
         return service.validateLogin();
     }
 
@@ -133,112 +152,160 @@ public class Dhis2 implements LmisServer {
         DataSetSearchResponse response = service.searchDataSets("LMIS", "id,name,periodType,description,dataElements[name,id,attributeValues[value,attribute[id,name]],dataElementGroups[id,name,dataElementGroupSet[id,name],attributeValues[value,attribute[id,name]]");
         timingLogger.addSplit("fetch data");
         timingLogger.dumpToLog();
-        List<DataElementGroupSet> dataElementGroupSets = getGroupSets(response.getDataSets());
+        List<DataElementGroupSet> dataElementGroupSets = MetadataTransformer.groupSetsOf(response.getDataSets());
 
         writeDataElementGroupSets(dataElementGroupSets);
     }
 
     private void writeDataElementGroupSets(List<DataElementGroupSet> dataElementGroupSets) {
-        String s = "";
+        StringBuilder s = new StringBuilder();
         for (DataElementGroupSet t : dataElementGroupSets) {
-            if (!s.isEmpty()) {
-                s += ",";
+            if (s.length() > 0) {
+                s.append(",");
             }
-            s += "{" + t.jsonString() + "}";
+            s.append("{").append(t.jsonString()).append("}");
         }
         System.out.println("{ \"dataElementGroupSets\": [ " + s + " ] }");
     }
 
-    private List<DataElementGroupSet> getGroupSets(List<DataSet> dataSets) {
-        List<DataElementGroupSet> groupSets = new ArrayList<>();
-        for (DataSet ds : dataSets) {
-            for (DataElement de : ds.getDataElements()) {
-                for (DataElementGroup group : de.getDataElementGroups()) {
-                    if (!groupSets.contains(group.getDataElementGroupSet())) {
-                        DataElementGroupSet set = group.getDataElementGroupSet();
-                        set.setDataElementGroups(getGroups(dataSets, set));
-                        groupSets.add(set);
-                    }
+    @Override
+    public List<Category> fetchCategories(final User user) {
+        StageTimer timer = new StageTimer("fetchCommodities");
+        final Dhis2Endpoint service = dhis2EndPointFactory.getEndPoint(user);
+        ExecutorService executor = Executors.newFixedThreadPool(METADATA_FETCH_THREADS);
+        try {
+            Future<DataElementGroupSetSearchResponse> response = executor.submit(timer.timed("fetch group sets", new Callable<DataElementGroupSetSearchResponse>() {
+                @Override
+                public DataElementGroupSetSearchResponse call() throws Exception {
+                    return service.getDataElementGroupSets(GROUP_SET_FIELDS);
                 }
-            }
+            }));
+            Future<List<DataSet>> dataSets = executor.submit(timer.timed("fetch data sets", new Callable<List<DataSet>>() {
+                @Override
+                public List<DataSet> call() throws Exception {
+                    return fetchDataSets(user);
+                }
+            }));
+            Future<List<Indicator>> indicators = executor.submit(timer.timed("fetch indicators", new Callable<List<Indicator>>() {
+                @Override
+                public List<Indicator> call() throws Exception {
+                    return fetchClientIndicators(user);
+                }
+            }));
+
+            List<DataElementGroupSet> androidDataElementGroupSets = getAndroidDataElementGroupSets(await(response).getDataElementGroupSets());
+            MetadataTransformer transformer = new MetadataTransformer(await(dataSets));
+            List<Indicator> clientIndicators = await(indicators);
+            long transformStarted = timer.now();
+            List<Category> categories = transformer.toCategories(androidDataElementGroupSets);
+            categories = MetadataTransformer.addIndicatorCommodityActions(categories, clientIndicators);
+            timer.record("transform metadata", transformStarted);
+            timer.dumpToLog();
+            return categories;
+        } finally {
+            executor.shutdownNow();
         }
-        return groupSets;
     }
 
-    private List<DataElementGroup> getGroups(List<DataSet> dataSets, DataElementGroupSet groupSet) {
-        List<DataElementGroup> groups = new ArrayList<>();
-        for (DataSet ds : dataSets) {
-            for (DataElement de : ds.getDataElements()) {
-                for (DataElementGroup group : de.getDataElementGroups()) {
-                    if (!groups.contains(group) && group.getDataElementGroupSet().equals(groupSet)) {
-                        group.setDataElements(getElements(dataSets, group));
-                        groups.add(group);
-                    }
+    @Override
+    public MetadataChanges fetchMetadataChangedSince(final User user, Date lastUpdated) {
+        final String filter = "lastUpdated:gt:" + format(LAST_UPDATED_FORMAT, lastUpdated);
+        StageTimer timer = new StageTimer("fetchMetadataChanges");
+        final Dhis2Endpoint service = dhis2EndPointFactory.getEndPoint(user);
+        ExecutorService executor = Executors.newFixedThreadPool(METADATA_FETCH_THREADS);
+        try {
+            Future<DataElementGroupSetSearchResponse> groupSets = executor.submit(timer.timed("fetch changed group sets", new Callable<DataElementGroupSetSearchResponse>() {
+                @Override
+                public DataElementGroupSetSearchResponse call() throws Exception {
+                    return service.getDataElementGroupSets(GROUP_SET_FIELDS, filter);
                 }
+            }));
+            Future<DataSetSearchResponse> dataSets = executor.submit(timer.timed("fetch changed data sets", new Callable<DataSetSearchResponse>() {
+                @Override
+                public DataSetSearchResponse call() throws Exception {
+                    return service.searchDataSets("LMIS", DATA_SET_FIELDS, filter);
+                }
+            }));
+            Future<IndicatorGroupResponse> indicatorGroups = executor.submit(timer.timed("fetch changed indicator groups", new Callable<IndicatorGroupResponse>() {
+                @Override
+                public IndicatorGroupResponse call() throws Exception {
+                    return service.fetchIndicatorGroups(INDICATOR_GROUP_FIELDS, "false", filter);
+                }
+            }));
+
+            Future<DataElementGroupSearchResponse> groups = executor.submit(timer.timed("fetch changed groups", new Callable<DataElementGroupSearchResponse>() {
+                @Override
+                public DataElementGroupSearchResponse call() throws Exception {
+                    return service.searchDataElementGroups(CHANGED_GROUP_FIELDS, "false", filter);
+                }
+            }));
+            Future<DataElementSearchResponse> elements = executor.submit(timer.timed("fetch changed elements", new Callable<DataElementSearchResponse>() {
+                @Override
+                public DataElementSearchResponse call() throws Exception {
+                    return service.searchDataElements(CHANGED_ELEMENT_FIELDS, "false", filter);
+                }
+            }));
+
+            List<DataElementGroupSet> changedGroupSets = getAndroidDataElementGroupSets(withAffectedGroupSets(service,
+                    await(groupSets).getDataElementGroupSets(), await(groups).getDataElementGroups(), await(elements).getDataElements()));
+            List<DataSet> changedDataSets = await(dataSets).getDataSets();
+            if (!changedGroupSets.isEmpty()) {
+                // a re-read category links its actions against every data set, not just the changed ones
+                changedDataSets = fetchDataSets(user);
             }
+            IndicatorGroupResponse indicatorGroupResponse = await(indicatorGroups);
+            indicatorGroupResponse.initializeIndicatorGroups();
+
+            List<Category> categories = new MetadataTransformer(changedDataSets).toCategories(changedGroupSets);
+            timer.dumpToLog();
+            return new MetadataChanges(categories, changedDataSets, clientIndicators(indicatorGroupResponse.getIndicatorGroups()));
+        } finally {
+            executor.shutdownNow();
         }
-        return groups;
     }
 
-    private List<DataElement> getElements(List<DataSet> dataSets, DataElementGroup group) {
-        List<DataElement> dataElements = new ArrayList<>();
-        for (DataSet ds : dataSets) {
-            for (DataElement de : ds.getDataElements()) {
-                if (de.getDataElementGroups() != null && de.getDataElementGroups().size() > 0) {
-                    if (!dataElements.contains(de)
-                            && de.getDataElementGroups().get(0).equals(group)) {
-                        dataElements.add(de);
-                    }
+    // adding an element to a group touches the group and the element but not their group set
+    private List<DataElementGroupSet> withAffectedGroupSets(Dhis2Endpoint service, List<DataElementGroupSet> groupSets,
+                                                            List<DataElementGroup> changedGroups, List<DataElement> changedElements) {
+        Set<String> affected = new LinkedHashSet<>();
+        for (DataElementGroup group : changedGroups) {
+            addGroupSetId(group, affected);
+        }
+        for (DataElement element : changedElements) {
+            if (element.getDataElementGroups() != null) {
+                for (DataElementGroup group : element.getDataElementGroups()) {
+                    addGroupSetId(group, affected);
                 }
             }
         }
-        return dataElements;
+        for (DataElementGroupSet groupSet : groupSets) {
+            affected.remove(groupSet.getId());
+        }
+        if (affected.isEmpty()) {
+            return groupSets;
+        }
+        List<DataElementGroupSet> allGroupSets = new ArrayList<>(groupSets);
+        allGroupSets.addAll(service.getDataElementGroupSets(GROUP_SET_FIELDS,
+                "id:in:[" + Joiner.on(",").join(affected) + "]").getDataElementGroupSets());
+        return allGroupSets;
     }
 
-    @Override
-    public List<Category> fetchCategories(User user) {
-        TimingLogger timingLogger = new TimingLogger("TIMER", "fetchCommodities");
-        Dhis2Endpoint service = dhis2EndPointFactory.getEndPoint(user);
-        DataElementGroupSetSearchResponse response = service.getDataElementGroupSets("id,name, dataElementGroups[id,name, attributeValues[value,attribute[id,name]], dataElements[name,id,attributeValues[value,attribute[id,name]]]");
-        timingLogger.addSplit("fetch data");
-        timingLogger.dumpToLog();
-        List<DataSet> dataSets = fetchDataSets(user);
-        List<DataElementGroupSet> androidDataElementGroupSets = getAndroidDataElementGroupSets(response.getDataElementGroupSets());
-        List<Category> categories = getCategoriesFromDataElementGroupSets(androidDataElementGroupSets, dataSets);
-        categories = addIndicatorCommodityActions(categories, user);
-        return categories;
+    private static void addGroupSetId(DataElementGroup group, Set<String> groupSetIds) {
+        if (group.getDataElementGroupSet() != null && group.getDataElementGroupSet().getId() != null) {
+            groupSetIds.add(group.getDataElementGroupSet().getId());
+        }
     }
 
-    private List<Category> addIndicatorCommodityActions(List<Category> categories, User user) {
-        List<Indicator> indicators = fetchClientIndicators(user);
-
-        for (Category category : categories) {
-            for (final Commodity commodity : category.getTransientCommodities()) {
-                List<Indicator> commodityIndicators = from(indicators).filter(new Predicate<Indicator>() {
-                    @Override
-                    public boolean apply(Indicator input) {
-                        return input.getName().contains(commodity.getName());
-                    }
-                }).toList();
-
-                List<CommodityAction> commodityActions = from(commodityIndicators).transform(new Function<Indicator, CommodityAction>() {
-                    @Override
-                    public CommodityAction apply(Indicator input) {
-                        return new CommodityAction(commodity, input.getId(), input.getName(),
-                                input.getIndicatorGroup().getName().trim().replace(" ", "_"));
-                    }
-                }).toList();
-
-                commodity.getCommodityActions().addAll(commodityActions);
-            }
+    private static String format(SimpleDateFormat format, Date date) {
+        // sync pulls run side by side, and SimpleDateFormat is not thread safe
+        synchronized (format) {
+            return format.format(date);
         }
-
-        return categories;
     }
 
     public List<DataSet> fetchDataSets(User user) {
         Dhis2Endpoint service = dhis2EndPointFactory.getEndPoint(user);
-        DataSetSearchResponse datasets = service.searchDataSets("LMIS", "id,name,periodType,description,dataElements[name,id,attributeValues[value,attribute[id,name]],dataElementGroups[id,name,dataElementGroupSet[id,name],attributeValues[value,attribute[id,name]]");
+        DataSetSearchResponse datasets = service.searchDataSets("LMIS", DATA_SET_FIELDS);
         return datasets.getDataSets();
     }
 
@@ -262,75 +329,6 @@ public class Dhis2 implements LmisServer {
         return androidGroupSets;
     }
 
-    private List<Category> getCategoriesFromDataElementGroupSets(List<DataElementGroupSet> dataElementGroupSets, List<DataSet> dataSets) {
-
-        List<Category> categories = newArrayList();
-
-        for (DataElementGroupSet groupSet : dataElementGroupSets) {
-            Category category = new Category(groupSet.getId(), groupSet.getName());
-
-            for (DataElementGroup group : groupSet.getDataElementGroups()) {
-                Commodity commodity = new Commodity(group.getId(), group.getName(), category, false, false, false);
-
-                if (group.getAttributeValues() != null && group.getAttributeValues().size() > 0) {
-                    for (AttributeValue value : group.getAttributeValues()) {
-
-                        if (value.getAttribute().getName().equalsIgnoreCase(Attribute.LMIS_NON_LGA)) {
-                            commodity.setNonLGA(value.getValue().equalsIgnoreCase("1"));
-                        }
-                        if (value.getAttribute().getName().equalsIgnoreCase(Attribute.LMIS_DEVICE)) {
-                            commodity.setIsDevice(value.getValue().equalsIgnoreCase("1"));
-                        }
-                        if (value.getAttribute().getName().equalsIgnoreCase(Attribute.LMIS_VACCINE)) {
-                            commodity.setIsVaccine(value.getValue().equalsIgnoreCase("1"));
-                        }
-                    }
-                }
-
-                for (DataElement element : group.getDataElements()) {
-                    if (element.getAttributeValues().size() > 0) {
-                        AttributeValue attributeValue = element.getAttributeValues().get(0);
-
-                        if (!DataElementType.dataElementActivityExists(attributeValue.getValue())) {
-                            // Log.e("Missing Activity Name Error ", attributeValue.getValue());
-                            continue;
-                        }
-
-                        CommodityAction commodityAction = new CommodityAction(commodity,
-                                element.getId(), element.getName(), attributeValue.getValue());
-
-                        List<DataSet> elementDataSets = getElementDataSets(dataSets, element.getId());
-                        if (elementDataSets != null) {
-                            commodityAction.addTransientCommodityActionDataSets(
-                                    generateCommodityActionDataSets(commodityAction, elementDataSets));
-                            commodity.getCommodityActions().add(commodityAction);
-                        }
-                        // else {
-                        //    e("Error Null Dataset", commodity.getName() + " " + commodityAction.getName());
-                        // }
-                    }
-                }
-
-                category.addTransientCommodity(commodity);
-            }
-
-            categories.add(category);
-        }
-        return categories;
-    }
-
-    private List<DataSet> getElementDataSets(List<DataSet> dataSets, String elementId) {
-        List<DataSet> elementDataSets = new ArrayList<>();
-        for (DataSet dataSet : dataSets) {
-            for (DataElement dataElement : dataSet.getDataElements()) {
-                if (dataElement.getId().equalsIgnoreCase(elementId)) {
-                    elementDataSets.add(dataSet);
-                }
-            }
-        }
-        return elementDataSets;
-    }
-
     @Override
     public List<String> fetchOrderReasons(User user) {
         Dhis2Endpoint service = dhis2EndPointFactory.getEndPoint(user);
@@ -359,18 +357,48 @@ public class Dhis2 implements LmisServer {
 
     @Override
     public List<CommodityActionValue> fetchCommodityActionValues(User user) {
-        Dhis2Endpoint service = dhis2EndPointFactory.getEndPoint(user);
-        DataValueSet valueSet = new DataValueSet();
+        final List<CommodityActionValue> commodityActionValues = new ArrayList<>();
+        try {
+            streamCommodityActionValues(user, new BatchHandler<CommodityActionValue>() {
+                @Override
+                public void handle(List<CommodityActionValue> batch) {
+                    commodityActionValues.addAll(batch);
+                }
+            });
+        } catch (LmisException exception) {
+            e(SYNC, "error syncing stock levels");
+            return new ArrayList<>();
+        }
+        return commodityActionValues;
+    }
+
+    @Override
+    public void streamCommodityActionValues(User user, final BatchHandler<CommodityActionValue> handler) {
+        Dhis2Endpoint service = dhis2EndPointFactory.getStreamingEndPoint(user);
         try {
             String dataSet2 = getDataSetId(DataSet.CALCULATED);
             String dataSetId = getDataSetId(DataSet.DEFAULT);
-            String threeMonthsAgo = threeMonthsAgo();
-            String today = today();
+            Response response = service.streamDataValues(dataSetId, user.getFacilityCode(), threeMonthsAgo(), today(), dataSet2);
 
-            valueSet = service.fetchDataValuesEx(dataSetId, user.getFacilityCode(), threeMonthsAgo, today, dataSet2);
-        } catch (LmisException exception) {
-            e(SYNC, "error syncing stock levels");
+            final Map<String, CommodityAction> actionMap = new HashMap<>();
+            int count = new DataValueStreamReader(VALUE_BATCH_SIZE).read(response.getBody().in(), new BatchHandler<DataValue>() {
+                @Override
+                public void handle(List<DataValue> batch) {
+                    handler.handle(convertDataValuesToCommodityActions(batch, actionMap));
+                }
+            });
+            i(SYNC, "streamed " + count + " data values");
+        } catch (IOException exception) {
+            e(SYNC, "error reading stock levels", exception);
+            throw new LmisException("data value stream ended early", exception);
         }
+    }
+
+    @Override
+    public List<CommodityActionValue> fetchCommodityActionValuesSince(User user, String dataSetName, Date lastUpdated) {
+        Dhis2Endpoint service = dhis2EndPointFactory.getEndPoint(user);
+        DataValueSet valueSet = service.fetchDataValuesUpdatedSince(getDataSetId(dataSetName), user.getFacilityCode(),
+                threeMonthsAgo(), today(), format(LAST_UPDATED_FORMAT, lastUpdated));
         return convertDataValuesToCommodityActions(valueSet.getDataValues());
     }
 
@@ -441,13 +469,13 @@ public class Dhis2 implements LmisServer {
     private String threeMonthsAgo() {
         Calendar calendar = Calendar.getInstance();
         calendar.add(Calendar.MONTH, -3);
-        return SIMPLE_DATE_FORMAT.format(calendar.getTime());
+        return format(SIMPLE_DATE_FORMAT, calendar.getTime());
     }
 
     private String today() {
         Calendar calendar = Calendar.getInstance();
         calendar.setTime(new Date());
-        return SIMPLE_DATE_FORMAT.format(calendar.getTime());
+        return format(SIMPLE_DATE_FORMAT, calendar.getTime());
     }
 
     @Override
@@ -490,17 +518,26 @@ public class Dhis2 implements LmisServer {
     }
 
     public List<CommodityActionValue> convertDataValuesToCommodityActions(List<DataValue> values) {
-        List<String> ids = from(values).transform(new Function<DataValue, String>() {
-            @Override
-            public String apply(DataValue input) {
-                return input.getDataElement();
-            }
-        }).toList();
-        List<CommodityAction> actions = commodityActionService.getAllById(ids);
+        return convertDataValuesToCommodityActions(values, new HashMap<String, CommodityAction>());
+    }
 
-        final Map<String, CommodityAction> actionMap = new HashMap<>();
-        for (CommodityAction action : actions) {
-            actionMap.put(action.getId(), action);
+    private List<CommodityActionValue> convertDataValuesToCommodityActions(List<DataValue> values, final Map<String, CommodityAction> actionMap) {
+        Set<String> missingIds = new HashSet<>();
+        for (DataValue value : values) {
+            if (!actionMap.containsKey(value.getDataElement())) {
+                missingIds.add(value.getDataElement());
+            }
+        }
+        if (!missingIds.isEmpty()) {
+            for (CommodityAction action : commodityActionService.getAllById(new ArrayList<>(missingIds))) {
+                actionMap.put(action.getId(), action);
+            }
+            // remember unknown elements too, so later batches do not look them up again
+            for (String id : missingIds) {
+                if (!actionMap.containsKey(id)) {
+                    actionMap.put(id, null);
+                }
+            }
         }
         ImmutableList<CommodityActionValue> commodityActionValues = from(values).transform(new Function<DataValue, CommodityActionValue>() {
             @Override
@@ -523,7 +560,6 @@ public class Dhis2 implements LmisServer {
         }).toList();
 
         return commodityActionValues;
-
     }
 
     public List<CommodityActionValue> convertIndicatorValuesToCommodityActions(
@@ -557,13 +593,16 @@ public class Dhis2 implements LmisServer {
     @Override
     public List<IndicatorGroup> fetchIndicatorGroups(User user) {
         Dhis2Endpoint service = dhis2EndPointFactory.getEndPoint(user);
-        IndicatorGroupResponse response = service.fetchIndicatorGroups("id,name,indicators[id, name]", "false");
+        IndicatorGroupResponse response = service.fetchIndicatorGroups(INDICATOR_GROUP_FIELDS, "false");
         response.initializeIndicatorGroups();
         return response.getIndicatorGroups();
     }
 
     public List<Indicator> fetchClientIndicators(User user) {
-        List<IndicatorGroup> indicatorGroups = fetchIndicatorGroups(user);
+        return clientIndicators(fetchIndicatorGroups(user));
+    }
+
+    private List<Indicator> clientIndicators(List<IndicatorGroup> indicatorGroups) {
         final List<String> indicatorStrings = DataElementType.getDataElementStrings(true);
         List<IndicatorGroup> clientIndicatorGroups = from(indicatorGroups).filter(new Predicate<IndicatorGroup>() {
             @Override
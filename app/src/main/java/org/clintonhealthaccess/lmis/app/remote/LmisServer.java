@@ -42,6 +42,7 @@ import org.clintonhealthaccess.lmis.app.models.UserProfile;
 import org.clintonhealthaccess.lmis.app.models.api.DataValueSetPushResponse;
 import org.clintonhealthaccess.lmis.app.remote.responses.IndicatorGroupResponse;
 
+import java.util.Date;
 import java.util.List;
 
 public interface LmisServer {
@@ -49,12 +50,18 @@ public interface LmisServer {
 
     List<Category> fetchCategories(User user);
 
+    MetadataChanges fetchMetadataChangedSince(User user, Date lastUpdated);
+
     List<String> fetchOrderReasons(User user);
 
     List<OrderType> fetchOrderTypes(User user);
 
     List<CommodityActionValue> fetchCommodityActionValues(User user);
 
+    void streamCommodityActionValues(User user, BatchHandler<CommodityActionValue> handler);
+
+    List<CommodityActionValue> fetchCommodityActionValuesSince(User user, String dataSetName, Date lastUpdated);
+
     List<CommodityActionValue> fetchIndicatorValues(User user, List<Commodity> commodities);
 
     DataValueSetPushResponse pushDataValueSet(DataValueSet valueSet, User user);
@@ -68,4 +75,8 @@ public interface LmisServer {
     List<IndicatorGroup> fetchIndicatorGroups(User user);
 
     String fetchLatestVersion();
+
+    interface BatchHandler<T> {
+        void handle(List<T> batch);
+    }
 }
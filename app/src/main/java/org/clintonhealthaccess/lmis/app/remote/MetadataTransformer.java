@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.remote;
+
+import com.thoughtworks.dhis.models.Attribute;
+import com.thoughtworks.dhis.models.AttributeValue;
+import com.thoughtworks.dhis.models.DataElement;
+import com.thoughtworks.dhis.models.DataElementGroup;
+import com.thoughtworks.dhis.models.DataElementGroupSet;
+import com.thoughtworks.dhis.models.DataElementType;
+import com.thoughtworks.dhis.models.Indicator;
+
+import org.clintonhealthaccess.lmis.app.models.Category;
+import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.CommodityAction;
+import org.clintonhealthaccess.lmis.app.models.DataSet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.clintonhealthaccess.lmis.app.models.CommodityActionDataSet.generateCommodityActionDataSets;
+
+/**
+ * Turns DHIS2 metadata into categories, commodities and actions. Lookups go through maps
+ * built once per transform, so the cost grows with the size of the metadata rather than
+ * with the product of data elements, data sets and indicators.
+ */
+public class MetadataTransformer {
+    private static final int GRAM_LENGTH = 3;
+
+    private final Map<String, List<DataSet>> dataSetsByElement = new HashMap<>();
+
+    public MetadataTransformer(List<DataSet> dataSets) {
+        for (DataSet dataSet : dataSets) {
+            if (dataSet.getDataElements() == null) {
+                continue;
+            }
+            for (DataElement dataElement : dataSet.getDataElements()) {
+                String key = elementKey(dataElement.getId());
+                List<DataSet> elementDataSets = dataSetsByElement.get(key);
+                if (elementDataSets == null) {
+                    elementDataSets = new ArrayList<>();
+                    dataSetsByElement.put(key, elementDataSets);
+                }
+                elementDataSets.add(dataSet);
+            }
+        }
+    }
+
+    public List<Category> toCategories(List<DataElementGroupSet> dataElementGroupSets) {
+        List<Category> categories = newArrayList();
+
+        for (DataElementGroupSet groupSet : dataElementGroupSets) {
+            Category category = new Category(groupSet.getId(), groupSet.getName());
+
+            for (DataElementGroup group : groupSet.getDataElementGroups()) {
+                Commodity commodity = new Commodity(group.getId(), group.getName(), category, false, false, false);
+
+                if (group.getAttributeValues() != null) {
+                    for (AttributeValue value : group.getAttributeValues()) {
+                        if (value.getAttribute().getName().equalsIgnoreCase(Attribute.LMIS_NON_LGA)) {
+                            commodity.setNonLGA(value.getValue().equalsIgnoreCase("1"));
+                        }
+                        if (value.getAttribute().getName().equalsIgnoreCase(Attribute.LMIS_DEVICE)) {
+                            commodity.setIsDevice(value.getValue().equalsIgnoreCase("1"));
+                        }
+                        if (value.getAttribute().getName().equalsIgnoreCase(Attribute.LMIS_VACCINE)) {
+                            commodity.setIsVaccine(value.getValue().equalsIgnoreCase("1"));
+                        }
+                    }
+                }
+
+                for (DataElement element : group.getDataElements()) {
+                    if (element.getAttributeValues().size() > 0) {
+                        AttributeValue attributeValue = element.getAttributeValues().get(0);
+                        if (!DataElementType.dataElementActivityExists(attributeValue.getValue())) {
+                            continue;
+                        }
+
+                        CommodityAction commodityAction = new CommodityAction(commodity,
+                                element.getId(), element.getName(), attributeValue.getValue());
+                        commodityAction.addTransientCommodityActionDataSets(
+                                generateCommodityActionDataSets(commodityAction, dataSetsOf(element.getId())));
+                        commodity.getCommodityActions().add(commodityAction);
+                    }
+                }
+
+                category.addTransientCommodity(commodity);
+            }
+
+            categories.add(category);
+        }
+        return categories;
+    }
+
+    public List<DataSet> dataSetsOf(String elementId) {
+        List<DataSet> elementDataSets = dataSetsByElement.get(elementKey(elementId));
+        return elementDataSets == null ? Collections.<DataSet>emptyList() : elementDataSets;
+    }
+
+    public static List<Category> addIndicatorCommodityActions(List<Category> categories, List<Indicator> indicators) {
+        IndicatorIndex index = new IndicatorIndex(indicators);
+        for (Category category : categories) {
+            for (Commodity commodity : category.getTransientCommodities()) {
+                commodity.getCommodityActions().addAll(index.actionsFor(commodity));
+            }
+        }
+        return categories;
+    }
+
+    public static List<CommodityAction> indicatorActions(List<Commodity> commodities, List<Indicator> indicators) {
+        IndicatorIndex index = new IndicatorIndex(indicators);
+        List<CommodityAction> actions = new ArrayList<>();
+        for (Commodity commodity : commodities) {
+            actions.addAll(index.actionsFor(commodity));
+        }
+        return actions;
+    }
+
+    /**
+     * Rebuilds group sets, their groups and each group's elements from the elements of the
+     * given data sets. An element belongs to the first group it lists.
+     */
+    public static List<DataElementGroupSet> groupSetsOf(List<DataSet> dataSets) {
+        Map<DataElementGroupSet, Map<DataElementGroup, DataElementGroup>> groupsBySet = new LinkedHashMap<>();
+        Map<DataElementGroup, Set<DataElement>> elementsByGroup = new HashMap<>();
+
+        for (DataSet dataSet : dataSets) {
+            for (DataElement element : dataSet.getDataElements()) {
+                List<DataElementGroup> groups = element.getDataElementGroups();
+                if (groups == null || groups.isEmpty()) {
+                    continue;
+                }
+                Set<DataElement> elements = elementsByGroup.get(groups.get(0));
+                if (elements == null) {
+                    elements = new LinkedHashSet<>();
+                    elementsByGroup.put(groups.get(0), elements);
+                }
+                elements.add(element);
+
+                for (DataElementGroup group : groups) {
+                    Map<DataElementGroup, DataElementGroup> setGroups = groupsBySet.get(group.getDataElementGroupSet());
+                    if (setGroups == null) {
+                        setGroups = new LinkedHashMap<>();
+                        groupsBySet.put(group.getDataElementGroupSet(), setGroups);
+                    }
+                    if (!setGroups.containsKey(group)) {
+                        setGroups.put(group, group);
+                    }
+                }
+            }
+        }
+
+        List<DataElementGroupSet> groupSets = new ArrayList<>();
+        for (Map.Entry<DataElementGroupSet, Map<DataElementGroup, DataElementGroup>> entry : groupsBySet.entrySet()) {
+            for (DataElementGroup group : entry.getValue().values()) {
+                Set<DataElement> elements = elementsByGroup.get(group);
+                group.setDataElements(elements == null ? new ArrayList<DataElement>() : new ArrayList<>(elements));
+            }
+            DataElementGroupSet groupSet = entry.getKey();
+            groupSet.setDataElementGroups(new ArrayList<>(entry.getValue().values()));
+            groupSets.add(groupSet);
+        }
+        return groupSets;
+    }
+
+    private static String elementKey(String elementId) {
+        return elementId.toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Finds indicators whose name contains a given string. Each indicator is filed under every
+     * three-character run of its name; a lookup scans only the indicators filed under the
+     * rarest run of the string, so a match costs no more than that short list.
+     */
+    static class IndicatorIndex {
+        private final List<Indicator> indicators;
+        private final Map<String, List<Indicator>> indicatorsByGram = new HashMap<>();
+
+        IndicatorIndex(List<Indicator> indicators) {
+            this.indicators = indicators;
+            for (Indicator indicator : indicators) {
+                Set<String> grams = new HashSet<>();
+                String name = indicator.getName();
+                for (int start = 0; start + GRAM_LENGTH <= name.length(); start++) {
+                    String gram = name.substring(start, start + GRAM_LENGTH);
+                    if (grams.add(gram)) {
+                        List<Indicator> filed = indicatorsByGram.get(gram);
+                        if (filed == null) {
+                            filed = new ArrayList<>();
+                            indicatorsByGram.put(gram, filed);
+                        }
+                        filed.add(indicator);
+                    }
+                }
+            }
+        }
+
+        List<CommodityAction> actionsFor(Commodity commodity) {
+            List<CommodityAction> actions = new ArrayList<>();
+            for (Indicator indicator : containing(commodity.getName())) {
+                actions.add(new CommodityAction(commodity, indicator.getId(), indicator.getName(),
+                        indicator.getIndicatorGroup().getName().trim().replace(" ", "_")));
+            }
+            return actions;
+        }
+
+        List<Indicator> containing(String text) {
+            List<Indicator> matches = new ArrayList<>();
+            for (Indicator candidate : candidatesFor(text)) {
+                if (candidate.getName().contains(text)) {
+                    matches.add(candidate);
+                }
+            }
+            return matches;
+        }
+
+        // the indicators filed under the rarest gram of the text, the only ones that need a full comparison
+        List<Indicator> candidatesFor(String text) {
+            List<Indicator> candidates = indicators;
+            for (int start = 0; start + GRAM_LENGTH <= text.length(); start++) {
+                List<Indicator> filed = indicatorsByGram.get(text.substring(start, start + GRAM_LENGTH));
+                if (filed == null) {
+                    return Collections.emptyList();
+                }
+                if (filed.size() < candidates.size()) {
+                    candidates = filed;
+                }
+            }
+            return candidates;
+        }
+    }
+}
@@ -36,12 +36,12 @@ import com.google.inject.Inject;
 import org.clintonhealthaccess.lmis.app.LmisException;
 import org.clintonhealthaccess.lmis.app.R;
 import org.clintonhealthaccess.lmis.app.models.User;
+import org.clintonhealthaccess.lmis.app.remote.http.HttpClientFactory;
 import org.clintonhealthaccess.lmis.app.remote.interceptors.AuthInterceptor;
 
 import retrofit.ErrorHandler;
 import retrofit.RestAdapter;
 import retrofit.RetrofitError;
-import retrofit.client.ApacheClient;
 import retrofit.client.Header;
 import roboguice.inject.InjectResource;
 
@@ -67,29 +67,58 @@ public class Dhis2EndPointFactory {
     @InjectResource(R.string.dhis2_base_url)
     private String dhis2BaseUrl;
 
+    @InjectResource(R.string.dhis2_log_level)
+    private String dhis2LogLevel;
+
     @Inject
     private Context context;
 
+    @Inject
+    private HttpClientFactory httpClientFactory;
+
     private Dhis2Endpoint dhis2Endpoint;
 
+    private String endPointCredentials;
+
+    private Dhis2Endpoint streamingEndpoint;
+
+    private String streamingCredentials;
+
     public Dhis2Endpoint createNewEndPoint(User user) {
-        RestAdapter restAdapter = makeRestAdapter(user);
+        RestAdapter restAdapter = makeRestAdapter(user, RestAdapter.LogLevel.valueOf(dhis2LogLevel));
         dhis2Endpoint = restAdapter.create(Dhis2Endpoint.class);
+        endPointCredentials = user.encodeCredentialsForBasicAuthorization();
         return dhis2Endpoint;
     }
 
     public Dhis2Endpoint getEndPoint(User user) {
-        return dhis2Endpoint == null ? createNewEndPoint(user) : dhis2Endpoint;
+        boolean sameUser = user.encodeCredentialsForBasicAuthorization().equals(endPointCredentials);
+        return dhis2Endpoint == null || !sameUser ? createNewEndPoint(user) : dhis2Endpoint;
+    }
+
+    // FULL logging reads the whole body into memory, so @Streaming calls go through an adapter that logs headers at most
+    public Dhis2Endpoint getStreamingEndPoint(User user) {
+        String credentials = user.encodeCredentialsForBasicAuthorization();
+        if (streamingEndpoint == null || !credentials.equals(streamingCredentials)) {
+            streamingEndpoint = makeRestAdapter(user, streamingLogLevel(RestAdapter.LogLevel.valueOf(dhis2LogLevel)))
+                    .create(Dhis2Endpoint.class);
+            streamingCredentials = credentials;
+        }
+        return streamingEndpoint;
+    }
+
+    static RestAdapter.LogLevel streamingLogLevel(RestAdapter.LogLevel configured) {
+        return configured.ordinal() > RestAdapter.LogLevel.HEADERS.ordinal() ? RestAdapter.LogLevel.HEADERS : configured;
     }
 
-    private RestAdapter makeRestAdapter(User user) {
+    private RestAdapter makeRestAdapter(User user, RestAdapter.LogLevel logLevel) {
         AuthInterceptor requestInterceptor = new AuthInterceptor(user);
         return new RestAdapter.Builder()
                 .setRequestInterceptor(requestInterceptor)
                 .setErrorHandler(new Dhis2ErrorHandler())
                 .setEndpoint(dhis2BaseUrl)
-                .setClient(new ApacheClient())
-                .setLogLevel(RestAdapter.LogLevel.FULL)
+                .setClient(httpClientFactory.getClient())
+                .setLogLevel(logLevel)
                 .build();
     }
 
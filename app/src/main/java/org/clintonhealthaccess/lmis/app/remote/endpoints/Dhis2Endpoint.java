@@ -41,16 +41,20 @@ import org.clintonhealthaccess.lmis.app.models.api.CategoryComboSearchResponse;
 import org.clintonhealthaccess.lmis.app.models.api.ConstantSearchResponse;
 import org.clintonhealthaccess.lmis.app.models.api.DataValueSetPushResponse;
 import org.clintonhealthaccess.lmis.app.models.api.OptionSetResponse;
+import org.clintonhealthaccess.lmis.app.remote.responses.DataElementGroupSearchResponse;
 import org.clintonhealthaccess.lmis.app.remote.responses.DataElementGroupSetSearchResponse;
+import org.clintonhealthaccess.lmis.app.remote.responses.DataElementSearchResponse;
 import org.clintonhealthaccess.lmis.app.remote.responses.DataSetSearchResponse;
 import org.clintonhealthaccess.lmis.app.remote.responses.IndicatorGroupResponse;
 import org.clintonhealthaccess.lmis.app.remote.responses.IndicatorValueResponse;
 
+import retrofit.client.Response;
 import retrofit.http.Body;
 import retrofit.http.GET;
 import retrofit.http.POST;
 import retrofit.http.Path;
 import retrofit.http.Query;
+import retrofit.http.Streaming;
 
 public interface Dhis2Endpoint {
     @GET("/api/systemSettings/data_element_group_set_id")
@@ -71,18 +75,37 @@ public interface Dhis2Endpoint {
     @GET("/api/dataElementGroupSets")
     DataElementGroupSetSearchResponse getDataElementGroupSets(@Query("fields") String fields);
 
+    @GET("/api/dataElementGroupSets")
+    DataElementGroupSetSearchResponse getDataElementGroupSets(@Query("fields") String fields, @Query("filter") String filter);
+
     @GET("/api/dataElementGroups/{id}")
     DataElementGroup getDataElementGroup(@Path("id") String id);
 
+    @GET("/api/dataElementGroups")
+    DataElementGroupSearchResponse searchDataElementGroups(@Query("fields") String fields, @Query("paging") String paging, @Query("filter") String filter);
+
+    @GET("/api/dataElements")
+    DataElementSearchResponse searchDataElements(@Query("fields") String fields, @Query("paging") String paging, @Query("filter") String filter);
+
     @GET("/api/dataSets")
     DataSetSearchResponse searchDataSets(@Query("query") String query, @Query("fields") String fields);
 
+    @GET("/api/dataSets")
+    DataSetSearchResponse searchDataSets(@Query("query") String query, @Query("fields") String fields, @Query("filter") String filter);
+
     @GET("/api/dataValueSets")
     DataValueSet fetchDataValues(@Query("dataSet") String dataSet, @Query("orgUnit") String orgUnit, @Query("startDate") String startDate, @Query("endDate") String endDate);
 
+    @GET("/api/dataValueSets")
+    DataValueSet fetchDataValuesUpdatedSince(@Query("dataSet") String dataSet, @Query("orgUnit") String orgUnit, @Query("startDate") String startDate, @Query("endDate") String endDate, @Query("lastUpdated") String lastUpdated);
+
     @GET("/api/dataValueSets")
     DataValueSet fetchDataValuesEx(@Query("dataSet") String dataSet, @Query("orgUnit") String orgUnit, @Query("startDate") String startDate, @Query("endDate") String endDate, @Query("dataSet") String dataSet2);
 
+    @Streaming
+    @GET("/api/dataValueSets")
+    Response streamDataValues(@Query("dataSet") String dataSet, @Query("orgUnit") String orgUnit, @Query("startDate") String startDate, @Query("endDate") String endDate, @Query("dataSet") String dataSet2);
+
     @GET("/api/analytics.json")
     IndicatorValueResponse fetchIndicatorValues(@Query("dimension") String indicators, @Query("dimension") String orgUnit, @Query("dimension") String period, @Query("skipMeta") String skipMeta);
 
@@ -100,5 +123,8 @@ public interface Dhis2Endpoint {
 
     @GET("/api/indicatorGroups")
     IndicatorGroupResponse fetchIndicatorGroups(@Query("fields") String fields, @Query("paging") String paging);
+
+    @GET("/api/indicatorGroups")
+    IndicatorGroupResponse fetchIndicatorGroups(@Query("fields") String fields, @Query("paging") String paging, @Query("filter") String filter);
 }
   
\ No newline at end of file
@@ -1,12 +1,14 @@
 package org.clintonhealthaccess.lmis.app.remote.endpoints;
 
+import com.google.inject.Inject;
+
 import org.clintonhealthaccess.lmis.app.LmisException;
 import org.clintonhealthaccess.lmis.app.R;
+import org.clintonhealthaccess.lmis.app.remote.http.HttpClientFactory;
 
 import retrofit.ErrorHandler;
 import retrofit.RestAdapter;
 import retrofit.RetrofitError;
-import retrofit.client.ApacheClient;
 import retrofit.converter.SimpleXMLConverter;
 import roboguice.inject.InjectResource;
 
@@ -18,13 +20,19 @@ public class FDroidEndPointFactory {
     @InjectResource(R.string.message_network_error)
     private String messageNetworkError;
 
+    @InjectResource(R.string.dhis2_log_level)
+    private String logLevel;
+
+    @Inject
+    private HttpClientFactory httpClientFactory;
+
     public FDroidEndPoint getEndPoint() {
         return new RestAdapter.Builder()
                 .setConverter(new SimpleXMLConverter())
                 .setErrorHandler(new FDroidErrorHandler())
                 .setEndpoint(appMarketHost)
-                .setClient(new ApacheClient())
-                .setLogLevel(RestAdapter.LogLevel.FULL)
+                .setClient(httpClientFactory.getClient())
+                .setLogLevel(RestAdapter.LogLevel.valueOf(logLevel))
                 .build().create(FDroidEndPoint.class);
     }
 
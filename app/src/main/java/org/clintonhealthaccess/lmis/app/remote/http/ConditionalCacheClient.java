@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.remote.http;
+
+import com.google.common.io.ByteStreams;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import retrofit.client.Client;
+import retrofit.client.Header;
+import retrofit.client.Request;
+import retrofit.client.Response;
+import retrofit.mime.TypedByteArray;
+import retrofit.mime.TypedInput;
+
+import static org.apache.http.HttpStatus.SC_NOT_MODIFIED;
+import static org.apache.http.HttpStatus.SC_OK;
+
+/**
+ * Revalidates GET requests against the disk cache with If-None-Match and If-Modified-Since,
+ * and hands the cached body back to Retrofit as a plain 200 when the server answers 304.
+ * Only metadata is cached; data values and other responses pass through unbuffered so that
+ * streamed bodies reach their readers without being held in memory.
+ */
+public class ConditionalCacheClient implements Client {
+    private static final String ETAG = "ETag";
+    private static final String LAST_MODIFIED = "Last-Modified";
+    private static final String IF_NONE_MATCH = "If-None-Match";
+    private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private static final String API = "/api/";
+    private static final List<String> METADATA_RESOURCES = Arrays.asList("categoryCombos", "constants",
+            "dataElementGroupSets", "dataElementGroups", "dataElements", "dataSets", "indicatorGroups",
+            "optionSets", "systemSettings");
+
+    private final Client delegate;
+    private final HttpDiskCache cache;
+
+    public ConditionalCacheClient(Client delegate, HttpDiskCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException {
+        if (!"GET".equals(request.getMethod()) || !isMetadata(request.getUrl())) {
+            return counted(delegate.execute(request));
+        }
+        HttpDiskCache.Entry cached = cache.get(request.getUrl());
+        Response response = delegate.execute(cached == null ? request : revalidating(request, cached));
+        if (cached != null && response.getStatus() == SC_NOT_MODIFIED) {
+            HttpTrafficMonitor.recordNotModified(cached.getBody().length);
+            return new Response(response.getUrl(), SC_OK, "OK", response.getHeaders(),
+                    new TypedByteArray(cached.getMimeType(), cached.getBody()));
+        }
+        response = buffered(response);
+        String etag = header(response, ETAG);
+        String lastModified = header(response, LAST_MODIFIED);
+        if (response.getStatus() == SC_OK && response.getBody() != null && (etag != null || lastModified != null)) {
+            TypedByteArray body = (TypedByteArray) response.getBody();
+            cache.put(request.getUrl(), new HttpDiskCache.Entry(etag, lastModified, body.mimeType(), body.getBytes()));
+        }
+        return response;
+    }
+
+    static boolean isMetadata(String url) {
+        int api = url.indexOf(API);
+        if (api < 0) {
+            return false;
+        }
+        String resource = url.substring(api + API.length());
+        for (String metadata : METADATA_RESOURCES) {
+            if (resource.startsWith(metadata)) {
+                if (resource.length() == metadata.length() || "/?.".indexOf(resource.charAt(metadata.length())) >= 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private Request revalidating(Request request, HttpDiskCache.Entry cached) {
+        List<Header> headers = new ArrayList<>(request.getHeaders());
+        if (cached.getEtag() != null) {
+            headers.add(new Header(IF_NONE_MATCH, cached.getEtag()));
+        }
+        if (cached.getLastModified() != null) {
+            headers.add(new Header(IF_MODIFIED_SINCE, cached.getLastModified()));
+        }
+        return new Request(request.getMethod(), request.getUrl(), headers, request.getBody());
+    }
+
+    private static Response buffered(Response response) throws IOException {
+        TypedInput body = response.getBody();
+        if (body == null) {
+            HttpTrafficMonitor.recordDownloaded(0);
+            return response;
+        }
+        if (!(body instanceof TypedByteArray)) {
+            InputStream in = body.in();
+            try {
+                body = new TypedByteArray(body.mimeType(), ByteStreams.toByteArray(in));
+            } finally {
+                in.close();
+            }
+        }
+        HttpTrafficMonitor.recordDownloaded(body.length());
+        return new Response(response.getUrl(), response.getStatus(), response.getReason(), response.getHeaders(), body);
+    }
+
+    private static Response counted(Response response) {
+        TypedInput body = response.getBody();
+        if (body == null || body instanceof TypedByteArray) {
+            HttpTrafficMonitor.recordDownloaded(body == null ? 0 : body.length());
+            return response;
+        }
+        HttpTrafficMonitor.recordDownloaded(0);
+        return new Response(response.getUrl(), response.getStatus(), response.getReason(), response.getHeaders(),
+                new CountingTypedInput(body));
+    }
+
+    private static String header(Response response, String name) {
+        for (Header header : response.getHeaders()) {
+            if (name.equalsIgnoreCase(header.getName())) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static class CountingTypedInput implements TypedInput {
+        private final TypedInput body;
+
+        CountingTypedInput(TypedInput body) {
+            this.body = body;
+        }
+
+        @Override
+        public String mimeType() {
+            return body.mimeType();
+        }
+
+        @Override
+        public long length() {
+            return body.length();
+        }
+
+        @Override
+        public InputStream in() throws IOException {
+            return new FilterInputStream(body.in()) {
+                @Override
+                public int read() throws IOException {
+                    int read = super.read();
+                    if (read >= 0) {
+                        HttpTrafficMonitor.recordStreamed(1);
+                    }
+                    return read;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int count) throws IOException {
+                    int read = super.read(buffer, offset, count);
+                    if (read > 0) {
+                        HttpTrafficMonitor.recordStreamed(read);
+                    }
+                    return read;
+                }
+            };
+        }
+    }
+}
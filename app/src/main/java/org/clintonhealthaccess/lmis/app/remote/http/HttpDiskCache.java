@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.remote.http;
+
+import android.util.Log;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Keeps the last body of every validated GET response on disk, keyed by url,
+ * together with the ETag and Last-Modified values needed to revalidate it.
+ */
+public class HttpDiskCache {
+    private static final String ETAG = "etag";
+    private static final String LAST_MODIFIED = "lastModified";
+    private static final String MIME_TYPE = "mimeType";
+
+    private final File directory;
+
+    public HttpDiskCache(File directory) {
+        this.directory = directory;
+    }
+
+    public Entry get(String url) {
+        String key = keyFor(url);
+        File meta = new File(directory, key + ".meta");
+        File body = new File(directory, key + ".body");
+        if (!meta.exists() || !body.exists()) {
+            return null;
+        }
+        try {
+            Properties properties = new Properties();
+            InputStream in = new FileInputStream(meta);
+            try {
+                properties.load(in);
+            } finally {
+                in.close();
+            }
+            return new Entry(properties.getProperty(ETAG), properties.getProperty(LAST_MODIFIED),
+                    properties.getProperty(MIME_TYPE), Files.toByteArray(body));
+        } catch (IOException e) {
+            Log.w("HttpDiskCache", "Unreadable cache entry for " + url, e);
+            return null;
+        }
+    }
+
+    public void put(String url, Entry entry) {
+        if (!directory.exists() && !directory.mkdirs()) {
+            return;
+        }
+        String key = keyFor(url);
+        Properties properties = new Properties();
+        putIfPresent(properties, ETAG, entry.getEtag());
+        putIfPresent(properties, LAST_MODIFIED, entry.getLastModified());
+        putIfPresent(properties, MIME_TYPE, entry.getMimeType());
+        try {
+            File meta = new File(directory, key + ".meta");
+            meta.delete();
+            replace(new File(directory, key + ".body"), entry.getBody());
+            File written = new File(directory, key + ".meta.tmp");
+            OutputStream out = new FileOutputStream(written);
+            try {
+                properties.store(out, url);
+            } finally {
+                out.close();
+            }
+            written.renameTo(meta);
+        } catch (IOException e) {
+            Log.w("HttpDiskCache", "Could not cache " + url, e);
+        }
+    }
+
+    public void clear() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    private void replace(File file, byte[] content) throws IOException {
+        File written = new File(directory, file.getName() + ".tmp");
+        Files.write(content, written);
+        if (!written.renameTo(file)) {
+            throw new IOException("Could not rename " + written);
+        }
+    }
+
+    private static void putIfPresent(Properties properties, String key, String value) {
+        if (value != null) {
+            properties.setProperty(key, value);
+        }
+    }
+
+    private static String keyFor(String url) {
+        return Hashing.md5().hashString(url, Charsets.UTF_8).toString();
+    }
+
+    public static class Entry {
+        private final String etag;
+        private final String lastModified;
+        private final String mimeType;
+        private final byte[] body;
+
+        public Entry(String etag, String lastModified, String mimeType, byte[] body) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.mimeType = mimeType;
+            this.body = body;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+    }
+}
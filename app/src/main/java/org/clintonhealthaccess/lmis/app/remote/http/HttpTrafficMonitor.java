@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.remote.http;
+
+import android.util.Log;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts response bytes that came over the network and bytes answered from the HTTP cache
+ * after the server replied 304 Not Modified, and times authenticated requests by whether they
+ * sent Basic credentials or rode an existing session.
+ */
+public class HttpTrafficMonitor {
+
+    private static final AtomicLong REQUESTS = new AtomicLong();
+    private static final AtomicLong NOT_MODIFIED = new AtomicLong();
+    private static final AtomicLong DOWNLOADED_BYTES = new AtomicLong();
+    private static final AtomicLong CACHED_BYTES = new AtomicLong();
+    private static final AtomicLong BASIC_AUTH_REQUESTS = new AtomicLong();
+    private static final AtomicLong BASIC_AUTH_NANOS = new AtomicLong();
+    private static final AtomicLong SESSION_REQUESTS = new AtomicLong();
+    private static final AtomicLong SESSION_NANOS = new AtomicLong();
+
+    static void recordDownloaded(long bytes) {
+        REQUESTS.incrementAndGet();
+        DOWNLOADED_BYTES.addAndGet(bytes);
+    }
+
+    static void recordStreamed(long bytes) {
+        DOWNLOADED_BYTES.addAndGet(bytes);
+    }
+
+    static void recordNotModified(long cachedBytes) {
+        REQUESTS.incrementAndGet();
+        NOT_MODIFIED.incrementAndGet();
+        CACHED_BYTES.addAndGet(cachedBytes);
+    }
+
+    static void recordLatency(boolean inSession, long nanos) {
+        if (inSession) {
+            SESSION_REQUESTS.incrementAndGet();
+            SESSION_NANOS.addAndGet(nanos);
+        } else {
+            BASIC_AUTH_REQUESTS.incrementAndGet();
+            BASIC_AUTH_NANOS.addAndGet(nanos);
+        }
+    }
+
+    public static long getRequests() {
+        return REQUESTS.get();
+    }
+
+    public static long getNotModified() {
+        return NOT_MODIFIED.get();
+    }
+
+    public static long getDownloadedBytes() {
+        return DOWNLOADED_BYTES.get();
+    }
+
+    public static long getCachedBytes() {
+        return CACHED_BYTES.get();
+    }
+
+    public static long getBasicAuthRequests() {
+        return BASIC_AUTH_REQUESTS.get();
+    }
+
+    public static long getSessionRequests() {
+        return SESSION_REQUESTS.get();
+    }
+
+    public static double getAverageBasicAuthMillis() {
+        return averageMillis(BASIC_AUTH_NANOS.get(), BASIC_AUTH_REQUESTS.get());
+    }
+
+    public static double getAverageSessionMillis() {
+        return averageMillis(SESSION_NANOS.get(), SESSION_REQUESTS.get());
+    }
+
+    public static void logStats() {
+        Log.i("HttpTrafficMonitor", String.format("%d requests, %d not modified, %d bytes downloaded, %d bytes served from cache",
+                getRequests(), getNotModified(), getDownloadedBytes(), getCachedBytes()));
+        Log.i("HttpTrafficMonitor", String.format("%d basic auth requests averaging %.1f ms, %d session requests averaging %.1f ms",
+                getBasicAuthRequests(), getAverageBasicAuthMillis(), getSessionRequests(), getAverageSessionMillis()));
+    }
+
+    private static double averageMillis(long nanos, long count) {
+        return count == 0 ? 0 : (double) nanos / count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public static void reset() {
+        REQUESTS.set(0);
+        NOT_MODIFIED.set(0);
+        DOWNLOADED_BYTES.set(0);
+        CACHED_BYTES.set(0);
+        BASIC_AUTH_REQUESTS.set(0);
+        BASIC_AUTH_NANOS.set(0);
+        SESSION_REQUESTS.set(0);
+        SESSION_NANOS.set(0);
+    }
+}
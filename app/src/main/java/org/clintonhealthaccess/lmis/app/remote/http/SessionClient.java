@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.remote.http;
+
+import org.apache.http.client.CookieStore;
+import org.apache.http.cookie.Cookie;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import retrofit.client.Client;
+import retrofit.client.Header;
+import retrofit.client.Request;
+import retrofit.client.Response;
+
+import static org.apache.http.HttpStatus.SC_BAD_REQUEST;
+import static org.apache.http.HttpStatus.SC_UNAUTHORIZED;
+
+/**
+ * Sends Basic credentials only until DHIS2 hands out a JSESSIONID, then rides that session
+ * and drops the Authorization header. A 401 ends the session and the request is resent
+ * with the credentials, which opens a new one.
+ */
+public class SessionClient implements Client {
+    private static final String AUTHORIZATION = "Authorization";
+    private static final String SESSION_COOKIE = "JSESSIONID";
+
+    private final Client delegate;
+    private final CookieStore cookieStore;
+    private String sessionCredentials;
+
+    public SessionClient(Client delegate, CookieStore cookieStore) {
+        this.delegate = delegate;
+        this.cookieStore = cookieStore;
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException {
+        String credentials = header(request, AUTHORIZATION);
+        if (credentials == null) {
+            return delegate.execute(request);
+        }
+        String host = URI.create(request.getUrl()).getHost();
+        boolean inSession = joinSession(credentials, host);
+        long started = System.nanoTime();
+        Response response = delegate.execute(inSession ? withoutCredentials(request) : request);
+        if (inSession && response.getStatus() == SC_UNAUTHORIZED) {
+            release(response);
+            endSession();
+            inSession = false;
+            response = delegate.execute(request);
+        }
+        HttpTrafficMonitor.recordLatency(inSession, System.nanoTime() - started);
+        if (!inSession && response.getStatus() < SC_BAD_REQUEST) {
+            startSession(credentials, host);
+        }
+        return response;
+    }
+
+    public synchronized void endSession() {
+        sessionCredentials = null;
+        cookieStore.clear();
+    }
+
+    private synchronized boolean joinSession(String credentials, String host) {
+        if (credentials.equals(sessionCredentials) && hasSessionCookie(host)) {
+            return true;
+        }
+        if (sessionCredentials != null && !credentials.equals(sessionCredentials)) {
+            endSession();
+        }
+        return false;
+    }
+
+    private synchronized void startSession(String credentials, String host) {
+        if (hasSessionCookie(host)) {
+            sessionCredentials = credentials;
+        }
+    }
+
+    private boolean hasSessionCookie(String host) {
+        Date now = new Date();
+        for (Cookie cookie : cookieStore.getCookies()) {
+            if (SESSION_COOKIE.equals(cookie.getName()) && !cookie.isExpired(now) && matches(cookie, host)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(Cookie cookie, String host) {
+        String domain = cookie.getDomain();
+        if (domain == null || host == null) {
+            return true;
+        }
+        domain = domain.startsWith(".") ? domain.substring(1) : domain;
+        return host.equalsIgnoreCase(domain) || host.toLowerCase().endsWith("." + domain.toLowerCase());
+    }
+
+    // the body holds a pooled connection until it is closed
+    private static void release(Response response) throws IOException {
+        if (response.getBody() != null) {
+            response.getBody().in().close();
+        }
+    }
+
+    private static Request withoutCredentials(Request request) {
+        List<Header> headers = new ArrayList<>();
+        for (Header header : request.getHeaders()) {
+            if (!AUTHORIZATION.equalsIgnoreCase(header.getName())) {
+                headers.add(header);
+            }
+        }
+        return new Request(request.getMethod(), request.getUrl(), headers, request.getBody());
+    }
+
+    private static String header(Request request, String name) {
+        for (Header header : request.getHeaders()) {
+            if (name.equalsIgnoreCase(header.getName())) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.remote.http;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import retrofit.client.Client;
+import retrofit.client.Header;
+import retrofit.client.Request;
+import retrofit.client.Response;
+import retrofit.mime.TypedInput;
+import retrofit.mime.TypedOutput;
+
+/**
+ * Runs Retrofit requests on a shared HttpClient. Unlike retrofit's ApacheClient, response
+ * bodies are handed over as the entity stream, so @Streaming endpoints are read as they
+ * arrive; Retrofit itself still buffers the bodies of every other endpoint.
+ */
+public class StreamingApacheClient implements Client {
+    private final HttpClient httpClient;
+
+    public StreamingApacheClient(HttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException {
+        HttpResponse response = httpClient.execute(createRequest(request));
+        List<Header> headers = new ArrayList<>();
+        for (org.apache.http.Header header : response.getAllHeaders()) {
+            headers.add(new Header(header.getName(), header.getValue()));
+        }
+        HttpEntity entity = response.getEntity();
+        return new Response(request.getUrl(), response.getStatusLine().getStatusCode(),
+                response.getStatusLine().getReasonPhrase(), headers, entity == null ? null : new EntityInput(entity));
+    }
+
+    private static HttpRequestBase createRequest(Request request) throws IOException {
+        MethodRequest httpRequest = new MethodRequest(request.getMethod());
+        httpRequest.setURI(URI.create(request.getUrl()));
+        for (Header header : request.getHeaders()) {
+            if (!"Content-Length".equalsIgnoreCase(header.getName())) {
+                httpRequest.addHeader(header.getName(), header.getValue());
+            }
+        }
+        TypedOutput body = request.getBody();
+        if (body != null) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            body.writeTo(bytes);
+            ByteArrayEntity entity = new ByteArrayEntity(bytes.toByteArray());
+            entity.setContentType(body.mimeType());
+            httpRequest.setEntity(entity);
+        }
+        return httpRequest;
+    }
+
+    private static class MethodRequest extends HttpEntityEnclosingRequestBase {
+        private final String method;
+
+        MethodRequest(String method) {
+            this.method = method;
+        }
+
+        @Override
+        public String getMethod() {
+            return method;
+        }
+    }
+
+    private static class EntityInput implements TypedInput {
+        private final HttpEntity entity;
+
+        EntityInput(HttpEntity entity) {
+            this.entity = entity;
+        }
+
+        @Override
+        public String mimeType() {
+            return entity.getContentType() == null ? null : entity.getContentType().getValue();
+        }
+
+        @Override
+        public long length() {
+            return entity.getContentLength();
+        }
+
+        @Override
+        public InputStream in() throws IOException {
+            return entity.getContent();
+        }
+    }
+}
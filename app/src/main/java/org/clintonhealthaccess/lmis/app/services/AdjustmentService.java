@@ -38,6 +38,7 @@ import com.j256.ormlite.stmt.QueryBuilder;
 import org.clintonhealthaccess.lmis.app.models.Adjustment;
 import org.clintonhealthaccess.lmis.app.models.AdjustmentReason;
 import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.DailyLedger;
 import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
 import org.clintonhealthaccess.lmis.app.utils.DateUtil;
 
@@ -46,24 +47,22 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 public class AdjustmentService {
     @Inject
     DbUtil dbutil;
     @Inject
-    CommoditySnapshotService commoditySnapshotService;
+    StockTransactionService stockTransactionService;
 
     @Inject
     AlertsService alertsService;
 
-    @Inject
-    StockService stockService;
-
     @Inject
     CommodityService commodityService;
 
     @Inject
-    CategoryService categoryService;
+    DailyLedgerService dailyLedgerService;
 
     @Inject
     Context context;
@@ -78,45 +77,35 @@ public class AdjustmentService {
     }
 
     public void save(final List<Adjustment> adjustments) {
-        dbutil.withDao(Adjustment.class, new DbUtil.Operation<Adjustment, String>() {
+        StockTransaction transaction = new StockTransaction();
+        for (Adjustment adjustment : adjustments) {
+            String ledgerColumn = DailyLedger.columnFor(adjustment.getReason());
+            if (adjustment.isPositive()) {
+                transaction.increase(adjustment, adjustment.getQuantity(), adjustment.getCreated(), ledgerColumn);
+            } else {
+                transaction.reduce(adjustment, adjustment.getQuantity(), adjustment.getCreated(), ledgerColumn);
+            }
+        }
+        stockTransactionService.commit(transaction, new Callable<Void>() {
             @Override
-            public String operate(Dao dao) throws SQLException {
-                for (Adjustment adjustment : adjustments) {
-                    dao.create(adjustment);
-                    commoditySnapshotService.add(adjustment);
-                    if (adjustment.isPositive()) {
-                        stockService.increaseStockLevelFor(adjustment.getCommodity(), adjustment.getQuantity(), adjustment.getCreated());
-                    } else {
-                        stockService.reduceStockLevelFor(adjustment.getCommodity(), adjustment.getQuantity(), adjustment.getCreated());
+            public Void call() throws Exception {
+                dbutil.withDao(Adjustment.class, new DbUtil.Operation<Adjustment, Void>() {
+                    @Override
+                    public Void operate(Dao<Adjustment, String> dao) throws SQLException {
+                        for (Adjustment adjustment : adjustments) {
+                            dao.create(adjustment);
+                        }
+                        return null;
                     }
-                }
+                });
                 return null;
             }
         });
-        categoryService.clearCache();
         alertsService.disableAllMonthlyStockCountAlerts();
-        alertsService.updateLowStockAlerts();
     }
 
     public int totalAdjustment(final Commodity commodity, final Date startingDate, final Date endDate) {
-        int totalQuantity = 0;
-
-        List<Adjustment> adjustments =
-                dbutil.withDao(Adjustment.class, new DbUtil.Operation<Adjustment, List<Adjustment>>() {
-                    @Override
-                    public List<Adjustment> operate(Dao<Adjustment, String> dao) throws SQLException {
-                        QueryBuilder<Adjustment, String> queryBuilder = dao.queryBuilder();
-                        queryBuilder.where().between("created", startingDate, endDate).
-                                and().eq("commodity_id", commodity.getId());
-                        return queryBuilder.query();
-                    }
-                });
-
-        for (Adjustment adjustment : adjustments) {
-            int quantity = adjustment.getQuantity();
-            totalQuantity += adjustment.isPositive() ? quantity : -quantity;
-        }
-        return totalQuantity;
+        return dailyLedgerService.getTotal(commodity, DailyLedger.ADJUSTED, startingDate, endDate);
     }
 
     public int totalAdjustmentNumber(final Commodity commodity, final Date startingDate, final Date endDate) {
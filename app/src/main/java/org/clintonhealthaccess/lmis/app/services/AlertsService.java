@@ -38,7 +38,9 @@ import com.google.common.collect.ImmutableList;
 import com.google.inject.Inject;
 import com.j256.ormlite.dao.Dao;
 import com.j256.ormlite.stmt.DeleteBuilder;
+import com.j256.ormlite.stmt.PreparedQuery;
 import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.stmt.SelectArg;
 import com.j256.ormlite.stmt.UpdateBuilder;
 
 import org.clintonhealthaccess.lmis.app.activities.viewmodels.OrderCommodityViewModel;
@@ -46,11 +48,14 @@ import org.clintonhealthaccess.lmis.app.events.AlertChangeEvent;
 import org.clintonhealthaccess.lmis.app.models.Adjustment;
 import org.clintonhealthaccess.lmis.app.models.Allocation;
 import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.alerts.AlertSummary;
 import org.clintonhealthaccess.lmis.app.models.alerts.AllocationAlert;
 import org.clintonhealthaccess.lmis.app.models.alerts.LowStockAlert;
 import org.clintonhealthaccess.lmis.app.models.alerts.MonthlyStockCountAlert;
 import org.clintonhealthaccess.lmis.app.models.alerts.NotificationMessage;
 import org.clintonhealthaccess.lmis.app.models.alerts.RoutineOrderAlert;
+import org.clintonhealthaccess.lmis.app.persistence.CompiledQuery;
+import org.clintonhealthaccess.lmis.app.persistence.DaoRegistry;
 import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
 import org.clintonhealthaccess.lmis.app.utils.Helpers;
 
@@ -58,10 +63,15 @@ import java.sql.SQLException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import de.greenrobot.event.EventBus;
 
@@ -74,14 +84,29 @@ public class AlertsService {
     public static final String DISABLED = "disabled";
     public static SimpleDateFormat ALERT_DATE_FORMAT = new SimpleDateFormat("dd-MMM-yy");
     private static List<LowStockAlert> lowStockAlerts;
+    private static final Object SUMMARY_LOCK = new Object();
+    private static AlertSummary alertSummary;
+    private static final CompiledQuery<LowStockAlert> LOW_STOCK_ALERT_FOR_COMMODITY = new CompiledQuery<>(LowStockAlert.class,
+            "LowStockAlert.forCommodity", new DaoRegistry.Preparer<LowStockAlert>() {
+        @Override
+        public PreparedQuery<LowStockAlert> prepare(Dao<LowStockAlert, String> dao) throws SQLException {
+            QueryBuilder<LowStockAlert, String> queryBuilder = dao.queryBuilder();
+            queryBuilder.where().eq("commodity_id", new SelectArg());
+            return queryBuilder.prepare();
+        }
+    });
     @Inject
     CommodityService commodityService;
     @Inject
     AllocationService allocationService;
+    @Inject
+    CommodityRepository commodityRepository;
 
     @Inject
     DbUtil dbUtil;
     @Inject
+    DaoRegistry daoRegistry;
+    @Inject
     SharedPreferences sharedPreferences;
 
     public List<LowStockAlert> getLowStockAlerts() {
@@ -114,11 +139,59 @@ public class AlertsService {
 
 
     public int numberOfAlerts() {
-        return getEnabledLowStockAlerts().size() + getNumberOfRoutineOrderAlerts() + getAllocationAlerts().size() + getEnabledMonthlyStockAlerts().size();
+        return getAlertSummary().getTotal();
     }
 
     public int getNumberOfRoutineOrderAlerts() {
-        return getAllRoutineOrderAlerts().size();
+        return getAlertSummary().getRoutineOrderAlerts();
+    }
+
+    public AlertSummary getAlertSummary() {
+        synchronized (SUMMARY_LOCK) {
+            if (alertSummary == null) {
+                alertSummary = countAlerts();
+            }
+            return alertSummary;
+        }
+    }
+
+    public static void clearCache() {
+        synchronized (SUMMARY_LOCK) {
+            alertSummary = null;
+        }
+        lowStockAlerts = null;
+    }
+
+    private void alertsChanged() {
+        AlertSummary summary;
+        synchronized (SUMMARY_LOCK) {
+            summary = countAlerts();
+            alertSummary = summary;
+        }
+        EventBus.getDefault().post(new AlertChangeEvent(summary));
+    }
+
+    private AlertSummary countAlerts() {
+        return new AlertSummary(countEnabled(LowStockAlert.class), countEnabled(RoutineOrderAlert.class),
+                countAll(AllocationAlert.class), countEnabled(MonthlyStockCountAlert.class));
+    }
+
+    private <T> int countEnabled(Class<T> alertClass) {
+        return dbUtil.withDao(alertClass, new DbUtil.Operation<T, Integer>() {
+            @Override
+            public Integer operate(Dao<T, String> dao) throws SQLException {
+                return (int) dao.queryBuilder().where().eq(DISABLED, false).countOf();
+            }
+        });
+    }
+
+    private <T> int countAll(Class<T> alertClass) {
+        return dbUtil.withDao(alertClass, new DbUtil.Operation<T, Integer>() {
+            @Override
+            public Integer operate(Dao<T, String> dao) throws SQLException {
+                return (int) dao.countOf();
+            }
+        });
     }
 
     public List<LowStockAlert> getTop5LowStockAlerts() {
@@ -131,32 +204,88 @@ public class AlertsService {
     }
 
     public void updateLowStockAlerts() {
-        checkIfExistingLowStockAlertsAreStillValid();
-        checkForNewLowStockAlerts();
+        boolean deleted = checkIfExistingLowStockAlertsAreStillValid();
+        boolean created = checkForNewLowStockAlerts();
         updateCache();
-        EventBus.getDefault().post(new AlertChangeEvent());
+        if (deleted || created) {
+            alertsChanged();
+        }
+    }
+
+    public void onStockLevelsChanged(Collection<Commodity> commodities) {
+        if (commodities.isEmpty()) {
+            return;
+        }
+        Map<String, LowStockAlert> alertsByCommodity = new HashMap<>();
+        for (LowStockAlert alert : queryLowStockAlerts(commodities)) {
+            alertsByCommodity.put(alert.getCommodity().getId(), alert);
+        }
+
+        final List<LowStockAlert> created = new ArrayList<>();
+        final List<LowStockAlert> deleted = new ArrayList<>();
+        for (Commodity commodity : commodities) {
+            Commodity canonical = canonical(commodity);
+            LowStockAlert alert = alertsByCommodity.get(commodity.getId());
+            boolean belowThreshold = canonical.isBelowThreshold();
+            if (alert == null && belowThreshold) {
+                created.add(new LowStockAlert(canonical));
+            } else if (alert != null && !belowThreshold) {
+                deleted.add(alert);
+            }
+        }
+        if (created.isEmpty() && deleted.isEmpty()) {
+            return;
+        }
+
+        dbUtil.withDaoAsBatch(LowStockAlert.class, new DbUtil.Operation<LowStockAlert, Void>() {
+            @Override
+            public Void operate(Dao<LowStockAlert, String> dao) throws SQLException {
+                for (LowStockAlert alert : created) {
+                    dao.create(alert);
+                }
+                if (!deleted.isEmpty()) {
+                    dao.delete(deleted);
+                }
+                return null;
+            }
+        });
+        updateCache();
+        alertsChanged();
+    }
+
+    private List<LowStockAlert> queryLowStockAlerts(final Collection<Commodity> commodities) {
+        return dbUtil.withDao(LowStockAlert.class, new DbUtil.Operation<LowStockAlert, List<LowStockAlert>>() {
+            @Override
+            public List<LowStockAlert> operate(Dao<LowStockAlert, String> dao) throws SQLException {
+                List<String> ids = new ArrayList<>();
+                for (Commodity commodity : commodities) {
+                    ids.add(commodity.getId());
+                }
+                return dao.queryBuilder().where().in("commodity_id", ids).query();
+            }
+        });
+    }
+
+    private Commodity canonical(Commodity commodity) {
+        Commodity cached = commodityRepository.get(commodity);
+        return cached == null ? commodity : cached;
     }
 
     public void updateCommodityLowStockAlert(Commodity commodity) {
         LowStockAlert alert = queryLowStockAlert(commodity);
         if (alert == null && commodity.isBelowThreshold()) {
-            createAlert(new LowStockAlert(commodity));
+            insertLowStockAlert(new LowStockAlert(commodity));
         } else if (alert != null && !alert.getCommodity().isBelowThreshold()) {
-            deleteLowStockAlert(alert);
+            removeLowStockAlert(alert);
+        } else {
+            return;
         }
         updateCache();
-
+        alertsChanged();
     }
 
-    private LowStockAlert queryLowStockAlert(final Commodity commodity) {
-        return dbUtil.withDao(LowStockAlert.class, new DbUtil.Operation<LowStockAlert, LowStockAlert>() {
-            @Override
-            public LowStockAlert operate(Dao<LowStockAlert, String> dao) throws SQLException {
-                QueryBuilder queryBuilder = dao.queryBuilder();
-                queryBuilder.where().eq("commodity_id", commodity.getId());
-                return (LowStockAlert) queryBuilder.queryForFirst();
-            }
-        });
+    private LowStockAlert queryLowStockAlert(Commodity commodity) {
+        return daoRegistry.queryForFirst(LOW_STOCK_ALERT_FOR_COMMODITY, commodity.getId());
     }
 
     public void updateCache() {
@@ -165,33 +294,40 @@ public class AlertsService {
         AlertsService.lowStockAlerts = alerts;
     }
 
-    private void checkForNewLowStockAlerts() {
+    private boolean checkForNewLowStockAlerts() {
+        boolean created = false;
         List<Commodity> commodities = commodityService.all();
-        List<Commodity> commoditiesInAlerts = getCommoditiesInLowStockAlerts();
+        Set<Commodity> commoditiesInAlerts = new HashSet<>(getCommoditiesInLowStockAlerts());
         for (Commodity commodity : commodities) {
             if (!commoditiesInAlerts.contains(commodity)) {
                 try {
                     if (commodity.isBelowThreshold()) {
                         LowStockAlert lowStockAlert = new LowStockAlert(commodity);
-                        createAlert(lowStockAlert);
+                        insertLowStockAlert(lowStockAlert);
+                        created = true;
                     }
                 } catch (Exception ex) {
                     Log.e("Alert service:", ex.getMessage());
                 }
             }
         }
+        return created;
     }
 
     public void disableAlertsForCommodities(List<Commodity> commodities) {
         List<LowStockAlert> lowStockAlerts = getLowStockAlertsForCommodities(commodities);
         for (LowStockAlert alert : lowStockAlerts) {
-            disableLowStockAlert(alert);
+            markDisabled(alert);
+            saveLowStockAlert(alert);
         }
         updateCache();
+        if (!lowStockAlerts.isEmpty()) {
+            alertsChanged();
+        }
     }
 
     public void disableAllRoutineOrderAlerts() {
-        dbUtil.withDao(RoutineOrderAlert.class, new DbUtil.Operation<RoutineOrderAlert, Integer>() {
+        int disabled = dbUtil.withDao(RoutineOrderAlert.class, new DbUtil.Operation<RoutineOrderAlert, Integer>() {
             @Override
             public Integer operate(Dao<RoutineOrderAlert, String> dao) throws SQLException {
                 UpdateBuilder<RoutineOrderAlert, String> updateBuilder = dao.updateBuilder();
@@ -200,6 +336,9 @@ public class AlertsService {
                 return updateBuilder.update();
             }
         });
+        if (disabled > 0) {
+            alertsChanged();
+        }
     }
 
     private ImmutableList<Commodity> getCommoditiesInLowStockAlerts() {
@@ -221,7 +360,12 @@ public class AlertsService {
                 }).toList();
     }
 
-    public void createAlert(final LowStockAlert lowStockAlert) {
+    public void createAlert(LowStockAlert lowStockAlert) {
+        insertLowStockAlert(lowStockAlert);
+        alertsChanged();
+    }
+
+    private void insertLowStockAlert(final LowStockAlert lowStockAlert) {
         dbUtil.withDao(LowStockAlert.class, new DbUtil.Operation<LowStockAlert, Object>() {
             @Override
             public Object operate(Dao<LowStockAlert, String> dao) throws SQLException {
@@ -231,22 +375,34 @@ public class AlertsService {
         });
     }
 
-    private void checkIfExistingLowStockAlertsAreStillValid() {
+    private boolean checkIfExistingLowStockAlertsAreStillValid() {
+        boolean deleted = false;
         List<LowStockAlert> availableLowStockAlerts = queryAllLowStockAlerts();
         for (LowStockAlert alert : availableLowStockAlerts) {
-            if (!alert.getCommodity().isBelowThreshold()) {
-                deleteLowStockAlert(alert);
+            if (!canonical(alert.getCommodity()).isBelowThreshold()) {
+                removeLowStockAlert(alert);
+                deleted = true;
             }
         }
+        return deleted;
     }
 
     public void disableLowStockAlert(LowStockAlert alert) {
+        markDisabled(alert);
+        updateLowStockAlert(alert);
+    }
+
+    private void markDisabled(LowStockAlert alert) {
         alert.setDisabled(true);
         alert.setDateDisabled(new Date());
-        updateLowStockAlert(alert);
     }
 
-    public void deleteLowStockAlert(final LowStockAlert alert) {
+    public void deleteLowStockAlert(LowStockAlert alert) {
+        removeLowStockAlert(alert);
+        alertsChanged();
+    }
+
+    private void removeLowStockAlert(final LowStockAlert alert) {
         dbUtil.withDao(LowStockAlert.class, new DbUtil.Operation<LowStockAlert, Void>() {
             @Override
             public Void operate(Dao<LowStockAlert, String> dao) throws SQLException {
@@ -265,7 +421,12 @@ public class AlertsService {
         });
     }
 
-    public void updateLowStockAlert(final LowStockAlert lowStockAlert) {
+    public void updateLowStockAlert(LowStockAlert lowStockAlert) {
+        saveLowStockAlert(lowStockAlert);
+        alertsChanged();
+    }
+
+    private void saveLowStockAlert(final LowStockAlert lowStockAlert) {
         dbUtil.withDao(LowStockAlert.class, new DbUtil.Operation<LowStockAlert, Object>() {
             @Override
             public Object operate(Dao<LowStockAlert, String> dao) throws SQLException {
@@ -313,6 +474,7 @@ public class AlertsService {
         if (getRoutineOrderAlertsInCurrentMonth(date).size() == 0) {
             RoutineOrderAlert routineOrderAlert = new RoutineOrderAlert(date);
             createRoutineOrderAlert(routineOrderAlert);
+            alertsChanged();
         }
     }
 
@@ -419,12 +581,17 @@ public class AlertsService {
         allocationService.clearCache();
         List<Allocation> availableAllocations = allocationService.getYetToBeReceivedAllocations();
         List<Allocation> allocationsWithAlerts = getAllocationsFromAlerts(getAllocationAlerts());
+        boolean created = false;
         for (Allocation allocation : availableAllocations) {
             if (!allocationsWithAlerts.contains(allocation)) {
                 AllocationAlert allocationAlert = new AllocationAlert(allocation);
                 createAllocationAlert(allocationAlert);
+                created = true;
             }
         }
+        if (created) {
+            alertsChanged();
+        }
     }
 
     private void createAllocationAlert(final AllocationAlert allocationAlert) {
@@ -456,15 +623,17 @@ public class AlertsService {
     }
 
     public void deleteAllocationAlert(final Allocation allocation) {
-        dbUtil.withDao(AllocationAlert.class, new DbUtil.Operation<AllocationAlert, Void>() {
+        int deleted = dbUtil.withDao(AllocationAlert.class, new DbUtil.Operation<AllocationAlert, Integer>() {
             @Override
-            public Void operate(Dao<AllocationAlert, String> dao) throws SQLException {
+            public Integer operate(Dao<AllocationAlert, String> dao) throws SQLException {
                 DeleteBuilder<AllocationAlert, String> deleteBuilder = dao.deleteBuilder();
                 deleteBuilder.where().eq(AllocationAlert.ALLOCATION_ID_COLUMN, allocation.getId());
-                deleteBuilder.delete();
-                return null;
+                return deleteBuilder.delete();
             }
         });
+        if (deleted > 0) {
+            alertsChanged();
+        }
     }
 
     public void generateMonthlyStockCountAlerts(Date date) {
@@ -478,6 +647,7 @@ public class AlertsService {
         if (getMonthlyStockCountAlerts(date).size() == 0) {
             MonthlyStockCountAlert monthlyStockCountAlert = new MonthlyStockCountAlert(date);
             createMonthlyStockCountAlert(monthlyStockCountAlert);
+            alertsChanged();
         }
     }
 
@@ -498,6 +668,7 @@ public class AlertsService {
 
 
     public void disableAllMonthlyStockCountAlerts() {
+        boolean disabled = false;
         for (final MonthlyStockCountAlert alert : getEnabledMonthlyStockAlerts()) {
             if (adjustmentsHaveBeenMadeForEachCommodityInMonthOfAlert(alert.getDateCreated())) {
                 dbUtil.withDao(MonthlyStockCountAlert.class, new DbUtil.Operation<MonthlyStockCountAlert, Integer>() {
@@ -507,9 +678,12 @@ public class AlertsService {
                         return dao.update(alert);
                     }
                 });
+                disabled = true;
             }
         }
-
+        if (disabled) {
+            alertsChanged();
+        }
     }
 
     boolean adjustmentsHaveBeenMadeForEachCommodityInMonthOfAlert(final Date date) {
@@ -29,7 +29,6 @@
 
 package org.clintonhealthaccess.lmis.app.services;
 
-import android.content.Context;
 import android.util.Log;
 
 import com.google.common.base.Function;
@@ -39,6 +38,7 @@ import com.google.inject.Inject;
 import com.j256.ormlite.dao.Dao;
 import com.j256.ormlite.stmt.PreparedQuery;
 import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.stmt.SelectArg;
 import com.thoughtworks.dhis.models.DataElementType;
 
 import org.clintonhealthaccess.lmis.app.LmisException;
@@ -47,6 +47,8 @@ import org.clintonhealthaccess.lmis.app.models.AllocationItem;
 import org.clintonhealthaccess.lmis.app.models.Commodity;
 import org.clintonhealthaccess.lmis.app.models.CommodityActionValue;
 import org.clintonhealthaccess.lmis.app.models.User;
+import org.clintonhealthaccess.lmis.app.persistence.CompiledQuery;
+import org.clintonhealthaccess.lmis.app.persistence.DaoRegistry;
 import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
 import org.clintonhealthaccess.lmis.app.remote.LmisServer;
 
@@ -65,11 +67,21 @@ import static com.google.common.collect.Multimaps.index;
 import static java.lang.Integer.parseInt;
 
 public class AllocationService {
+    private static final CompiledQuery<Allocation> ALLOCATION_BY_LMIS_ID = new CompiledQuery<>(Allocation.class,
+            "Allocation.byLmisId", new DaoRegistry.Preparer<Allocation>() {
+        @Override
+        public PreparedQuery<Allocation> prepare(Dao<Allocation, String> dao) throws SQLException {
+            QueryBuilder<Allocation, String> queryBuilder = dao.queryBuilder();
+            queryBuilder.where().eq("allocationId", new SelectArg());
+            return queryBuilder.prepare();
+        }
+    });
+
     @Inject
     private DbUtil dbUtil;
 
     @Inject
-    private Context context;
+    private DaoRegistry daoRegistry;
 
     @Inject
     private LmisServer lmisServer;
@@ -121,20 +133,12 @@ public class AllocationService {
         ).toList();
     }
 
-    public Allocation getAllocationByLmisId(final String allocationID) {
-        return dbUtil.withDao(Allocation.class, new DbUtil.Operation<Allocation, Allocation>() {
-            @Override
-            public Allocation operate(Dao<Allocation, String> dao) throws SQLException {
-                QueryBuilder<Allocation, String> allocationStringQueryBuilder = dao.queryBuilder();
-                allocationStringQueryBuilder.where().eq("allocationId", allocationID);
-                PreparedQuery<Allocation> query = allocationStringQueryBuilder.prepare();
-                return dao.queryForFirst(query);
-            }
-        });
+    public Allocation getAllocationByLmisId(String allocationID) {
+        return daoRegistry.queryForFirst(ALLOCATION_BY_LMIS_ID, allocationID);
     }
 
     public void update(Allocation allocation) {
-        GenericDao<Allocation> allocationGenericDao = new GenericDao<>(Allocation.class, context);
+        GenericDao<Allocation> allocationGenericDao = new GenericDao<>(Allocation.class, dbUtil);
         allocationGenericDao.update(allocation);
     }
 
@@ -193,10 +197,10 @@ public class AllocationService {
             existingAllocation = allocation;
         }
 
-        GenericDao<Allocation> allocationGenericDao = new GenericDao<>(Allocation.class, context);
+        GenericDao<Allocation> allocationGenericDao = new GenericDao<>(Allocation.class, dbUtil);
         allocationGenericDao.createOrUpdate(existingAllocation);
 
-        GenericDao<AllocationItem> allocationItemGenericDao = new GenericDao<>(AllocationItem.class, context);
+        GenericDao<AllocationItem> allocationItemGenericDao = new GenericDao<>(AllocationItem.class, dbUtil);
         for (AllocationItem allocationItem : existingAllocation.getTransientAllocationItems()) {
             allocationItem.setAllocation(allocation);
             allocationItemGenericDao.create(allocationItem);
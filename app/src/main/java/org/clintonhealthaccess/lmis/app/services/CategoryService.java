@@ -78,5 +78,6 @@ public class CategoryService {
 
     public void clearCache() {
         allCategories = null;
+        CommodityRepository.clearCache();
     }
 }
@@ -30,7 +30,13 @@
 package org.clintonhealthaccess.lmis.app.services;
 
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Objects;
+import com.google.common.collect.Lists;
 
 import com.google.inject.Inject;
 import com.j256.ormlite.dao.Dao;
@@ -41,7 +47,9 @@ import org.clintonhealthaccess.lmis.app.LmisException;
 import org.clintonhealthaccess.lmis.app.models.Commodity;
 import org.clintonhealthaccess.lmis.app.models.CommodityAction;
 import org.clintonhealthaccess.lmis.app.models.CommodityActionValue;
+import org.clintonhealthaccess.lmis.app.models.DataSet;
 import org.clintonhealthaccess.lmis.app.models.User;
+import org.clintonhealthaccess.lmis.app.models.ValueSyncReport;
 import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
 import org.clintonhealthaccess.lmis.app.persistence.LmisSqliteOpenHelper;
 import org.clintonhealthaccess.lmis.app.remote.LmisServer;
@@ -51,20 +59,36 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class CommodityActionService {
+    public static final String ACTION_VALUES_LAST_UPDATED = "ACTION_VALUES_LAST_UPDATED_";
+    private static final List<String> ACTION_VALUE_DATA_SETS = Arrays.asList(DataSet.DEFAULT, DataSet.CALCULATED);
+    // DHIS2 stamps lastUpdated with the server clock; overlapping windows are cheap since unchanged values are skipped
+    private static final long HIGH_WATER_MARK_OVERLAP = 60 * 60 * 1000;
+    private static final int MAX_QUERY_ARGUMENTS = 500;
+    // keeps each sync write short so a dispense waiting on the writer gets in between chunks
+    private static final int WRITE_BATCH_SIZE = 200;
 
     @Inject
     Context context;
 
+    @Inject
+    SharedPreferences sharedPreferences;
+
     @Inject
     DbUtil dbUtil;
 
     @Inject
     private LmisServer lmisServer;
 
+    @Inject
+    private CommodityRepository commodityRepository;
+
     public CommodityActionService() {
     }
 
@@ -87,16 +111,28 @@ public class CommodityActionService {
     }
 
     public CommodityAction save(CommodityAction commodityAction) {
-        GenericDao<CommodityAction> commodityActivityDao = new GenericDao<>(CommodityAction.class, context);
+        GenericDao<CommodityAction> commodityActivityDao = new GenericDao<>(CommodityAction.class, dbUtil);
         return commodityActivityDao.create(commodityAction);
     }
 
-    protected void saveActionValues(final List<CommodityActionValue> commodityActionValues) {
-        if (commodityActionValues != null) {
+    protected ValueSyncReport saveActionValues(final List<CommodityActionValue> commodityActionValues) {
+        ValueSyncReport report = writeActionValues(commodityActionValues);
+        if (report.getChanged() > 0) {
+            commodityRepository.refreshActionValues();
+        }
+        return report;
+    }
+
+    private ValueSyncReport writeActionValues(final List<CommodityActionValue> commodityActionValues) {
+        if (commodityActionValues == null) {
+            return new ValueSyncReport();
+        }
+        final List<CommodityActionValue> changedValues = changedValues(commodityActionValues);
+        for (final List<CommodityActionValue> chunk : Lists.partition(changedValues, WRITE_BATCH_SIZE)) {
             dbUtil.withDaoAsBatch(CommodityActionValue.class, new DbUtil.Operation<CommodityActionValue, Void>() {
                         @Override
                         public Void operate(Dao<CommodityActionValue, String> dao) throws SQLException {
-                            for (CommodityActionValue actionValue : commodityActionValues) {
+                            for (CommodityActionValue actionValue : chunk) {
                                 if(actionValue.getCommodityAction().getName().equals(DataElementType.ALLOCATION_ID)){
                                     save(actionValue.getCommodityAction());
                                 }
@@ -107,11 +143,101 @@ public class CommodityActionService {
                     }
             );
         }
+        return new ValueSyncReport(commodityActionValues.size(), changedValues.size());
     }
 
-    public void syncCommodityActionValues(User user) {
-        List<CommodityActionValue> commodityActionValues = lmisServer.fetchCommodityActionValues(user);
-        saveActionValues(commodityActionValues);
+    private List<CommodityActionValue> changedValues(List<CommodityActionValue> commodityActionValues) {
+        final Map<String, String> savedValues = new HashMap<>();
+        for (final List<CommodityActionValue> chunk : Lists.partition(commodityActionValues, MAX_QUERY_ARGUMENTS)) {
+            List<String[]> rows = dbUtil.withDao(CommodityActionValue.class, new DbUtil.Operation<CommodityActionValue, List<String[]>>() {
+                @Override
+                public List<String[]> operate(Dao<CommodityActionValue, String> dao) throws SQLException {
+                    List<String> ids = new ArrayList<>();
+                    for (CommodityActionValue actionValue : chunk) {
+                        if (actionValue.getId() != null) {
+                            ids.add(actionValue.getId());
+                        }
+                    }
+                    return dao.queryRaw("SELECT id, value FROM commodityactionvalue WHERE id IN (" +
+                            Joiner.on(",").join(Collections.nCopies(ids.size(), "?")) + ")",
+                            ids.toArray(new String[ids.size()])).getResults();
+                }
+            });
+            for (String[] row : rows) {
+                savedValues.put(row[0], row[1]);
+            }
+        }
+
+        List<CommodityActionValue> changedValues = new ArrayList<>();
+        for (CommodityActionValue actionValue : commodityActionValues) {
+            if (!Objects.equal(actionValue.getValue(), savedValues.get(actionValue.getId()))) {
+                changedValues.add(actionValue);
+            }
+        }
+        return changedValues;
+    }
+
+    public ValueSyncReport syncCommodityActionValues(User user) {
+        Date syncStart = new Date(System.currentTimeMillis() - HIGH_WATER_MARK_OVERLAP);
+        ValueSyncReport report = new ValueSyncReport();
+        if (!hasHighWaterMarks()) {
+            // a stream that breaks off throws before the marks move, so the next sync starts over
+            report = streamActionValues(user);
+            if (report.getFetched() > 0) {
+                for (String dataSet : ACTION_VALUE_DATA_SETS) {
+                    setHighWaterMark(dataSet, syncStart);
+                }
+            }
+        } else {
+            for (String dataSet : ACTION_VALUE_DATA_SETS) {
+                try {
+                    List<CommodityActionValue> values = lmisServer.fetchCommodityActionValuesSince(user, dataSet, getHighWaterMark(dataSet));
+                    report.add(saveActionValues(values));
+                    setHighWaterMark(dataSet, syncStart);
+                } catch (LmisException e) {
+                    Log.e("ActionValueSync", "Delta sync failed for " + dataSet, e);
+                }
+            }
+        }
+        Log.i("ActionValueSync", report.toString());
+        return report;
+    }
+
+    private ValueSyncReport streamActionValues(User user) {
+        final ValueSyncReport report = new ValueSyncReport();
+        try {
+            lmisServer.streamCommodityActionValues(user, new LmisServer.BatchHandler<CommodityActionValue>() {
+                @Override
+                public void handle(List<CommodityActionValue> batch) {
+                    report.add(writeActionValues(batch));
+                }
+            });
+        } finally {
+            if (report.getChanged() > 0) {
+                commodityRepository.refreshActionValues();
+            }
+        }
+        return report;
+    }
+
+    private boolean hasHighWaterMarks() {
+        for (String dataSet : ACTION_VALUE_DATA_SETS) {
+            if (getHighWaterMark(dataSet) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Date getHighWaterMark(String dataSet) {
+        long time = sharedPreferences.getLong(ACTION_VALUES_LAST_UPDATED + dataSet, 0);
+        return time == 0 ? null : new Date(time);
+    }
+
+    private void setHighWaterMark(String dataSet, Date date) {
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        editor.putLong(ACTION_VALUES_LAST_UPDATED + dataSet, date.getTime());
+        editor.commit();
     }
 
     public void syncIndicatorValues(User user, List<Commodity> commodities) {
@@ -147,7 +273,7 @@ public class CommodityActionService {
         }
     }
 
-    private List<String> monthlyPeriods(Date startDate, Date endDate) {
+    List<String> monthlyPeriods(Date startDate, Date endDate) {
         Calendar calendar = Calendar.getInstance();
         calendar.setTime(endDate);
         calendar.set(Calendar.DAY_OF_MONTH, calendar.getActualMaximum(Calendar.DAY_OF_MONTH));
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.services;
+
+import android.util.Log;
+
+import com.google.inject.Inject;
+
+import org.clintonhealthaccess.lmis.app.models.Category;
+import org.clintonhealthaccess.lmis.app.models.Commodity;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class CommodityRepository {
+    private static final Object LOCK = new Object();
+    private static Map<String, Commodity> commoditiesById;
+    private static int hits, misses, reloads;
+
+    @Inject
+    private CategoryService categoryService;
+
+    @Inject
+    private LatestActionValueService latestActionValueService;
+
+    public Commodity get(Commodity commodity) {
+        return get(commodity.getId());
+    }
+
+    public Commodity get(String id) {
+        synchronized (LOCK) {
+            Commodity commodity = index().get(id);
+            if (commodity == null) {
+                misses++;
+            } else {
+                hits++;
+            }
+            return commodity;
+        }
+    }
+
+    public List<Commodity> all() {
+        synchronized (LOCK) {
+            return new ArrayList<>(index().values());
+        }
+    }
+
+    public void updateStockOnHand(Commodity commodity, int stockOnHand) {
+        Commodity cached = get(commodity);
+        if (cached != null) {
+            cached.setStockOnHand(stockOnHand);
+        }
+        commodity.setStockOnHand(stockOnHand);
+    }
+
+    public void refreshActionValues() {
+        synchronized (LOCK) {
+            if (commoditiesById != null) {
+                applyLatestActionValues(commoditiesById.values());
+            }
+        }
+    }
+
+    private void applyLatestActionValues(Collection<Commodity> commodities) {
+        Map<String, Map<String, Integer>> latestValues = latestActionValueService.load();
+        for (Commodity commodity : commodities) {
+            Map<String, Integer> values = latestValues.get(commodity.getId());
+            commodity.setLatestActionValues(values == null ? Collections.<String, Integer>emptyMap() : values);
+        }
+    }
+
+    private Map<String, Commodity> index() {
+        if (commoditiesById == null) {
+            reloads++;
+            Map<String, Commodity> commodities = new LinkedHashMap<>();
+            for (Category category : categoryService.all()) {
+                for (Commodity commodity : category.getCommodities()) {
+                    commodities.put(commodity.getId(), commodity);
+                }
+            }
+            applyLatestActionValues(commodities.values());
+            commoditiesById = commodities;
+            Log.d("CommodityRepository", "Loaded " + commodities.size() + " commodities, " + statistics());
+        }
+        return commoditiesById;
+    }
+
+    public static void clearCache() {
+        synchronized (LOCK) {
+            commoditiesById = null;
+        }
+    }
+
+    public static String statistics() {
+        return String.format("cache hits: %d, misses: %d, reloads: %d", hits, misses, reloads);
+    }
+
+    public static int getHits() {
+        return hits;
+    }
+
+    public static int getMisses() {
+        return misses;
+    }
+
+    public static int getReloads() {
+        return reloads;
+    }
+}
@@ -32,7 +32,6 @@ package org.clintonhealthaccess.lmis.app.services;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.util.Log;
-import android.util.TimingLogger;
 
 import com.google.common.base.Function;
 import com.google.common.collect.FluentIterable;
@@ -40,42 +39,53 @@ import com.google.inject.Inject;
 import com.j256.ormlite.dao.Dao;
 import com.thoughtworks.dhis.models.DataElementType;
 
+import org.clintonhealthaccess.lmis.app.LmisException;
 import org.clintonhealthaccess.lmis.app.R;
-import org.clintonhealthaccess.lmis.app.models.Adjustment;
-import org.clintonhealthaccess.lmis.app.models.AdjustmentReason;
 import org.clintonhealthaccess.lmis.app.models.Category;
 import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.DailyLedger;
 import org.clintonhealthaccess.lmis.app.models.CommodityAction;
 import org.clintonhealthaccess.lmis.app.models.CommodityActionDataSet;
+import org.clintonhealthaccess.lmis.app.models.CommodityActionValue;
 import org.clintonhealthaccess.lmis.app.models.DataSet;
+import org.clintonhealthaccess.lmis.app.models.DispensingItem;
 import org.clintonhealthaccess.lmis.app.models.StockItem;
 import org.clintonhealthaccess.lmis.app.models.StockItemSnapshot;
 import org.clintonhealthaccess.lmis.app.models.User;
 import org.clintonhealthaccess.lmis.app.models.reports.UtilizationItem;
 import org.clintonhealthaccess.lmis.app.models.reports.UtilizationItemName;
-import org.clintonhealthaccess.lmis.app.models.reports.UtilizationValue;
 import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
 import org.clintonhealthaccess.lmis.app.remote.LmisServer;
 import org.clintonhealthaccess.lmis.app.utils.DateUtil;
+import org.clintonhealthaccess.lmis.app.utils.StageTimer;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import roboguice.inject.InjectResource;
 
 import static com.google.common.collect.FluentIterable.from;
 import static org.clintonhealthaccess.lmis.app.persistence.DbUtil.Operation;
+import static org.clintonhealthaccess.lmis.app.utils.Helpers.await;
 
 public class CommodityService {
     public static final String MONTHLY_STOCK_COUNT_DAY = "MONTHLY_STOCK_COUNT_DAY";
     public static final String ROUTINE_ORDER_ALERT_DAY = "ROUTINE_ORDER_ALERT_DAY";
 
-    private static List<Commodity> mostDispensedCommodities;
+    static final int MOST_DISPENSED_COUNT = 5;
+
+    private static final Object RANKING_LOCK = new Object();
+    private static DispensingRanking dispensingRanking;
+    private static int rankingDay;
 
     @Inject
     private LmisServer lmisServer;
@@ -118,50 +128,91 @@ public class CommodityService {
 
     @InjectResource(R.string.routine_order_alert_day)
     private String routineOrderAlertDay;
+
+    @InjectResource(R.integer.most_dispensed_window_days)
+    Integer mostDispensedWindowDays;
+
+    @Inject
+    DailyLedgerService dailyLedgerService;
     @Inject
-    private DispensingService dispensingService;
+    StockHistoryService stockHistoryService;
+    @Inject
+    CommodityRepository commodityRepository;
+    @Inject
+    MetadataRefreshService metadataRefreshService;
 
-    public void initialise(User user) {
-        TimingLogger timingLogger = new TimingLogger("TIMER", "initialise");
-        List<Category> categories = lmisServer.fetchCategories(user);
-        timingLogger.addSplit("fetch all cats");
+    static final int BOOTSTRAP_THREADS = 3;
 
-        saveToDatabase(categories);
-        timingLogger.addSplit("save all Cats");
+    public StageTimer initialise(User user) {
+        ExecutorService executor = Executors.newFixedThreadPool(BOOTSTRAP_THREADS);
+        try {
+            return initialise(user, executor);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
-        categoryService.clearCache();
+    StageTimer initialise(final User user, ExecutorService executor) {
+        StageTimer timer = new StageTimer("initialise");
+        Date metadataRefreshStart = metadataRefreshService.refreshStart();
 
-        syncConstants(user);
-        timingLogger.addSplit("sync constants");
+        Future<List<Category>> categories = executor.submit(timer.timed("fetch categories", new Callable<List<Category>>() {
+            @Override
+            public List<Category> call() throws Exception {
+                return lmisServer.fetchCategories(user);
+            }
+        }));
+        Future<Integer> monthlyStockCountDay = executor.submit(timer.timed("fetch monthly stock count day", fetchIntegerConstant(user, monthlyStockCountSearchKey)));
+        Future<Integer> routineOrderDay = executor.submit(timer.timed("fetch routine order alert day", fetchIntegerConstant(user, routineOrderAlertDay)));
 
-        timingLogger.addSplit("all");
+        long started = timer.now();
+        saveToDatabase(await(categories));
+        metadataRefreshService.markRefreshed(metadataRefreshStart);
+        categoryService.clearCache();
+        clearMostConsumedCommoditiesCache();
+        timer.record("save categories", started);
 
         Log.i("Inital sync:", "<========== syncing Commodity Action Values");
-        commodityActionService.syncCommodityActionValues(user);
+        started = timer.now();
+        try {
+            commodityActionService.syncCommodityActionValues(user);
+        } catch (LmisException exception) {
+            Log.e("Inital sync:", "action values will be fetched again on the next sync", exception);
+        }
+        timer.record("sync action values", started);
 
-        timingLogger.addSplit("actionValues");
-        categoryService.clearCache();
+        saveIntegerConstant(MONTHLY_STOCK_COUNT_DAY, await(monthlyStockCountDay));
+        saveIntegerConstant(ROUTINE_ORDER_ALERT_DAY, await(routineOrderDay));
+
+        started = timer.now();
         updateStockValues(all());
-        categoryService.clearCache();
         createInitialStockItemSnapShots(all());
-        timingLogger.addSplit("updateStockValues");
+        timer.record("update stock values", started);
+
+        final List<Commodity> commodities = all();
+        Future<List<CommodityActionValue>> indicatorValues = executor.submit(timer.timed("fetch indicator values", new Callable<List<CommodityActionValue>>() {
+            @Override
+            public List<CommodityActionValue> call() throws Exception {
+                return lmisServer.fetchIndicatorValues(user, commodities);
+            }
+        }));
 
         List<CommodityAction> allocationId = commodityActionService.getAllocationIds();
         if (allocationId != null && allocationId.size() > 0) {
             Log.e("AllocationId Found", allocationId.get(0).toString());
-            timingLogger.addSplit("sync allocations");
+            started = timer.now();
             allocationService.syncAllocations(user);
+            timer.record("sync allocations", started);
         } else {
             Log.e("AllocationId", "Not found");
         }
 
-        categoryService.clearCache();
-        timingLogger.addSplit("clearCache");
-
-        timingLogger.addSplit("sync indicator values");
-        commodityActionService.syncIndicatorValues(user, all());
+        started = timer.now();
+        commodityActionService.saveActionValues(await(indicatorValues));
+        timer.record("save indicator values", started);
 
-        timingLogger.dumpToLog();
+        timer.dumpToLog();
+        return timer;
     }
 
     private void createInitialStockItemSnapShots(final List<Commodity> commodities) {
@@ -174,37 +225,38 @@ public class CommodityService {
                     Log.i("Bin Card:", "snapshot; " + stockItemSnapshot);
 
                     dao.createOrUpdate(stockItemSnapshot);
+                    dailyLedgerService.recordClosingBalance(commodity, stockItemSnapshot.getCreated(), stockItemSnapshot.getQuantity());
+                    stockHistoryService.record(commodity, stockItemSnapshot.getCreated(), stockItemSnapshot.getQuantity(), stockItemSnapshot.isStockOut());
                 }
                 return null;
             }
         });
     }
 
-    private void syncConstants(User user) {
-        fetchAndSaveIntegerConstant(user, monthlyStockCountSearchKey, MONTHLY_STOCK_COUNT_DAY);
-        fetchAndSaveIntegerConstant(user, routineOrderAlertDay, ROUTINE_ORDER_ALERT_DAY);
-    }
-
     private void updateStockValues(List<Commodity> commodities) {
         List<StockItem> stockItems = FluentIterable.from(commodities).transform(new Function<Commodity, StockItem>() {
             @Override
             public StockItem apply(Commodity input) {
-                CommodityAction commodityAction = input.getCommodityAction(DataElementType.STOCK_ON_HAND.getActivity());
-                if (commodityAction != null && commodityAction.getActionLatestValue() != null) {
-                    return new StockItem(input, Integer.parseInt(commodityAction.getActionLatestValue().getValue()));
-                } else {
-                    return new StockItem(input, 0);
-                }
+                return new StockItem(input, input.getLatestValueFromCommodityActionByName(DataElementType.STOCK_ON_HAND.getActivity()));
             }
         }).toList();
 
         for (StockItem item : stockItems) {
             createStock(item);
+            commodityRepository.updateStockOnHand(item.getCommodity(), item.getQuantity());
         }
     }
 
-    private void fetchAndSaveIntegerConstant(User user, String stockCountSearchKey, String key) {
-        Integer day = lmisServer.fetchIntegerConstant(user, stockCountSearchKey);
+    private Callable<Integer> fetchIntegerConstant(final User user, final String searchKey) {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return lmisServer.fetchIntegerConstant(user, searchKey);
+            }
+        };
+    }
+
+    private void saveIntegerConstant(String key, Integer day) {
         SharedPreferences.Editor editor = sharedPreferences.edit();
         editor.putInt(key, day);
         editor.commit();
@@ -221,14 +273,7 @@ public class CommodityService {
     }
 
     public List<Commodity> all() {
-        List<Category> categories = categoryService.all();
-        List<Commodity> commodities = new ArrayList<>();
-        for (Category category : categories) {
-            commodities.addAll(category.getCommodities());
-        }
-
-
-        return commodities;
+        return commodityRepository.all();
     }
 
     public List<Commodity> sortedAll() {
@@ -271,9 +316,9 @@ public class CommodityService {
     }
 
     private void createCommodityAction(Commodity commodity, boolean dataSetsSaved) {
-        GenericDao<DataSet> dataSetDao = new GenericDao<>(DataSet.class, context);
-        GenericDao<CommodityAction> commodityActivityDao = new GenericDao<>(CommodityAction.class, context);
-        GenericDao<CommodityActionDataSet> commodityActionDataSetDao = new GenericDao<>(CommodityActionDataSet.class, context);
+        GenericDao<DataSet> dataSetDao = new GenericDao<>(DataSet.class, dbUtil);
+        GenericDao<CommodityAction> commodityActivityDao = new GenericDao<>(CommodityAction.class, dbUtil);
+        GenericDao<CommodityActionDataSet> commodityActionDataSetDao = new GenericDao<>(CommodityActionDataSet.class, dbUtil);
         final List<DataSet> dataSets = new ArrayList<>();
         final List<CommodityActionDataSet> commodityActionDataSets = new ArrayList<>();
         final List<CommodityAction> actions = new ArrayList<>();
@@ -326,49 +371,52 @@ public class CommodityService {
     }
 
     public List<Commodity> getMost5HighlyDispensedCommodities() {
+        List<Commodity> mostDispensedCommodities;
+        synchronized (RANKING_LOCK) {
+            mostDispensedCommodities = getDispensingRanking().getTop();
+        }
 
-        if (mostDispensedCommodities == null || mostDispensedCommodities.size() == 0) {
-            List<Commodity> commodities = all();
-            Collections.sort(commodities, DispensedComparator());
-
-            mostDispensedCommodities = commodities != null && commodities.size() > 5 ? commodities.subList(0, 5) : commodities;
-
-            //initialize soh, Min and Max stock quantity for these commodities
-            for (Commodity t : mostDispensedCommodities) {
-                t.getStockOnHand();
-                t.getLatestValueFromCommodityActionByName(DataElementType.MIN_STOCK_QUANTITY.toString());
-                t.getLatestValueFromCommodityActionByName(DataElementType.MAX_STOCK_QUANTITY.toString());
-            }
+        //initialize Min and Max stock quantity for these commodities
+        for (Commodity t : mostDispensedCommodities) {
+            t.getLatestValueFromCommodityActionByName(DataElementType.MIN_STOCK_QUANTITY.toString());
+            t.getLatestValueFromCommodityActionByName(DataElementType.MAX_STOCK_QUANTITY.toString());
         }
         return mostDispensedCommodities;
     }
 
-    private Comparator<Commodity> DispensedComparator() {
-        return new Comparator<Commodity>() {
-            @Override
-            public int compare(Commodity lhs, Commodity rhs) {
-                int lhsDispensedValue = dispensingService.getDispensedTotalValue(lhs);
-                int rhsDispensedValue = dispensingService.getDispensedTotalValue(rhs);
-                return  rhsDispensedValue - lhsDispensedValue;
-            }
-        };
+    private DispensingRanking getDispensingRanking() {
+        int today = DateUtil.toEpochDay(DateUtil.today());
+        if (dispensingRanking == null || today != rankingDay) {
+            Map<String, Integer> totals = dailyLedgerService.getDispensedTotals(getWindowStart(), DateUtil.today());
+            dispensingRanking = new DispensingRanking(all(), totals, MOST_DISPENSED_COUNT);
+            rankingDay = today;
+        }
+        return dispensingRanking;
+    }
+
+    private Date getWindowStart() {
+        return DateUtil.addDayOfMonth(DateUtil.today(), 1 - mostDispensedWindowDays);
     }
 
     // used when AMC's are updated
     public void clearMostConsumedCommoditiesCache() {
-        mostDispensedCommodities = null;
+        synchronized (RANKING_LOCK) {
+            dispensingRanking = null;
+        }
     }
 
-    public void addMostDispensedCommoditiesCache(Commodity dispensingCommodity) {
-        if (mostDispensedCommodities == null || mostDispensedCommodities.size() == 0) {
-            getMost5HighlyDispensedCommodities();
-        } else {
-            if (mostDispensedCommodities.contains(dispensingCommodity)) {
-                mostDispensedCommodities.remove(dispensingCommodity);
+    public void addMostDispensedCommoditiesCache(List<DispensingItem> dispensingItems) {
+        synchronized (RANKING_LOCK) {
+            if (dispensingRanking == null || DateUtil.toEpochDay(DateUtil.today()) != rankingDay) {
+                return;
+            }
+            int windowStart = DateUtil.toEpochDay(getWindowStart());
+            for (DispensingItem item : dispensingItems) {
+                int day = DateUtil.toEpochDay(item.created());
+                if (day >= windowStart && day <= rankingDay) {
+                    dispensingRanking.add(item.getCommodity(), item.getQuantity());
+                }
             }
-            mostDispensedCommodities.add(dispensingCommodity);
-            Collections.sort(mostDispensedCommodities, DispensedComparator());
-            mostDispensedCommodities = mostDispensedCommodities != null && mostDispensedCommodities.size() > 5 ? mostDispensedCommodities.subList(0, 5) : mostDispensedCommodities;
         }
     }
 
@@ -392,148 +440,21 @@ public class CommodityService {
             monthEndDate = today.getTime();
         }
 
-        for (UtilizationItemName utilizationItemName : UtilizationItemName.values()) {
-
-            if (utilizationItemName.equals(UtilizationItemName.DAY_OF_MONTH)) {
-                utilizationItems.add(new UtilizationItem(utilizationItemName.getName(),
-                        getDaysOfMonth(commodity, monthStartDate, monthEndDate)));
-            }
+        List<DailyLedger> ledgers = dailyLedgerService.getDailyLedgers(commodity,
+                DateUtil.addDayOfMonth(monthStartDate, -1), monthEndDate);
 
-            if (utilizationItemName.equals(UtilizationItemName.OPENING_BALANCE)) {
-                utilizationItems.add(new UtilizationItem(utilizationItemName.getName(),
-                        getOpeningBalances(commodity, monthStartDate, monthEndDate)));
-            }
-
-            if (utilizationItemName.equals(UtilizationItemName.RECEIVED)) {
-                utilizationItems.add(new UtilizationItem(utilizationItemName.getName(),
-                        receiveService.getReceivedValues(commodity, monthStartDate, monthEndDate)));
-            }
-
-            if (utilizationItemName.equals(UtilizationItemName.DOSES_OPENED) && !commodity.isDevice()
-                    || utilizationItemName.equals(UtilizationItemName.USED) && commodity.isDevice()) {
-                utilizationItems.add(new UtilizationItem(utilizationItemName.getName(),
-                        dispensingService.getDispensedValues(commodity, monthStartDate, monthEndDate, utilizationItemName.equals(UtilizationItemName.DOSES_OPENED))));
-            }
-
-            if (utilizationItemName.equals(UtilizationItemName.ENDING_BALANCE)) {
-                utilizationItems.add(new UtilizationItem(utilizationItemName.getName(),
-                        getEndingBalance(commodity, monthStartDate, monthEndDate)));
-            }
-
-            if (utilizationItemName.equals(UtilizationItemName.QUANTITY_RETURNED_TO_LGA)) {
-                utilizationItems.add(new UtilizationItem(utilizationItemName.getName(),
-                        getReturnedToLGA(commodity, monthStartDate, monthEndDate)));
-            }
+        for (UtilizationItemName utilizationItemName : UtilizationItemName.values()) {
 
-            // add quantity loss
-            if (utilizationItemName.equals(UtilizationItemName.QUANTITY_LOSSES)){
-                utilizationItems.add(new UtilizationItem(utilizationItemName.getName(),
-                        lossService.getLossesValues(commodity, monthStartDate, monthEndDate)));
+            if (utilizationItemName.equals(UtilizationItemName.DOSES_OPENED) && commodity.isDevice()
+                    || utilizationItemName.equals(UtilizationItemName.USED) && !commodity.isDevice()) {
+                continue;
             }
 
+            int multiplier = utilizationItemName.equals(UtilizationItemName.DOSES_OPENED) ? commodity.dosesPerVial() : 1;
+            utilizationItems.add(new UtilizationItem(utilizationItemName.getName(),
+                    dailyLedgerService.toUtilizationValues(ledgers, utilizationItemName, multiplier)));
         }
 
         return utilizationItems;
     }
-
-    private List<UtilizationValue> getDaysOfMonth(Commodity commodity, Date startDate, Date endDate) {
-        Calendar calendar = DateUtil.calendarDate(startDate);
-        List<UtilizationValue> utilizationValues = new ArrayList<>();
-
-        Date upperLimitDate = DateUtil.addDayOfMonth(endDate, 1);
-        while (calendar.getTime().before(upperLimitDate)) {
-            UtilizationValue utilizationValue = new UtilizationValue(DateUtil.dayNumber(calendar.getTime()),
-                    DateUtil.dayNumber(calendar.getTime()));
-            utilizationValues.add(utilizationValue);
-            calendar.add(Calendar.DAY_OF_MONTH, 1);
-        }
-
-        return utilizationValues;
-    }
-
-    private List<UtilizationValue> getReturnedToLGA(Commodity commodity, Date startDate, Date endDate) {
-        List<Adjustment> adjustments = adjustmentService.getAdjustments(commodity,
-                startDate, endDate, AdjustmentReason.RETURNED_TO_LGA);
-
-        List<UtilizationValue> utilizationValues = new ArrayList<>();
-
-        Calendar calendar = DateUtil.calendarDate(startDate);
-
-        Date upperLimitDate = DateUtil.addDayOfMonth(endDate, 1);
-
-        while (calendar.getTime().before(upperLimitDate)) {
-
-            int totalAdjustments = getTotalAdjustments(calendar.getTime(), adjustments);
-            UtilizationValue utilizationValue = new UtilizationValue(DateUtil.dayNumber(calendar.getTime()), totalAdjustments);
-            utilizationValues.add(utilizationValue);
-            calendar.add(Calendar.DAY_OF_MONTH, 1);
-        }
-        return utilizationValues;
-    }
-
-    private int getTotalAdjustments(Date date, List<Adjustment> adjustments) {
-        int totalAdjustments = 0;
-        for (Adjustment adjustment : adjustments) {
-            if (DateUtil.equal(adjustment.getCreated(), date)) {
-                totalAdjustments += adjustment.getQuantity();
-            }
-        }
-        return totalAdjustments;
-    }
-
-    private List<UtilizationValue> getEndingBalance(Commodity commodity, Date startDate, Date endDate) throws Exception {
-        List<StockItemSnapshot> stockItemSnapshots = stockItemSnapshotService.get(commodity,
-                DateUtil.addDayOfMonth(startDate, -1), endDate);
-
-        List<UtilizationValue> utilizationValues = new ArrayList<>();
-
-        int previousDaysClosingStock = stockItemSnapshotService.getLatestStock(commodity, startDate, false);
-
-        Calendar calendar = DateUtil.calendarDate(startDate);
-
-        Date upperLimitDate = DateUtil.addDayOfMonth(endDate, 1);
-        while (calendar.getTime().before(upperLimitDate)) {
-
-            StockItemSnapshot closingStockSnapshot = stockItemSnapshotService.getSnapshot(
-                    calendar.getTime(), stockItemSnapshots);
-
-            int closingBalance = closingStockSnapshot == null ? previousDaysClosingStock :
-                    closingStockSnapshot.getQuantity();
-
-            UtilizationValue utilizationValue = new UtilizationValue(DateUtil.dayNumber(calendar.getTime()), closingBalance);
-            utilizationValues.add(utilizationValue);
-            calendar.add(Calendar.DAY_OF_MONTH, 1);
-            previousDaysClosingStock = closingBalance;
-        }
-
-        return utilizationValues;
-    }
-
-    private List<UtilizationValue> getOpeningBalances(Commodity commodity, Date startDate, Date endDate) throws Exception {
-        List<StockItemSnapshot> stockItemSnapshots = stockItemSnapshotService.get(commodity,
-                DateUtil.addDayOfMonth(startDate, -1), endDate);
-
-        List<UtilizationValue> utilizationValues = new ArrayList<>();
-
-        int openingStock = stockItemSnapshotService.getLatestStock(commodity, startDate, true);
-        int previousDaysOpeningStock = openingStock;
-
-        Calendar calendar = DateUtil.calendarDate(startDate);
-
-        Date upperLimitDate = DateUtil.addDayOfMonth(endDate, 1);
-        while (calendar.getTime().before(upperLimitDate)) {
-
-            Date previousDay = DateUtil.addDayOfMonth(calendar.getTime(), -1);
-            StockItemSnapshot openingStockSnapshot = stockItemSnapshotService.getSnapshot(
-                    previousDay, stockItemSnapshots);
-
-            int openingBalance = openingStockSnapshot == null ? previousDaysOpeningStock :
-                    openingStockSnapshot.getQuantity();
-            utilizationValues.add(new UtilizationValue(DateUtil.dayNumber(calendar.getTime()), openingBalance));
-            previousDaysOpeningStock = openingBalance;
-            calendar.add(Calendar.DAY_OF_MONTH, 1);
-        }
-
-        return utilizationValues;
-    }
 }
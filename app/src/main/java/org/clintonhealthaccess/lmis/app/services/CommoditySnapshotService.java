@@ -29,27 +29,49 @@
 
 package org.clintonhealthaccess.lmis.app.services;
 
-import android.content.Context;
 import android.util.Log;
 
+import com.google.common.base.Joiner;
 import com.google.common.base.Predicate;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.PreparedQuery;
 import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.stmt.SelectArg;
+import com.j256.ormlite.stmt.UpdateBuilder;
 import com.thoughtworks.dhis.models.DataValueSet;
 
 import org.clintonhealthaccess.lmis.app.LmisException;
+import org.clintonhealthaccess.lmis.app.R;
 import org.clintonhealthaccess.lmis.app.models.Adjustment;
+import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.CommodityAction;
+import org.clintonhealthaccess.lmis.app.models.CommodityActionDataSet;
 import org.clintonhealthaccess.lmis.app.models.CommoditySnapshot;
 import org.clintonhealthaccess.lmis.app.models.CommoditySnapshotValue;
+import org.clintonhealthaccess.lmis.app.models.DailyLedger;
+import org.clintonhealthaccess.lmis.app.models.DataSet;
 import org.clintonhealthaccess.lmis.app.models.User;
 import org.clintonhealthaccess.lmis.app.models.api.DataValueSetPushResponse;
+import org.clintonhealthaccess.lmis.app.persistence.CompiledQuery;
+import org.clintonhealthaccess.lmis.app.persistence.DaoRegistry;
 import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
 import org.clintonhealthaccess.lmis.app.remote.LmisServer;
 import org.clintonhealthaccess.lmis.app.sms.SmsSyncService;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import roboguice.inject.InjectResource;
 
 import static android.util.Log.e;
 import static android.util.Log.i;
@@ -63,11 +85,28 @@ public class CommoditySnapshotService {
 
     public static final String COMMODITY_ID = "commodity_id";
     public static final String COMMODITY_ACTIVITY_ID = "commodityActivity_id";
+
+    private static final CompiledQuery<CommoditySnapshot> SNAPSHOTS_FOR_PERIOD = new CompiledQuery<>(CommoditySnapshot.class,
+            "CommoditySnapshot.forPeriod", new DaoRegistry.Preparer<CommoditySnapshot>() {
+        @Override
+        public PreparedQuery<CommoditySnapshot> prepare(Dao<CommoditySnapshot, String> dao) throws SQLException {
+            QueryBuilder<CommoditySnapshot, String> queryBuilder = dao.queryBuilder();
+            queryBuilder.where().eq(COMMODITY_ID, new SelectArg())
+                    .and()
+                    .eq(COMMODITY_ACTIVITY_ID, new SelectArg())
+                    .and()
+                    .eq(PERIOD_DATE, new SelectArg());
+            return queryBuilder.prepare();
+        }
+    });
+    private static final int MAX_QUERY_ARGUMENTS = 500;
+    private static final long INITIAL_BACKOFF_MILLIS = 2000;
+
     @Inject
     DbUtil dbUtil;
 
     @Inject
-    Context context;
+    DaoRegistry daoRegistry;
 
     @Inject
     private LmisServer lmisServer;
@@ -75,6 +114,87 @@ public class CommoditySnapshotService {
     @Inject
     private SmsSyncService smsSyncService;
 
+    @InjectResource(R.integer.snapshot_push_chunk_size)
+    Integer pushChunkSize;
+
+    @InjectResource(R.integer.snapshot_push_max_attempts)
+    Integer pushMaxAttempts;
+
+    long initialBackoffMillis = INITIAL_BACKOFF_MILLIS;
+
+    public void addAll(List<? extends Snapshotable> snapshotables) {
+        final List<CommoditySnapshotValue> values = new ArrayList<>();
+        for (Snapshotable snapshotable : snapshotables) {
+            try {
+                values.addAll(snapshotable.getActivitiesValues());
+            } catch (Exception e) {
+                throw new LmisException(e);
+            }
+        }
+        if (values.isEmpty()) {
+            return;
+        }
+
+        dbUtil.withDao(CommoditySnapshot.class, new DbUtil.Operation<CommoditySnapshot, Void>() {
+            @Override
+            public Void operate(Dao<CommoditySnapshot, String> dao) throws SQLException {
+                Map<String, CommoditySnapshot> snapshots = getSnapshotsForValues(dao, values);
+                Set<CommoditySnapshot> created = new LinkedHashSet<>();
+                Set<CommoditySnapshot> updated = new LinkedHashSet<>();
+                for (CommoditySnapshotValue value : values) {
+                    String key = keyFor(value.getCommodityAction(), value.getPeriodDate());
+                    CommoditySnapshot snapshot = snapshots.get(key);
+                    if (snapshot == null) {
+                        snapshot = new CommoditySnapshot(value);
+                        snapshots.put(key, snapshot);
+                        created.add(snapshot);
+                    } else {
+                        snapshot.incrementValue(value.getValue());
+                        snapshot.setSynced(false);
+                        if (!created.contains(snapshot)) {
+                            updated.add(snapshot);
+                        }
+                    }
+                }
+                for (CommoditySnapshot snapshot : created) {
+                    dao.create(snapshot);
+                }
+                for (CommoditySnapshot snapshot : updated) {
+                    dao.update(snapshot);
+                }
+                return null;
+            }
+        });
+    }
+
+    private Map<String, CommoditySnapshot> getSnapshotsForValues(Dao<CommoditySnapshot, String> dao,
+                                                                 List<CommoditySnapshotValue> values) throws SQLException {
+        Set<Commodity> commodities = new HashSet<>();
+        Set<CommodityAction> actions = new HashSet<>();
+        Set<Date> periods = new HashSet<>();
+        for (CommoditySnapshotValue value : values) {
+            commodities.add(value.getCommodityAction().getCommodity());
+            actions.add(value.getCommodityAction());
+            periods.add(value.getPeriodDate());
+        }
+        QueryBuilder<CommoditySnapshot, String> queryBuilder = dao.queryBuilder();
+        queryBuilder.where().in(COMMODITY_ID, commodities).and().in(COMMODITY_ACTIVITY_ID, actions)
+                .and().in(PERIOD_DATE, periods);
+
+        Map<String, CommoditySnapshot> snapshots = new HashMap<>();
+        for (CommoditySnapshot snapshot : queryBuilder.query()) {
+            String key = keyFor(snapshot.getCommodityAction(), snapshot.getPeriodDate());
+            if (!snapshots.containsKey(key)) {
+                snapshots.put(key, snapshot);
+            }
+        }
+        return snapshots;
+    }
+
+    private static String keyFor(CommodityAction commodityAction, Date periodDate) {
+        return commodityAction.getId() + "|" + DailyLedger.dayKey(periodDate);
+    }
+
     public void add(final Snapshotable snapshotable) {
 
         List<CommoditySnapshotValue> commoditySnapshotValues = null;
@@ -84,7 +204,7 @@ public class CommoditySnapshotService {
             e.printStackTrace();
         }
 
-        GenericDao<CommoditySnapshot> snapshotDao = new GenericDao<>(CommoditySnapshot.class, context);
+        GenericDao<CommoditySnapshot> snapshotDao = new GenericDao<>(CommoditySnapshot.class, dbUtil);
 
         for (CommoditySnapshotValue value : commoditySnapshotValues) {
             List<CommoditySnapshot> commoditySnapshots = getSnapshotsForCommodityPeriod(value);
@@ -108,19 +228,10 @@ public class CommoditySnapshotService {
         snapshotDao.create(commoditySnapshot);
     }
 
-    private List<CommoditySnapshot> getSnapshotsForCommodityPeriod(final CommoditySnapshotValue commoditySnapshotValue) {
-        return dbUtil.withDao(CommoditySnapshot.class, new DbUtil.Operation<CommoditySnapshot, List<CommoditySnapshot>>() {
-            @Override
-            public List<CommoditySnapshot> operate(Dao<CommoditySnapshot, String> dao) throws SQLException {
-                QueryBuilder<CommoditySnapshot, String> queryBuilder = dao.queryBuilder();
-                queryBuilder.where().eq(COMMODITY_ID, commoditySnapshotValue.getCommodityAction().getCommodity())
-                        .and()
-                        .eq(COMMODITY_ACTIVITY_ID, commoditySnapshotValue.getCommodityAction())
-                        .and()
-                        .eq(PERIOD_DATE, commoditySnapshotValue.getPeriodDate());
-                return queryBuilder.query();
-            }
-        });
+    private List<CommoditySnapshot> getSnapshotsForCommodityPeriod(CommoditySnapshotValue commoditySnapshotValue) {
+        CommodityAction commodityAction = commoditySnapshotValue.getCommodityAction();
+        return daoRegistry.query(SNAPSHOTS_FOR_PERIOD, commodityAction.getCommodity().getId(), commodityAction.getId(),
+                commoditySnapshotValue.getPeriodDate());
     }
 
     public List<CommoditySnapshot> getUnSyncedSnapshots() {
@@ -144,20 +255,86 @@ public class CommoditySnapshotService {
         }).toList();
     }
 
-    public void syncWithServer(User user) {
+    public int syncWithServer(User user) {
         List<CommoditySnapshot> snapshotsToSync = getUnSyncedSnapshots();
-        if (!isEmpty(snapshotsToSync)) {
-            i("==> Syncing...........", snapshotsToSync.size() + " snapshots");
-            DataValueSet valueSet = toDataValueSet(snapshotsToSync, user.getFacilityCode());
-            try {
-                DataValueSetPushResponse response = lmisServer.pushDataValueSet(valueSet, user);
-                if (response.isSuccess()) {
-                    markSnapShotsAsSynced(snapshotsToSync);
+        if (isEmpty(snapshotsToSync)) {
+            return 0;
+        }
+        i("==> Syncing...........", snapshotsToSync.size() + " snapshots");
+        Map<String, List<DataSet>> dataSetsByAction = getDataSetsByAction(snapshotsToSync);
+        int synced = 0;
+        for (List<CommoditySnapshot> chunk : Lists.partition(snapshotsToSync, pushChunkSize)) {
+            DataValueSet valueSet = toDataValueSet(chunk, user.getFacilityCode(), dataSetsByAction);
+            if (!valueSet.getDataValues().isEmpty()) {
+                DataValueSetPushResponse response;
+                try {
+                    response = pushWithRetry(valueSet, user);
+                } catch (LmisException ex) {
+                    e("==> Syncing...........", format("%d snapshots left for the next sync", snapshotsToSync.size() - synced));
+                    break;
                 }
+                if (!response.acknowledges(valueSet.getDataValues().size())) {
+                    e("==> Syncing...........", format("chunk of %d snapshots rejected: %s", chunk.size(), response.getDescription()));
+                    continue;
+                }
+            }
+            markSnapShotsAsSynced(chunk);
+            synced += chunk.size();
+        }
+        i("==> Syncing...........", format("%d of %d snapshots synced", synced, snapshotsToSync.size()));
+        return synced;
+    }
+
+    private DataValueSetPushResponse pushWithRetry(DataValueSet valueSet, User user) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return lmisServer.pushDataValueSet(valueSet, user);
             } catch (LmisException ex) {
-                e("==> Syncing...........", snapshotsToSync.size() + " snapshots failed");
+                if (attempt >= pushMaxAttempts) {
+                    throw ex;
+                }
+                long delay = initialBackoffMillis << (attempt - 1);
+                e("==> Syncing...........", format("push attempt %d failed, retrying in %dms", attempt, delay));
+                sleep(delay);
+            }
+        }
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new LmisException(ex);
+        }
+    }
+
+    private Map<String, List<DataSet>> getDataSetsByAction(List<CommoditySnapshot> snapshots) {
+        final Set<String> actionIds = new HashSet<>();
+        for (CommoditySnapshot snapshot : snapshots) {
+            actionIds.add(snapshot.getCommodityAction().getId());
+        }
+        final Map<String, List<DataSet>> dataSetsByAction = new HashMap<>();
+        for (final List<String> ids : Lists.partition(new ArrayList<>(actionIds), MAX_QUERY_ARGUMENTS)) {
+            List<String[]> rows = dbUtil.withDao(CommodityActionDataSet.class, new DbUtil.Operation<CommodityActionDataSet, List<String[]>>() {
+                @Override
+                public List<String[]> operate(Dao<CommodityActionDataSet, String> dao) throws SQLException {
+                    return dao.queryRaw("SELECT cad.commodityAction_id, ds.id, ds.periodType FROM commodityActionDataSet cad " +
+                            "JOIN datasets ds ON ds.id = cad.dataSet_id WHERE cad.commodityAction_id IN (" +
+                            Joiner.on(",").join(Collections.nCopies(ids.size(), "?")) + ") ORDER BY cad.id",
+                            ids.toArray(new String[ids.size()])).getResults();
+                }
+            });
+            for (String[] row : rows) {
+                if (!dataSetsByAction.containsKey(row[0])) {
+                    dataSetsByAction.put(row[0], new ArrayList<DataSet>());
+                }
+                DataSet dataSet = new DataSet(row[1]);
+                dataSet.setPeriodType(row[2]);
+                dataSetsByAction.get(row[0]).add(dataSet);
             }
         }
+        return dataSetsByAction;
     }
 
     public void syncWithServerThroughSms(User user) {
@@ -173,18 +350,36 @@ public class CommoditySnapshotService {
     }
 
     private void markSnapShotsAsSmsSent(List<CommoditySnapshot> snapshots) {
-        GenericDao<CommoditySnapshot> dao = new GenericDao<>(CommoditySnapshot.class, context);
+        GenericDao<CommoditySnapshot> dao = new GenericDao<>(CommoditySnapshot.class, dbUtil);
         for (CommoditySnapshot snapshot : snapshots) {
             snapshot.setSmsSent(true);
             dao.update(snapshot);
         }
     }
 
+    // a snapshot whose value changed while its push was in flight stays unsynced for the next push
     private void markSnapShotsAsSynced(final List<CommoditySnapshot> snapshotsToSync) {
-        GenericDao<CommoditySnapshot> dailyCommoditySnapshotDao = new GenericDao<>(CommoditySnapshot.class, context);
+        final Map<String, List<Long>> idsByValue = new HashMap<>();
         for (CommoditySnapshot snapshot : snapshotsToSync) {
             snapshot.setSynced(true);
-            dailyCommoditySnapshotDao.update(snapshot);
+            if (!idsByValue.containsKey(snapshot.getValue())) {
+                idsByValue.put(snapshot.getValue(), new ArrayList<Long>());
+            }
+            idsByValue.get(snapshot.getValue()).add(snapshot.getId());
         }
+        dbUtil.withDao(CommoditySnapshot.class, new DbUtil.Operation<CommoditySnapshot, Void>() {
+            @Override
+            public Void operate(Dao<CommoditySnapshot, String> dao) throws SQLException {
+                for (Map.Entry<String, List<Long>> entry : idsByValue.entrySet()) {
+                    for (List<Long> ids : Lists.partition(entry.getValue(), MAX_QUERY_ARGUMENTS)) {
+                        UpdateBuilder<CommoditySnapshot, String> updateBuilder = dao.updateBuilder();
+                        updateBuilder.updateColumnValue("synced", true).where().in("id", ids)
+                                .and().eq("value", new SelectArg(entry.getKey()));
+                        updateBuilder.update();
+                    }
+                }
+                return null;
+            }
+        });
     }
 }
@@ -0,0 +1,341 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.services;
+
+import com.google.common.base.Joiner;
+import com.google.inject.Inject;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.QueryBuilder;
+
+import org.clintonhealthaccess.lmis.app.models.AdjustmentReason;
+import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.DailyLedger;
+import org.clintonhealthaccess.lmis.app.models.LedgerBlock;
+import org.clintonhealthaccess.lmis.app.models.reports.UtilizationItemName;
+import org.clintonhealthaccess.lmis.app.models.reports.UtilizationValue;
+import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
+import org.clintonhealthaccess.lmis.app.utils.DateUtil;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.clintonhealthaccess.lmis.app.models.DailyLedger.ADJUSTED;
+import static org.clintonhealthaccess.lmis.app.models.DailyLedger.CLOSING_BALANCE;
+import static org.clintonhealthaccess.lmis.app.models.DailyLedger.DAY;
+import static org.clintonhealthaccess.lmis.app.models.DailyLedger.DISPENSED;
+import static org.clintonhealthaccess.lmis.app.models.DailyLedger.LOST;
+import static org.clintonhealthaccess.lmis.app.models.DailyLedger.PHYSICAL_COUNT;
+import static org.clintonhealthaccess.lmis.app.models.DailyLedger.RECEIVED;
+import static org.clintonhealthaccess.lmis.app.models.DailyLedger.RECEIVED_FROM_FACILITY;
+import static org.clintonhealthaccess.lmis.app.models.DailyLedger.RETURNED_TO_LGA;
+import static org.clintonhealthaccess.lmis.app.models.DailyLedger.SENT_TO_FACILITY;
+import static org.clintonhealthaccess.lmis.app.models.DailyLedger.TABLE;
+
+public class DailyLedgerService {
+
+    private static final String INSERT_EMPTY = "INSERT OR IGNORE INTO " + TABLE + " (id, commodity_id, " + DAY + ", " +
+            RECEIVED + ", " + DISPENSED + ", " + LOST + ", " + PHYSICAL_COUNT + ", " + RECEIVED_FROM_FACILITY + ", " +
+            SENT_TO_FACILITY + ", " + RETURNED_TO_LGA + ", " + ADJUSTED + ") ";
+
+    public static final String NET_ADJUSTED_SQL = "COALESCE((SELECT SUM(CASE WHEN a.positive THEN a.quantity ELSE -a.quantity END) " +
+            "FROM adjustment a WHERE a.commodity_id = " + TABLE + ".commodity_id AND a.created = " + TABLE + "." + DAY + "), 0)";
+
+    public static final List<String> REBUILD_STATEMENTS = asList(
+            "DELETE FROM " + TABLE,
+            INSERT_EMPTY + "SELECT commodity_id || '|' || created, commodity_id, created, 0, 0, 0, 0, 0, 0, 0, 0 FROM (" +
+                    "SELECT i.commodity_id AS commodity_id, r.created AS created FROM receive_items i JOIN receives r ON i.receive_id = r.id " +
+                    "UNION SELECT i.commodity_id, d.created FROM dispensingItems i JOIN dispensings d ON i.dispensing_id = d.id " +
+                    "UNION SELECT i.commodity_id, l.created FROM loss_items i JOIN losses l ON i.loss_id = l.id " +
+                    "UNION SELECT commodity_id, created FROM adjustment " +
+                    "UNION SELECT commodity_id, created FROM stockitemsnapshot)",
+            "UPDATE " + TABLE + " SET " +
+                    RECEIVED + " = COALESCE((SELECT SUM(i.quantityReceived) FROM receive_items i JOIN receives r ON i.receive_id = r.id " +
+                    "WHERE i.commodity_id = " + TABLE + ".commodity_id AND r.created = " + TABLE + "." + DAY + "), 0), " +
+                    DISPENSED + " = COALESCE((SELECT SUM(i.quantity) FROM dispensingItems i JOIN dispensings d ON i.dispensing_id = d.id " +
+                    "WHERE i.commodity_id = " + TABLE + ".commodity_id AND d.created = " + TABLE + "." + DAY + "), 0), " +
+                    LOST + " = COALESCE((SELECT SUM(ld.value) FROM loss_item_details ld JOIN loss_items i ON ld.lossItem_id = i.id " +
+                    "JOIN losses l ON i.loss_id = l.id WHERE i.commodity_id = " + TABLE + ".commodity_id AND l.created = " + TABLE + "." + DAY + "), 0), " +
+                    PHYSICAL_COUNT + " = " + adjustedSql(AdjustmentReason.PHYSICAL_COUNT) + ", " +
+                    RECEIVED_FROM_FACILITY + " = " + adjustedSql(AdjustmentReason.RECEIVED_FROM_ANOTHER_FACILITY) + ", " +
+                    SENT_TO_FACILITY + " = " + adjustedSql(AdjustmentReason.SENT_TO_ANOTHER_FACILITY) + ", " +
+                    RETURNED_TO_LGA + " = " + adjustedSql(AdjustmentReason.RETURNED_TO_LGA) + ", " +
+                    ADJUSTED + " = " + NET_ADJUSTED_SQL + ", " +
+                    CLOSING_BALANCE + " = (SELECT s.quantity FROM stockitemsnapshot s WHERE s.commodity_id = " + TABLE + ".commodity_id " +
+                    "AND s.created = " + TABLE + "." + DAY + " ORDER BY s.id LIMIT 1)"
+    );
+
+    private static final List<String> MOVEMENT_COLUMNS = asList(RECEIVED, DISPENSED, LOST, PHYSICAL_COUNT,
+            RECEIVED_FROM_FACILITY, SENT_TO_FACILITY, RETURNED_TO_LGA, ADJUSTED);
+
+    private static final String INSERT_EMPTY_BLOCK = "INSERT OR IGNORE INTO " + LedgerBlock.TABLE + " (id, commodity_id, " +
+            LedgerBlock.BLOCK + ", " + Joiner.on(", ").join(MOVEMENT_COLUMNS) + ") VALUES (?, ?, ?, 0, 0, 0, 0, 0, 0, 0, 0)";
+
+    private static final String NET_CHANGE = RECEIVED + " - " + DISPENSED + " - " + LOST + " + " + ADJUSTED;
+
+    private static final int LAST_DAY = Integer.MAX_VALUE;
+
+    public static final List<String> BLOCK_REBUILD_STATEMENTS = asList(
+            "DELETE FROM " + LedgerBlock.TABLE,
+            "INSERT INTO " + LedgerBlock.TABLE + " (id, commodity_id, " + LedgerBlock.BLOCK + ", " +
+                    Joiner.on(", ").join(MOVEMENT_COLUMNS) + ") SELECT commodity_id || '|' || (" + DAY + " / " +
+                    LedgerBlock.BLOCK_DAYS + "), commodity_id, " + DAY + " / " + LedgerBlock.BLOCK_DAYS + ", " +
+                    sumsOf(MOVEMENT_COLUMNS) + " FROM " + TABLE + " GROUP BY commodity_id, " + DAY + " / " + LedgerBlock.BLOCK_DAYS
+    );
+
+    @Inject
+    DbUtil dbUtil;
+
+    public void recordClosingBalance(final Commodity commodity, final Date day, final int quantity) {
+        dbUtil.withDao(DailyLedger.class, new DbUtil.Operation<DailyLedger, Void>() {
+            @Override
+            public Void operate(Dao<DailyLedger, String> dao) throws SQLException {
+                String id = insertIfMissing(dao, commodity, day);
+                dao.updateRaw("UPDATE " + TABLE + " SET " + CLOSING_BALANCE + " = ? WHERE id = ?",
+                        String.valueOf(quantity), id);
+                return null;
+            }
+        });
+    }
+
+    public int getTotal(Commodity commodity, String column, Date startDate, Date endDate) {
+        return sum(commodity, column, DateUtil.toEpochDay(startDate), DateUtil.toEpochDay(endDate));
+    }
+
+    // read inside a stock transaction, so it sees every movement committed before it
+    public int getNetChangeAfter(Commodity commodity, Date day) {
+        return sum(commodity, NET_CHANGE, DateUtil.toEpochDay(day) + 1, LAST_DAY);
+    }
+
+    public void shiftClosingBalancesAfter(final Commodity commodity, final Date day, final int quantity) {
+        dbUtil.withDao(DailyLedger.class, new DbUtil.Operation<DailyLedger, Void>() {
+            @Override
+            public Void operate(Dao<DailyLedger, String> dao) throws SQLException {
+                dao.updateRaw("UPDATE " + TABLE + " SET " + CLOSING_BALANCE + " = " + CLOSING_BALANCE + " + ? " +
+                                "WHERE commodity_id = ? AND " + DAY + " > ? AND " + CLOSING_BALANCE + " IS NOT NULL",
+                        String.valueOf(quantity), commodity.getId(), DailyLedger.dayKey(day));
+                return null;
+            }
+        });
+    }
+
+    public List<DailyLedger> getDailyLedgers(final Commodity commodity, final Date startDate, final Date endDate) {
+        DailyLedger previous = dbUtil.withDao(DailyLedger.class, new DbUtil.Operation<DailyLedger, DailyLedger>() {
+            @Override
+            public DailyLedger operate(Dao<DailyLedger, String> dao) throws SQLException {
+                QueryBuilder<DailyLedger, String> queryBuilder = dao.queryBuilder();
+                queryBuilder.where().eq("commodity_id", commodity.getId()).and().lt(DAY, startDate)
+                        .and().isNotNull(CLOSING_BALANCE);
+                queryBuilder.orderBy(DAY, false);
+                return queryBuilder.queryForFirst();
+            }
+        });
+        List<DailyLedger> ledgers = dbUtil.withDao(DailyLedger.class, new DbUtil.Operation<DailyLedger, List<DailyLedger>>() {
+            @Override
+            public List<DailyLedger> operate(Dao<DailyLedger, String> dao) throws SQLException {
+                QueryBuilder<DailyLedger, String> queryBuilder = dao.queryBuilder();
+                queryBuilder.where().eq("commodity_id", commodity.getId()).and().between(DAY, startDate, endDate);
+                return queryBuilder.query();
+            }
+        });
+
+        Map<String, DailyLedger> ledgersByDay = new HashMap<>();
+        for (DailyLedger ledger : ledgers) {
+            ledgersByDay.put(DailyLedger.dayKey(ledger.getDay()), ledger);
+        }
+
+        int closingBalance = previous == null ? 0 : previous.getClosingBalance();
+        List<DailyLedger> days = new ArrayList<>();
+        Calendar calendar = DateUtil.calendarDate(startDate);
+        Date upperLimitDate = DateUtil.addDayOfMonth(endDate, 1);
+        while (calendar.getTime().before(upperLimitDate)) {
+            Date day = calendar.getTime();
+            DailyLedger ledger = ledgersByDay.get(DailyLedger.dayKey(day));
+            if (ledger == null) {
+                ledger = new DailyLedger(commodity, day);
+            }
+            if (ledger.getClosingBalance() == null) {
+                ledger.setClosingBalance(closingBalance);
+            }
+            ledger.setDay(day);
+            closingBalance = ledger.getClosingBalance();
+            days.add(ledger);
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        return days;
+    }
+
+    public Map<String, Integer> getDispensedTotals(final Date startDate, final Date endDate) {
+        return dbUtil.withDao(DailyLedger.class, new DbUtil.Operation<DailyLedger, Map<String, Integer>>() {
+            @Override
+            public Map<String, Integer> operate(Dao<DailyLedger, String> dao) throws SQLException {
+                List<String[]> rows = dao.queryRaw("SELECT commodity_id, SUM(" + DISPENSED + ") FROM " + TABLE +
+                                " WHERE " + DAY + " BETWEEN ? AND ? GROUP BY commodity_id",
+                        DailyLedger.dayKey(startDate), DailyLedger.dayKey(endDate)).getResults();
+                Map<String, Integer> totals = new HashMap<>();
+                for (String[] row : rows) {
+                    totals.put(row[0], Integer.parseInt(row[1]));
+                }
+                return totals;
+            }
+        });
+    }
+
+    public List<UtilizationValue> getUtilizationValues(Commodity commodity, Date startDate, Date endDate,
+                                                       UtilizationItemName utilizationItemName, int multiplier) {
+        List<DailyLedger> ledgers = getDailyLedgers(commodity, DateUtil.addDayOfMonth(startDate, -1), endDate);
+        return toUtilizationValues(ledgers, utilizationItemName, multiplier);
+    }
+
+    public List<UtilizationValue> toUtilizationValues(List<DailyLedger> ledgers, UtilizationItemName utilizationItemName,
+                                                      int multiplier) {
+        List<UtilizationValue> utilizationValues = new ArrayList<>();
+        for (int i = 1; i < ledgers.size(); i++) {
+            DailyLedger ledger = ledgers.get(i);
+            int value;
+            switch (utilizationItemName) {
+                case OPENING_BALANCE:
+                    value = ledgers.get(i - 1).getClosingBalance();
+                    break;
+                case RECEIVED:
+                    value = ledger.getReceived();
+                    break;
+                case DOSES_OPENED:
+                case USED:
+                    value = ledger.getDispensed() * multiplier;
+                    break;
+                case ENDING_BALANCE:
+                    value = ledger.getClosingBalance();
+                    break;
+                case QUANTITY_RETURNED_TO_LGA:
+                    value = ledger.getReturnedToLga();
+                    break;
+                case QUANTITY_LOSSES:
+                    value = ledger.getLost();
+                    break;
+                default:
+                    value = DateUtil.dayNumber(ledger.getDay());
+            }
+            utilizationValues.add(new UtilizationValue(DateUtil.dayNumber(ledger.getDay()), value));
+        }
+        return utilizationValues;
+    }
+
+    public void rebuild() {
+        dbUtil.withDao(DailyLedger.class, new DbUtil.Operation<DailyLedger, Void>() {
+            @Override
+            public Void operate(Dao<DailyLedger, String> dao) throws SQLException {
+                for (String statement : REBUILD_STATEMENTS) {
+                    dao.executeRaw(statement);
+                }
+                for (String statement : BLOCK_REBUILD_STATEMENTS) {
+                    dao.executeRaw(statement);
+                }
+                return null;
+            }
+        });
+    }
+
+    void increment(final Commodity commodity, final Date day, final String column, final int quantity) {
+        dbUtil.withDao(DailyLedger.class, new DbUtil.Operation<DailyLedger, Void>() {
+            @Override
+            public Void operate(Dao<DailyLedger, String> dao) throws SQLException {
+                String id = insertIfMissing(dao, commodity, day);
+                dao.updateRaw("UPDATE " + TABLE + " SET " + column + " = " + column + " + ? WHERE id = ?",
+                        String.valueOf(quantity), id);
+                int block = LedgerBlock.blockOf(DateUtil.toEpochDay(day));
+                String blockId = LedgerBlock.idFor(commodity.getId(), block);
+                dao.executeRaw(INSERT_EMPTY_BLOCK, blockId, commodity.getId(), String.valueOf(block));
+                dao.updateRaw("UPDATE " + LedgerBlock.TABLE + " SET " + column + " = " + column + " + ? WHERE id = ?",
+                        String.valueOf(quantity), blockId);
+                return null;
+            }
+        });
+    }
+
+    // whole blocks come from ledger_blocks, so a range reads at most two blocks of daily rows
+    private int sum(final Commodity commodity, final String expression, int fromDay, int toDay) {
+        if (toDay < fromDay) {
+            return 0;
+        }
+        int firstBlock = LedgerBlock.blockOf(fromDay);
+        int lastBlock = LedgerBlock.blockOf(toDay);
+        final String[] arguments;
+        final String sql;
+        if (firstBlock == lastBlock) {
+            sql = "SELECT " + daysSumSql(expression);
+            arguments = new String[]{commodity.getId(), String.valueOf(fromDay), String.valueOf(toDay)};
+        } else {
+            sql = "SELECT " + daysSumSql(expression) + " + " + daysSumSql(expression) + " + (SELECT COALESCE(SUM(" +
+                    expression + "), 0) FROM " + LedgerBlock.TABLE + " WHERE commodity_id = ? AND " + LedgerBlock.BLOCK +
+                    " BETWEEN ? AND ?)";
+            arguments = new String[]{
+                    commodity.getId(), String.valueOf(fromDay), String.valueOf(LedgerBlock.firstDayOf(firstBlock + 1) - 1),
+                    commodity.getId(), String.valueOf(LedgerBlock.firstDayOf(lastBlock)), String.valueOf(toDay),
+                    commodity.getId(), String.valueOf(firstBlock + 1), String.valueOf(lastBlock - 1)};
+        }
+        String[] row = dbUtil.withDao(DailyLedger.class, new DbUtil.Operation<DailyLedger, String[]>() {
+            @Override
+            public String[] operate(Dao<DailyLedger, String> dao) throws SQLException {
+                return dao.queryRaw(sql, arguments).getFirstResult();
+            }
+        });
+        return Integer.parseInt(row[0]);
+    }
+
+    private static String daysSumSql(String expression) {
+        return "(SELECT COALESCE(SUM(" + expression + "), 0) FROM " + TABLE + " WHERE commodity_id = ? AND " + DAY +
+                " BETWEEN ? AND ?)";
+    }
+
+    private static String sumsOf(List<String> columns) {
+        List<String> sums = new ArrayList<>();
+        for (String column : columns) {
+            sums.add("SUM(" + column + ")");
+        }
+        return Joiner.on(", ").join(sums);
+    }
+
+    private String insertIfMissing(Dao<DailyLedger, String> dao, Commodity commodity, Date day) throws SQLException {
+        String id = DailyLedger.idFor(commodity, day);
+        dao.executeRaw(INSERT_EMPTY + "VALUES (?, ?, ?, 0, 0, 0, 0, 0, 0, 0, 0)", id, commodity.getId(), DailyLedger.dayKey(day));
+        return id;
+    }
+
+    private static String adjustedSql(AdjustmentReason reason) {
+        return "COALESCE((SELECT SUM(a.quantity) FROM adjustment a WHERE a.commodity_id = " + TABLE + ".commodity_id " +
+                "AND a.created = " + TABLE + "." + DAY + " AND a.reason = '" + reason.getName() + "'), 0)";
+    }
+}
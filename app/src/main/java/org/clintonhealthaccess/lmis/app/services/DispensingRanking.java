@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.services;
+
+import org.clintonhealthaccess.lmis.app.models.Commodity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the top K commodities by quantity dispensed in a window.
+ * Ties keep the order the commodities were given in.
+ */
+class DispensingRanking {
+    private final int size;
+    private final Map<Commodity, Integer> totals = new HashMap<>();
+    private final Map<Commodity, Integer> positions = new HashMap<>();
+    private final Map<String, Commodity> commoditiesById = new HashMap<>();
+    private final PriorityQueue<Commodity> top;
+
+    DispensingRanking(List<Commodity> commodities, Map<String, Integer> dispensedTotals, int size) {
+        this.size = size;
+        this.top = new PriorityQueue<>(Math.max(size, 1), weakestFirst());
+        for (Commodity commodity : commodities) {
+            Integer total = dispensedTotals.get(commodity.getId());
+            totals.put(commodity, total == null ? 0 : total);
+            positions.put(commodity, positions.size());
+            commoditiesById.put(commodity.getId(), commodity);
+            offer(commodity);
+        }
+    }
+
+    void add(Commodity commodity, int quantity) {
+        Commodity canonical = commoditiesById.get(commodity.getId());
+        if (canonical == null) {
+            return;
+        }
+        int total = totals.get(canonical);
+        boolean ranked = top.remove(canonical);
+        totals.put(canonical, total + quantity);
+        if (ranked) {
+            top.add(canonical);
+        } else {
+            offer(canonical);
+        }
+    }
+
+    List<Commodity> getTop() {
+        List<Commodity> commodities = new ArrayList<>(top);
+        Collections.sort(commodities, Collections.reverseOrder(weakestFirst()));
+        return commodities;
+    }
+
+    int totalFor(Commodity commodity) {
+        Integer total = totals.get(commodity);
+        return total == null ? 0 : total;
+    }
+
+    private void offer(Commodity commodity) {
+        if (top.size() < size) {
+            top.add(commodity);
+        } else if (size > 0 && weakestFirst().compare(top.peek(), commodity) < 0) {
+            top.poll();
+            top.add(commodity);
+        }
+    }
+
+    private Comparator<Commodity> weakestFirst() {
+        return new Comparator<Commodity>() {
+            @Override
+            public int compare(Commodity lhs, Commodity rhs) {
+                int byTotal = totals.get(lhs).compareTo(totals.get(rhs));
+                if (byTotal != 0) {
+                    return byTotal;
+                }
+                return positions.get(rhs).compareTo(positions.get(lhs));
+            }
+        };
+    }
+}
@@ -31,16 +31,16 @@ package org.clintonhealthaccess.lmis.app.services;
 
 import android.content.Context;
 
-import com.google.common.base.Predicate;
-import com.google.common.collect.FluentIterable;
 import com.google.inject.Inject;
 import com.j256.ormlite.dao.Dao;
 import com.j256.ormlite.stmt.PreparedQuery;
 import com.j256.ormlite.stmt.QueryBuilder;
 
 import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.DailyLedger;
 import org.clintonhealthaccess.lmis.app.models.Dispensing;
 import org.clintonhealthaccess.lmis.app.models.DispensingItem;
+import org.clintonhealthaccess.lmis.app.models.reports.UtilizationItemName;
 import org.clintonhealthaccess.lmis.app.models.reports.UtilizationValue;
 import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
 import org.clintonhealthaccess.lmis.app.utils.DateUtil;
@@ -48,10 +48,9 @@ import org.clintonhealthaccess.lmis.app.utils.Helpers;
 
 import java.sql.SQLException;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import static com.j256.ormlite.android.apptools.OpenHelperManager.getHelper;
 import static com.j256.ormlite.dao.DaoManager.createDao;
@@ -59,44 +58,46 @@ import static com.j256.ormlite.dao.DaoManager.createDao;
 public class DispensingService {
 
     @Inject
-    StockService stockService;
-    @Inject
-    CommoditySnapshotService commoditySnapshotService;
+    StockTransactionService stockTransactionService;
 
     @Inject
     CommodityService commodityService;
 
+    @Inject
+    DailyLedgerService dailyLedgerService;
+
     @Inject
     Context context;
     @Inject
     private DbUtil dbUtil;
 
-    public void addDispensing(Dispensing dispensing) {
-        GenericDao<Dispensing> dispensingDao = new GenericDao<>(Dispensing.class, context);
-        dispensingDao.create(dispensing);
-        saveDispensingItems(dispensing.getDispensingItems());
+    public void addDispensing(final Dispensing dispensing) {
+        final List<DispensingItem> dispensingItems = dispensing.getDispensingItems();
+        StockTransaction transaction = new StockTransaction();
+        for (DispensingItem dispensingItem : dispensingItems) {
+            transaction.reduce(dispensingItem, dispensingItem.getQuantity(), dispensingItem.created(), DailyLedger.DISPENSED);
+        }
+        stockTransactionService.commit(transaction, new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                new GenericDao<>(Dispensing.class, dbUtil).create(dispensing);
+                saveDispensingItems(dispensingItems);
+                return null;
+            }
+        });
+        commodityService.addMostDispensedCommoditiesCache(dispensingItems);
     }
 
     private void saveDispensingItems(final List<DispensingItem> dispensingItems) {
-        GenericDao<DispensingItem> dao = new GenericDao<>(DispensingItem.class, context);
-        dao.bulkOperation(new DbUtil.Operation<DispensingItem, Object>() {
+        dbUtil.withDao(DispensingItem.class, new DbUtil.Operation<DispensingItem, Void>() {
             @Override
-            public Object operate(Dao<DispensingItem, String> dao) throws SQLException {
-                for(DispensingItem dispensingItem : dispensingItems){
+            public Void operate(Dao<DispensingItem, String> dao) throws SQLException {
+                for (DispensingItem dispensingItem : dispensingItems) {
                     dao.create(dispensingItem);
                 }
                 return null;
             }
         });
-        for (DispensingItem dispensingItem : dispensingItems) {
-            adjustStockLevel(dispensingItem);
-            commoditySnapshotService.add(dispensingItem);
-        }
-        commodityService.addMostDispensedCommoditiesCache(dispensingItems.get(0).getCommodity());
-    }
-
-    private void adjustStockLevel(DispensingItem dispensing) {
-        stockService.reduceStockLevelFor(dispensing.getCommodity(), dispensing.getQuantity(), dispensing.created());
     }
 
     public String getNextPrescriptionId() {
@@ -136,48 +137,11 @@ public class DispensingService {
     }
 
     public int getDispensedTotalValue(Commodity commodity) {
-        return GenericService.getTotal(commodity, DateUtil.today(), DateUtil.today(), Dispensing.class, DispensingItem.class, context);
+        return dailyLedgerService.getTotal(commodity, DailyLedger.DISPENSED, DateUtil.today(), DateUtil.today());
     }
 
     public List<UtilizationValue> getDispensedValues(Commodity commodity, Date startDate, Date endDate, boolean forVial) {
-        List<DispensingItem> items = GenericService.getItems(commodity, startDate, endDate, Dispensing.class, DispensingItem.class, context);
-
-        List<UtilizationValue> utilizationValues = new ArrayList<>();
-
-        Calendar calendar = DateUtil.calendarDate(startDate);
-
-        Date upperLimitDate = DateUtil.addDayOfMonth(endDate, 1);
-
-        int dosesPerVial = commodity.dosesPerVial();
-
-        while (calendar.getTime().before(upperLimitDate)) {
-            int dayDispensingItems = getTotal(calendar.getTime(), items);
-
-            if (forVial) {
-                dayDispensingItems = dayDispensingItems * dosesPerVial;
-            }
-
-            UtilizationValue utilizationValue =
-                    new UtilizationValue(DateUtil.dayNumber(calendar.getTime()), dayDispensingItems);
-            utilizationValues.add(utilizationValue);
-            calendar.add(Calendar.DAY_OF_MONTH, 1);
-        }
-        return utilizationValues;
-    }
-
-    private int getTotal(final Date date, List<DispensingItem> dispensingItems) {
-        List<DispensingItem> daysDispensingItems = FluentIterable.from(dispensingItems).filter(new Predicate<DispensingItem>() {
-            @Override
-            public boolean apply(DispensingItem input) {
-                return DateUtil.equal(input.created(), date);
-            }
-        }).toList();
-
-        int total = 0;
-        for (DispensingItem dispensingItem : daysDispensingItems) {
-            total += dispensingItem.getQuantity();
-        }
-
-        return total;
+        int multiplier = forVial ? commodity.dosesPerVial() : 1;
+        return dailyLedgerService.getUtilizationValues(commodity, startDate, endDate, UtilizationItemName.DOSES_OPENED, multiplier);
     }
 }
@@ -40,20 +40,42 @@ import com.j256.ormlite.stmt.QueryBuilder;
 import org.clintonhealthaccess.lmis.app.LmisException;
 import org.clintonhealthaccess.lmis.app.models.BaseItem;
 import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.DailyLedger;
+import org.clintonhealthaccess.lmis.app.models.Dispensing;
+import org.clintonhealthaccess.lmis.app.models.Loss;
+import org.clintonhealthaccess.lmis.app.models.Receive;
 import org.clintonhealthaccess.lmis.app.persistence.LmisSqliteOpenHelper;
 import org.clintonhealthaccess.lmis.app.utils.DateUtil;
 
 import java.sql.SQLException;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+import roboguice.RoboGuice;
 
 import static org.clintonhealthaccess.lmis.app.persistence.DbUtil.initialiseDao;
 
 public class GenericService {
 
+    private static final Map<Class<?>, String> LEDGER_COLUMNS = new HashMap<Class<?>, String>() {
+        {
+            put(Receive.class, DailyLedger.RECEIVED);
+            put(Dispensing.class, DailyLedger.DISPENSED);
+            put(Loss.class, DailyLedger.LOST);
+        }
+    };
+
     public static <ActionClass, ItemClass extends BaseItem> int getTotal(Commodity commodity, Date startDate,
                                                                          Date endDate, Class<ActionClass> actionClass,
                                                                          Class<ItemClass> itemClass, Context context) {
+        String ledgerColumn = LEDGER_COLUMNS.get(actionClass);
+        if (ledgerColumn != null) {
+            return RoboGuice.getInjector(context).getInstance(DailyLedgerService.class)
+                    .getTotal(commodity, ledgerColumn, startDate, endDate);
+        }
+
         int totalQuantity = 0;
 
         List<ItemClass> items = getItems(commodity, startDate, endDate, actionClass, itemClass, context);
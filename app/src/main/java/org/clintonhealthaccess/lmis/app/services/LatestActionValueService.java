@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.services;
+
+import com.google.common.base.Joiner;
+import com.google.inject.Inject;
+import com.j256.ormlite.dao.Dao;
+import com.thoughtworks.dhis.models.DataElementType;
+
+import org.clintonhealthaccess.lmis.app.models.CommodityAction;
+import org.clintonhealthaccess.lmis.app.models.CommodityActionValue;
+import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class LatestActionValueService {
+
+    private static final String LATEST_VALUES_QUERY = "SELECT ca.commodity_id, ca.activityType, cav.value " +
+            "FROM commodityaction ca " +
+            "LEFT JOIN (SELECT commodityAction_id, MAX(period) AS period FROM commodityactionvalue " +
+            "GROUP BY commodityAction_id) latest ON latest.commodityAction_id = ca.id " +
+            "LEFT JOIN commodityactionvalue cav ON cav.commodityAction_id = latest.commodityAction_id " +
+            "AND cav.period = latest.period " +
+            "WHERE ca.commodity_id IS NOT NULL AND UPPER(ca.activityType) NOT IN (" + stringActivities() + ") " +
+            "ORDER BY ca.rowid";
+
+    @Inject
+    private DbUtil dbUtil;
+
+    public Map<String, Map<String, Integer>> load() {
+        return dbUtil.withDao(CommodityAction.class, new DbUtil.Operation<CommodityAction, Map<String, Map<String, Integer>>>() {
+            @Override
+            public Map<String, Map<String, Integer>> operate(Dao<CommodityAction, String> dao) throws SQLException {
+                List<String[]> rows = dao.queryRaw(LATEST_VALUES_QUERY).getResults();
+                Map<String, Map<String, Integer>> latestValues = new HashMap<>();
+                for (String[] row : rows) {
+                    Map<String, Integer> values = latestValues.get(row[0]);
+                    if (values == null) {
+                        values = new HashMap<>();
+                        latestValues.put(row[0], values);
+                    }
+                    String key = row[1].toUpperCase();
+                    if (!values.containsKey(key)) {
+                        values.put(key, CommodityActionValue.intValueOf(row[2]));
+                    }
+                }
+                return latestValues;
+            }
+        });
+    }
+
+    private static String stringActivities() {
+        List<String> activities = new ArrayList<>();
+        for (DataElementType type : DataElementType.values()) {
+            if ("string".equals(type.getType())) {
+                activities.add("'" + type.getActivity() + "'");
+            }
+        }
+        return Joiner.on(", ").join(activities);
+    }
+}
@@ -29,96 +29,66 @@
 
 package org.clintonhealthaccess.lmis.app.services;
 
-import android.content.Context;
-
-import com.google.common.base.Predicate;
-import com.google.common.collect.FluentIterable;
 import com.google.inject.Inject;
 
 import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.DailyLedger;
 import org.clintonhealthaccess.lmis.app.models.Loss;
 import org.clintonhealthaccess.lmis.app.models.LossItem;
 import org.clintonhealthaccess.lmis.app.models.LossItemDetail;
+import org.clintonhealthaccess.lmis.app.models.reports.UtilizationItemName;
 import org.clintonhealthaccess.lmis.app.models.reports.UtilizationValue;
-import org.clintonhealthaccess.lmis.app.utils.DateUtil;
+import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
 
-import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 public class LossService {
 
     @Inject
-    Context context;
+    DbUtil dbUtil;
 
     @Inject
-    private StockService stockService;
+    private StockTransactionService stockTransactionService;
 
     @Inject
-    private CommoditySnapshotService snapshotService;
+    CommodityService commodityService;
 
     @Inject
-    CommodityService commodityService;
+    DailyLedgerService dailyLedgerService;
 
-    public void saveLoss(Loss loss) {
-        GenericDao<Loss> lossDao = new GenericDao<>(Loss.class, context);
-        lossDao.create(loss);
-        saveLossItems(loss.getLossItems());
+    public void saveLoss(final Loss loss) {
+        StockTransaction transaction = new StockTransaction();
+        for (LossItem lossItem : loss.getLossItems()) {
+            transaction.reduce(lossItem, lossItem.getTotalLosses(), lossItem.created(), DailyLedger.LOST);
+        }
+        stockTransactionService.commit(transaction, new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                new GenericDao<>(Loss.class, dbUtil).create(loss);
+                saveLossItems(loss.getLossItems());
+                return null;
+            }
+        });
     }
 
     private void saveLossItems(List<LossItem> lossItems) {
-        GenericDao<LossItem> lossItemDao = new GenericDao<>(LossItem.class, context);
+        GenericDao<LossItem> lossItemDao = new GenericDao<>(LossItem.class, dbUtil);
         for (LossItem lossItem : lossItems) {
             lossItemDao.create(lossItem);
             saveLossItemDetails(lossItem.getLossItemDetails());
-            adjustStockLevel(lossItem);
-            snapshotService.add(lossItem);
         }
     }
 
     private void saveLossItemDetails(List<LossItemDetail> lossItemDetails) {
-        GenericDao<LossItemDetail> lossItemDetailDao = new GenericDao<>(LossItemDetail.class, context);
+        GenericDao<LossItemDetail> lossItemDetailDao = new GenericDao<>(LossItemDetail.class, dbUtil);
         for (LossItemDetail lossItemDetail : lossItemDetails) {
             lossItemDetailDao.create(lossItemDetail);
         }
     }
 
-    private void adjustStockLevel(LossItem lossItem) {
-        stockService.reduceStockLevelFor(lossItem.getCommodity(), lossItem.getTotalLosses(), lossItem.created());
-    }
-
     public List<UtilizationValue> getLossesValues(Commodity commodity, Date startDate, Date endDate) {
-        List<LossItem> lossItems = GenericService.getItems(commodity, startDate, endDate, Loss.class, LossItem.class, context);
-
-        List<UtilizationValue> utilizationValues = new ArrayList<>();
-
-        Calendar calendar = DateUtil.calendarDate(startDate);
-        Date upperLimitDate = DateUtil.addDayOfMonth(endDate, 1);
-        while (calendar.getTime().before(upperLimitDate)) {
-            int dayReceiveItems = getTotal(calendar.getTime(), lossItems);
-            UtilizationValue utilizationValue =
-                    new UtilizationValue(DateUtil.dayNumber(calendar.getTime()), dayReceiveItems);
-            utilizationValues.add(utilizationValue);
-            calendar.add(Calendar.DAY_OF_MONTH, 1);
-        }
-        return utilizationValues;
-    }
-
-
-    private int getTotal(final Date date, List<LossItem> lossItems) {
-        List<LossItem> daysLossItems = FluentIterable.from(lossItems).filter(new Predicate<LossItem>() {
-            @Override
-            public boolean apply(LossItem input) {
-                return DateUtil.equal(input.getLoss().getCreated(), date);
-            }
-        }).toList();
-
-        int totalLoss = 0;
-        for (LossItem lossItem : daysLossItems) {
-            totalLoss += lossItem.getQuantity();
-        }
-
-        return totalLoss;
+        return dailyLedgerService.getUtilizationValues(commodity, startDate, endDate, UtilizationItemName.QUANTITY_LOSSES, 1);
     }
 }
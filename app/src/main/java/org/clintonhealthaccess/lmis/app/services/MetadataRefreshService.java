@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.services;
+
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.google.inject.Inject;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.DeleteBuilder;
+import com.thoughtworks.dhis.models.DataElement;
+import com.thoughtworks.dhis.models.Indicator;
+
+import org.clintonhealthaccess.lmis.app.LmisException;
+import org.clintonhealthaccess.lmis.app.models.Category;
+import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.CommodityAction;
+import org.clintonhealthaccess.lmis.app.models.CommodityActionDataSet;
+import org.clintonhealthaccess.lmis.app.models.DataSet;
+import org.clintonhealthaccess.lmis.app.models.User;
+import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
+import org.clintonhealthaccess.lmis.app.remote.LmisServer;
+import org.clintonhealthaccess.lmis.app.remote.MetadataChanges;
+import org.clintonhealthaccess.lmis.app.remote.MetadataTransformer;
+
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import static org.clintonhealthaccess.lmis.app.persistence.DbUtil.Operation;
+
+/**
+ * Keeps categories, commodities, their actions and data sets in step with DHIS2 by asking only
+ * for the metadata updated since the last refresh. A changed group or data element re-reads
+ * the group set it belongs to, so commodities added to an existing group are picked up.
+ * Commodities that disappear upstream are kept, since local transactions still refer to them.
+ */
+public class MetadataRefreshService {
+    public static final String METADATA_LAST_UPDATED = "METADATA_LAST_UPDATED";
+    private static final long HIGH_WATER_MARK_OVERLAP = 60 * 60 * 1000;
+
+    @Inject
+    private LmisServer lmisServer;
+
+    @Inject
+    private DbUtil dbUtil;
+
+    @Inject
+    private CommodityRepository commodityRepository;
+
+    @Inject
+    private CategoryService categoryService;
+
+    @Inject
+    SharedPreferences sharedPreferences;
+
+    public int refresh(User user) {
+        Date refreshStart = refreshStart();
+        Date lastUpdated = new Date(sharedPreferences.getLong(METADATA_LAST_UPDATED, 0));
+        MetadataChanges changes;
+        try {
+            changes = lmisServer.fetchMetadataChangedSince(user, lastUpdated);
+        } catch (LmisException e) {
+            Log.e("MetadataRefresh", "Could not fetch metadata changed since " + lastUpdated, e);
+            return 0;
+        }
+        int changed = changes.getCategories().size() + changes.getDataSets().size() + changes.getIndicators().size();
+        if (!changes.isEmpty()) {
+            apply(changes);
+        }
+        markRefreshed(refreshStart);
+        Log.i("MetadataRefresh", String.format("%d categories, %d data sets and %d indicators changed since %s",
+                changes.getCategories().size(), changes.getDataSets().size(), changes.getIndicators().size(), lastUpdated));
+        return changed;
+    }
+
+    public Date refreshStart() {
+        return new Date(System.currentTimeMillis() - HIGH_WATER_MARK_OVERLAP);
+    }
+
+    public void markRefreshed(Date refreshStart) {
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        editor.putLong(METADATA_LAST_UPDATED, refreshStart.getTime());
+        editor.commit();
+    }
+
+    void apply(final MetadataChanges changes) {
+        dbUtil.inTransaction("metadata refresh", new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                saveDataSets(changes.getDataSets());
+                saveCategories(changes.getCategories());
+                CommodityRepository.clearCache();
+                relinkDataSets(changes.getDataSets());
+                saveIndicatorActions(changes.getIndicators());
+                return null;
+            }
+        });
+        categoryService.clearCache();
+    }
+
+    private void saveDataSets(final List<DataSet> dataSets) {
+        dbUtil.withDao(DataSet.class, new Operation<DataSet, Void>() {
+            @Override
+            public Void operate(Dao<DataSet, String> dao) throws SQLException {
+                for (DataSet dataSet : dataSets) {
+                    dao.createOrUpdate(dataSet);
+                }
+                return null;
+            }
+        });
+    }
+
+    private void saveCategories(final List<Category> categories) {
+        dbUtil.withDao(Category.class, new Operation<Category, Void>() {
+            @Override
+            public Void operate(Dao<Category, String> dao) throws SQLException {
+                for (Category category : categories) {
+                    dao.createOrUpdate(category);
+                }
+                return null;
+            }
+        });
+        dbUtil.withDao(Commodity.class, new Operation<Commodity, Void>() {
+            @Override
+            public Void operate(Dao<Commodity, String> dao) throws SQLException {
+                for (Category category : categories) {
+                    for (Commodity commodity : category.getTransientCommodities()) {
+                        commodity.setCategory(category);
+                        dao.createOrUpdate(commodity);
+                    }
+                }
+                return null;
+            }
+        });
+        dbUtil.withDao(CommodityAction.class, new Operation<CommodityAction, Void>() {
+            @Override
+            public Void operate(Dao<CommodityAction, String> dao) throws SQLException {
+                for (Category category : categories) {
+                    for (Commodity commodity : category.getTransientCommodities()) {
+                        for (CommodityAction action : commodity.getCommodityActions()) {
+                            action.setCommodity(commodity);
+                            dao.createOrUpdate(action);
+                        }
+                    }
+                }
+                return null;
+            }
+        });
+    }
+
+    private void relinkDataSets(final List<DataSet> dataSets) {
+        final Map<String, CommodityAction> actions = dbUtil.withDao(CommodityAction.class, new Operation<CommodityAction, Map<String, CommodityAction>>() {
+            @Override
+            public Map<String, CommodityAction> operate(Dao<CommodityAction, String> dao) throws SQLException {
+                Map<String, CommodityAction> actions = new HashMap<>();
+                for (CommodityAction action : dao.queryForAll()) {
+                    actions.put(action.getId(), action);
+                }
+                return actions;
+            }
+        });
+        dbUtil.withDao(CommodityActionDataSet.class, new Operation<CommodityActionDataSet, Void>() {
+            @Override
+            public Void operate(Dao<CommodityActionDataSet, String> dao) throws SQLException {
+                for (DataSet dataSet : dataSets) {
+                    DeleteBuilder<CommodityActionDataSet, String> deleteBuilder = dao.deleteBuilder();
+                    deleteBuilder.where().eq("dataSet_id", dataSet.getId());
+                    deleteBuilder.delete();
+                    if (dataSet.getDataElements() == null) {
+                        continue;
+                    }
+                    for (DataElement element : dataSet.getDataElements()) {
+                        CommodityAction action = actions.get(element.getId());
+                        if (action != null) {
+                            dao.create(new CommodityActionDataSet(action, dataSet));
+                        }
+                    }
+                }
+                return null;
+            }
+        });
+    }
+
+    private void saveIndicatorActions(final List<Indicator> indicators) {
+        if (indicators.isEmpty()) {
+            return;
+        }
+        final List<CommodityAction> actions = MetadataTransformer.indicatorActions(commodityRepository.all(), indicators);
+        dbUtil.withDao(CommodityAction.class, new Operation<CommodityAction, Void>() {
+            @Override
+            public Void operate(Dao<CommodityAction, String> dao) throws SQLException {
+                for (CommodityAction action : actions) {
+                    dao.createOrUpdate(action);
+                }
+                return null;
+            }
+        });
+    }
+}
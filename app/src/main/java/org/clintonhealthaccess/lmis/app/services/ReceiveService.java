@@ -29,50 +29,45 @@
 
 package org.clintonhealthaccess.lmis.app.services;
 
-import android.content.Context;
 import android.util.Log;
 
-import com.google.common.base.Predicate;
-import com.google.common.collect.FluentIterable;
 import com.google.inject.Inject;
-import com.j256.ormlite.misc.TransactionManager;
+import com.j256.ormlite.dao.Dao;
 
 import org.clintonhealthaccess.lmis.app.events.AllocationCreateEvent;
 import org.clintonhealthaccess.lmis.app.models.Allocation;
 import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.DailyLedger;
 import org.clintonhealthaccess.lmis.app.models.Receive;
 import org.clintonhealthaccess.lmis.app.models.ReceiveItem;
+import org.clintonhealthaccess.lmis.app.models.reports.UtilizationItemName;
 import org.clintonhealthaccess.lmis.app.models.reports.UtilizationValue;
 import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
-import org.clintonhealthaccess.lmis.app.persistence.LmisSqliteOpenHelper;
-import org.clintonhealthaccess.lmis.app.utils.DateUtil;
 import de.greenrobot.event.EventBus;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Calendar;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 
 public class ReceiveService {
 
     @Inject
-    Context context;
-
-    @Inject
-    StockService stockService;
+    StockTransactionService stockTransactionService;
     @Inject
     AllocationService allocationService;
     @Inject
     AlertsService alertsService;
 
     @Inject
-    CommoditySnapshotService commoditySnapshotService;
+    CommodityService commodityService;
 
     @Inject
-    CommodityService commodityService;
+    DailyLedgerService dailyLedgerService;
 
     @Inject
     DbUtil dbUtil;
@@ -86,71 +81,70 @@ public class ReceiveService {
     }
 
     public void saveReceive(final Receive receive) throws Exception{
-            TransactionManager.callInTransaction(LmisSqliteOpenHelper.getInstance(context).getConnectionSource(), new
-                    Callable<Object>() {
-                        @Override
-                        public Object call() throws Exception {
-                            GenericDao<Receive> receiveDao = new GenericDao<>(Receive.class, context);
-                            receiveDao.create(receive);
-                            saveReceiveItems(receive.getReceiveItems());
-
-                            if (receive.getAllocation() != null) {
-                                Allocation allocation = receive.getAllocation();
-                                allocation.setReceived(true);
-                                if (!allocation.isDummy()) {
-                                    allocationService.update(allocation);
-                                    alertsService.deleteAllocationAlert(allocation);
-                                } else {
-                                    allocationService.createAllocation(allocation);
-                                    EventBus.getDefault().post(new AllocationCreateEvent(receive.getAllocation()));
-                                }
-                            }
-                            return null;
-                        }
-                    });
+        StockTransaction transaction = new StockTransaction();
+        for (ReceiveItem receiveItem : receive.getReceiveItems()) {
+            transaction.increase(receiveItem, receiveItem.getQuantityReceived(), receiveItem.created(), DailyLedger.RECEIVED);
+        }
+        stockTransactionService.commit(transaction, new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                GenericDao<Receive> receiveDao = new GenericDao<>(Receive.class, dbUtil);
+                receiveDao.create(receive);
+                saveReceiveItems(receive.getReceiveItems());
+
+                if (receive.getAllocation() != null) {
+                    Allocation allocation = receive.getAllocation();
+                    allocation.setReceived(true);
+                    if (!allocation.isDummy()) {
+                        allocationService.update(allocation);
+                        alertsService.deleteAllocationAlert(allocation);
+                    } else {
+                        allocationService.createAllocation(allocation);
+                        EventBus.getDefault().post(new AllocationCreateEvent(receive.getAllocation()));
+                    }
+                }
+                return null;
+            }
+        });
     }
 
-    private void saveReceiveItems(List<ReceiveItem> receiveItems) {
-        GenericDao<ReceiveItem> receiveItemDao = new GenericDao<>(ReceiveItem.class, context);
-        for (ReceiveItem receiveItem : receiveItems) {
-            receiveItemDao.create(receiveItem);
-            stockService.increaseStockLevelFor(receiveItem.getCommodity(), receiveItem.getQuantityReceived(), receiveItem.created());
-            commoditySnapshotService.add(receiveItem);
-        }
-        alertsService.updateLowStockAlerts();
+    private void saveReceiveItems(final List<ReceiveItem> receiveItems) {
+        dbUtil.withDao(ReceiveItem.class, new DbUtil.Operation<ReceiveItem, Void>() {
+            @Override
+            public Void operate(Dao<ReceiveItem, String> dao) throws SQLException {
+                for (ReceiveItem receiveItem : receiveItems) {
+                    dao.create(receiveItem);
+                }
+                return null;
+            }
+        });
     }
 
     public List<UtilizationValue> getReceivedValues(Commodity commodity, Date startDate, Date endDate) {
-        List<ReceiveItem> receiveItems = GenericService.getItems(commodity, startDate, endDate, Receive.class, ReceiveItem.class, context);
-
-        List<UtilizationValue> utilizationValues = new ArrayList<>();
-
-        Calendar calendar = DateUtil.calendarDate(startDate);
-        Date upperLimitDate = DateUtil.addDayOfMonth(endDate, 1);
-        while (calendar.getTime().before(upperLimitDate)) {
-            int dayReceiveItems = getTotal(calendar.getTime(), receiveItems);
-            UtilizationValue utilizationValue =
-                    new UtilizationValue(DateUtil.dayNumber(calendar.getTime()), dayReceiveItems);
-            utilizationValues.add(utilizationValue);
-            calendar.add(Calendar.DAY_OF_MONTH, 1);
-        }
-        return utilizationValues;
+        return dailyLedgerService.getUtilizationValues(commodity, startDate, endDate, UtilizationItemName.RECEIVED, 1);
     }
 
-    public int getTotal(final Date date, List<ReceiveItem> receiveItems) {
-        List<ReceiveItem> daysReceiveItems = FluentIterable.from(receiveItems).filter(new Predicate<ReceiveItem>() {
+    public Map<String, Map<String, Integer>> getReceivedBySource(final Commodity commodity, Date startDate, Date endDate) {
+        final String[] arguments = {commodity.getId(), DailyLedger.dayKey(startDate), DailyLedger.dayKey(endDate)};
+        List<String[]> rows = dbUtil.withDao(ReceiveItem.class, new DbUtil.Operation<ReceiveItem, List<String[]>>() {
             @Override
-            public boolean apply(ReceiveItem input) {
-                return DateUtil.equal(input.getReceive().getCreated(), date);
+            public List<String[]> operate(Dao<ReceiveItem, String> dao) throws SQLException {
+                return dao.queryRaw("SELECT r.created, r.source, SUM(i.quantityReceived) FROM receive_items i " +
+                        "JOIN receives r ON i.receive_id = r.id WHERE i.commodity_id = ? AND r.created BETWEEN ? AND ? " +
+                        "GROUP BY r.created, r.source", arguments).getResults();
             }
-        }).toList();
-
-        int totalReceived = 0;
-        for (ReceiveItem receiveItem : daysReceiveItems) {
-            totalReceived += receiveItem.getQuantityReceived();
+        });
+
+        Map<String, Map<String, Integer>> receivedBySource = new HashMap<>();
+        for (String[] row : rows) {
+            Map<String, Integer> sources = receivedBySource.get(row[0]);
+            if (sources == null) {
+                sources = new HashMap<>();
+                receivedBySource.put(row[0], sources);
+            }
+            sources.put(row[1], Integer.parseInt(row[2]));
         }
-
-        return totalReceived;
+        return receivedBySource;
     }
 
 }
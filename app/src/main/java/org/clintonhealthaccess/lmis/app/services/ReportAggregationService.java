@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.services;
+
+import com.google.common.base.Joiner;
+import com.google.inject.Inject;
+import com.j256.ormlite.dao.Dao;
+import com.thoughtworks.dhis.models.DataElementType;
+
+import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.StockInterval;
+import org.clintonhealthaccess.lmis.app.models.reports.CommodityStockSummary;
+import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
+import org.clintonhealthaccess.lmis.app.utils.DateUtil;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.nCopies;
+import static org.clintonhealthaccess.lmis.app.models.StockInterval.FIRST_DAY_STOCK_OUT;
+import static org.clintonhealthaccess.lmis.app.models.StockInterval.FROM_DAY;
+import static org.clintonhealthaccess.lmis.app.models.StockInterval.QUANTITY;
+import static org.clintonhealthaccess.lmis.app.models.StockInterval.TABLE;
+import static org.clintonhealthaccess.lmis.app.models.StockInterval.TO_DAY;
+
+public class ReportAggregationService {
+
+    @Inject
+    DbUtil dbUtil;
+    @Inject
+    CommodityActionService commodityActionService;
+
+    private int queryCount;
+
+    public Map<String, CommodityStockSummary> summarise(List<Commodity> commodities, Date startingDate, Date endDate) {
+        queryCount = 0;
+        Map<String, CommodityStockSummary> summaries = new LinkedHashMap<>();
+        for (Commodity commodity : commodities) {
+            summaries.put(commodity.getId(), new CommodityStockSummary(commodity.getId()));
+        }
+        if (summaries.isEmpty()) {
+            return summaries;
+        }
+
+        List<String> ids = new ArrayList<>(summaries.keySet());
+        int startDay = DateUtil.toEpochDay(startingDate);
+        int endDay = DateUtil.toEpochDay(endDate);
+        String start = String.valueOf(startDay);
+        String end = String.valueOf(endDay);
+
+        Map<String, Integer> openingStock = latestStock(ids, String.valueOf(startDay - 1));
+        Map<String, Integer> closingStock = latestStock(ids, end);
+        Map<String, Integer> received = sumPerCommodity(
+                "SELECT i.commodity_id, SUM(i.quantityReceived) FROM receive_items i " +
+                        "JOIN receives r ON i.receive_id = r.id", "r", ids, start, end);
+        Map<String, Integer> dispensed = sumPerCommodity(
+                "SELECT i.commodity_id, SUM(i.quantity) FROM dispensingItems i " +
+                        "JOIN dispensings d ON i.dispensing_id = d.id", "d", ids, start, end);
+        Map<String, Integer> lost = sumPerCommodity(
+                "SELECT i.commodity_id, SUM(ld.value) FROM loss_item_details ld " +
+                        "JOIN loss_items i ON ld.lossItem_id = i.id JOIN losses l ON i.loss_id = l.id", "l", ids, start, end);
+
+        for (CommodityStockSummary summary : summaries.values()) {
+            String id = summary.getCommodityId();
+            summary.setOpeningStock(valueOf(openingStock, id));
+            summary.setClosingStock(valueOf(closingStock, id));
+            summary.setReceived(valueOf(received, id));
+            summary.setDispensed(valueOf(dispensed, id));
+            summary.setLost(valueOf(lost, id));
+        }
+
+        applyAdjustments(summaries, ids, start, end);
+        applyMonthlyValues(summaries, ids, startingDate, endDate);
+        applyStockOutDays(summaries, ids, startDay, endDay);
+        return summaries;
+    }
+
+    public int getLastQueryCount() {
+        return queryCount;
+    }
+
+    private Map<String, Integer> latestStock(List<String> ids, String day) {
+        String sql = "SELECT commodity_id, " + QUANTITY + " FROM " + TABLE +
+                " WHERE commodity_id IN (" + placeholders(ids.size()) + ") AND " + FROM_DAY + " <= ? AND " + TO_DAY + " >= ?";
+        Map<String, Integer> stock = new HashMap<>();
+        for (String[] row : query(sql, arguments(ids, day, day))) {
+            stock.put(row[0], toInt(row[1]));
+        }
+        return stock;
+    }
+
+    private Map<String, Integer> sumPerCommodity(String select, String actionAlias, List<String> ids, String start, String end) {
+        String sql = select + " WHERE i.commodity_id IN (" + placeholders(ids.size()) + ") AND " +
+                actionAlias + ".created BETWEEN ? AND ? GROUP BY i.commodity_id";
+        Map<String, Integer> totals = new HashMap<>();
+        for (String[] row : query(sql, arguments(ids, start, end))) {
+            totals.put(row[0], toInt(row[1]));
+        }
+        return totals;
+    }
+
+    private void applyAdjustments(Map<String, CommodityStockSummary> summaries, List<String> ids, String start, String end) {
+        String sql = "SELECT commodity_id, reason, positive, SUM(quantity) FROM adjustment " +
+                "WHERE commodity_id IN (" + placeholders(ids.size()) + ") AND created BETWEEN ? AND ? " +
+                "GROUP BY commodity_id, reason, positive";
+        for (String[] row : query(sql, arguments(ids, start, end))) {
+            summaries.get(row[0]).addAdjustment(row[1], toBoolean(row[2]), toInt(row[3]));
+        }
+    }
+
+    private void applyMonthlyValues(Map<String, CommodityStockSummary> summaries, List<String> ids, Date startingDate, Date endDate) {
+        List<String> periods = commodityActionService.monthlyPeriods(startingDate, endDate);
+        if (periods.isEmpty()) {
+            return;
+        }
+        List<String> types = asList(DataElementType.MIN_STOCK_QUANTITY.toString(),
+                DataElementType.MAX_STOCK_QUANTITY.toString(), DataElementType.AMC.toString());
+
+        String sql = "SELECT a.commodity_id, a.activityType, v.value FROM commodityactionvalue v " +
+                "JOIN commodityaction a ON v.commodityAction_id = a.id " +
+                "WHERE a.commodity_id IN (" + placeholders(ids.size()) + ") " +
+                "AND a.activityType IN (" + placeholders(types.size()) + ") " +
+                "AND v.period IN (" + placeholders(periods.size()) + ")";
+        List<String> args = new ArrayList<>(ids);
+        args.addAll(types);
+        args.addAll(periods);
+
+        Map<String, Float> sums = new HashMap<>();
+        List<String> invalid = new ArrayList<>();
+        for (String[] row : query(sql, args.toArray(new String[args.size()]))) {
+            String key = row[0] + "|" + row[1];
+            try {
+                Float sum = sums.get(key);
+                sums.put(key, (sum == null ? 0 : sum) + Float.parseFloat(row[2]));
+            } catch (NumberFormatException e) {
+                invalid.add(key);
+            }
+        }
+
+        for (CommodityStockSummary summary : summaries.values()) {
+            summary.setMinThreshold(average(sums, invalid, summary.getCommodityId(), types.get(0), periods.size()));
+            summary.setMaxThreshold(average(sums, invalid, summary.getCommodityId(), types.get(1), periods.size()));
+            summary.setAmc(average(sums, invalid, summary.getCommodityId(), types.get(2), periods.size()));
+        }
+    }
+
+    private int average(Map<String, Float> sums, List<String> invalid, String commodityId, String type, int numberOfPeriods) {
+        String key = commodityId + "|" + type;
+        Float sum = sums.get(key);
+        if (sum == null || invalid.contains(key)) {
+            return 0;
+        }
+        return (int) sum.floatValue() / numberOfPeriods;
+    }
+
+    private void applyStockOutDays(Map<String, CommodityStockSummary> summaries, List<String> ids, int startDay, int endDay) {
+        // the days are our own integers, so they are inlined to keep MIN and MAX comparing numbers
+        String overlap = "MIN(" + TO_DAY + ", " + endDay + ") - MAX(" + FROM_DAY + ", " + startDay + ") + 1";
+        String sql = "SELECT commodity_id, SUM(" + overlap + "), SUM(CASE WHEN " + QUANTITY + " <= 0 THEN " + overlap +
+                " WHEN " + FIRST_DAY_STOCK_OUT + " AND " + FROM_DAY + " >= " + startDay + " THEN 1 ELSE 0 END) FROM " + TABLE +
+                " WHERE commodity_id IN (" + placeholders(ids.size()) + ") AND " + FROM_DAY + " <= ? AND " + TO_DAY + " >= ?" +
+                " GROUP BY commodity_id";
+
+        int days = endDay - startDay + 1;
+        for (CommodityStockSummary summary : summaries.values()) {
+            summary.setStockOutDays(Math.max(days, 0));
+        }
+        for (String[] row : query(sql, arguments(ids, String.valueOf(endDay), String.valueOf(startDay)))) {
+            // days not covered by any interval are before the commodity's history and count as stocked out
+            summaries.get(row[0]).setStockOutDays(days - toInt(row[1]) + toInt(row[2]));
+        }
+    }
+
+    private List<String[]> query(final String sql, final String... arguments) {
+        queryCount++;
+        return dbUtil.withDao(StockInterval.class, new DbUtil.Operation<StockInterval, List<String[]>>() {
+            @Override
+            public List<String[]> operate(Dao<StockInterval, String> dao) throws SQLException {
+                return dao.queryRaw(sql, arguments).getResults();
+            }
+        });
+    }
+
+    private static String[] arguments(List<String> ids, String... rest) {
+        List<String> arguments = new ArrayList<>(ids);
+        arguments.addAll(asList(rest));
+        return arguments.toArray(new String[arguments.size()]);
+    }
+
+    private static String placeholders(int count) {
+        return Joiner.on(",").join(nCopies(count, "?"));
+    }
+
+    private static int valueOf(Map<String, Integer> values, String id) {
+        Integer value = values.get(id);
+        return value == null ? 0 : value;
+    }
+
+    private static int toInt(String value) {
+        return value == null ? 0 : Integer.parseInt(value);
+    }
+
+    private static boolean toBoolean(String value) {
+        return "1".equals(value) || "true".equalsIgnoreCase(value);
+    }
+}
@@ -33,27 +33,20 @@ import android.content.Context;
 import android.util.Log;
 
 import com.google.common.base.Function;
-import com.google.common.base.Predicate;
-import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Multimaps;
 import com.google.inject.Inject;
-import com.thoughtworks.dhis.models.DataElementType;
 
 import org.clintonhealthaccess.lmis.app.R;
-import org.clintonhealthaccess.lmis.app.models.Adjustment;
 import org.clintonhealthaccess.lmis.app.models.AdjustmentReason;
 import org.clintonhealthaccess.lmis.app.models.Category;
 import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.DailyLedger;
 import org.clintonhealthaccess.lmis.app.models.Dispensing;
 import org.clintonhealthaccess.lmis.app.models.DispensingItem;
-import org.clintonhealthaccess.lmis.app.models.Loss;
-import org.clintonhealthaccess.lmis.app.models.LossItem;
-import org.clintonhealthaccess.lmis.app.models.Receive;
-import org.clintonhealthaccess.lmis.app.models.ReceiveItem;
-import org.clintonhealthaccess.lmis.app.models.StockItemSnapshot;
 import org.clintonhealthaccess.lmis.app.models.reports.BinCard;
 import org.clintonhealthaccess.lmis.app.models.reports.BinCardItem;
+import org.clintonhealthaccess.lmis.app.models.reports.CommodityStockSummary;
 import org.clintonhealthaccess.lmis.app.models.reports.ConsumptionValue;
 import org.clintonhealthaccess.lmis.app.models.reports.FacilityCommodityConsumptionRH1ReportItem;
 import org.clintonhealthaccess.lmis.app.models.reports.FacilityConsumptionReportRH2Item;
@@ -71,8 +64,7 @@ import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
-
-import static org.clintonhealthaccess.lmis.app.services.GenericService.getItemsByDate;
+import java.util.Map;
 
 public class ReportsService {
 
@@ -94,6 +86,12 @@ public class ReportsService {
     @Inject
     private CategoryService categoryService;
 
+    @Inject
+    private ReportAggregationService reportAggregationService;
+
+    @Inject
+    private DailyLedgerService dailyLedgerService;
+
     public List<FacilityStockReportItem> getFacilityReportItemsForCategory(
             Category category, String startingYear, String startingMonth, String endingYear, String endingMonth) {
 
@@ -104,33 +102,16 @@ public class ReportsService {
             Date endDate = convertToDate(endingYear, endingMonth, false);
 
             category = categoryService.get(category);
+            Map<String, CommodityStockSummary> summaries =
+                    reportAggregationService.summarise(category.getCommodities(), startingDate, endDate);
 
             for (Commodity commodity : category.getCommodities()) {
-
-                int openingStock = stockItemSnapshotService.getLatestStock(commodity, startingDate, true);
-
-                int quantityReceived = GenericService.getTotal(commodity, startingDate, endDate,
-                        Receive.class, ReceiveItem.class, context);
-                int quantityDispensed = GenericService.getTotal(commodity, startingDate, endDate,
-                        Dispensing.class, DispensingItem.class, context);
-                int quantityLost = GenericService.getTotal(commodity, startingDate, endDate,
-                        Loss.class, LossItem.class, context);
-
-                int minThreshold = commodityActionService.getMonthlyValue(commodity, startingDate, endDate, DataElementType.MIN_STOCK_QUANTITY);
-
-                int quantityAdjusted = adjustmentService.totalAdjustment(commodity, startingDate, endDate);
-
-                int stockOnHand = stockItemSnapshotService.getLatestStock(commodity, endDate, false);
-
-                int amc = commodityActionService.getMonthlyValue(commodity, startingDate, endDate, DataElementType.AMC);
-
-                int maxThreshold = commodityActionService.getMonthlyValue(commodity, startingDate, endDate, DataElementType.MAX_STOCK_QUANTITY);
-
-                int stockOutDays = stockItemSnapshotService.getStockOutDays(commodity, startingDate, endDate);
+                CommodityStockSummary summary = summaries.get(commodity.getId());
 
                 FacilityStockReportItem item = new FacilityStockReportItem(commodity.getName(),
-                        openingStock, quantityReceived, quantityAdjusted, quantityLost,
-                        amc, stockOutDays, maxThreshold, minThreshold, quantityDispensed, stockOnHand);
+                        summary.getOpeningStock(), summary.getReceived(), summary.getNetAdjustment(),
+                        summary.getLost(), summary.getAmc(), summary.getStockOutDays(), summary.getMaxThreshold(),
+                        summary.getMinThreshold(), summary.getDispensed(), summary.getClosingStock());
 
                 facilityStockReportItems.add(item);
             }
@@ -222,27 +203,27 @@ public class ReportsService {
             Date endDate = convertToDate(endingYear, endingMonth, false);
 
             category = categoryService.get(category);
+            Map<String, CommodityStockSummary> summaries =
+                    reportAggregationService.summarise(category.getCommodities(), startingDate, endDate);
+
             for (Commodity commodity : category.getCommodities()) {
+                CommodityStockSummary summary = summaries.get(commodity.getId());
 
-                int openingStock = stockItemSnapshotService.getLatestStock(commodity, startingDate, true);
+                int openingStock = summary.getOpeningStock();
 
-                int quantityReceived = GenericService.getTotal(commodity, startingDate, endDate,
-                        Receive.class, ReceiveItem.class, context);
                 // quantity Received should add up adjustment with reason "Received from other facilities"
-                quantityReceived += adjustmentService.totalAdjustment(commodity, startingDate, endDate, AdjustmentReason.RECEIVED_FROM_ANOTHER_FACILITY);
+                int quantityReceived = summary.getReceived() + summary.adjusted(AdjustmentReason.RECEIVED_FROM_ANOTHER_FACILITY);
 
-                int quantityDispensedToClients = GenericService.getTotal(commodity, startingDate, endDate,
-                        Dispensing.class, DispensingItem.class, context);
+                int quantityDispensedToClients = summary.getDispensed();
 
-                int quantityLost = GenericService.getTotal(commodity, startingDate, endDate,
-                        Loss.class, LossItem.class, context);
+                int quantityLost = summary.getLost();
 
-                int commoditiesDispensedToFacilities = adjustmentService.totalAdjustment(commodity, startingDate, endDate, AdjustmentReason.SENT_TO_ANOTHER_FACILITY);
+                int commoditiesDispensedToFacilities = summary.adjusted(AdjustmentReason.SENT_TO_ANOTHER_FACILITY);
 
                 // quantityAdjusted only refers to quantity sent to other facilities, equal to dispensed to facilities
                 int quantityAdjusted = commoditiesDispensedToFacilities;
 
-                int closingStock = stockItemSnapshotService.getLatestStock(commodity, endDate, false);
+                int closingStock = summary.getClosingStock();
 
                 FacilityConsumptionReportRH2Item item = new FacilityConsumptionReportRH2Item(commodity.getName(),
                         openingStock, quantityReceived, quantityDispensedToClients, quantityAdjusted,
@@ -305,41 +286,30 @@ public class ReportsService {
                 context.getString(R.string.zonal_store), context.getString(R.string.others));
 
         Date today = new Date();
-        Date tomorrow = DateUtil.addDayOfMonth(today, 1);
         Date startDate = DateUtil.addDayOfMonth(today, -31);
 
-        List<ReceiveItem> receiveItems = GenericService.getItems(commodity, startDate, today, Receive.class, ReceiveItem.class, context);
-        List<DispensingItem> dispensingItems = GenericService.getItems(commodity, startDate, today, Dispensing.class, DispensingItem.class, context);
-        List<LossItem> lossItems = GenericService.getItems(commodity, startDate, today, Loss.class, LossItem.class, context);
-        List<StockItemSnapshot> stockItemSnapshots = stockItemSnapshotService.get(commodity, startDate, today);
-        List<Adjustment> adjustments = adjustmentService.getAdjustments(commodity, startDate, today);
-
-        int previousDaysClosingStock = stockItemSnapshotService.getLatestStock(commodity, startDate, false);
+        List<DailyLedger> ledgers = dailyLedgerService.getDailyLedgers(commodity, startDate, today);
+        Map<String, Map<String, Integer>> receivedBySourceAndDay = receiveService.getReceivedBySource(commodity, startDate, today);
 
         List<BinCardItem> binCardItems = new ArrayList<>();
-        Date date = startDate;
-        while (date.before(tomorrow)) {
+        for (DailyLedger ledger : ledgers) {
+            Date date = ledger.getDay();
 
             List<BinCardItem> binCardItemsForDate = new ArrayList<>();
 
-            int quantityDispensed = GenericService.getTotal(date, dispensingItems);
-            int quantityLost = GenericService.getTotal(date, lossItems);
-            int closingBalance = previousDaysClosingStock;
+            int quantityDispensed = ledger.getDispensed();
+            int quantityLost = ledger.getLost();
+            int closingBalance = ledger.getClosingBalance();
 
             List<ReceivedBySource> receivedBySources = new ArrayList<>();
+            Map<String, Integer> receivedForDate = receivedBySourceAndDay.get(DailyLedger.dayKey(date));
             for (final String source : receiveSources) {
-                List<ReceiveItem> receiveItemsForDate = getItemsByDate(date, receiveItems);
-                List<ReceiveItem> sourceReceiveItems = FluentIterable.from(receiveItemsForDate).filter(new Predicate<ReceiveItem>() {
-                    @Override
-                    public boolean apply(ReceiveItem input) {
-                        return input.getReceive().getSource().equalsIgnoreCase(source);
-                    }
-                }).toList();
-
                 int quantityReceived = 0;
-                if (sourceReceiveItems != null) {
-                    for (ReceiveItem item : sourceReceiveItems) {
-                        quantityReceived += item.getQuantity();
+                if (receivedForDate != null) {
+                    for (Map.Entry<String, Integer> received : receivedForDate.entrySet()) {
+                        if (received.getKey().equalsIgnoreCase(source)) {
+                            quantityReceived += received.getValue();
+                        }
                     }
                 }
 
@@ -348,22 +318,11 @@ public class ReportsService {
                 }
             }
 
-            int quantitySentToAnotherFacility =
-                    adjustmentService.totalAdjustment(
-                            commodity, adjustments, date, AdjustmentReason.SENT_TO_ANOTHER_FACILITY);
+            int quantitySentToAnotherFacility = ledger.adjusted(AdjustmentReason.SENT_TO_ANOTHER_FACILITY);
 
-            int quantityReceivedFromAnotherFacility =
-                    adjustmentService.totalAdjustment(commodity, adjustments, date,
-                            AdjustmentReason.RECEIVED_FROM_ANOTHER_FACILITY);
+            int quantityReceivedFromAnotherFacility = ledger.adjusted(AdjustmentReason.RECEIVED_FROM_ANOTHER_FACILITY);
 
-            int quantityAdjusted = adjustmentService.totalAdjustment(
-                    commodity, adjustments, date,
-                    Arrays.asList(AdjustmentReason.PHYSICAL_COUNT, AdjustmentReason.RETURNED_TO_LGA));
-
-            StockItemSnapshot dayStockItemSnapshot = stockItemSnapshotService.getSnapshot(date, stockItemSnapshots);
-            if (dayStockItemSnapshot != null) {
-                closingBalance = dayStockItemSnapshot.getQuantity();
-            }
+            int quantityAdjusted = ledger.adjusted(AdjustmentReason.PHYSICAL_COUNT) + ledger.adjusted(AdjustmentReason.RETURNED_TO_LGA);
 
             // date, source, received, dispensed, lost, adjusted, stockBalance
             if (quantityDispensed > 0) {
@@ -395,8 +354,6 @@ public class ReportsService {
             }
 
             binCardItems.addAll(binCardItemsForDate);
-            previousDaysClosingStock = closingBalance;
-            date = DateUtil.addDayOfMonth(date, 1);
         }
 
         return new BinCard(commodity.getMinimumThreshold(), commodity.getMaximumThreshold(), binCardItems, commodity);
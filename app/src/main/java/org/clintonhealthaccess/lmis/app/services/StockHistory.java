@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.services;
+
+import com.google.common.collect.Sets;
+
+import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.StockInterval;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.clintonhealthaccess.lmis.app.models.StockInterval.OPEN;
+
+/**
+ * One commodity's stock intervals, ordered by day, with lookups by binary search.
+ * Recording a day's closing balance carries it forward until the next change and merges runs that did not change.
+ */
+class StockHistory {
+    private final Commodity commodity;
+    private final List<StockInterval> intervals;
+    private final Set<StockInterval> changed = Sets.newIdentityHashSet();
+    private final List<StockInterval> removed = new ArrayList<>();
+
+    StockHistory(Commodity commodity, List<StockInterval> intervalsByDay) {
+        this.commodity = commodity;
+        this.intervals = new ArrayList<>(intervalsByDay);
+    }
+
+    int quantityOn(int day) {
+        int index = indexOf(day);
+        return index < 0 ? 0 : intervals.get(index).getQuantity();
+    }
+
+    boolean isStockOutDay(int day) {
+        int index = indexOf(day);
+        return index >= 0 && intervals.get(index).isStockOutOn(day);
+    }
+
+    int stockOutDays(int startDay, int endDay) {
+        if (endDay < startDay) {
+            return 0;
+        }
+        // days before the history starts have no stock
+        int firstDay = intervals.isEmpty() ? OPEN : intervals.get(0).getFromDay();
+        int stockOutDays = firstDay > startDay ? Math.min(firstDay - 1, endDay) - startDay + 1 : 0;
+        for (int index = Math.max(indexOf(startDay), 0); index < intervals.size(); index++) {
+            StockInterval interval = intervals.get(index);
+            if (interval.getFromDay() > endDay) {
+                break;
+            }
+            stockOutDays += interval.stockOutDaysBetween(startDay, endDay);
+        }
+        return stockOutDays;
+    }
+
+    void record(int day, int quantity, boolean stockOut) {
+        int index = indexOf(day);
+        if (index < 0) {
+            int toDay = intervals.isEmpty() ? OPEN : intervals.get(0).getFromDay() - 1;
+            index = 0;
+            add(index, new StockInterval(commodity, day, toDay, quantity, stockOut));
+        } else if (intervals.get(index).getFromDay() == day) {
+            intervals.get(index).set(quantity, stockOut);
+            changed.add(intervals.get(index));
+        } else {
+            StockInterval current = intervals.get(index);
+            StockInterval split = new StockInterval(commodity, day, current.getToDay(), quantity, stockOut);
+            current.setToDay(day - 1);
+            changed.add(current);
+            index++;
+            add(index, split);
+        }
+
+        if (index + 1 < intervals.size() && intervals.get(index + 1).continues(intervals.get(index))) {
+            absorb(index);
+        }
+        if (index > 0 && intervals.get(index).continues(intervals.get(index - 1))) {
+            absorb(index - 1);
+        }
+    }
+
+    List<StockInterval> getIntervals() {
+        return intervals;
+    }
+
+    Set<StockInterval> getChanged() {
+        return changed;
+    }
+
+    List<StockInterval> getRemoved() {
+        return removed;
+    }
+
+    private void add(int index, StockInterval interval) {
+        intervals.add(index, interval);
+        changed.add(interval);
+    }
+
+    private void absorb(int index) {
+        StockInterval next = intervals.remove(index + 1);
+        intervals.get(index).setToDay(next.getToDay());
+        changed.add(intervals.get(index));
+        changed.remove(next);
+        if (next.getId() != 0) {
+            removed.add(next);
+        }
+    }
+
+    /**
+     * Index of the interval holding the day, or -1 when the day is before the history starts.
+     */
+    private int indexOf(int day) {
+        int low = 0;
+        int high = intervals.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (intervals.get(middle).getFromDay() <= day) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+}
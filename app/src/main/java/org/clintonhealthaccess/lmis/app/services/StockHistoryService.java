@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.services;
+
+import com.google.inject.Inject;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.PreparedQuery;
+import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.stmt.SelectArg;
+
+import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.StockInterval;
+import org.clintonhealthaccess.lmis.app.persistence.CompiledQuery;
+import org.clintonhealthaccess.lmis.app.persistence.DaoRegistry;
+import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
+import org.clintonhealthaccess.lmis.app.utils.DateUtil;
+
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static java.util.Arrays.asList;
+import static org.clintonhealthaccess.lmis.app.models.StockInterval.FIRST_DAY_STOCK_OUT;
+import static org.clintonhealthaccess.lmis.app.models.StockInterval.FROM_DAY;
+import static org.clintonhealthaccess.lmis.app.models.StockInterval.OPEN;
+import static org.clintonhealthaccess.lmis.app.models.StockInterval.QUANTITY;
+import static org.clintonhealthaccess.lmis.app.models.StockInterval.TABLE;
+import static org.clintonhealthaccess.lmis.app.models.StockInterval.TO_DAY;
+
+public class StockHistoryService {
+
+    // one interval per snapshot day whose balance differs from the day before, closed by the next one
+    public static final List<String> REBUILD_STATEMENTS = asList(
+            "DELETE FROM " + TABLE,
+            "INSERT INTO " + TABLE + " (commodity_id, " + FROM_DAY + ", " + TO_DAY + ", " + QUANTITY + ", " +
+                    FIRST_DAY_STOCK_OUT + ") SELECT s.commodity_id, s.created, " + OPEN + ", s.quantity, " +
+                    "CASE WHEN s.quantity <= 0 THEN 1 ELSE s.stockOut END FROM stockitemsnapshot s " +
+                    "WHERE s.id IN (SELECT MIN(id) FROM stockitemsnapshot GROUP BY commodity_id, created) " +
+                    "AND NOT (s.stockOut = (s.quantity <= 0) AND s.quantity IS (SELECT p.quantity FROM stockitemsnapshot p " +
+                    "WHERE p.commodity_id = s.commodity_id AND p.created < s.created ORDER BY p.created DESC, p.id LIMIT 1))",
+            "UPDATE " + TABLE + " SET " + TO_DAY + " = COALESCE((SELECT MIN(n." + FROM_DAY + ") - 1 FROM " + TABLE + " n " +
+                    "WHERE n.commodity_id = " + TABLE + ".commodity_id AND n." + FROM_DAY + " > " + TABLE + "." + FROM_DAY + "), " +
+                    OPEN + ")"
+    );
+
+    private static final CompiledQuery<StockInterval> INTERVAL_ON_DAY = new CompiledQuery<>(StockInterval.class,
+            "StockInterval.onDay", new DaoRegistry.Preparer<StockInterval>() {
+        @Override
+        public PreparedQuery<StockInterval> prepare(Dao<StockInterval, String> dao) throws SQLException {
+            QueryBuilder<StockInterval, String> queryBuilder = dao.queryBuilder();
+            queryBuilder.where().eq("commodity_id", new SelectArg()).and().le(FROM_DAY, new SelectArg())
+                    .and().ge(TO_DAY, new SelectArg());
+            return queryBuilder.prepare();
+        }
+    });
+
+    private static final CompiledQuery<StockInterval> INTERVALS_BETWEEN = new CompiledQuery<>(StockInterval.class,
+            "StockInterval.between", new DaoRegistry.Preparer<StockInterval>() {
+        @Override
+        public PreparedQuery<StockInterval> prepare(Dao<StockInterval, String> dao) throws SQLException {
+            QueryBuilder<StockInterval, String> queryBuilder = dao.queryBuilder();
+            queryBuilder.where().eq("commodity_id", new SelectArg()).and().ge(TO_DAY, new SelectArg())
+                    .and().le(FROM_DAY, new SelectArg());
+            queryBuilder.orderBy(FROM_DAY, true);
+            return queryBuilder.prepare();
+        }
+    });
+
+    @Inject
+    DbUtil dbUtil;
+    @Inject
+    DaoRegistry daoRegistry;
+
+    public int quantityOn(Commodity commodity, Date date) {
+        StockInterval interval = intervalOn(commodity, DateUtil.toEpochDay(date));
+        return interval == null ? 0 : interval.getQuantity();
+    }
+
+    public boolean isStockOutDay(Commodity commodity, Date date) {
+        int day = DateUtil.toEpochDay(date);
+        StockInterval interval = intervalOn(commodity, day);
+        return interval != null && interval.isStockOutOn(day);
+    }
+
+    public int stockOutDays(Commodity commodity, Date startDate, Date endDate) {
+        int startDay = DateUtil.toEpochDay(startDate);
+        int endDay = DateUtil.toEpochDay(endDate);
+        return historyBetween(commodity, startDay, endDay).stockOutDays(startDay, endDay);
+    }
+
+    public void record(final Commodity commodity, Date date, final int quantity, final boolean stockOut) {
+        final int day = DateUtil.toEpochDay(date);
+        dbUtil.inTransaction("StockHistory", new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                // the interval before the day is needed to merge into it
+                StockHistory history = historyBetween(commodity, day - 1, OPEN);
+                history.record(day, quantity, stockOut);
+                save(history);
+                return null;
+            }
+        });
+    }
+
+    // runs after the snapshots have been shifted, so the first day's stock out comes from that day's shifted minimum
+    public void shiftAfter(final Commodity commodity, Date date, final int quantity) {
+        final int day = DateUtil.toEpochDay(date);
+        dbUtil.withDao(StockInterval.class, new DbUtil.Operation<StockInterval, Void>() {
+            @Override
+            public Void operate(Dao<StockInterval, String> dao) throws SQLException {
+                dao.updateRaw("UPDATE " + TABLE + " SET " + QUANTITY + " = " + QUANTITY + " + ?, " +
+                                FIRST_DAY_STOCK_OUT + " = (COALESCE((SELECT s.stockOut FROM stockitemsnapshot s " +
+                                "WHERE s.commodity_id = " + TABLE + ".commodity_id AND s.created = " + TABLE + "." + FROM_DAY +
+                                " ORDER BY s.id LIMIT 1), 0) OR " + QUANTITY + " + ? <= 0) " +
+                                "WHERE commodity_id = ? AND " + FROM_DAY + " > ?",
+                        String.valueOf(quantity), String.valueOf(quantity), commodity.getId(), String.valueOf(day));
+                return null;
+            }
+        });
+    }
+
+    StockHistory historyBetween(Commodity commodity, int startDay, int endDay) {
+        return new StockHistory(commodity, daoRegistry.query(INTERVALS_BETWEEN, commodity.getId(), startDay, endDay));
+    }
+
+    private StockInterval intervalOn(Commodity commodity, int day) {
+        return daoRegistry.queryForFirst(INTERVAL_ON_DAY, commodity.getId(), day, day);
+    }
+
+    private void save(final StockHistory history) {
+        dbUtil.withDao(StockInterval.class, new DbUtil.Operation<StockInterval, Void>() {
+            @Override
+            public Void operate(Dao<StockInterval, String> dao) throws SQLException {
+                for (StockInterval interval : history.getRemoved()) {
+                    dao.delete(interval);
+                }
+                for (StockInterval interval : history.getChanged()) {
+                    dao.createOrUpdate(interval);
+                }
+                return null;
+            }
+        });
+    }
+}
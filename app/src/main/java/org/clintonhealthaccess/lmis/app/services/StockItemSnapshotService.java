@@ -29,45 +29,59 @@
 
 package org.clintonhealthaccess.lmis.app.services;
 
-import android.content.Context;
 import android.util.Log;
 
 import com.google.inject.Inject;
 import com.j256.ormlite.dao.Dao;
 import com.j256.ormlite.stmt.PreparedQuery;
 import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.stmt.SelectArg;
 
 import org.clintonhealthaccess.lmis.app.models.Commodity;
 import org.clintonhealthaccess.lmis.app.models.StockItemSnapshot;
+import org.clintonhealthaccess.lmis.app.persistence.CompiledQuery;
+import org.clintonhealthaccess.lmis.app.persistence.DaoRegistry;
 import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
 import org.clintonhealthaccess.lmis.app.utils.DateUtil;
 
 import java.sql.SQLException;
 import java.text.SimpleDateFormat;
-import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 
 public class StockItemSnapshotService {
+    private static final CompiledQuery<StockItemSnapshot> SNAPSHOT_ON_DAY = new CompiledQuery<>(StockItemSnapshot.class,
+            "StockItemSnapshot.onDay", new DaoRegistry.Preparer<StockItemSnapshot>() {
+        @Override
+        public PreparedQuery<StockItemSnapshot> prepare(Dao<StockItemSnapshot, String> dao) throws SQLException {
+            QueryBuilder<StockItemSnapshot, String> queryBuilder = dao.queryBuilder();
+            queryBuilder.where().eq("commodity_id", new SelectArg()).and().eq("created", new SelectArg());
+            return queryBuilder.prepare();
+        }
+    });
+
+    private static final CompiledQuery<StockItemSnapshot> LATEST_SNAPSHOT = new CompiledQuery<>(StockItemSnapshot.class,
+            "StockItemSnapshot.latest", new DaoRegistry.Preparer<StockItemSnapshot>() {
+        @Override
+        public PreparedQuery<StockItemSnapshot> prepare(Dao<StockItemSnapshot, String> dao) throws SQLException {
+            QueryBuilder<StockItemSnapshot, String> queryBuilder = dao.queryBuilder();
+            queryBuilder.where().eq("commodity_id", new SelectArg()).and().le("created", new SelectArg());
+            queryBuilder.orderBy("created", false).limit(1L);
+            return queryBuilder.prepare();
+        }
+    });
 
     @Inject
     DbUtil dbUtil;
     @Inject
-    private Context context;
+    DaoRegistry daoRegistry;
+    @Inject
+    DailyLedgerService dailyLedgerService;
+    @Inject
+    StockHistoryService stockHistoryService;
 
     public StockItemSnapshot get(final Commodity commodity, final Date date) throws Exception {
-        List<StockItemSnapshot> stockItemSnapshots = dbUtil.withDao(StockItemSnapshot.class,
-                new DbUtil.Operation<StockItemSnapshot, List<StockItemSnapshot>>() {
-                    @Override
-                    public List<StockItemSnapshot> operate(Dao<StockItemSnapshot, String> dao) throws SQLException {
-                        QueryBuilder<StockItemSnapshot, String> queryBuilder = dao.queryBuilder();
-                        queryBuilder.where().eq("commodity_id", commodity.getId()).and().eq("created", date);
-                        PreparedQuery<StockItemSnapshot> query = queryBuilder.prepare();
-
-                        return dao.query(query);
-                    }
-                }
-        );
+        List<StockItemSnapshot> stockItemSnapshots = daoRegistry.query(SNAPSHOT_ON_DAY, commodity.getId(), date);
 
         if (stockItemSnapshots.size() > 1) {
             throw new Exception("Multiple stock item snapshots found for " + commodity.getName() +
@@ -105,7 +119,10 @@ public class StockItemSnapshotService {
             } else {
                 stockItemSnapshot.setQuantity(quantity);
             }
-           return new GenericDao<>(StockItemSnapshot.class, context).createOrUpdate(stockItemSnapshot);
+            stockItemSnapshot = new GenericDao<>(StockItemSnapshot.class, dbUtil).createOrUpdate(stockItemSnapshot);
+            dailyLedgerService.recordClosingBalance(commodity, date, quantity);
+            stockHistoryService.record(commodity, date, quantity, stockItemSnapshot.isStockOut());
+            return stockItemSnapshot;
 
         } catch (Exception e) {
             Log.e("StockItemSnapshot", e.getMessage());
@@ -113,104 +130,34 @@ public class StockItemSnapshotService {
         return null;
     }
 
-    public int getLatestStock(Commodity commodity, Date date, boolean isOpeningStock) throws Exception {
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTime(date);
-        if (isOpeningStock) {
-            calendar.add(Calendar.DAY_OF_MONTH, -1);
-        }
-        Date requiredDate = calendar.getTime();
-
-        StockItemSnapshot latestStockItemSnapshot = getLatest(commodity, requiredDate);
-        if (latestStockItemSnapshot != null) {
-            return latestStockItemSnapshot.getQuantity();
-        }
-        return 0;
-    }
-
-    public int getLatestStock(Commodity commodity, Date date, boolean isOpeningStock, List<StockItemSnapshot> stockItemSnapshots) throws Exception {
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTime(date);
-        if (isOpeningStock) {
-            calendar.add(Calendar.DAY_OF_MONTH, -1);
-        }
-        Date requiredDate = calendar.getTime();
-
-        StockItemSnapshot latestStockItemSnapshot = getLatest(commodity,
-                requiredDate);
-        if (latestStockItemSnapshot != null) {
-            return latestStockItemSnapshot.getQuantity();
-        }
-
-        return 0;
+    public void shiftAfter(final Commodity commodity, final Date date, final int quantity) {
+        dbUtil.withDao(StockItemSnapshot.class, new DbUtil.Operation<StockItemSnapshot, Void>() {
+            @Override
+            public Void operate(Dao<StockItemSnapshot, String> dao) throws SQLException {
+                dao.updateRaw("UPDATE stockitemsnapshot SET quantity = quantity + ?, minimumStockLevel = minimumStockLevel + ?, " +
+                                "maximumStockLevel = maximumStockLevel + ?, stockOut = (minimumStockLevel + ? <= 0) " +
+                                "WHERE commodity_id = ? AND created > ?",
+                        String.valueOf(quantity), String.valueOf(quantity), String.valueOf(quantity), String.valueOf(quantity),
+                        commodity.getId(), String.valueOf(DateUtil.toEpochDay(date)));
+                return null;
+            }
+        });
     }
 
-    public StockItemSnapshot getLatest(final Commodity commodity, final Date currentDate) {
-        return dbUtil.withDao(StockItemSnapshot.class,
-                new DbUtil.Operation<StockItemSnapshot, StockItemSnapshot>() {
-                    @Override
-                    public StockItemSnapshot operate(Dao<StockItemSnapshot, String> dao) throws SQLException {
-                        QueryBuilder<StockItemSnapshot, String> queryBuilder = dao.queryBuilder();
-                        queryBuilder.where().eq("commodity_id", commodity.getId()).and().le("created", currentDate);
-                        queryBuilder.orderBy("created", false);
-                        PreparedQuery<StockItemSnapshot> query = queryBuilder.prepare();
-
-                        return dao.queryForFirst(query);
-                    }
-                }
-        );
-
+    public int getLatestStock(Commodity commodity, Date date, boolean isOpeningStock) throws Exception {
+        Date requiredDate = isOpeningStock ? DateUtil.addDayOfMonth(date, -1) : date;
+        return stockHistoryService.quantityOn(commodity, requiredDate);
     }
 
-    public StockItemSnapshot getSnapshot(final Date date, List<StockItemSnapshot> stockItemSnapshots) {
-        for (StockItemSnapshot snapshot : stockItemSnapshots) {
-            if (DateUtil.equal(snapshot.getCreated(), date)) {
-                return snapshot;
-            }
-        }
-        return null;
+    public StockItemSnapshot getLatest(Commodity commodity, Date currentDate) {
+        return daoRegistry.queryForFirst(LATEST_SNAPSHOT, commodity.getId(), currentDate);
     }
 
     public int getStockOutDays(Commodity commodity, Date startingDate, Date endDate) throws Exception {
-
-        int openingStock = getLatestStock(commodity, startingDate, true);
-
-        int numOfStockOutDays = 0;
-
-        List<StockItemSnapshot> snapshots = get(commodity, startingDate, endDate);
-
-        Date closingDate = DateUtil.addDayOfMonth(endDate);
-
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTime(startingDate);
-
-        while (calendar.getTime().before(closingDate)) {
-
-            StockItemSnapshot stockItemSnapshot = getSnapshot(calendar.getTime(), snapshots);
-
-            if (stockItemSnapshot != null && stockItemSnapshot.isStockOut() || stockItemSnapshot == null && openingStock == 0) {
-                numOfStockOutDays++;
-            }
-
-            if (stockItemSnapshot != null) {
-                openingStock = stockItemSnapshot.getQuantity();
-            }
-            calendar.add(Calendar.DAY_OF_MONTH, 1);
-        }
-        return numOfStockOutDays;
+        return stockHistoryService.stockOutDays(commodity, startingDate, endDate);
     }
 
     public boolean isStockOutDay(Date date, Commodity commodity) {
-        StockItemSnapshot latestSnapshot = getLatest(commodity, date);
-        if (latestSnapshot != null) {
-            if (DateUtil.equal(latestSnapshot.getCreated(), date)) {
-                return latestSnapshot.isStockOut();
-            } else {
-                if (latestSnapshot.getQuantity() == 0) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return stockHistoryService.isStockOutDay(commodity, date);
     }
 }
@@ -29,66 +29,133 @@
 
 package org.clintonhealthaccess.lmis.app.services;
 
-import android.content.Context;
+import android.util.Log;
 
+import com.google.common.base.Joiner;
 import com.google.inject.Inject;
 import com.j256.ormlite.dao.Dao;
 
+import org.clintonhealthaccess.lmis.app.LmisException;
 import org.clintonhealthaccess.lmis.app.models.Commodity;
-import org.clintonhealthaccess.lmis.app.models.StockItem;
+import org.clintonhealthaccess.lmis.app.models.DailyLedger;
 import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
 
 import java.sql.SQLException;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
+import static java.util.Collections.nCopies;
+import static org.clintonhealthaccess.lmis.app.models.Commodity.STOCK_ON_HAND;
 
-public class StockService {
-    @Inject
-    private DbUtil dbUtil;
 
-    @Inject
-    private CategoryService categoryService;
-
-    @Inject
-    private CommodityService commodityService;
-
-    @Inject
-    public StockItemSnapshotService stockItemSnapshotService;
+public class StockService {
+    private static final String INCREMENT_STOCK_ON_HAND = "UPDATE " + Commodity.TABLE + " SET " + STOCK_ON_HAND +
+            " = " + STOCK_ON_HAND + " + ? WHERE id = ?";
+    private static final String LEDGER_DISCREPANCIES = "SELECT c.id, c." + STOCK_ON_HAND + ", l." + DailyLedger.CLOSING_BALANCE +
+            " FROM " + Commodity.TABLE + " c JOIN " + DailyLedger.TABLE + " l ON l.commodity_id = c.id " +
+            "WHERE l." + DailyLedger.DAY + " = (SELECT MAX(" + DailyLedger.DAY + ") FROM " + DailyLedger.TABLE + " m " +
+            "WHERE m.commodity_id = c.id AND m." + DailyLedger.CLOSING_BALANCE + " IS NOT NULL) " +
+            "AND l." + DailyLedger.CLOSING_BALANCE + " <> c." + STOCK_ON_HAND;
+    private static final String LEDGER_FINGERPRINT = "SELECT (SELECT TOTAL(" + STOCK_ON_HAND + ") FROM " + Commodity.TABLE + ")" +
+            " || ':' || COUNT(*) || ':' || TOTAL(" + DailyLedger.CLOSING_BALANCE + ") || ':' || IFNULL(MAX(" + DailyLedger.DAY + "), '')" +
+            " FROM " + DailyLedger.TABLE;
+    private static final String CORRECT_STOCK_ON_HAND = "UPDATE " + Commodity.TABLE + " SET " + STOCK_ON_HAND +
+            " = ? WHERE id = ? AND " + STOCK_ON_HAND + " = ?";
 
     @Inject
-    private AlertsService alertService;
+    private DbUtil dbUtil;
 
     @Inject
-    private Context context;
+    private CommodityRepository commodityRepository;
 
-    public int getStockLevelFor(Commodity commodity) {
-        return commodity.getStockOnHand();
+    public int getStockLevelFor(final Commodity commodity) {
+        List<String[]> rows = dbUtil.withDao(Commodity.class, new DbUtil.Operation<Commodity, List<String[]>>() {
+            @Override
+            public List<String[]> operate(Dao<Commodity, String> dao) throws SQLException {
+                return dao.queryRaw("SELECT " + STOCK_ON_HAND + " FROM " + Commodity.TABLE + " WHERE id = ?",
+                        commodity.getId()).getResults();
+            }
+        });
+        if (rows.isEmpty()) {
+            throw new LmisException(String.format("Stock for commodity %s not found", commodity.getName()));
+        }
+        return Integer.parseInt(rows.get(0)[0]);
     }
 
-    public void reduceStockLevelFor(final Commodity commodity, int quantity, Date date) {
-        StockItem stockItem = commodity.reduceStockOnHandBy(quantity);
-        saveStockLevel(commodity, stockItem, date);
-        categoryService.clearCache();
+    /**
+     * Applies each change with an in-SQL increment, so concurrent writers cannot lose one another's updates.
+     * Call it inside the caller's transaction; it returns the resulting stock on hand by commodity id.
+     */
+    public Map<String, Integer> incrementStockOnHand(final Map<Commodity, Integer> changes) {
+        final List<String> ids = new ArrayList<>();
+        for (Commodity commodity : changes.keySet()) {
+            ids.add(commodity.getId());
+        }
+        return dbUtil.withDao(Commodity.class, new DbUtil.Operation<Commodity, Map<String, Integer>>() {
+            @Override
+            public Map<String, Integer> operate(Dao<Commodity, String> dao) throws SQLException {
+                for (Map.Entry<Commodity, Integer> change : changes.entrySet()) {
+                    dao.updateRaw(INCREMENT_STOCK_ON_HAND, String.valueOf(change.getValue()), change.getKey().getId());
+                }
+                List<String[]> rows = dao.queryRaw("SELECT id, " + STOCK_ON_HAND + " FROM " + Commodity.TABLE +
+                                " WHERE id IN (" + Joiner.on(",").join(nCopies(ids.size(), "?")) + ")",
+                        ids.toArray(new String[ids.size()])).getResults();
+                Map<String, Integer> stockOnHand = new HashMap<>();
+                for (String[] row : rows) {
+                    stockOnHand.put(row[0], Integer.parseInt(row[1]));
+                }
+                return stockOnHand;
+            }
+        });
     }
 
-    public void increaseStockLevelFor(Commodity commodity, int quantity, Date date) {
-        StockItem stockItem = commodity.increaseStockOnHandBy(quantity);
-        saveStockLevel(commodity, stockItem, date);
-        categoryService.clearCache();
+    /**
+     * Resets the stock on hand of commodities that drifted from the closing balance of their latest
+     * ledger day, and returns the corrected commodities mapped to that closing balance.
+     */
+    public Map<String, Integer> reconcileWithLedger() {
+        Map<String, Integer> corrections = dbUtil.inTransaction("StockService", new Callable<Map<String, Integer>>() {
+            @Override
+            public Map<String, Integer> call() throws Exception {
+                return dbUtil.withDao(Commodity.class, new DbUtil.Operation<Commodity, Map<String, Integer>>() {
+                    @Override
+                    public Map<String, Integer> operate(Dao<Commodity, String> dao) throws SQLException {
+                        Map<String, Integer> corrections = new LinkedHashMap<>();
+                        for (String[] row : dao.queryRaw(LEDGER_DISCREPANCIES).getResults()) {
+                            Log.w("StockService", String.format("Stock on hand of commodity %s is %s but its ledger closes at %s",
+                                    row[0], row[1], row[2]));
+                            if (dao.updateRaw(CORRECT_STOCK_ON_HAND, row[2], row[0], row[1]) > 0) {
+                                corrections.put(row[0], Integer.parseInt(row[2]));
+                            }
+                        }
+                        return corrections;
+                    }
+                });
+            }
+        });
+        for (Map.Entry<String, Integer> correction : corrections.entrySet()) {
+            Commodity commodity = commodityRepository.get(correction.getKey());
+            if (commodity != null) {
+                commodityRepository.updateStockOnHand(commodity, correction.getValue());
+            }
+        }
+        return corrections;
     }
 
-    private void saveStockLevel(final Commodity commodity, final StockItem stockItem, final Date date) {
-        dbUtil.withDao(context, StockItem.class, new DbUtil.Operation<StockItem, Void>() {
-
+    /**
+     * Changes whenever stock on hand or a ledger closing balance changes, so reconciliation
+     * can be skipped while neither has moved.
+     */
+    public String ledgerFingerprint() {
+        return dbUtil.withDao(Commodity.class, new DbUtil.Operation<Commodity, String>() {
             @Override
-            public Void operate(Dao<StockItem, String> dao) throws SQLException {
-                dao.update(stockItem);
-                stockItemSnapshotService.createOrUpdate(commodity, stockItem.getQuantity(), date);
-                //FIXME: Disabled the immediate update of lowstocklevel alerts till feedback from CHAI
-                //alertService.updateCommodityLowStockAlert(commodity);
-                return null;
+            public String operate(Dao<Commodity, String> dao) throws SQLException {
+                return dao.queryRaw(LEDGER_FINGERPRINT).getFirstResult()[0];
             }
         });
     }
-
-}
\ No newline at end of file
+}
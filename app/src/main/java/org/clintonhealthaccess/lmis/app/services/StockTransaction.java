@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.services;
+
+import org.clintonhealthaccess.lmis.app.models.Commodity;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import lombok.Getter;
+
+public class StockTransaction {
+
+    @Getter
+    private final List<Movement> movements = new ArrayList<>();
+
+    public StockTransaction increase(Snapshotable item, int quantity, Date day, String ledgerColumn) {
+        movements.add(new Movement(item, quantity, quantity, day, ledgerColumn));
+        return this;
+    }
+
+    public StockTransaction reduce(Snapshotable item, int quantity, Date day, String ledgerColumn) {
+        movements.add(new Movement(item, -quantity, quantity, day, ledgerColumn));
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return movements.isEmpty();
+    }
+
+    public int size() {
+        return movements.size();
+    }
+
+    @Getter
+    public static class Movement {
+        private final Snapshotable item;
+        private final int stockChange;
+        private final int ledgerQuantity;
+        private final Date day;
+        private final String ledgerColumn;
+
+        private Movement(Snapshotable item, int stockChange, int ledgerQuantity, Date day, String ledgerColumn) {
+            this.item = item;
+            this.stockChange = stockChange;
+            this.ledgerQuantity = ledgerQuantity;
+            this.day = day;
+            this.ledgerColumn = ledgerColumn;
+        }
+
+        public Commodity getCommodity() {
+            return item.getCommodity();
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.services;
+
+import android.util.Log;
+
+import com.google.inject.Inject;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.QueryBuilder;
+
+import org.clintonhealthaccess.lmis.app.models.Adjustment;
+import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.DailyLedger;
+import org.clintonhealthaccess.lmis.app.models.StockItemSnapshot;
+import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
+import org.clintonhealthaccess.lmis.app.utils.DateUtil;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+
+public class StockTransactionService {
+
+    @Inject
+    DbUtil dbUtil;
+
+    @Inject
+    CommodityRepository commodityRepository;
+
+    @Inject
+    CommoditySnapshotService commoditySnapshotService;
+
+    @Inject
+    DailyLedgerService dailyLedgerService;
+    @Inject
+    StockHistoryService stockHistoryService;
+
+    @Inject
+    AlertsService alertsService;
+
+    @Inject
+    StockService stockService;
+
+    @Inject
+    StockItemSnapshotService stockItemSnapshotService;
+
+    public void commit(final StockTransaction transaction, final Callable<?> records) {
+        long start = System.currentTimeMillis();
+        final Map<Commodity, Integer> changes = new LinkedHashMap<>();
+        for (StockTransaction.Movement movement : transaction.getMovements()) {
+            Integer change = changes.get(movement.getCommodity());
+            changes.put(movement.getCommodity(), (change == null ? 0 : change) + movement.getStockChange());
+        }
+
+        Map<String, Integer> stockOnHand = dbUtil.inTransaction("StockTransaction", new Callable<Map<String, Integer>>() {
+            @Override
+            public Map<String, Integer> call() throws Exception {
+                if (records != null) {
+                    records.call();
+                }
+                Map<String, Integer> stockOnHand = stockService.incrementStockOnHand(changes);
+                saveStockSnapshots(transaction, changes, stockOnHand);
+                saveLedger(transaction);
+                List<Snapshotable> items = new ArrayList<>();
+                for (StockTransaction.Movement movement : transaction.getMovements()) {
+                    items.add(movement.getItem());
+                }
+                commoditySnapshotService.addAll(items);
+                return stockOnHand;
+            }
+        });
+
+        for (Commodity commodity : changes.keySet()) {
+            commodityRepository.updateStockOnHand(commodity, stockOnHand.get(commodity.getId()));
+        }
+        alertsService.onStockLevelsChanged(changes.keySet());
+        Log.d("StockTransaction", String.format("Committed %d lines in %d ms", transaction.size(),
+                System.currentTimeMillis() - start));
+    }
+
+    private void saveStockSnapshots(final StockTransaction transaction, Map<Commodity, Integer> changes,
+                                    Map<String, Integer> stockOnHand) {
+        Map<Commodity, TreeMap<Integer, StockTransaction.Movement>> firstMovementByDay = new HashMap<>();
+        Map<String, Integer> changeByDay = new HashMap<>();
+        for (StockTransaction.Movement movement : transaction.getMovements()) {
+            Commodity commodity = movement.getCommodity();
+            TreeMap<Integer, StockTransaction.Movement> days = firstMovementByDay.get(commodity);
+            if (days == null) {
+                days = new TreeMap<>();
+                firstMovementByDay.put(commodity, days);
+            }
+            int day = DateUtil.toEpochDay(movement.getDay());
+            if (!days.containsKey(day)) {
+                days.put(day, movement);
+            }
+            String key = DailyLedger.idFor(commodity, movement.getDay());
+            Integer change = changeByDay.get(key);
+            changeByDay.put(key, (change == null ? 0 : change) + movement.getStockChange());
+        }
+
+        // each day opens at the stock on hand before this transaction, less everything recorded after that day,
+        // plus this transaction's own movements on earlier days
+        Map<String, Integer> quantities = new HashMap<>();
+        for (Map.Entry<Commodity, TreeMap<Integer, StockTransaction.Movement>> entry : firstMovementByDay.entrySet()) {
+            Commodity commodity = entry.getKey();
+            int before = stockOnHand.get(commodity.getId()) - changes.get(commodity);
+            int earlier = 0;
+            for (StockTransaction.Movement movement : entry.getValue().values()) {
+                String key = DailyLedger.idFor(commodity, movement.getDay());
+                quantities.put(key, before - dailyLedgerService.getNetChangeAfter(commodity, movement.getDay()) + earlier);
+                earlier += changeByDay.get(key);
+            }
+        }
+
+        // a backdated day moves every balance already recorded after it, one statement per table
+        for (Map.Entry<Commodity, TreeMap<Integer, StockTransaction.Movement>> entry : firstMovementByDay.entrySet()) {
+            Commodity commodity = entry.getKey();
+            for (StockTransaction.Movement movement : entry.getValue().values()) {
+                int change = changeByDay.get(DailyLedger.idFor(commodity, movement.getDay()));
+                if (change != 0) {
+                    stockItemSnapshotService.shiftAfter(commodity, movement.getDay(), change);
+                    dailyLedgerService.shiftClosingBalancesAfter(commodity, movement.getDay(), change);
+                    stockHistoryService.shiftAfter(commodity, movement.getDay(), change);
+                }
+            }
+        }
+
+        final Map<String, StockItemSnapshot> snapshots = new LinkedHashMap<>();
+        final Map<String, StockItemSnapshot> existing = getStockItemSnapshots(transaction);
+        for (StockTransaction.Movement movement : transaction.getMovements()) {
+            Commodity commodity = movement.getCommodity();
+            String key = DailyLedger.idFor(commodity, movement.getDay());
+            int quantity = quantities.get(key) + movement.getStockChange();
+            quantities.put(key, quantity);
+
+            StockItemSnapshot snapshot = snapshots.get(key);
+            if (snapshot == null) {
+                snapshot = existing.get(key);
+            }
+            if (snapshot == null) {
+                snapshot = new StockItemSnapshot(commodity, movement.getDay(), quantity);
+            } else {
+                snapshot.setQuantity(quantity);
+            }
+            snapshots.put(key, snapshot);
+        }
+
+        dbUtil.withDao(StockItemSnapshot.class, new DbUtil.Operation<StockItemSnapshot, Void>() {
+            @Override
+            public Void operate(Dao<StockItemSnapshot, String> dao) throws SQLException {
+                for (Map.Entry<String, StockItemSnapshot> entry : snapshots.entrySet()) {
+                    StockItemSnapshot snapshot = entry.getValue();
+                    if (existing.get(entry.getKey()) == snapshot) {
+                        dao.update(snapshot);
+                    } else {
+                        dao.create(snapshot);
+                    }
+                    dailyLedgerService.recordClosingBalance(snapshot.getCommodity(), snapshot.getCreated(), snapshot.getQuantity());
+                    stockHistoryService.record(snapshot.getCommodity(), snapshot.getCreated(), snapshot.getQuantity(), snapshot.isStockOut());
+                }
+                return null;
+            }
+        });
+    }
+
+    private Map<String, StockItemSnapshot> getStockItemSnapshots(final StockTransaction transaction) {
+        final Set<String> commodityIds = new HashSet<>();
+        final Set<Date> days = new HashSet<>();
+        for (StockTransaction.Movement movement : transaction.getMovements()) {
+            commodityIds.add(movement.getCommodity().getId());
+            days.add(movement.getDay());
+        }
+        List<StockItemSnapshot> snapshots = dbUtil.withDao(StockItemSnapshot.class,
+                new DbUtil.Operation<StockItemSnapshot, List<StockItemSnapshot>>() {
+                    @Override
+                    public List<StockItemSnapshot> operate(Dao<StockItemSnapshot, String> dao) throws SQLException {
+                        QueryBuilder<StockItemSnapshot, String> queryBuilder = dao.queryBuilder();
+                        queryBuilder.where().in("commodity_id", commodityIds).and().in("created", days);
+                        return queryBuilder.query();
+                    }
+                });
+
+        Map<String, StockItemSnapshot> snapshotsByKey = new HashMap<>();
+        for (StockItemSnapshot snapshot : snapshots) {
+            String key = DailyLedger.idFor(snapshot.getCommodity(), snapshot.getCreated());
+            if (!snapshotsByKey.containsKey(key)) {
+                snapshotsByKey.put(key, snapshot);
+            }
+        }
+        return snapshotsByKey;
+    }
+
+    private void saveLedger(StockTransaction transaction) {
+        Map<String, StockTransaction.Movement> firstMovements = new LinkedHashMap<>();
+        Map<String, String> columns = new HashMap<>();
+        Map<String, Integer> totals = new HashMap<>();
+        for (StockTransaction.Movement movement : transaction.getMovements()) {
+            if (movement.getLedgerColumn() != null) {
+                addToLedger(firstMovements, columns, totals, movement, movement.getLedgerColumn(), movement.getLedgerQuantity());
+            }
+            if (movement.getItem() instanceof Adjustment) {
+                addToLedger(firstMovements, columns, totals, movement, DailyLedger.ADJUSTED, movement.getStockChange());
+            }
+        }
+        for (Map.Entry<String, StockTransaction.Movement> entry : firstMovements.entrySet()) {
+            StockTransaction.Movement movement = entry.getValue();
+            dailyLedgerService.increment(movement.getCommodity(), movement.getDay(), columns.get(entry.getKey()),
+                    totals.get(entry.getKey()));
+        }
+    }
+
+    private void addToLedger(Map<String, StockTransaction.Movement> firstMovements, Map<String, String> columns,
+                             Map<String, Integer> totals, StockTransaction.Movement movement, String column, int quantity) {
+        String key = DailyLedger.idFor(movement.getCommodity(), movement.getDay()) + "|" + column;
+        Integer total = totals.get(key);
+        totals.put(key, (total == null ? 0 : total) + quantity);
+        if (!firstMovements.containsKey(key)) {
+            firstMovements.put(key, movement);
+            columns.put(key, column);
+        }
+    }
+}
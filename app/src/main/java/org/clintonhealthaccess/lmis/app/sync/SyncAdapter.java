@@ -42,16 +42,25 @@ import com.google.inject.Inject;
 
 import org.clintonhealthaccess.lmis.app.events.SyncedEvent;
 import org.clintonhealthaccess.lmis.app.models.User;
+import org.clintonhealthaccess.lmis.app.persistence.DaoRegistry;
 import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
+import org.clintonhealthaccess.lmis.app.persistence.LockWaitMonitor;
+import org.clintonhealthaccess.lmis.app.remote.http.HttpTrafficMonitor;
 import org.clintonhealthaccess.lmis.app.services.AllocationService;
 import org.clintonhealthaccess.lmis.app.services.CommodityActionService;
 import org.clintonhealthaccess.lmis.app.services.CommodityService;
 import org.clintonhealthaccess.lmis.app.services.CommoditySnapshotService;
+import org.clintonhealthaccess.lmis.app.services.MetadataRefreshService;
+import org.clintonhealthaccess.lmis.app.services.StockService;
 import org.clintonhealthaccess.lmis.app.services.UserService;
 import org.clintonhealthaccess.lmis.app.utils.DateUtil;
 
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 import de.greenrobot.event.EventBus;
 import roboguice.RoboGuice;
@@ -59,6 +68,13 @@ import roboguice.RoboGuice;
 import static android.util.Log.i;
 
 public class SyncAdapter extends AbstractThreadedSyncAdapter {
+    static final String PUSH_SNAPSHOTS = "push snapshots";
+    static final String PULL_METADATA = "pull metadata";
+    static final String PULL_ALLOCATIONS = "pull allocations";
+    static final String PULL_ACTION_VALUES = "pull action values";
+    static final String PULL_INDICATOR_VALUES = "pull indicator values";
+    static final String RECONCILE_STOCK = "reconcile stock";
+
     private final ContentResolver contentResolver;
 
     @Inject
@@ -72,12 +88,21 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
     @Inject
     CommodityService commodityService;
 
+    @Inject
+    StockService stockService;
+
+    @Inject
+    MetadataRefreshService metadataRefreshService;
+
     @Inject
     UserService userService;
 
     @Inject
     SharedPreferences sharedPreferences;
 
+    @Inject
+    SyncOrchestrator syncOrchestrator;
+
     private static SimpleDateFormat dateTimeFormater = new SimpleDateFormat("MMM-dd hh:mm");
 
     public SyncAdapter(Context context, boolean autoInitialize) {
@@ -93,21 +118,66 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
             return;
         }
 
-        i("==> Syncing...........SNAPSHOTS", account.name);
-        commoditySnapshotService.syncWithServer(user);
-
-        i("<== Syncing............ALLOCATIONS", account.name);
-        allocationService.syncAllocations(user);
-
-        i("<== Syncing............ACTIONVALUES", account.name);
-        commodityActionService.syncCommodityActionValues(user);
-
-        i("<== Syncing............INDICATORVALUES", account.name);
-        commodityActionService.syncIndicatorValues(user, commodityService.all());
+        i("<=> Syncing............", account.name);
+        syncOrchestrator.run(syncSteps(user));
 
         SharedPreferences.Editor edit = sharedPreferences.edit();
         edit.putString("Last_sync_time", dateTimeFormater.format(new Date()));
         edit.commit();
+        DaoRegistry.logQueryStats();
+        LockWaitMonitor.logStats();
+        HttpTrafficMonitor.logStats();
         EventBus.getDefault().post(new SyncedEvent());
     }
+
+    List<SyncStep> syncSteps(final User user) {
+        return Arrays.asList(
+                new SyncStep(PUSH_SNAPSHOTS, new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        return commoditySnapshotService.syncWithServer(user);
+                    }
+                }).priority(),
+                new SyncStep(PULL_METADATA, new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        return metadataRefreshService.refresh(user);
+                    }
+                }).timeout(2, TimeUnit.MINUTES),
+                // values are saved against commodity actions, so new actions have to land first;
+                // a failed refresh still leaves the actions we already have to pull values for
+                new SyncStep(PULL_ALLOCATIONS, new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        allocationService.syncAllocations(user);
+                        return null;
+                    }
+                }).afterAnyOutcomeOf(PULL_METADATA).timeout(2, TimeUnit.MINUTES).attempts(2),
+                new SyncStep(PULL_ACTION_VALUES, new Callable<Object>() {
+                    @Override
+                    public Object call() throws Exception {
+                        return commodityActionService.syncCommodityActionValues(user);
+                    }
+                }).afterAnyOutcomeOf(PULL_METADATA).attempts(2),
+                // DHIS2 computes indicators from the values we push, so pull them once the push is in
+                new SyncStep(PULL_INDICATOR_VALUES, new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        commodityActionService.syncIndicatorValues(user, commodityService.all());
+                        return null;
+                    }
+                }).after(PUSH_SNAPSHOTS).afterAnyOutcomeOf(PULL_METADATA).attempts(2),
+                new SyncStep(RECONCILE_STOCK, new Callable<Object>() {
+                    @Override
+                    public Object call() throws Exception {
+                        return stockService.reconcileWithLedger();
+                    }
+                }).timeout(1, TimeUnit.MINUTES).skipIfUnchanged(new SyncStep.Fingerprint() {
+                    @Override
+                    public String compute() {
+                        return stockService.ledgerFingerprint();
+                    }
+                })
+        );
+    }
 }
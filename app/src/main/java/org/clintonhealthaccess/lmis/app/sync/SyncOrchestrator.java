@@ -0,0 +1,352 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.sync;
+
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.google.inject.Inject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import org.clintonhealthaccess.lmis.app.sync.SyncStepResult.Outcome;
+
+/**
+ * Runs a sync cycle as a dependency graph. Priority steps run first on a lane of their own;
+ * once they have all finished, every other step starts on a bounded pool as soon as the steps
+ * it waits for have completed, so a cycle takes as long as its slowest chain rather than the
+ * sum of its steps. A failed attempt is retried after the step's backoff, doubled for each
+ * further attempt. Outcomes, durations and fingerprints are kept in shared preferences for
+ * the next cycle.
+ */
+public class SyncOrchestrator {
+    static final int PULL_THREADS = 3;
+    private static final String PREFERENCE_PREFIX = "sync_step_";
+
+    @Inject
+    private SharedPreferences sharedPreferences;
+
+    public Map<String, SyncStepResult> run(List<SyncStep> steps) {
+        ExecutorService priorityLane = Executors.newSingleThreadExecutor();
+        ExecutorService pullLane = Executors.newFixedThreadPool(PULL_THREADS);
+        try {
+            Cycle cycle = new Cycle(steps, priorityLane, pullLane);
+            Map<String, SyncStepResult> results = cycle.run();
+            persist(results, cycle.fingerprints);
+            return results;
+        } finally {
+            priorityLane.shutdownNow();
+            pullLane.shutdownNow();
+        }
+    }
+
+    public SyncStepResult getLastResult(String step) {
+        String outcome = sharedPreferences.getString(key(step, "outcome"), null);
+        if (outcome == null) {
+            return null;
+        }
+        return new SyncStepResult(step, Outcome.valueOf(outcome),
+                sharedPreferences.getInt(key(step, "attempts"), 0), sharedPreferences.getLong(key(step, "duration"), 0));
+    }
+
+    private void persist(Map<String, SyncStepResult> results, Map<String, String> fingerprints) {
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        for (SyncStepResult result : results.values()) {
+            String step = result.getStep();
+            editor.putString(key(step, "outcome"), result.getOutcome().name());
+            editor.putInt(key(step, "attempts"), result.getAttempts());
+            editor.putLong(key(step, "duration"), result.getDurationMillis());
+            if (result.getOutcome() == Outcome.SUCCEEDED && fingerprints.get(step) != null) {
+                editor.putString(key(step, "fingerprint"), fingerprints.get(step));
+            }
+        }
+        editor.commit();
+    }
+
+    private static String key(String step, String field) {
+        return PREFERENCE_PREFIX + step + "_" + field;
+    }
+
+    private class Cycle {
+        private final Map<String, SyncStep> pending = new LinkedHashMap<>();
+        private final Map<String, Attempt> running = new HashMap<>();
+        private final Map<String, Attempt> retries = new LinkedHashMap<>();
+        private final Map<String, Long> started = new HashMap<>();
+        private final Map<String, String> fingerprints = new HashMap<>();
+        private final Map<String, SyncStepResult> results = new LinkedHashMap<>();
+        private final BlockingQueue<Attempt> finished = new LinkedBlockingQueue<>();
+        private final ExecutorService priorityLane;
+        private final ExecutorService pullLane;
+
+        private Cycle(List<SyncStep> steps, ExecutorService priorityLane, ExecutorService pullLane) {
+            this.priorityLane = priorityLane;
+            this.pullLane = pullLane;
+            for (SyncStep step : steps) {
+                if (step.isPriority()) {
+                    pending.put(step.getName(), step);
+                }
+            }
+            for (SyncStep step : steps) {
+                if (!step.isPriority()) {
+                    pending.put(step.getName(), step);
+                }
+            }
+        }
+
+        private Map<String, SyncStepResult> run() {
+            try {
+                while (!pending.isEmpty() || !running.isEmpty() || !retries.isEmpty()) {
+                    startDueRetries();
+                    startReadySteps();
+                    if (running.isEmpty() && retries.isEmpty()) {
+                        break;
+                    }
+                    Attempt attempt = finished.poll(millisToNextDeadline(), MILLISECONDS);
+                    if (attempt != null) {
+                        finish(attempt);
+                    } else {
+                        expireOverdueAttempts();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (Attempt attempt : new ArrayList<>(running.values())) {
+                    attempt.future.cancel(true);
+                    record(attempt.step, Outcome.FAILED, attempt.number);
+                }
+                running.clear();
+                for (Attempt attempt : retries.values()) {
+                    record(attempt.step, Outcome.FAILED, attempt.number - 1);
+                }
+                retries.clear();
+            }
+            for (SyncStep step : pending.values()) {
+                record(step, Outcome.BLOCKED, 0);
+            }
+            return results;
+        }
+
+        private void startReadySteps() {
+            boolean progressed = true;
+            while (progressed) {
+                progressed = false;
+                for (Iterator<SyncStep> iterator = pending.values().iterator(); iterator.hasNext(); ) {
+                    SyncStep step = iterator.next();
+                    if (dependsOnIncompleteStep(step)) {
+                        iterator.remove();
+                        record(step, Outcome.BLOCKED, 0);
+                        progressed = true;
+                    } else if (!step.isPriority() && priorityStepUnfinished()) {
+                        continue;
+                    } else if (results.keySet().containsAll(step.getDependencies())
+                            && results.keySet().containsAll(step.getOrderings())) {
+                        iterator.remove();
+                        if (isUnchanged(step)) {
+                            record(step, Outcome.SKIPPED, 0);
+                            progressed = true;
+                        } else {
+                            start(step);
+                        }
+                    }
+                }
+            }
+        }
+
+        private boolean priorityStepUnfinished() {
+            for (SyncStep step : pending.values()) {
+                if (step.isPriority()) {
+                    return true;
+                }
+            }
+            for (Attempt attempt : running.values()) {
+                if (attempt.step.isPriority()) {
+                    return true;
+                }
+            }
+            for (Attempt attempt : retries.values()) {
+                if (attempt.step.isPriority()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void startDueRetries() {
+            long now = System.currentTimeMillis();
+            for (Iterator<Attempt> iterator = retries.values().iterator(); iterator.hasNext(); ) {
+                Attempt attempt = iterator.next();
+                if (now >= attempt.notBefore) {
+                    iterator.remove();
+                    submit(attempt);
+                }
+            }
+        }
+
+        private boolean dependsOnIncompleteStep(SyncStep step) {
+            for (String dependency : step.getDependencies()) {
+                SyncStepResult result = results.get(dependency);
+                if (result != null && !result.isCompleted()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean isUnchanged(SyncStep step) {
+            if (step.getFingerprint() == null) {
+                return false;
+            }
+            String fingerprint;
+            try {
+                fingerprint = step.getFingerprint().compute();
+            } catch (RuntimeException e) {
+                Log.e("SyncOrchestrator", "Could not fingerprint " + step.getName(), e);
+                return false;
+            }
+            fingerprints.put(step.getName(), fingerprint);
+            return fingerprint != null && fingerprint.equals(sharedPreferences.getString(key(step.getName(), "fingerprint"), null));
+        }
+
+        private void start(SyncStep step) {
+            started.put(step.getName(), System.currentTimeMillis());
+            submit(new Attempt(step, 1));
+        }
+
+        private void submit(Attempt attempt) {
+            SyncStep step = attempt.step;
+            running.put(step.getName(), attempt);
+            attempt.future = (step.isPriority() ? priorityLane : pullLane).submit(attempt);
+        }
+
+        private void finish(Attempt attempt) {
+            SyncStep step = attempt.step;
+            running.remove(step.getName());
+            if (attempt.error == null) {
+                record(step, Outcome.SUCCEEDED, attempt.number);
+                return;
+            }
+            if (attempt.overdue) {
+                retryOrRecord(attempt, Outcome.TIMED_OUT);
+                return;
+            }
+            Log.e("SyncOrchestrator", String.format("%s failed on attempt %d", step.getName(), attempt.number), attempt.error);
+            retryOrRecord(attempt, Outcome.FAILED);
+        }
+
+        // HTTP calls and database writes ignore interrupts, so an overdue attempt is only asked
+        // to stop; the step is retried once that attempt has returned, never alongside it
+        private void expireOverdueAttempts() {
+            long now = System.currentTimeMillis();
+            for (Attempt attempt : running.values()) {
+                if (!attempt.overdue && now >= attempt.deadline()) {
+                    attempt.overdue = true;
+                    attempt.future.cancel(true);
+                    Log.e("SyncOrchestrator", String.format("%s timed out on attempt %d", attempt.step.getName(), attempt.number));
+                }
+            }
+        }
+
+        private void retryOrRecord(Attempt attempt, Outcome outcome) {
+            if (attempt.number < attempt.step.getMaxAttempts()) {
+                Attempt retry = new Attempt(attempt.step, attempt.number + 1);
+                retry.notBefore = System.currentTimeMillis() + (attempt.step.getBackoffMillis() << (attempt.number - 1));
+                retries.put(attempt.step.getName(), retry);
+            } else {
+                record(attempt.step, outcome, attempt.number);
+            }
+        }
+
+        private long millisToNextDeadline() {
+            long now = System.currentTimeMillis();
+            long wait = Long.MAX_VALUE;
+            for (Attempt attempt : running.values()) {
+                if (attempt.overdue) {
+                    continue;
+                }
+                long deadline = attempt.deadline();
+                wait = Math.min(wait, deadline == Long.MAX_VALUE ? attempt.step.getTimeoutMillis() : deadline - now);
+            }
+            for (Attempt attempt : retries.values()) {
+                wait = Math.min(wait, attempt.notBefore - now);
+            }
+            return Math.max(wait, 1);
+        }
+
+        private void record(SyncStep step, Outcome outcome, int attempts) {
+            Long startedAt = started.get(step.getName());
+            long duration = startedAt == null ? 0 : System.currentTimeMillis() - startedAt;
+            SyncStepResult result = new SyncStepResult(step.getName(), outcome, attempts, duration);
+            results.put(step.getName(), result);
+            Log.i("SyncOrchestrator", result.toString());
+        }
+
+        private class Attempt implements Runnable {
+            private final SyncStep step;
+            private final int number;
+            private volatile long begun;
+            private volatile Throwable error;
+            private boolean overdue;
+            private long notBefore;
+            private Future<?> future;
+
+            private Attempt(SyncStep step, int number) {
+                this.step = step;
+                this.number = number;
+            }
+
+            @Override
+            public void run() {
+                begun = System.currentTimeMillis();
+                try {
+                    step.getWork().call();
+                } catch (Throwable e) {
+                    error = e;
+                } finally {
+                    finished.add(this);
+                }
+            }
+
+            private long deadline() {
+                return begun == 0 ? Long.MAX_VALUE : begun + step.getTimeoutMillis();
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.sync;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import lombok.Getter;
+
+/**
+ * One unit of work in a sync cycle, with the steps it waits for and its run policy. Steps named
+ * in after() must complete for this one to run; steps named in afterAnyOutcomeOf() only have to
+ * have finished, however that went.
+ */
+@Getter
+public class SyncStep {
+    public interface Fingerprint {
+        String compute();
+    }
+
+    static final long DEFAULT_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    static final long DEFAULT_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    private final String name;
+    private final Callable<?> work;
+    private final Set<String> dependencies = new LinkedHashSet<>();
+    private final Set<String> orderings = new LinkedHashSet<>();
+    private boolean priority;
+    private long timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+    private int maxAttempts = 1;
+    private long backoffMillis = DEFAULT_BACKOFF_MILLIS;
+    private Fingerprint fingerprint;
+
+    public SyncStep(String name, Callable<?> work) {
+        this.name = name;
+        this.work = work;
+    }
+
+    public SyncStep after(String... steps) {
+        Collections.addAll(dependencies, steps);
+        return this;
+    }
+
+    public SyncStep afterAnyOutcomeOf(String... steps) {
+        Collections.addAll(orderings, steps);
+        return this;
+    }
+
+    public SyncStep priority() {
+        this.priority = true;
+        return this;
+    }
+
+    public SyncStep timeout(long duration, TimeUnit unit) {
+        this.timeoutMillis = unit.toMillis(duration);
+        return this;
+    }
+
+    public SyncStep attempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    public SyncStep backoff(long duration, TimeUnit unit) {
+        this.backoffMillis = unit.toMillis(duration);
+        return this;
+    }
+
+    public SyncStep skipIfUnchanged(Fingerprint fingerprint) {
+        this.fingerprint = fingerprint;
+        return this;
+    }
+}
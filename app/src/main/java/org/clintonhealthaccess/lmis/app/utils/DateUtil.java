@@ -33,9 +33,12 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.TimeZone;
 
 public class DateUtil {
 
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
     public static SimpleDateFormat dateFormater = new SimpleDateFormat("yyyy-MMM-dd");
 
     public static Date getMonthStartDate(Date date) {
@@ -84,7 +87,33 @@ public class DateUtil {
     }
 
     public static boolean equal(Date date1, Date date2) {
-        return dateFormater.format(date1).equals(dateFormater.format(date2));
+        return toEpochDay(date1) == toEpochDay(date2);
+    }
+
+    /**
+     * Days since 1970-01-01 in the device's time zone, so two dates on the same local day share a number.
+     */
+    public static int toEpochDay(Date date) {
+        long millis = date.getTime();
+        long localMillis = millis + TimeZone.getDefault().getOffset(millis);
+        long day = localMillis / MILLIS_PER_DAY;
+        return (int) (localMillis < 0 && localMillis % MILLIS_PER_DAY != 0 ? day - 1 : day);
+    }
+
+    public static Date fromEpochDay(int epochDay) {
+        TimeZone zone = TimeZone.getDefault();
+        long localMillis = epochDay * MILLIS_PER_DAY;
+        long guess = localMillis - zone.getOffset(localMillis);
+        Date date = new Date(localMillis - zone.getOffset(guess));
+        if (toEpochDay(date) == epochDay) {
+            return date;
+        }
+        // midnight was skipped by a zone transition on this day
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(1970, Calendar.JANUARY, 1);
+        calendar.add(Calendar.DAY_OF_MONTH, epochDay);
+        return calendar.getTime();
     }
 
     public static int dayNumber(Date date) {
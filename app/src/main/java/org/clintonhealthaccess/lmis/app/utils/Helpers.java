@@ -29,17 +29,35 @@
 
 package org.clintonhealthaccess.lmis.app.utils;
 
+import org.clintonhealthaccess.lmis.app.LmisException;
 import org.clintonhealthaccess.lmis.app.models.OrderCycle;
 
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 public class Helpers {
     public static boolean isEmpty(Collection collection) {
         return collection == null || collection.isEmpty();
     }
 
+    public static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LmisException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof LmisException) {
+                throw (LmisException) cause;
+            }
+            throw new LmisException(cause);
+        }
+    }
+
     public static OrderCycle getOrderCycle(String orderFrequency) {
         OrderCycle orderCycle;
         if (orderFrequency == null || orderFrequency.isEmpty()) {
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.utils;
+
+import android.util.Log;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Collects named stage durations for a multi-step job. Stages may be recorded from any
+ * thread, so work running on an executor can be timed next to work on the calling thread.
+ */
+public class StageTimer {
+    private final String label;
+    private final long started;
+    private final Map<String, Long> stages = new LinkedHashMap<>();
+
+    public StageTimer(String label) {
+        this.label = label;
+        this.started = now();
+    }
+
+    public long now() {
+        return System.currentTimeMillis();
+    }
+
+    public void record(String stage, long startedAt) {
+        long elapsed = now() - startedAt;
+        synchronized (stages) {
+            stages.put(stage, elapsed);
+        }
+    }
+
+    public <T> Callable<T> timed(final String stage, final Callable<T> callable) {
+        return new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                long startedAt = now();
+                try {
+                    return callable.call();
+                } finally {
+                    record(stage, startedAt);
+                }
+            }
+        };
+    }
+
+    public Map<String, Long> getStages() {
+        synchronized (stages) {
+            return new LinkedHashMap<>(stages);
+        }
+    }
+
+    public Long getStage(String stage) {
+        synchronized (stages) {
+            return stages.get(stage);
+        }
+    }
+
+    public long getTotal() {
+        return now() - started;
+    }
+
+    public String report() {
+        StringBuilder builder = new StringBuilder(label).append(":");
+        for (Map.Entry<String, Long> stage : getStages().entrySet()) {
+            builder.append(" ").append(stage.getKey()).append("=").append(stage.getValue()).append("ms,");
+        }
+        return builder.append(" total=").append(getTotal()).append("ms").toString();
+    }
+
+    public void dumpToLog() {
+        Log.i("TIMER", report());
+    }
+}
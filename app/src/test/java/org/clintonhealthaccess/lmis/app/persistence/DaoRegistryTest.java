@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.persistence;
+
+import com.google.inject.Inject;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.PreparedQuery;
+import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.stmt.SelectArg;
+
+import org.clintonhealthaccess.lmis.LmisTestClass;
+import org.clintonhealthaccess.lmis.app.models.Category;
+import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.utils.RobolectricGradleTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.setUpInjection;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.robolectric.Robolectric.application;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class DaoRegistryTest extends LmisTestClass {
+    @Inject
+    private DaoRegistry daoRegistry;
+
+    @Before
+    public void setUp() throws Exception {
+        setUpInjection(this);
+    }
+
+    @Test
+    public void shouldHandOutOneDaoPerDomainClassUntilTheDatabaseIsReopened() throws Exception {
+        Dao<Commodity, String> dao = daoRegistry.get(Commodity.class);
+
+        assertThat(daoRegistry.get(Commodity.class), is(sameInstance(dao)));
+        assertThat(DbUtil.initialiseDao(LmisSqliteOpenHelper.getInstance(application), Commodity.class), is(sameInstance(dao)));
+
+        LmisSqliteOpenHelper.getInstance(application).close();
+
+        assertThat(daoRegistry.get(Commodity.class), is(not(sameInstance(dao))));
+    }
+
+    @Test
+    public void shouldPrepareCompiledQueriesOnceAndBindArgumentsPerCall() throws Exception {
+        final AtomicInteger prepared = new AtomicInteger();
+        CompiledQuery<Category> byName = new CompiledQuery<>(Category.class, "DaoRegistryTest.byName",
+                new DaoRegistry.Preparer<Category>() {
+                    @Override
+                    public PreparedQuery<Category> prepare(Dao<Category, String> dao) throws SQLException {
+                        prepared.incrementAndGet();
+                        QueryBuilder<Category, String> queryBuilder = dao.queryBuilder();
+                        queryBuilder.where().eq("name", new SelectArg());
+                        return queryBuilder.prepare();
+                    }
+                });
+        Dao<Category, String> dao = daoRegistry.get(Category.class);
+        dao.create(new Category("malaria", "Antimalarials"));
+        dao.create(new Category("family", "Family Planning"));
+
+        assertThat(daoRegistry.queryForFirst(byName, "Antimalarials").getName(), is("Antimalarials"));
+        assertThat(daoRegistry.query(byName, "Family Planning").size(), is(1));
+        assertThat(daoRegistry.query(byName, "Vaccines").size(), is(0));
+
+        assertThat(prepared.get(), is(1));
+        assertThat(byName.getExecutions(), is(3L));
+        assertThat(DaoRegistry.getQueryStats(), hasItem(byName));
+    }
+
+    @Test
+    public void shouldGiveEachThreadItsOwnPreparedQuery() throws Exception {
+        final AtomicInteger prepared = new AtomicInteger();
+        final CompiledQuery<Category> byName = new CompiledQuery<>(Category.class, "DaoRegistryTest.byNamePerThread",
+                new DaoRegistry.Preparer<Category>() {
+                    @Override
+                    public PreparedQuery<Category> prepare(Dao<Category, String> dao) throws SQLException {
+                        prepared.incrementAndGet();
+                        QueryBuilder<Category, String> queryBuilder = dao.queryBuilder();
+                        queryBuilder.where().eq("name", new SelectArg());
+                        return queryBuilder.prepare();
+                    }
+                });
+        Dao<Category, String> dao = daoRegistry.get(Category.class);
+        dao.create(new Category("malaria", "Antimalarials"));
+        dao.create(new Category("family", "Family Planning"));
+        daoRegistry.query(byName, "Antimalarials");
+
+        final List<Category> found = new ArrayList<>();
+        Thread other = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                found.addAll(daoRegistry.query(byName, "Family Planning"));
+            }
+        });
+        other.start();
+        other.join();
+
+        assertThat(found.get(0).getName(), is("Family Planning"));
+        assertThat(daoRegistry.queryForFirst(byName, "Antimalarials").getName(), is("Antimalarials"));
+        assertThat(prepared.get(), is(2));
+    }
+}
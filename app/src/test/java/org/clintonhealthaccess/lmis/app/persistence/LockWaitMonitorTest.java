@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.persistence;
+
+import com.google.inject.Inject;
+import com.j256.ormlite.dao.Dao;
+
+import org.clintonhealthaccess.lmis.LmisTestClass;
+import org.clintonhealthaccess.lmis.app.models.Category;
+import org.clintonhealthaccess.lmis.utils.RobolectricGradleTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.sql.SQLException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.setUpInjection;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class LockWaitMonitorTest extends LmisTestClass {
+
+    @Inject
+    private DbUtil dbUtil;
+
+    @Before
+    public void setUp() throws Exception {
+        setUpInjection(this);
+        LockWaitMonitor.reset();
+    }
+
+    @Test
+    public void shouldRecordOneWaitPerTransactionAndBatch() throws Exception {
+        dbUtil.inTransaction("dispense", new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                return null;
+            }
+        });
+        dbUtil.withDaoAsBatch(Category.class, new DbUtil.Operation<Category, Void>() {
+            @Override
+            public Void operate(Dao<Category, String> dao) throws SQLException {
+                dao.create(new Category("Antibiotics"));
+                return null;
+            }
+        });
+
+        assertThat(LockWaitMonitor.get("dispense").getCount(), is(1L));
+        assertThat(LockWaitMonitor.get("Category").getCount(), is(1L));
+    }
+
+    @Test
+    public void shouldKeepTheLongestWaitPerOperation() throws Exception {
+        LockWaitMonitor.record("sync", TimeUnit.MILLISECONDS.toNanos(40));
+        LockWaitMonitor.record("sync", TimeUnit.MILLISECONDS.toNanos(5));
+
+        LockWaitMonitor.Stats stats = LockWaitMonitor.get("sync");
+        assertThat(stats.getCount(), is(2L));
+        assertThat(stats.getTotalMillis(), is(45L));
+        assertThat(stats.getMaxMillis(), is(40L));
+        assertThat(LockWaitMonitor.getStats().get(0), is(stats));
+
+        LockWaitMonitor.reset();
+        assertThat(LockWaitMonitor.get("sync"), is(nullValue()));
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.persistence.migrations;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.google.inject.Inject;
+import com.j256.ormlite.dao.Dao;
+
+import org.clintonhealthaccess.lmis.LmisTestClass;
+import org.clintonhealthaccess.lmis.app.models.Dispensing;
+import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
+import org.clintonhealthaccess.lmis.app.persistence.LmisSqliteOpenHelper;
+import org.clintonhealthaccess.lmis.app.utils.DateUtil;
+import org.clintonhealthaccess.lmis.utils.RobolectricGradleTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.setUpInjection;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Robolectric.application;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class ConvertDatesToEpochDaysTest extends LmisTestClass {
+
+    @Inject
+    private DbUtil dbUtil;
+
+    private SQLiteDatabase database;
+
+    @Before
+    public void setUp() throws Exception {
+        setUpInjection(this);
+        database = LmisSqliteOpenHelper.getInstance(application).getWritableDatabase();
+    }
+
+    @Test
+    public void shouldStoreTransactionDatesAsEpochDays() throws Exception {
+        Date created = new SimpleDateFormat("yyyy-MM-dd HH:mm").parse("2014-01-01 15:30");
+        saveDispensing(created);
+
+        assertThat(storedCreated(), is("16071|integer"));
+        assertTrue(DateUtil.equal(savedDispensings().get(0).getCreated(), created));
+    }
+
+    @Test
+    public void shouldConvertDateStringsWrittenBeforeTheMigration() throws Exception {
+        Date created = new SimpleDateFormat("yyyy-MM-dd").parse("2014-01-31");
+        saveDispensing(created);
+        ConvertDatesToEpochDays migration = new ConvertDatesToEpochDays();
+
+        migration.down(database, null);
+        assertThat(storedCreated(), is("2014-01-31|text"));
+
+        migration.up(database, LmisSqliteOpenHelper.getInstance(application).getConnectionSource());
+        assertThat(storedCreated(), is("16101|integer"));
+
+        List<Dispensing> dispensings = savedDispensings();
+        assertThat(dispensings.size(), is(1));
+        assertThat(dispensings.get(0).getCreated(), is(created));
+    }
+
+    private void saveDispensing(final Date created) {
+        dbUtil.withDao(Dispensing.class, new DbUtil.Operation<Dispensing, Void>() {
+            @Override
+            public Void operate(Dao<Dispensing, String> dao) throws SQLException {
+                dao.create(new Dispensing(created));
+                return null;
+            }
+        });
+    }
+
+    private List<Dispensing> savedDispensings() {
+        return dbUtil.withDao(Dispensing.class, new DbUtil.Operation<Dispensing, List<Dispensing>>() {
+            @Override
+            public List<Dispensing> operate(Dao<Dispensing, String> dao) throws SQLException {
+                return dao.queryForAll();
+            }
+        });
+    }
+
+    private String storedCreated() {
+        Cursor cursor = database.rawQuery("SELECT created, typeof(created) FROM dispensings", null);
+        cursor.moveToFirst();
+        String stored = cursor.getString(0) + "|" + cursor.getString(1);
+        cursor.close();
+        return stored;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.persistence.migrations;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.clintonhealthaccess.lmis.LmisTestClass;
+import org.clintonhealthaccess.lmis.app.persistence.LmisSqliteOpenHelper;
+import org.clintonhealthaccess.lmis.utils.RobolectricGradleTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.robolectric.Robolectric.application;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class CreateQueryIndexesTest extends LmisTestClass {
+
+    private static final List<String> HOT_QUERIES = asList(
+            "SELECT * FROM stockitemsnapshot WHERE commodity_id = 'id' AND created = 16071",
+            "SELECT * FROM stockitemsnapshot WHERE commodity_id = 'id' AND created <= 16071 ORDER BY created DESC",
+            "SELECT * FROM commoditysnapshot WHERE commodity_id = 'id' AND commodityActivity_id = 'id' AND period_date = 16071",
+            "SELECT * FROM commoditysnapshot WHERE synced = 0",
+            "SELECT * FROM commodityactionvalue WHERE commodityAction_id = 'id' AND period = '201401'",
+            "SELECT * FROM adjustment WHERE commodity_id = 'id' AND created BETWEEN 16071 AND 16101",
+            "SELECT * FROM dispensingItems WHERE commodity_id = 'id'",
+            "SELECT * FROM receive_items WHERE commodity_id = 'id'",
+            "SELECT * FROM loss_items WHERE commodity_id = 'id'",
+            "SELECT * FROM dispensings WHERE created BETWEEN 16071 AND 16101",
+            "SELECT * FROM receives WHERE created BETWEEN 16071 AND 16101",
+            "SELECT * FROM losses WHERE created BETWEEN 16071 AND 16101",
+            "SELECT * FROM stock_intervals WHERE commodity_id = 'id' AND fromDay <= 16071 AND toDay >= 16071"
+    );
+
+    private SQLiteDatabase database;
+
+    @Before
+    public void setUp() throws Exception {
+        database = LmisSqliteOpenHelper.getInstance(application).getWritableDatabase();
+    }
+
+    @Test
+    public void shouldNotScanWholeTablesForHotQueries() throws Exception {
+        List<String> fullScans = new ArrayList<>();
+        for (String query : HOT_QUERIES) {
+            for (String step : queryPlan(query)) {
+                if (step.startsWith("SCAN") && !step.contains("USING")) {
+                    fullScans.add(query + " => " + step);
+                }
+            }
+        }
+        assertThat(fullScans, is(empty()));
+    }
+
+    @Test
+    public void shouldBeAbleToDropAndRecreateIndexes() throws Exception {
+        CreateQueryIndexes migration = new CreateQueryIndexes();
+        migration.down(database, null);
+        migration.up(database, null);
+
+        for (String name : CreateQueryIndexes.INDEXES.keySet()) {
+            Cursor cursor = database.rawQuery("SELECT name FROM sqlite_master WHERE type = 'index' AND name = ?", new String[]{name});
+            assertThat(name, cursor.getCount(), is(1));
+            cursor.close();
+        }
+    }
+
+    private List<String> queryPlan(String query) {
+        List<String> steps = new ArrayList<>();
+        Cursor cursor = database.rawQuery("EXPLAIN QUERY PLAN " + query, null);
+        int detail = cursor.getColumnIndex("detail");
+        while (cursor.moveToNext()) {
+            steps.add(cursor.getString(detail));
+        }
+        cursor.close();
+        return steps;
+    }
+}
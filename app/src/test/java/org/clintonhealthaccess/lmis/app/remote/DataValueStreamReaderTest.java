@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.remote;
+
+import com.thoughtworks.dhis.models.DataValue;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class DataValueStreamReaderTest {
+
+    @Test
+    public void shouldHandOutDataValuesInBoundedBatches() throws Exception {
+        final List<Integer> batchSizes = new ArrayList<>();
+        final List<DataValue> values = new ArrayList<>();
+        InputStream in = getClass().getClassLoader().getResourceAsStream("fixtures/dataValues.json");
+
+        int count = new DataValueStreamReader(50).read(in, new LmisServer.BatchHandler<DataValue>() {
+            @Override
+            public void handle(List<DataValue> batch) {
+                batchSizes.add(batch.size());
+                values.addAll(batch);
+            }
+        });
+
+        assertThat(count, is(210));
+        assertThat(batchSizes.toString(), is("[50, 50, 50, 50, 10]"));
+        assertThat(values.get(0).getDataElement(), is("f5edb97ceca"));
+        assertThat(values.get(0).getValue(), is("469"));
+        assertThat(values.get(0).getPeriod(), is("20131229"));
+    }
+
+    @Test
+    public void shouldSkipUnknownFieldsAndNulls() throws Exception {
+        String json = "{\"dataSet\":\"ds\",\"dataValues\":[{\"dataElement\":\"de\",\"followUp\":false," +
+                "\"value\":null,\"period\":\"201410\",\"extra\":{\"nested\":[1,2]}}],\"completeDate\":\"2014-10-01\"}";
+        final List<DataValue> values = new ArrayList<>();
+
+        new DataValueStreamReader(10).read(new ByteArrayInputStream(json.getBytes("UTF-8")), new LmisServer.BatchHandler<DataValue>() {
+            @Override
+            public void handle(List<DataValue> batch) {
+                values.addAll(batch);
+            }
+        });
+
+        assertThat(values.size(), is(1));
+        assertThat(values.get(0).getDataElement(), is("de"));
+        assertThat(values.get(0).getValue(), is(nullValue()));
+        assertThat(values.get(0).getPeriod(), is("201410"));
+    }
+
+    @Test
+    public void shouldReadResponsesWithoutDataValues() throws Exception {
+        int count = new DataValueStreamReader(10).read(new ByteArrayInputStream("{}".getBytes("UTF-8")), new LmisServer.BatchHandler<DataValue>() {
+            @Override
+            public void handle(List<DataValue> batch) {
+                throw new AssertionError("no batch expected");
+            }
+        });
+
+        assertThat(count, is(0));
+    }
+}
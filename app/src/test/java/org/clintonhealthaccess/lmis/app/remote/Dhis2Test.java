@@ -123,9 +123,7 @@ public class Dhis2Test extends LMISTestCase {
 
     @Test
     public void shouldFetchCategoriesFromAPIServiceEndPoint() throws Exception {
-        setUpSuccessHttpGetRequest(200, "dataElementGroupSets.json");
-        setUpSuccessHttpGetRequest(200, "dataSets.json");
-        setUpSuccessHttpGetRequest(200, "indicatorGroups.json");
+        setUpCategoryMetadataRequests();
         List<Category> categories = dhis2.fetchCategories(new User());
         String commodityName = "Cotrimoxazole_suspension";
         assertThat(categories.size(), is(7));
@@ -160,9 +158,7 @@ public class Dhis2Test extends LMISTestCase {
 
     @Test
     public void shouldFetchCommoditiesFromAPIServiceEndPoint() throws Exception {
-        setUpSuccessHttpGetRequest(200, "dataElementGroupSets.json");
-        setUpSuccessHttpGetRequest(200, "dataSets.json");
-        setUpSuccessHttpGetRequest(200, "indicatorGroups.json");
+        setUpCategoryMetadataRequests();
         List<Category> categories = dhis2.fetchCategories(new User());
         String commodityName = "Cotrimoxazole_suspension";
         assertThat(categories.size(), is(7));
@@ -174,9 +170,7 @@ public class Dhis2Test extends LMISTestCase {
 
     @Test
     public void shouldFetchNonLGAInformation() throws Exception {
-        setUpSuccessHttpGetRequest(200, "dataElementGroupSets.json");
-        setUpSuccessHttpGetRequest(200, "dataSets.json");
-        setUpSuccessHttpGetRequest(200, "indicatorGroups.json");
+        setUpCategoryMetadataRequests();
         List<Category> categories = dhis2.fetchCategories(new User());
         assertThat(categories.size(), is(7));
         Category category = categories.get(0);
@@ -191,10 +185,8 @@ public class Dhis2Test extends LMISTestCase {
         User user = new User();
         user.setFacilityCode(orgUnit);
 
-        setUpSuccessHttpGetRequest(200, "dataElementGroupSets.json");
-        setUpSuccessHttpGetRequest(200, "dataSets.json");
-        setUpSuccessHttpGetRequest(200, "indicatorGroups.json");
-        setUpSuccessHttpGetRequest(200, "dataValues.json");
+        setUpCategoryMetadataRequests();
+        setUpSuccessHttpGetPathRequest("/api/dataValueSets", "dataValues.json");
 
         List<Category> categories = dhis2.fetchCategories(user);
         commodityService.saveToDatabase(categories);
@@ -234,9 +226,7 @@ public class Dhis2Test extends LMISTestCase {
         User user = new User();
         user.setFacilityCode(orgUnit);
 
-        setUpSuccessHttpGetRequest(200, "dataElementGroupSets.json");
-        setUpSuccessHttpGetRequest(200, "dataSets.json");
-        setUpSuccessHttpGetRequest(200, "indicatorGroups.json");
+        setUpCategoryMetadataRequests();
 
         commodityService.saveToDatabase(dhis2.fetchCategories(user));
         categoryService.clearCache();
@@ -280,9 +270,7 @@ public class Dhis2Test extends LMISTestCase {
 
     @Test
     public void shouldFetchIndicatorValues() throws Exception {
-        setUpSuccessHttpGetRequest(200, "dataElementGroupSets.json");
-        setUpSuccessHttpGetRequest(200, "dataSets.json");
-        setUpSuccessHttpGetRequest(200, "indicatorGroups.json");
+        setUpCategoryMetadataRequests();
         commodityService.saveToDatabase(dhis2.fetchCategories(new User()));
         categoryService.clearCache();
 
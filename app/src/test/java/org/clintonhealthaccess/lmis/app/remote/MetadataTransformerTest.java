@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.remote;
+
+import com.thoughtworks.dhis.models.Attribute;
+import com.thoughtworks.dhis.models.AttributeValue;
+import com.thoughtworks.dhis.models.DataElement;
+import com.thoughtworks.dhis.models.DataElementGroup;
+import com.thoughtworks.dhis.models.DataElementGroupSet;
+import com.thoughtworks.dhis.models.Indicator;
+import com.thoughtworks.dhis.models.IndicatorGroup;
+
+import org.clintonhealthaccess.lmis.app.models.Category;
+import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.CommodityAction;
+import org.clintonhealthaccess.lmis.app.models.CommodityActionDataSet;
+import org.clintonhealthaccess.lmis.app.models.DataSet;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class MetadataTransformerTest {
+
+    private static final String[] ACTIVITIES = {"DISPENSED", "RECEIVED", "STOCK_ON_HAND", "ADJUSTMENTS", "NOT_AN_ACTIVITY"};
+
+    private final Attribute activity = Attribute.builder().name("LMIS Activity").build();
+
+    @Test
+    public void shouldLinkEachActionToEveryDataSetCollectingItsElement() throws Exception {
+        DataElementGroupSet groupSet = groupSet("malaria");
+        DataElementGroup group = group(groupSet, "Coartem");
+        DataElement dispensed = element(group, "ElemDispensed", "DISPENSED");
+        DataElement received = element(group, "ElemReceived", "RECEIVED");
+        DataElement unknown = element(group, "ElemUnknown", "NOT_AN_ACTIVITY");
+
+        DataSet monthly = dataSet("monthly", dispensed, received, unknown);
+        DataSet allocated = dataSet("allocated", DataElement.builder().id("elemreceived").build());
+
+        List<Category> categories = new MetadataTransformer(asList(monthly, allocated)).toCategories(asList(groupSet));
+
+        Commodity commodity = categories.get(0).getTransientCommodities().get(0);
+        assertThat(commodity.getCommodityActions().size(), is(2));
+        assertThat(dataSetIds(commodity.getCommodityActions().get(0)), is(asList("monthly")));
+        assertThat(dataSetIds(commodity.getCommodityActions().get(1)), is(asList("monthly", "allocated")));
+    }
+
+    @Test
+    public void shouldAddIndicatorsWhoseNameContainsTheCommodityName() throws Exception {
+        DataElementGroupSet groupSet = groupSet("child health");
+        group(groupSet, "ORS_Satchets");
+        group(groupSet, "Zinc");
+        List<Category> categories = new MetadataTransformer(new ArrayList<DataSet>()).toCategories(asList(groupSet));
+
+        IndicatorGroup bufferStock = IndicatorGroup.builder().name("BUFFER STOCK").build();
+        List<Indicator> indicators = asList(
+                indicator(bufferStock, "ORS_Satchets_BUFFER_STOCK"),
+                indicator(bufferStock, "Zinc+ORS Copack_Satchets  BUFFER_STOCK"),
+                indicator(bufferStock, "Zinc_tablet  BUFFER_STOCK"));
+        MetadataTransformer.addIndicatorCommodityActions(categories, indicators);
+
+        List<Commodity> commodities = categories.get(0).getTransientCommodities();
+        assertThat(actionNames(commodities.get(0)), is(asList("ORS_Satchets_BUFFER_STOCK")));
+        assertThat(actionNames(commodities.get(1)), is(asList("Zinc+ORS Copack_Satchets  BUFFER_STOCK", "Zinc_tablet  BUFFER_STOCK")));
+        assertThat(commodities.get(1).getCommodityActions().get(0).getActivityType(), is("BUFFER_STOCK"));
+    }
+
+    @Test
+    public void shouldRebuildGroupSetsFromTheElementsOfDataSets() throws Exception {
+        DataElementGroupSet malaria = groupSet("malaria");
+        DataElementGroupSet vaccines = groupSet("vaccines");
+        DataElementGroup coartem = group(malaria, "Coartem");
+        DataElementGroup bcg = group(vaccines, "BCG");
+        DataElement coartemDispensed = element(coartem, "e1", "DISPENSED");
+        DataElement bcgDispensed = element(bcg, "e2", "DISPENSED");
+        DataElement bcgReceived = element(bcg, "e3", "RECEIVED");
+
+        List<DataElementGroupSet> groupSets = MetadataTransformer.groupSetsOf(asList(
+                dataSet("monthly", coartemDispensed, bcgDispensed), dataSet("allocated", bcgReceived, coartemDispensed)));
+
+        assertThat(groupSets, is(asList(malaria, vaccines)));
+        assertThat(groupSets.get(1).getDataElementGroups(), is(asList(bcg)));
+        assertThat(bcg.getDataElements(), is(asList(bcgDispensed, bcgReceived)));
+        assertThat(coartem.getDataElements(), is(asList(coartemDispensed)));
+    }
+
+    @Test
+    public void shouldTransformNationalScaleMetadata() throws Exception {
+        int commodityCount = 8000;
+        IndicatorGroup bufferStock = IndicatorGroup.builder().name("BUFFER STOCK").build();
+        List<DataElementGroupSet> groupSets = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            groupSets.add(groupSet("set" + i));
+        }
+        List<DataElement> elements = new ArrayList<>();
+        List<Indicator> indicators = new ArrayList<>();
+        for (int i = 0; i < commodityCount; i++) {
+            String name = "Commodity " + i + "_tablet";
+            DataElementGroup group = group(groupSets.get(i % groupSets.size()), name);
+            for (String activityName : ACTIVITIES) {
+                elements.add(element(group, "element" + i + activityName, activityName));
+            }
+            indicators.add(indicator(bufferStock, name + "  BUFFER_STOCK"));
+        }
+        List<DataSet> dataSets = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            dataSets.add(dataSet("dataSet" + i, elements.subList(i * elements.size() / 8, elements.size()).toArray(new DataElement[0])));
+        }
+
+        List<Category> categories = new MetadataTransformer(dataSets).toCategories(groupSets);
+        MetadataTransformer.addIndicatorCommodityActions(categories, indicators);
+
+        int commodities = 0;
+        for (Category category : categories) {
+            for (Commodity commodity : category.getTransientCommodities()) {
+                commodities++;
+                // four known activities, then the buffer stock indicator
+                List<CommodityAction> actions = commodity.getCommodityActions();
+                assertThat(actions.size(), is(5));
+                assertThat(actions.get(4).getName(), is(commodity.getName() + "  BUFFER_STOCK"));
+            }
+        }
+        assertThat(commodities, is(commodityCount));
+        assertThat(MetadataTransformer.groupSetsOf(dataSets), is(groupSets));
+
+        // a scan of every indicator per commodity would make 64 million name comparisons here
+        MetadataTransformer.IndicatorIndex index = new MetadataTransformer.IndicatorIndex(indicators);
+        long comparisons = 0;
+        for (int i = 0; i < commodityCount; i++) {
+            comparisons += index.candidatesFor("Commodity " + i + "_tablet").size();
+        }
+        assertThat(comparisons, lessThan((long) commodityCount * commodityCount / 100));
+    }
+
+    private DataElementGroupSet groupSet(String id) {
+        return DataElementGroupSet.builder().id(id).name(id)
+                .dataElementGroups(new ArrayList<DataElementGroup>()).build();
+    }
+
+    private DataElementGroup group(DataElementGroupSet groupSet, String name) {
+        DataElementGroup group = DataElementGroup.builder().id(name).name(name).dataElementGroupSet(groupSet)
+                .attributeValues(new ArrayList<AttributeValue>()).dataElements(new ArrayList<DataElement>()).build();
+        groupSet.getDataElementGroups().add(group);
+        return group;
+    }
+
+    private DataElement element(DataElementGroup group, String id, String activityName) {
+        AttributeValue value = AttributeValue.builder().value(activityName).attribute(activity).build();
+        DataElement element = DataElement.builder().id(id).name(group.getName() + " " + activityName)
+                .attributeValues(asList(value)).dataElementGroups(asList(group)).build();
+        group.getDataElements().add(element);
+        return element;
+    }
+
+    private DataSet dataSet(String id, DataElement... elements) {
+        return new DataSet(com.thoughtworks.dhis.models.DataSet.builder()
+                .id(id).name(id).dataElements(asList(elements)).build());
+    }
+
+    private Indicator indicator(IndicatorGroup indicatorGroup, String name) {
+        return Indicator.builder().id(name).name(name).indicatorGroup(indicatorGroup).build();
+    }
+
+    private List<String> dataSetIds(CommodityAction action) {
+        List<String> ids = new ArrayList<>();
+        for (CommodityActionDataSet actionDataSet : action.getTransientCommodityActionDataSets()) {
+            ids.add(actionDataSet.getDataSet().getId());
+        }
+        return ids;
+    }
+
+    private List<String> actionNames(Commodity commodity) {
+        List<String> names = new ArrayList<>();
+        for (CommodityAction action : commodity.getCommodityActions()) {
+            names.add(action.getName());
+        }
+        return names;
+    }
+}
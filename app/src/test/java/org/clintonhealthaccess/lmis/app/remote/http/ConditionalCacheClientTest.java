@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.remote.http;
+
+import com.google.common.io.ByteStreams;
+
+import org.clintonhealthaccess.lmis.LmisTestClass;
+import org.clintonhealthaccess.lmis.utils.RobolectricGradleTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import retrofit.client.Client;
+import retrofit.client.Header;
+import retrofit.client.Request;
+import retrofit.client.Response;
+import retrofit.mime.TypedByteArray;
+import retrofit.mime.TypedInput;
+
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.robolectric.Robolectric.application;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class ConditionalCacheClientTest extends LmisTestClass {
+    private static final String URL = "http://dhis2.test/api/dataElementGroupSets";
+    private static final String BODY = "{\"dataElementGroupSets\":[]}";
+
+    private HttpDiskCache cache;
+    private StubClient server;
+    private ConditionalCacheClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new HttpDiskCache(new File(application.getCacheDir(), "http-test"));
+        cache.clear();
+        server = new StubClient();
+        client = new ConditionalCacheClient(server, cache);
+        HttpTrafficMonitor.reset();
+    }
+
+    @Test
+    public void shouldAnswerARevalidatedGetFromTheDiskCache() throws Exception {
+        server.respond(200, BODY, new Header("ETag", "\"v1\""));
+        server.respond(304, null);
+
+        client.execute(get());
+        Response response = client.execute(get());
+
+        assertThat(header(server.sent.get(1), "If-None-Match"), is("\"v1\""));
+        assertThat(response.getStatus(), is(200));
+        assertThat(new String(((TypedByteArray) response.getBody()).getBytes(), "UTF-8"), is(BODY));
+        assertThat(HttpTrafficMonitor.getNotModified(), is(1L));
+        assertThat(HttpTrafficMonitor.getDownloadedBytes(), is((long) BODY.length()));
+        assertThat(HttpTrafficMonitor.getCachedBytes(), is((long) BODY.length()));
+    }
+
+    @Test
+    public void shouldNotCacheResponsesWithoutValidators() throws Exception {
+        server.respond(200, BODY);
+        server.respond(200, BODY);
+
+        client.execute(get());
+        client.execute(get());
+
+        assertThat(server.sent.get(1).getHeaders().isEmpty(), is(true));
+        assertThat(cache.get(URL), is(nullValue()));
+        assertThat(HttpTrafficMonitor.getDownloadedBytes(), is(2L * BODY.length()));
+    }
+
+    @Test
+    public void shouldPassDataValueStreamsThroughWithoutBufferingOrCaching() throws Exception {
+        String url = "http://dhis2.test/api/dataValueSets?dataSet=1";
+        final byte[] values = "{\"dataValues\":[]}".getBytes("UTF-8");
+        TypedInput stream = new TypedInput() {
+            @Override
+            public String mimeType() {
+                return "application/json";
+            }
+
+            @Override
+            public long length() {
+                return -1;
+            }
+
+            @Override
+            public InputStream in() throws IOException {
+                return new ByteArrayInputStream(values);
+            }
+        };
+        server.responses.add(new Response(url, 200, "", Arrays.asList(new Header("ETag", "\"v1\"")), stream));
+
+        Response response = client.execute(new Request("GET", url, Collections.<Header>emptyList(), null));
+
+        assertThat(response.getBody() instanceof TypedByteArray, is(false));
+        assertThat(HttpTrafficMonitor.getDownloadedBytes(), is(0L));
+        assertThat(ByteStreams.toByteArray(response.getBody().in()), is(values));
+        assertThat(HttpTrafficMonitor.getDownloadedBytes(), is((long) values.length));
+        assertThat(cache.get(url), is(nullValue()));
+    }
+
+    private static String header(Request request, String name) {
+        for (Header header : request.getHeaders()) {
+            if (header.getName().equals(name)) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static Request get() {
+        return new Request("GET", URL, Collections.<Header>emptyList(), null);
+    }
+
+    private static class StubClient implements Client {
+        private final List<Request> sent = new ArrayList<>();
+        private final LinkedList<Response> responses = new LinkedList<>();
+
+        void respond(int status, String body, Header... headers) throws IOException {
+            TypedByteArray typedBody = body == null ? null : new TypedByteArray("application/json", body.getBytes("UTF-8"));
+            responses.add(new Response(URL, status, "", Arrays.asList(headers), typedBody));
+        }
+
+        @Override
+        public Response execute(Request request) throws IOException {
+            sent.add(request);
+            return responses.removeFirst();
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.remote.http;
+
+import org.apache.http.client.CookieStore;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.apache.http.impl.cookie.BasicClientCookie;
+import org.clintonhealthaccess.lmis.LmisTestClass;
+import org.clintonhealthaccess.lmis.utils.RobolectricGradleTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import retrofit.client.Client;
+import retrofit.client.Header;
+import retrofit.client.Request;
+import retrofit.client.Response;
+import retrofit.mime.TypedByteArray;
+import retrofit.mime.TypedInput;
+
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class SessionClientTest extends LmisTestClass {
+    private static final String URL = "http://dhis2.test/api/dataSets";
+    private static final Header CREDENTIALS = new Header("Authorization", "Basic dGVzdDpwYXNz");
+
+    private StubDhis2 server;
+    private SessionClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubDhis2();
+        client = new SessionClient(server, server.cookieStore);
+        HttpTrafficMonitor.reset();
+    }
+
+    @Test
+    public void shouldSendCredentialsOnlyToOpenTheSession() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            assertThat(client.execute(get()).getStatus(), is(200));
+        }
+
+        assertThat(server.authenticated, is(1));
+        assertThat(HttpTrafficMonitor.getBasicAuthRequests(), is(1L));
+        assertThat(HttpTrafficMonitor.getSessionRequests(), is(4L));
+        assertThat(HttpTrafficMonitor.getAverageSessionMillis(), lessThan(HttpTrafficMonitor.getAverageBasicAuthMillis()));
+    }
+
+    @Test
+    public void shouldReauthenticateWhenTheSessionExpires() throws Exception {
+        client.execute(get());
+        server.sessionValid = false;
+
+        Response response = client.execute(get());
+
+        assertThat(response.getStatus(), is(200));
+        assertThat(server.authenticated, is(2));
+        assertThat(server.sent.size(), is(3));
+        assertThat(client.execute(get()).getStatus(), is(200));
+        assertThat(server.authenticated, is(2));
+    }
+
+    @Test
+    public void shouldReleaseTheRejectedResponseBeforeReauthenticating() throws Exception {
+        client.execute(get());
+        server.sessionValid = false;
+
+        client.execute(get());
+
+        assertThat(server.rejections.size(), is(1));
+        assertThat(server.rejections.get(0).closed, is(true));
+    }
+
+    @Test
+    public void shouldDropTheSessionWhenAnotherUserLogsIn() throws Exception {
+        client.execute(get());
+
+        client.execute(new Request("GET", URL, Arrays.asList(new Header("Authorization", "Basic b3RoZXI6cGFzcw==")), null));
+
+        assertThat(server.authenticated, is(2));
+    }
+
+    private static Request get() {
+        return new Request("GET", URL, Arrays.asList(CREDENTIALS), null);
+    }
+
+    private static class StubDhis2 implements Client {
+        private static final long AUTHENTICATION_MILLIS = 20;
+
+        private final CookieStore cookieStore = new BasicCookieStore();
+        private final List<Request> sent = new ArrayList<>();
+        private final List<TrackedBody> rejections = new ArrayList<>();
+        private int authenticated;
+        private boolean sessionValid = true;
+
+        @Override
+        public Response execute(Request request) throws IOException {
+            sent.add(request);
+            if (hasCredentials(request)) {
+                authenticate();
+            } else if (!sessionValid) {
+                TrackedBody rejection = new TrackedBody("Unauthorized".getBytes());
+                rejections.add(rejection);
+                return new Response(URL, 401, "Unauthorized", Collections.<Header>emptyList(),
+                        new TypedInputStream("text/plain", rejection));
+            }
+            return new Response(URL, 200, "OK", Collections.<Header>emptyList(), new TypedByteArray("application/json", "{}".getBytes()));
+        }
+
+        private void authenticate() {
+            try {
+                Thread.sleep(AUTHENTICATION_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            authenticated++;
+            sessionValid = true;
+            BasicClientCookie cookie = new BasicClientCookie("JSESSIONID", "session-" + authenticated);
+            cookie.setDomain("dhis2.test");
+            cookieStore.addCookie(cookie);
+        }
+
+        private static boolean hasCredentials(Request request) {
+            for (Header header : request.getHeaders()) {
+                if (header.getName().equals("Authorization")) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static class TrackedBody extends ByteArrayInputStream {
+        private boolean closed;
+
+        private TrackedBody(byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+    }
+
+    private static class TypedInputStream implements TypedInput {
+        private final String mimeType;
+        private final InputStream in;
+
+        private TypedInputStream(String mimeType, InputStream in) {
+            this.mimeType = mimeType;
+            this.in = in;
+        }
+
+        @Override
+        public String mimeType() {
+            return mimeType;
+        }
+
+        @Override
+        public long length() {
+            return -1;
+        }
+
+        @Override
+        public InputStream in() throws IOException {
+            return in;
+        }
+    }
+}
@@ -70,19 +70,15 @@ public class AdjustmentServiceTest extends LmisTestClass {
 
     CommoditySnapshotService commoditySnapShotService;
 
-    StockService stockService;
-
     @Before
     public void setUp() throws Exception {
         alertsService = mock(AlertsService.class);
         commoditySnapShotService = mock(CommoditySnapshotService.class);
-        stockService = mock(StockService.class);
         setUpInjectionWithMockLmisServer(Robolectric.application, this, new AbstractModule() {
             @Override
             public void configure() {
                 bind(AlertsService.class).toInstance(alertsService);
                 bind(CommoditySnapshotService.class).toInstance(commoditySnapShotService);
-                bind(StockService.class).toInstance(stockService);
             }
         });
         commodityService.initialise(new User("user", "pass"));
@@ -113,31 +109,33 @@ public class AdjustmentServiceTest extends LmisTestClass {
                 adjustment
         );
         adjustmentService.save(adjustments);
-        verify(commoditySnapShotService, atLeastOnce()).add(adjustment);
+        verify(commoditySnapShotService, atLeastOnce()).addAll(adjustments);
 
     }
 
     @Test
     public void shouldIncreaseStockLevelForPositiveAdjustment() throws Exception {
         final Commodity commodity = commodityService.all().get(0);
+        int stockOnHand = commodity.getStockOnHand();
         Adjustment adjustment = new Adjustment(commodity, 5, true, "Sent to another facility");
         List<Adjustment> adjustments = Arrays.asList(
                 adjustment
         );
         adjustmentService.save(adjustments);
-        verify(stockService, atLeastOnce()).increaseStockLevelFor(adjustment.getCommodity(), 5, adjustment.getCreated());
+        assertThat(commodityService.all().get(0).getStockOnHand(), is(stockOnHand + 5));
 
     }
 
     @Test
     public void shouldReduceStockLevelForNegativeAdjustment() throws Exception {
         final Commodity commodity = commodityService.all().get(0);
+        int stockOnHand = commodity.getStockOnHand();
         Adjustment adjustment = new Adjustment(commodity, 5, false, "Sent to another facility");
         List<Adjustment> adjustments = Arrays.asList(
                 adjustment
         );
         adjustmentService.save(adjustments);
-        verify(stockService, atLeastOnce()).reduceStockLevelFor(adjustment.getCommodity(), 5, adjustment.getCreated());
+        assertThat(commodityService.all().get(0).getStockOnHand(), is(stockOnHand - 5));
     }
 
     @Test
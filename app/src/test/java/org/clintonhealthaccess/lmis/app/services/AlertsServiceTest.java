@@ -36,11 +36,13 @@ import com.j256.ormlite.dao.Dao;
 
 import org.clintonhealthaccess.lmis.LmisTestClass;
 import org.clintonhealthaccess.lmis.app.activities.viewmodels.OrderCommodityViewModel;
+import org.clintonhealthaccess.lmis.app.events.AlertChangeEvent;
 import org.clintonhealthaccess.lmis.app.models.Adjustment;
 import org.clintonhealthaccess.lmis.app.models.AdjustmentReason;
 import org.clintonhealthaccess.lmis.app.models.Allocation;
 import org.clintonhealthaccess.lmis.app.models.Commodity;
 import org.clintonhealthaccess.lmis.app.models.User;
+import org.clintonhealthaccess.lmis.app.models.alerts.AlertSummary;
 import org.clintonhealthaccess.lmis.app.models.alerts.AllocationAlert;
 import org.clintonhealthaccess.lmis.app.models.alerts.LowStockAlert;
 import org.clintonhealthaccess.lmis.app.models.alerts.MonthlyStockCountAlert;
@@ -59,6 +61,10 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 
+import de.greenrobot.event.EventBus;
+
+import static org.clintonhealthaccess.lmis.utils.LMISTestCase.dispense;
+import static org.clintonhealthaccess.lmis.utils.LMISTestCase.receive;
 import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.setUpInjectionWithMockLmisServer;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
@@ -83,11 +89,15 @@ public class AlertsServiceTest extends LmisTestClass {
     SharedPreferences sharedPreferences;
 
     @Inject
-    private StockService stockService;
+    private DispensingService dispensingService;
+
+    @Inject
+    private ReceiveService receiveService;
 
     @Before
     public void setUp() throws Exception {
         setUpInjectionWithMockLmisServer(application, this);
+        AlertsService.clearCache();
     }
 
     @Test
@@ -432,6 +442,96 @@ public class AlertsServiceTest extends LmisTestClass {
         assertThat(alertsService.adjustmentsHaveBeenMadeForEachCommodityInMonthOfAlert(new Date()), is(true));
     }
 
+    @Test
+    public void shouldCreateLowStockAlertForCommodityDispensedBelowThreshold() throws Exception {
+        setupCommodities();
+        Commodity commodity = firstCommodityAboveThreshold();
+
+        dispense(commodity, commodity.getStockOnHand() - commodity.getMinimumThreshold() + 1, dispensingService);
+
+        List<LowStockAlert> alerts = alertsService.getLowStockAlerts();
+        assertThat(alerts.size(), is(1));
+        assertThat(alerts.get(0).getCommodity(), is(commodity));
+    }
+
+    @Test
+    public void shouldDeleteLowStockAlertWhenReceiveLiftsStockAboveThreshold() throws Exception {
+        setupCommodities();
+        alertsService.updateLowStockAlerts();
+        List<LowStockAlert> alerts = alertsService.getLowStockAlerts();
+        assertThat(alerts.size(), is(2));
+        Commodity commodity = alerts.get(0).getCommodity();
+
+        receive(commodity, commodity.getMinimumThreshold() + 500, receiveService);
+
+        alerts = alertsService.getLowStockAlerts();
+        assertThat(alerts.size(), is(1));
+        assertThat(alerts.get(0).getCommodity(), is(not(commodity)));
+    }
+
+    @Test
+    public void shouldOnlyEvaluateCommoditiesTouchedByATransaction() throws Exception {
+        setupCommodities();
+        Commodity commodity = firstCommodityAboveThreshold();
+
+        receive(commodity, 1, receiveService);
+
+        assertThat(alertsService.getLowStockAlerts().size(), is(0));
+    }
+
+    @Test
+    public void shouldKeepAlertSummaryInStepWithAlertChanges() throws Exception {
+        setupCommodities();
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(2025, Calendar.JULY, 27);
+        setPreferenceIntegerValue(25, CommodityService.MONTHLY_STOCK_COUNT_DAY);
+
+        alertsService.updateLowStockAlerts();
+        alertsService.generateMonthlyStockCountAlerts(calendar.getTime());
+        AlertSummary summary = alertsService.getAlertSummary();
+        assertThat(summary.getLowStockAlerts(), is(2));
+        assertThat(summary.getMonthlyStockCountAlerts(), is(1));
+        assertThat(alertsService.numberOfAlerts(), is(3));
+
+        alertsService.disableLowStockAlert(alertsService.getLowStockAlerts().get(0));
+
+        assertThat(alertsService.getAlertSummary().getLowStockAlerts(), is(1));
+        assertThat(alertsService.numberOfAlerts(), is(2));
+    }
+
+    @Test
+    public void shouldPostOneAlertChangeEventPerChange() throws Exception {
+        setupCommodities();
+        AlertChangeRecorder recorder = new AlertChangeRecorder();
+        EventBus.getDefault().register(recorder);
+        try {
+            alertsService.updateLowStockAlerts();
+            alertsService.updateLowStockAlerts();
+        } finally {
+            EventBus.getDefault().unregister(recorder);
+        }
+
+        assertThat(recorder.events.size(), is(1));
+        assertThat(recorder.events.get(0).getSummary().getLowStockAlerts(), is(2));
+    }
+
+    public static class AlertChangeRecorder {
+        private final List<AlertChangeEvent> events = new ArrayList<>();
+
+        public void onEvent(AlertChangeEvent event) {
+            events.add(event);
+        }
+    }
+
+    private Commodity firstCommodityAboveThreshold() {
+        for (Commodity commodity : commodityService.all()) {
+            if (commodity.getMinimumThreshold() > 0 && !commodity.isBelowThreshold()) {
+                return commodity;
+            }
+        }
+        throw new AssertionError("fixture has no commodity above its threshold");
+    }
+
     @Test
     @Ignore("because immediate update of low stock level alerts is  disabled")
     public void shouldRemoveLowStockAlertImmediatelyWhenStockLevelIncreases() throws Exception {
@@ -443,7 +543,7 @@ public class AlertsServiceTest extends LmisTestClass {
         Commodity commodity = alerts.get(0).getCommodity();
 
         int quantityToIncrease = commodity.getMinimumThreshold() + 500;
-        stockService.increaseStockLevelFor(commodity, quantityToIncrease, new Date());
+        receive(commodity, quantityToIncrease, receiveService);
 
         alerts = alertsService.getLowStockAlerts();
         assertThat(alerts.size(), is(1));
@@ -462,12 +562,12 @@ public class AlertsServiceTest extends LmisTestClass {
         Commodity commodity = alerts.get(0).getCommodity();
 
         int quantity = commodity.getMinimumThreshold() + 500;
-        stockService.increaseStockLevelFor(commodity, quantity, new Date());
+        receive(commodity, quantity, receiveService);
 
         alerts = alertsService.getLowStockAlerts();
         assertThat(alerts.size(), is(1));
 
-        stockService.reduceStockLevelFor(commodity, quantity, new Date());
+        dispense(commodity, quantity, dispensingService);
 
         alerts = alertsService.getLowStockAlerts();
         assertThat(alerts.size(), is(2));
@@ -184,9 +184,7 @@ public class AllocationServiceTest extends LMISTestCase {
         user.setFacilityCode(orgUnit);
         user.setFacilityName(orgUnit);
 
-        setUpSuccessHttpGetRequest(200, "dataElementGroupSets.json");
-        setUpSuccessHttpGetRequest(200, "dataSets.json");
-        setUpSuccessHttpGetRequest(200, "indicatorGroups.json");
+        setUpCategoryMetadataRequests();
 
         commodityService.saveToDatabase(dhis2.fetchCategories(user));
         categoryService.clearCache();
@@ -29,13 +29,19 @@
 
 package org.clintonhealthaccess.lmis.app.services;
 
+import android.content.SharedPreferences;
+
 import com.google.inject.AbstractModule;
 import com.google.inject.Inject;
 import com.thoughtworks.dhis.models.DataElementType;
 
+import org.clintonhealthaccess.lmis.app.LmisException;
 import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.CommodityAction;
 import org.clintonhealthaccess.lmis.app.models.CommodityActionValue;
+import org.clintonhealthaccess.lmis.app.models.DataSet;
 import org.clintonhealthaccess.lmis.app.models.User;
+import org.clintonhealthaccess.lmis.app.models.ValueSyncReport;
 import org.clintonhealthaccess.lmis.app.persistence.LmisSqliteOpenHelper;
 import org.clintonhealthaccess.lmis.app.remote.LmisServer;
 import org.clintonhealthaccess.lmis.utils.LMISTestCase;
@@ -44,18 +50,29 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 
 import static org.clintonhealthaccess.lmis.utils.TestFixture.defaultCategories;
 import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.setUpInjection;
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.stubCommodityActionValues;
 import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.testActionValues;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.robolectric.Robolectric.application;
 
@@ -68,13 +85,15 @@ public class CommodityActionServiceTest extends LMISTestCase {
     private CommodityService commodityService;
     @Inject
     private CommodityActionService commodityActionService;
+    @Inject
+    private SharedPreferences sharedPreferences;
 
     @Before
     public void setUp() throws Exception {
         mockLmisServer = mock(LmisServer.class);
         mockStockLevels = testActionValues(application);
         when(mockLmisServer.fetchCategories((User) anyObject())).thenReturn(defaultCategories(application));
-        when(mockLmisServer.fetchCommodityActionValues((User) anyObject())).thenReturn(mockStockLevels);
+        stubCommodityActionValues(mockLmisServer, mockStockLevels);
 
         setUpInjection(this, new AbstractModule() {
             @Override
@@ -208,4 +227,69 @@ public class CommodityActionServiceTest extends LMISTestCase {
         assertThat(amc, is(33));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void shouldIndexLatestActionValuesOfEveryCommodity() throws Exception {
+        List<DataElementType> types = Arrays.asList(DataElementType.MIN_STOCK_QUANTITY,
+                DataElementType.MAX_STOCK_QUANTITY, DataElementType.AMC, DataElementType.PROJECTED_ORDER_AMOUNT);
+        for (Commodity commodity : commodityService.all()) {
+            for (DataElementType type : types) {
+                CommodityAction action = commodity.getCommodityAction(type.toString());
+                int expected = (action == null || action.getActionLatestValue() == null) ? 0 :
+                        CommodityActionValue.intValueOf(action.getActionLatestValue().getValue());
+                assertThat(commodity.getLatestValueFromCommodityActionByName(type.toString()), is(expected));
+            }
+        }
+    }
+
+    @Test
+    public void shouldUpdateIndexedValueWhenANewerPeriodIsSaved() throws Exception {
+        Commodity commodity = commodityService.all().get(0);
+        CommodityAction action = commodity.getCommodityAction(DataElementType.MAX_STOCK_QUANTITY.toString());
+
+        commodityActionService.saveActionValues(Arrays.asList(new CommodityActionValue(action, "4321", "209912")));
+
+        assertThat(commodityService.all().get(0).getMaximumThreshold(), is(4321));
+    }
+
+    @Test
+    public void shouldSkipActionValuesThatHaveNotChanged() throws Exception {
+        ValueSyncReport report = commodityActionService.saveActionValues(testActionValues(application));
+
+        assertThat(report.getChanged(), is(0));
+        assertThat(report.getSkipped(), is(report.getFetched()));
+    }
+
+    @Test
+    public void shouldFetchOnlyUpdatedValuesPerDataSetAfterTheFirstSync() throws Exception {
+        User user = new User("test", "pass");
+
+        commodityActionService.syncCommodityActionValues(user);
+
+        verify(mockLmisServer, times(1)).streamCommodityActionValues((User) anyObject(), (LmisServer.BatchHandler<CommodityActionValue>) anyObject());
+        verify(mockLmisServer).fetchCommodityActionValuesSince(eq(user), eq(DataSet.DEFAULT), (Date) anyObject());
+        verify(mockLmisServer).fetchCommodityActionValuesSince(eq(user), eq(DataSet.CALCULATED), (Date) anyObject());
+    }
+
+    @Test
+    public void shouldKeepStreamingUntilAStreamIsReadToTheEnd() throws Exception {
+        User user = new User("test", "pass");
+        sharedPreferences.edit().clear().commit();
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                ((LmisServer.BatchHandler<CommodityActionValue>) invocation.getArguments()[1]).handle(mockStockLevels.subList(0, 1));
+                throw new LmisException("data value stream ended early");
+            }
+        }).when(mockLmisServer).streamCommodityActionValues((User) anyObject(), (LmisServer.BatchHandler<CommodityActionValue>) anyObject());
+
+        try {
+            commodityActionService.syncCommodityActionValues(user);
+            fail("expected the broken stream to fail the sync");
+        } catch (LmisException expected) {
+        }
+        stubCommodityActionValues(mockLmisServer, mockStockLevels);
+        commodityActionService.syncCommodityActionValues(user);
+
+        verify(mockLmisServer, never()).fetchCommodityActionValuesSince((User) anyObject(), anyString(), (Date) anyObject());
+    }
+}
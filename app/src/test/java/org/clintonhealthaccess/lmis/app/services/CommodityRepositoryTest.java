@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.services;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Inject;
+import com.thoughtworks.dhis.models.DataElementType;
+
+import org.clintonhealthaccess.lmis.LmisTestClass;
+import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.CommodityAction;
+import org.clintonhealthaccess.lmis.app.models.CommodityActionValue;
+import org.clintonhealthaccess.lmis.app.models.User;
+import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
+import org.clintonhealthaccess.lmis.app.remote.LmisServer;
+import org.clintonhealthaccess.lmis.utils.RobolectricGradleTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.clintonhealthaccess.lmis.utils.LMISTestCase.dispense;
+import static org.clintonhealthaccess.lmis.utils.LMISTestCase.receive;
+import static org.clintonhealthaccess.lmis.utils.TestFixture.defaultCategories;
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.setUpInjection;
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.stubCommodityActionValues;
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.testActionValues;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.robolectric.Robolectric.application;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class CommodityRepositoryTest extends LmisTestClass {
+
+    @Inject
+    private CommodityRepository commodityRepository;
+    @Inject
+    private CommodityService commodityService;
+    @Inject
+    private DispensingService dispensingService;
+    @Inject
+    private ReceiveService receiveService;
+    @Inject
+    private DbUtil dbUtil;
+
+    @Before
+    public void setUp() throws Exception {
+        final LmisServer mockLmisServer = mock(LmisServer.class);
+        when(mockLmisServer.fetchCategories((User) anyObject())).thenReturn(defaultCategories(application));
+        stubCommodityActionValues(mockLmisServer, testActionValues(application));
+
+        setUpInjection(this, new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(LmisServer.class).toInstance(mockLmisServer);
+            }
+        });
+
+        commodityService.initialise(new User("test", "pass"));
+    }
+
+    @Test
+    public void shouldReturnTheSameInstanceForACommodity() throws Exception {
+        Commodity commodity = commodityService.all().get(0);
+
+        assertThat(commodityRepository.get(commodity.getId()), sameInstance(commodity));
+    }
+
+    @Test
+    public void shouldUpdateStockInPlaceWithoutReloadingCategories() throws Exception {
+        Commodity commodity = commodityService.all().get(0);
+        receive(commodity, 100, receiveService);
+        int stockOnHand = commodity.getStockOnHand();
+        int reloads = CommodityRepository.getReloads();
+
+        for (int i = 0; i < 10; i++) {
+            dispense(commodity, 1, dispensingService);
+        }
+
+        assertThat(CommodityRepository.getReloads(), is(reloads));
+        assertThat(commodityRepository.get(commodity.getId()).getStockOnHand(), is(stockOnHand - 10));
+        assertThat(commodityService.all().get(0).getStockOnHand(), is(stockOnHand - 10));
+    }
+
+    @Test
+    public void shouldLoadCommoditiesWhenAnActionHoldsAStringValue() throws Exception {
+        Commodity commodity = commodityService.all().get(0);
+        CommodityAction receiveSource = new CommodityAction(commodity, "receive_source", "receive source",
+                DataElementType.RECEIVE_SOURCE.getActivity());
+        new GenericDao<>(CommodityAction.class, dbUtil).create(receiveSource);
+        new GenericDao<>(CommodityActionValue.class, dbUtil).create(
+                new CommodityActionValue(receiveSource, "LGA", "20141005"));
+        CommodityRepository.clearCache();
+
+        Commodity reloaded = commodityService.all().get(0);
+
+        assertThat(reloaded.getId(), is(commodity.getId()));
+    }
+}
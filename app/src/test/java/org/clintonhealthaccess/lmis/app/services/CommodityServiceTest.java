@@ -31,10 +31,12 @@ package org.clintonhealthaccess.lmis.app.services;
 
 import android.content.SharedPreferences;
 
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.inject.AbstractModule;
 import com.google.inject.Inject;
 
 import org.clintonhealthaccess.lmis.LmisTestClass;
+import org.clintonhealthaccess.lmis.app.LmisException;
 import org.clintonhealthaccess.lmis.app.models.AdjustmentReason;
 import org.clintonhealthaccess.lmis.app.models.Category;
 import org.clintonhealthaccess.lmis.app.models.Commodity;
@@ -45,8 +47,10 @@ import org.clintonhealthaccess.lmis.app.models.DispensingItem;
 import org.clintonhealthaccess.lmis.app.models.User;
 import org.clintonhealthaccess.lmis.app.models.reports.UtilizationItem;
 import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
+import org.clintonhealthaccess.lmis.app.persistence.LmisSqliteOpenHelper;
 import org.clintonhealthaccess.lmis.app.remote.LmisServer;
 import org.clintonhealthaccess.lmis.app.utils.DateUtil;
+import org.clintonhealthaccess.lmis.app.utils.StageTimer;
 import org.clintonhealthaccess.lmis.utils.RobolectricGradleTestRunner;
 import org.junit.Before;
 import org.junit.Test;
@@ -56,6 +60,8 @@ import java.io.IOException;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 import static org.clintonhealthaccess.lmis.utils.LMISTestCase.adjust;
 import static org.clintonhealthaccess.lmis.utils.LMISTestCase.dispense;
@@ -63,10 +69,12 @@ import static org.clintonhealthaccess.lmis.utils.LMISTestCase.receive;
 import static org.clintonhealthaccess.lmis.utils.TestFixture.defaultCategories;
 import static org.clintonhealthaccess.lmis.utils.TestFixture.getDefaultCommodities;
 import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.setUpInjection;
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.stubCommodityActionValues;
 import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.testActionValues;
 import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasItems;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertNotNull;
@@ -113,7 +121,7 @@ public class CommodityServiceTest extends LmisTestClass {
         commodityActionService = mock(CommodityActionService.class);
         mockStockLevels = testActionValues(application);
         when(mockLmisServer.fetchCategories((User) anyObject())).thenReturn(defaultCategories(application));
-        when(mockLmisServer.fetchCommodityActionValues((User) anyObject())).thenReturn(mockStockLevels);
+        stubCommodityActionValues(mockLmisServer, mockStockLevels);
         when(mockLmisServer.fetchIntegerConstant((User) anyObject(), anyString())).thenReturn(MOCK_DAY);
 
         setUpInjection(this, new AbstractModule() {
@@ -203,6 +211,53 @@ public class CommodityServiceTest extends LmisTestClass {
         assertThat(commodities.get(0).getName(), is("Quinine"));
     }
 
+    @Test
+    public void shouldReachTheSameStateAsASerialBootstrap() throws Exception {
+        commodityService.initialise(new User("test", "pass"), MoreExecutors.sameThreadExecutor());
+        Map<String, String> serialState = bootstrapState();
+
+        resetDatabase();
+        commodityService.initialise(new User("test", "pass"));
+
+        assertThat(bootstrapState(), is(serialState));
+    }
+
+    @Test
+    public void shouldReportTimingForEachBootstrapStage() throws Exception {
+        StageTimer timer = commodityService.initialise(new User("test", "pass"));
+
+        assertThat(timer.getStages().keySet(), hasItems("fetch categories", "fetch monthly stock count day",
+                "fetch routine order alert day", "save categories", "sync action values", "update stock values",
+                "fetch indicator values", "save indicator values"));
+    }
+
+    @Test(expected = LmisException.class)
+    public void shouldSurfaceFailedBackgroundFetchesAsLmisException() throws Exception {
+        when(mockLmisServer.fetchIntegerConstant((User) anyObject(), anyString())).thenThrow(new LmisException("offline"));
+        commodityService.initialise(new User("test", "pass"));
+    }
+
+    private Map<String, String> bootstrapState() {
+        categoryService.clearCache();
+        Map<String, String> state = new TreeMap<>();
+        for (Commodity commodity : commodityService.all()) {
+            state.put(commodity.getName(), String.format("stock=%d min=%d max=%d actions=%d",
+                    commodity.getStockOnHand(), commodity.getMinimumThreshold(), commodity.getMaximumThreshold(),
+                    commodity.getCommodityActionsSaved().size()));
+        }
+        state.put(CommodityService.MONTHLY_STOCK_COUNT_DAY, String.valueOf(sharedPreferences.getInt(CommodityService.MONTHLY_STOCK_COUNT_DAY, 0)));
+        state.put(CommodityService.ROUTINE_ORDER_ALERT_DAY, String.valueOf(sharedPreferences.getInt(CommodityService.ROUTINE_ORDER_ALERT_DAY, 0)));
+        return state;
+    }
+
+    private void resetDatabase() {
+        LmisSqliteOpenHelper.getInstance(application).close();
+        categoryService.clearCache();
+        AllocationService.clearCache();
+        commodityService.clearMostConsumedCommoditiesCache();
+        sharedPreferences.edit().clear().commit();
+    }
+
     private void verifyAllCommodityCategories() {
         List<Category> allCategories = categoryService.all();
 
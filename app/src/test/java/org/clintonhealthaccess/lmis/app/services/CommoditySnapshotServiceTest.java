@@ -51,7 +51,9 @@ import org.clintonhealthaccess.lmis.app.models.DispensingItem;
 import org.clintonhealthaccess.lmis.app.models.Receive;
 import org.clintonhealthaccess.lmis.app.models.ReceiveItem;
 import org.clintonhealthaccess.lmis.app.models.User;
+import org.clintonhealthaccess.lmis.app.models.api.DataValueSetPushResponse;
 import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
+import org.clintonhealthaccess.lmis.app.remote.LmisServer;
 import org.clintonhealthaccess.lmis.app.sms.SmsSyncService;
 import org.clintonhealthaccess.lmis.app.utils.DateUtil;
 import org.clintonhealthaccess.lmis.utils.LMISTestCase;
@@ -60,6 +62,8 @@ import org.hamcrest.Matchers;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.robolectric.Robolectric;
 
 import java.sql.SQLException;
@@ -312,6 +316,79 @@ public class CommoditySnapshotServiceTest extends LMISTestCase {
     }
 
 
+    @Test
+    public void shouldKeepAcknowledgedChunksWhenALaterChunkFails() throws Exception {
+        commoditySnapshotService.pushChunkSize = 1;
+        setUpSuccessHttpPostRequest(200, "successfulSnapshotPush.json");
+        setUpSuccessHttpPostRequest(200, "failureSnapshotPush.json");
+        createTwoSnapshotsInSameDataSet();
+
+        int synced = commoditySnapshotService.syncWithServer(new User("user", "user"));
+
+        assertThat(synced, is(1));
+        assertThat(commoditySnapshotService.getUnSyncedSnapshots().size(), is(1));
+    }
+
+    @Test
+    public void shouldKeepASnapshotUnsyncedIfItChangedWhilePushing() throws Exception {
+        final List<CommoditySnapshot> snapshots = createTwoSnapshotsInSameDataSet();
+        final LmisServer mockLmisServer = mock(LmisServer.class);
+        when(mockLmisServer.pushDataValueSet(any(DataValueSet.class), any(User.class))).thenAnswer(new Answer<DataValueSetPushResponse>() {
+            @Override
+            public DataValueSetPushResponse answer(InvocationOnMock invocation) {
+                CommoditySnapshot changed = snapshotDao.getById(String.valueOf(snapshots.get(0).getId()));
+                changed.incrementValue("2");
+                changed.setSynced(false);
+                snapshotDao.update(changed);
+                DataValueSetPushResponse response = new DataValueSetPushResponse();
+                response.setStatus("SUCCESS");
+                return response;
+            }
+        });
+        setUpInjection(this, new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(SmsSyncService.class).toInstance(mockSmsSyncService);
+                bind(LmisServer.class).toInstance(mockLmisServer);
+            }
+        });
+
+        commoditySnapshotService.syncWithServer(new User("user", "user"));
+
+        List<CommoditySnapshot> unSyncedSnapshots = commoditySnapshotService.getUnSyncedSnapshots();
+        assertThat(unSyncedSnapshots.size(), is(1));
+        assertThat(unSyncedSnapshots.get(0).getValue(), is("5"));
+    }
+
+    @Test
+    public void shouldRetryAFailedPush() throws Exception {
+        commoditySnapshotService.initialBackoffMillis = 0;
+        Robolectric.addPendingHttpResponse(500, "");
+        setUpSuccessHttpPostRequest(200, "successfulSnapshotPush.json");
+        createTwoSnapshotsInSameDataSet();
+
+        commoditySnapshotService.syncWithServer(new User("user", "user"));
+
+        assertThat(commoditySnapshotService.getUnSyncedSnapshots().size(), is(0));
+    }
+
+    @Test
+    public void shouldStopPushingChunksOnceRetriesAreExhausted() throws Exception {
+        commoditySnapshotService.pushChunkSize = 1;
+        commoditySnapshotService.initialBackoffMillis = 0;
+        for (int attempt = 0; attempt < commoditySnapshotService.pushMaxAttempts; attempt++) {
+            Robolectric.addPendingHttpResponse(500, "");
+        }
+        setUpSuccessHttpPostRequest(200, "successfulSnapshotPush.json");
+        createTwoSnapshotsInSameDataSet();
+
+        int synced = commoditySnapshotService.syncWithServer(new User("user", "user"));
+
+        assertThat(synced, is(0));
+        assertThat(commoditySnapshotService.getUnSyncedSnapshots().size(), is(2));
+        assertThat(Robolectric.getFakeHttpLayer().hasPendingResponses(), is(true));
+    }
+
     @Test
     public void shouldSyncThroughSms() throws Exception {
         createTwoSnapshotsInSameDataSet();
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.services;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Inject;
+
+import org.clintonhealthaccess.lmis.LmisTestClass;
+import org.clintonhealthaccess.lmis.app.models.AdjustmentReason;
+import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.DailyLedger;
+import org.clintonhealthaccess.lmis.app.models.User;
+import org.clintonhealthaccess.lmis.app.remote.LmisServer;
+import org.clintonhealthaccess.lmis.app.utils.DateUtil;
+import org.clintonhealthaccess.lmis.utils.RobolectricGradleTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.clintonhealthaccess.lmis.utils.LMISTestCase.adjust;
+import static org.clintonhealthaccess.lmis.utils.LMISTestCase.dispense;
+import static org.clintonhealthaccess.lmis.utils.LMISTestCase.lose;
+import static org.clintonhealthaccess.lmis.utils.LMISTestCase.receive;
+import static org.clintonhealthaccess.lmis.utils.TestFixture.defaultCategories;
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.setUpInjection;
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.stubCommodityActionValues;
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.testActionValues;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.robolectric.Robolectric.application;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class DailyLedgerServiceTest extends LmisTestClass {
+
+    @Inject
+    private DailyLedgerService dailyLedgerService;
+    @Inject
+    private CommodityService commodityService;
+    @Inject
+    private ReceiveService receiveService;
+    @Inject
+    private DispensingService dispensingService;
+    @Inject
+    private LossService lossService;
+    @Inject
+    private AdjustmentService adjustmentService;
+
+    private Commodity commodity;
+
+    @Before
+    public void setUp() throws Exception {
+        final LmisServer mockLmisServer = mock(LmisServer.class);
+        when(mockLmisServer.fetchCategories((User) anyObject())).thenReturn(defaultCategories(application));
+        stubCommodityActionValues(mockLmisServer, testActionValues(application));
+
+        setUpInjection(this, new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(LmisServer.class).toInstance(mockLmisServer);
+            }
+        });
+
+        commodityService.initialise(new User("test", "pass"));
+        commodity = commodityService.all().get(0);
+    }
+
+    @Test
+    public void shouldRecordMovementsAndClosingBalanceForTheDay() throws Exception {
+        Date fiveDaysAgo = DateUtil.addDayOfMonth(new Date(), -5);
+        int stockOnHand = commodity.getStockOnHand();
+
+        receive(commodity, 20, receiveService, fiveDaysAgo);
+        dispense(commodity, 4, dispensingService, fiveDaysAgo);
+        dispense(commodity, 3, dispensingService, fiveDaysAgo);
+        lose(commodity, 2, lossService, fiveDaysAgo);
+        adjust(commodity, 6, false, AdjustmentReason.RETURNED_TO_LGA, adjustmentService);
+
+        List<DailyLedger> ledgers = dailyLedgerService.getDailyLedgers(commodity, DateUtil.addDayOfMonth(fiveDaysAgo, -1), new Date());
+
+        assertThat(ledgers.size(), is(7));
+        assertThat(ledgers.get(0).getClosingBalance(), is(0));
+
+        DailyLedger ledger = ledgers.get(1);
+        assertThat(ledger.getReceived(), is(20));
+        assertThat(ledger.getDispensed(), is(7));
+        assertThat(ledger.getLost(), is(2));
+        assertThat(ledger.getClosingBalance(), is(stockOnHand + 11));
+
+        assertThat(ledgers.get(3).getDispensed(), is(0));
+        assertThat(ledgers.get(3).getClosingBalance(), is(stockOnHand + 11));
+
+        DailyLedger today = ledgers.get(6);
+        assertThat(today.getReturnedToLga(), is(6));
+        assertThat(today.adjusted(AdjustmentReason.RETURNED_TO_LGA), is(6));
+        assertThat(today.getClosingBalance(), is(stockOnHand + 5));
+    }
+
+    @Test
+    public void shouldRebuildTheSameLedgerFromExistingTransactions() throws Exception {
+        Date tenDaysAgo = DateUtil.addDayOfMonth(new Date(), -10);
+        receive(commodity, 50, receiveService, tenDaysAgo);
+        dispense(commodity, 10, dispensingService, tenDaysAgo);
+        lose(commodity, 5, lossService);
+        adjust(commodity, 3, true, AdjustmentReason.RECEIVED_FROM_ANOTHER_FACILITY, adjustmentService);
+        adjust(commodity, 4, false, AdjustmentReason.PHYSICAL_COUNT, adjustmentService);
+
+        Date startDate = DateUtil.addDayOfMonth(tenDaysAgo, -1);
+        String incremental = dailyLedgerService.getDailyLedgers(commodity, startDate, new Date()).toString();
+
+        dailyLedgerService.rebuild();
+
+        assertThat(dailyLedgerService.getDailyLedgers(commodity, startDate, new Date()).toString(), is(incremental));
+    }
+
+    @Test
+    public void shouldTotalRangesSpanningSeveralBlocks() throws Exception {
+        Date hundredDaysAgo = DateUtil.addDayOfMonth(new Date(), -100);
+        Date fiftyDaysAgo = DateUtil.addDayOfMonth(new Date(), -50);
+        receive(commodity, 40, receiveService, hundredDaysAgo);
+        dispense(commodity, 7, dispensingService, hundredDaysAgo);
+        dispense(commodity, 5, dispensingService, fiftyDaysAgo);
+        dispense(commodity, 2, dispensingService);
+
+        Date startDate = DateUtil.addDayOfMonth(hundredDaysAgo, -1);
+        assertThat(dailyLedgerService.getTotal(commodity, DailyLedger.DISPENSED, startDate, new Date()), is(14));
+        assertThat(dailyLedgerService.getTotal(commodity, DailyLedger.DISPENSED, DateUtil.addDayOfMonth(hundredDaysAgo, 1), new Date()), is(7));
+        assertThat(dailyLedgerService.getNetChangeAfter(commodity, startDate), is(26));
+
+        dailyLedgerService.rebuild();
+
+        assertThat(dailyLedgerService.getTotal(commodity, DailyLedger.DISPENSED, startDate, new Date()), is(14));
+        assertThat(dailyLedgerService.getNetChangeAfter(commodity, hundredDaysAgo), is(-7));
+    }
+}
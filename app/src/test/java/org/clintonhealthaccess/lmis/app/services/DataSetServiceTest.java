@@ -51,6 +51,7 @@ import java.util.List;
 
 import static org.clintonhealthaccess.lmis.utils.TestFixture.defaultCategories;
 import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.setUpInjection;
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.stubCommodityActionValues;
 import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.setUpInjectionWithMockLmisServer;
 import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.testActionValues;
 import static org.hamcrest.Matchers.is;
@@ -78,7 +79,7 @@ public class DataSetServiceTest extends LMISTestCase {
         mockLmisServer = mock(LmisServer.class);
         mockStockLevels = testActionValues(application);
         when(mockLmisServer.fetchCategories((User) anyObject())).thenReturn(defaultCategories(application));
-        when(mockLmisServer.fetchCommodityActionValues((User) anyObject())).thenReturn(mockStockLevels);
+        stubCommodityActionValues(mockLmisServer, mockStockLevels);
 
         setUpInjection(this, new AbstractModule() {
             @Override
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.services;
+
+import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class DispensingRankingTest {
+    private Commodity quinine;
+    private Commodity panadol;
+    private Commodity cotrimoxazole;
+    private Commodity zinc;
+    private List<Commodity> commodities;
+
+    @Before
+    public void setUp() throws Exception {
+        quinine = new Commodity("1", "Quinine");
+        panadol = new Commodity("2", "Panadol");
+        cotrimoxazole = new Commodity("3", "Cotrimoxazole");
+        zinc = new Commodity("4", "Zinc");
+        commodities = Arrays.asList(quinine, panadol, cotrimoxazole, zinc);
+    }
+
+    @Test
+    public void shouldRankByTotalAndKeepTheGivenOrderForTies() throws Exception {
+        Map<String, Integer> totals = new HashMap<>();
+        totals.put("3", 10);
+        totals.put("4", 2);
+
+        DispensingRanking ranking = new DispensingRanking(commodities, totals, 3);
+
+        assertThat(ranking.getTop(), contains(cotrimoxazole, zinc, quinine));
+    }
+
+    @Test
+    public void shouldPromoteACommodityOnceItsTotalOvertakesTheWeakest() throws Exception {
+        Map<String, Integer> totals = new HashMap<>();
+        totals.put("1", 5);
+        totals.put("2", 3);
+        DispensingRanking ranking = new DispensingRanking(commodities, totals, 2);
+
+        ranking.add(new Commodity("4", "Zinc"), 4);
+
+        assertThat(ranking.getTop(), contains(quinine, zinc));
+        assertThat(ranking.getTop().get(1) == zinc, is(true));
+
+        ranking.add(zinc, 2);
+
+        assertThat(ranking.getTop(), contains(zinc, quinine));
+        assertThat(ranking.totalFor(zinc), is(6));
+    }
+
+    @Test
+    public void shouldIgnoreCommoditiesItDoesNotKnow() throws Exception {
+        DispensingRanking ranking = new DispensingRanking(commodities, new HashMap<String, Integer>(), 2);
+
+        ranking.add(new Commodity("99", "Unknown"), 100);
+
+        assertThat(ranking.getTop(), contains(quinine, panadol));
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.services;
+
+import android.content.SharedPreferences;
+import android.net.Uri;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
+import com.google.inject.Inject;
+
+import org.clintonhealthaccess.lmis.app.models.Category;
+import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.CommodityAction;
+import org.clintonhealthaccess.lmis.app.models.CommodityActionDataSet;
+import org.clintonhealthaccess.lmis.app.models.User;
+import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
+import org.clintonhealthaccess.lmis.utils.LMISTestCase;
+import org.apache.http.HttpRequest;
+import org.clintonhealthaccess.lmis.utils.RobolectricGradleTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.tester.org.apache.http.RequestMatcher;
+import org.robolectric.tester.org.apache.http.TestHttpResponse;
+
+import java.io.IOException;
+
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.setUpInjection;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class MetadataRefreshServiceTest extends LMISTestCase {
+    private static final User USER = new User("test", "pass");
+
+    @Inject
+    private MetadataRefreshService metadataRefreshService;
+
+    @Inject
+    private SharedPreferences sharedPreferences;
+
+    @Inject
+    private DbUtil dbUtil;
+
+    @Before
+    public void setUp() throws Exception {
+        setUpInjection(this);
+    }
+
+    @Test
+    public void shouldApplyChangedMetadataWithoutDuplicatingDataSetLinks() throws Exception {
+        setUpCategoryMetadataRequests();
+
+        assertThat(metadataRefreshService.refresh(USER), is(greaterThan(0)));
+        long categories = countOf(Category.class);
+        long commodities = countOf(Commodity.class);
+        long actions = countOf(CommodityAction.class);
+        long links = countOf(CommodityActionDataSet.class);
+        assertThat(categories, is(7L));
+        assertThat(links, is(greaterThan(0L)));
+
+        metadataRefreshService.refresh(USER);
+
+        assertThat(countOf(Category.class), is(categories));
+        assertThat(countOf(Commodity.class), is(commodities));
+        assertThat(countOf(CommodityAction.class), is(actions));
+        assertThat(countOf(CommodityActionDataSet.class), is(links));
+    }
+
+    @Test
+    public void shouldOnlyMoveTheHighWaterMarkWhenNothingChanged() throws Exception {
+        setUpSuccessHttpGetPathRequest("/api/dataElementGroupSets", "metadataUnchanged.json");
+        setUpSuccessHttpGetPathRequest("/api/dataSets", "metadataUnchanged.json");
+        setUpSuccessHttpGetPathRequest("/api/indicatorGroups", "metadataUnchanged.json");
+        setUpSuccessHttpGetPathRequest("/api/dataElementGroups", "metadataUnchanged.json");
+        setUpSuccessHttpGetPathRequest("/api/dataElements", "metadataUnchanged.json");
+
+        assertThat(metadataRefreshService.refresh(USER), is(0));
+        assertThat(countOf(Category.class), is(0L));
+        assertThat(sharedPreferences.getLong(MetadataRefreshService.METADATA_LAST_UPDATED, 0), is(greaterThan(0L)));
+    }
+
+    @Test
+    public void shouldReadTheGroupSetOfAGroupThatGainedAnElement() throws Exception {
+        Robolectric.addHttpResponseRule(new RequestMatcher() {
+            @Override
+            public boolean matches(HttpRequest request) {
+                return Uri.decode(request.getRequestLine().getUri()).contains("filter=id:in:[445236f3cc0]");
+            }
+        }, new TestHttpResponse(200, fixture("dataElementGroupSets.json")));
+        setUpSuccessHttpGetPathRequest("/api/dataElementGroupSets", "metadataUnchanged.json");
+        setUpSuccessHttpGetPathRequest("/api/dataSets", "metadataUnchanged.json");
+        setUpSuccessHttpGetPathRequest("/api/indicatorGroups", "metadataUnchanged.json");
+        setUpSuccessHttpGetPathRequest("/api/dataElementGroups", "changedDataElementGroups.json");
+        setUpSuccessHttpGetPathRequest("/api/dataElements", "metadataUnchanged.json");
+
+        metadataRefreshService.refresh(USER);
+
+        assertThat(countOf(Category.class), is(greaterThan(0L)));
+        assertThat(countOf(Commodity.class), is(greaterThan(0L)));
+    }
+
+    private <T> long countOf(Class<T> type) {
+        return new GenericDao<>(type, dbUtil).countOf();
+    }
+
+    private String fixture(String fileName) throws IOException {
+        return Resources.toString(getClass().getClassLoader().getResource("fixtures/" + fileName), Charsets.UTF_8);
+    }
+}
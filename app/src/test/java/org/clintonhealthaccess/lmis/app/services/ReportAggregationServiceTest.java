@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.services;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Inject;
+import com.thoughtworks.dhis.models.DataElementType;
+
+import org.clintonhealthaccess.lmis.LmisTestClass;
+import org.clintonhealthaccess.lmis.app.models.AdjustmentReason;
+import org.clintonhealthaccess.lmis.app.models.Category;
+import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.Dispensing;
+import org.clintonhealthaccess.lmis.app.models.DispensingItem;
+import org.clintonhealthaccess.lmis.app.models.Loss;
+import org.clintonhealthaccess.lmis.app.models.LossItem;
+import org.clintonhealthaccess.lmis.app.models.Receive;
+import org.clintonhealthaccess.lmis.app.models.ReceiveItem;
+import org.clintonhealthaccess.lmis.app.models.User;
+import org.clintonhealthaccess.lmis.app.models.reports.CommodityStockSummary;
+import org.clintonhealthaccess.lmis.app.remote.LmisServer;
+import org.clintonhealthaccess.lmis.utils.RobolectricGradleTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.clintonhealthaccess.lmis.utils.LMISTestCase.adjust;
+import static org.clintonhealthaccess.lmis.utils.LMISTestCase.createStockItemSnapshot;
+import static org.clintonhealthaccess.lmis.utils.LMISTestCase.dispense;
+import static org.clintonhealthaccess.lmis.utils.LMISTestCase.lose;
+import static org.clintonhealthaccess.lmis.utils.LMISTestCase.receive;
+import static org.clintonhealthaccess.lmis.utils.TestFixture.defaultCategories;
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.setUpInjection;
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.stubCommodityActionValues;
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.testActionValues;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.robolectric.Robolectric.application;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class ReportAggregationServiceTest extends LmisTestClass {
+
+    @Inject
+    private ReportAggregationService reportAggregationService;
+    @Inject
+    private CategoryService categoryService;
+    @Inject
+    private CommodityService commodityService;
+    @Inject
+    private StockItemSnapshotService stockItemSnapshotService;
+    @Inject
+    private CommodityActionService commodityActionService;
+    @Inject
+    private AdjustmentService adjustmentService;
+    @Inject
+    private ReceiveService receiveService;
+    @Inject
+    private DispensingService dispensingService;
+    @Inject
+    private LossService lossService;
+
+    private Category category;
+
+    @Before
+    public void setUp() throws Exception {
+        final LmisServer mockLmisServer = mock(LmisServer.class);
+        when(mockLmisServer.fetchCategories((User) anyObject())).thenReturn(defaultCategories(application));
+        stubCommodityActionValues(mockLmisServer, testActionValues(application));
+
+        setUpInjection(this, new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(LmisServer.class).toInstance(mockLmisServer);
+            }
+        });
+
+        commodityService.initialise(new User("test", "pass"));
+        category = categoryService.all().get(0);
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.DAY_OF_MONTH, 1);
+        calendar.add(Calendar.DAY_OF_MONTH, -1);
+
+        int quantity = 10;
+        for (Commodity commodity : category.getCommodities()) {
+            createStockItemSnapshot(commodity, calendar.getTime(), 0);
+            receive(commodity, quantity, receiveService);
+            dispense(commodity, 2, dispensingService);
+            lose(commodity, 1, lossService);
+            adjust(commodity, 3, true, AdjustmentReason.RECEIVED_FROM_ANOTHER_FACILITY, adjustmentService);
+            adjust(commodity, 4, false, AdjustmentReason.SENT_TO_ANOTHER_FACILITY, adjustmentService);
+            quantity += 5;
+        }
+    }
+
+    @Test
+    public void shouldMatchPerCommodityQueriesForCurrentMonth() throws Exception {
+        Calendar calendar = Calendar.getInstance();
+        Date endDate = calendar.getTime();
+        calendar.set(Calendar.DAY_OF_MONTH, 1);
+        Date startDate = calendar.getTime();
+
+        assertMatchesLegacyResults(startDate, endDate);
+    }
+
+    @Test
+    public void shouldMatchPerCommodityQueriesForMonthsWithActionValues() throws Exception {
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(2014, Calendar.APRIL, 1);
+        Date startDate = calendar.getTime();
+        calendar.set(2014, Calendar.MAY, 31);
+        Date endDate = calendar.getTime();
+
+        assertMatchesLegacyResults(startDate, endDate);
+    }
+
+    @Test
+    public void shouldUseTheSameNumberOfQueriesRegardlessOfCategorySize() throws Exception {
+        Date endDate = new Date();
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.DAY_OF_MONTH, 1);
+        Date startDate = calendar.getTime();
+
+        reportAggregationService.summarise(category.getCommodities().subList(0, 1), startDate, endDate);
+        int queriesForOneCommodity = reportAggregationService.getLastQueryCount();
+
+        reportAggregationService.summarise(category.getCommodities(), startDate, endDate);
+        assertThat(reportAggregationService.getLastQueryCount(), is(queriesForOneCommodity));
+    }
+
+    @Test
+    public void shouldNeedFewerQueriesThanPerCommodityQueries() throws Exception {
+        Date endDate = new Date();
+        Calendar calendar = Calendar.getInstance();
+        calendar.add(Calendar.MONTH, -2);
+        calendar.set(Calendar.DAY_OF_MONTH, 1);
+        Date startDate = calendar.getTime();
+        List<Commodity> commodities = category.getCommodities();
+
+        reportAggregationService.summarise(commodities, startDate, endDate);
+
+        // legacySummary runs thirteen queries per commodity
+        assertThat(reportAggregationService.getLastQueryCount(), lessThan(commodities.size() * 13));
+    }
+
+    private void assertMatchesLegacyResults(Date startDate, Date endDate) throws Exception {
+        Map<String, CommodityStockSummary> summaries =
+                reportAggregationService.summarise(category.getCommodities(), startDate, endDate);
+
+        for (Commodity commodity : category.getCommodities()) {
+            assertThat(summaries.get(commodity.getId()).toString(), is(legacySummary(commodity, startDate, endDate).toString()));
+        }
+    }
+
+    private CommodityStockSummary legacySummary(Commodity commodity, Date startDate, Date endDate) throws Exception {
+        CommodityStockSummary summary = new CommodityStockSummary(commodity.getId());
+        summary.setOpeningStock(stockItemSnapshotService.getLatestStock(commodity, startDate, true));
+        summary.setClosingStock(stockItemSnapshotService.getLatestStock(commodity, endDate, false));
+        summary.setReceived(GenericService.getTotal(commodity, startDate, endDate, Receive.class, ReceiveItem.class, application));
+        summary.setDispensed(GenericService.getTotal(commodity, startDate, endDate, Dispensing.class, DispensingItem.class, application));
+        summary.setLost(GenericService.getTotal(commodity, startDate, endDate, Loss.class, LossItem.class, application));
+        summary.setNetAdjustment(adjustmentService.totalAdjustment(commodity, startDate, endDate));
+        for (AdjustmentReason reason : new AdjustmentReason[]{AdjustmentReason.RECEIVED_FROM_ANOTHER_FACILITY, AdjustmentReason.SENT_TO_ANOTHER_FACILITY}) {
+            int adjusted = adjustmentService.totalAdjustment(commodity, startDate, endDate, reason);
+            if (adjusted > 0) {
+                summary.getAdjustmentsByReason().put(reason.getName(), adjusted);
+            }
+        }
+        summary.setMinThreshold(commodityActionService.getMonthlyValue(commodity, startDate, endDate, DataElementType.MIN_STOCK_QUANTITY));
+        summary.setMaxThreshold(commodityActionService.getMonthlyValue(commodity, startDate, endDate, DataElementType.MAX_STOCK_QUANTITY));
+        summary.setAmc(commodityActionService.getMonthlyValue(commodity, startDate, endDate, DataElementType.AMC));
+        summary.setStockOutDays(stockItemSnapshotService.getStockOutDays(commodity, startDate, endDate));
+        return summary;
+    }
+}
@@ -74,6 +74,7 @@ import static org.clintonhealthaccess.lmis.utils.LMISTestCase.lose;
 import static org.clintonhealthaccess.lmis.utils.LMISTestCase.receive;
 import static org.clintonhealthaccess.lmis.utils.TestFixture.defaultCategories;
 import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.setUpInjection;
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.stubCommodityActionValues;
 import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.testActionValues;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
@@ -129,7 +130,7 @@ public class ReportsServiceTest extends LmisTestClass {
         mockStockLevels = testActionValues(application);
         //when(mockLmisServer.fetchCommodities((User) anyObject())).thenReturn(defaultCategories(application));
         when(mockLmisServer.fetchCategories((User) anyObject())).thenReturn(defaultCategories(application));
-        when(mockLmisServer.fetchCommodityActionValues((User) anyObject())).thenReturn(mockStockLevels);
+        stubCommodityActionValues(mockLmisServer, mockStockLevels);
 
         setUpInjection(this, new AbstractModule() {
             @Override
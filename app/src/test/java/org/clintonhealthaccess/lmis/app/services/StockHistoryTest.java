@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.services;
+
+import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.StockInterval;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.clintonhealthaccess.lmis.app.models.StockInterval.OPEN;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class StockHistoryTest {
+    private StockHistory history;
+
+    @Before
+    public void setUp() throws Exception {
+        history = new StockHistory(new Commodity("1", "Quinine"), new ArrayList<StockInterval>());
+    }
+
+    @Test
+    public void shouldCarryABalanceForwardAndOnlyGrowWhenItChanges() throws Exception {
+        history.record(100, 10, false);
+        history.record(105, 10, false);
+        history.record(110, 4, false);
+
+        assertThat(history.getIntervals().size(), is(2));
+        assertThat(history.quantityOn(99), is(0));
+        assertThat(history.quantityOn(109), is(10));
+        assertThat(history.quantityOn(5000), is(4));
+        assertThat(history.getIntervals().get(0).getToDay(), is(109));
+        assertThat(history.getIntervals().get(1).getToDay(), is(OPEN));
+    }
+
+    @Test
+    public void shouldCountStockOutDaysFromIntervals() throws Exception {
+        history.record(100, 10, false);
+        history.record(104, 0, true);
+        history.record(106, 20, true);
+        history.record(109, 0, true);
+
+        // 98 and 99 are before the history, 104 and 105 ran out, 106 was restocked, 109 and 110 ran out again
+        assertThat(history.stockOutDays(98, 110), is(7));
+        assertThat(history.stockOutDays(107, 108), is(0));
+        assertThat(history.isStockOutDay(106), is(true));
+        assertThat(history.isStockOutDay(107), is(false));
+    }
+
+    @Test
+    public void shouldSplitTheIntervalHoldingABackdatedDay() throws Exception {
+        history.record(100, 10, false);
+        history.record(110, 4, false);
+        history.record(105, 0, true);
+
+        assertThat(history.getIntervals().size(), is(3));
+        assertThat(history.quantityOn(104), is(10));
+        assertThat(history.quantityOn(109), is(0));
+        assertThat(history.quantityOn(110), is(4));
+        assertThat(history.getIntervals().get(1).getToDay(), is(109));
+    }
+
+    @Test
+    public void shouldDropIntervalsThatNoLongerChangeAnything() throws Exception {
+        history.record(100, 10, false);
+        history.record(103, 4, false);
+        history.record(103, 10, false);
+
+        assertThat(history.getIntervals().size(), is(1));
+        assertThat(history.getRemoved(), is(empty()));
+        assertThat(history.quantityOn(200), is(10));
+    }
+}
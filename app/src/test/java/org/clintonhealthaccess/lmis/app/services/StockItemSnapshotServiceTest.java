@@ -54,6 +54,7 @@ import static org.clintonhealthaccess.lmis.utils.LMISTestCase.lose;
 import static org.clintonhealthaccess.lmis.utils.LMISTestCase.receive;
 import static org.clintonhealthaccess.lmis.utils.TestFixture.defaultCategories;
 import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.setUpInjection;
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.stubCommodityActionValues;
 import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.testActionValues;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
@@ -69,8 +70,6 @@ public class StockItemSnapshotServiceTest extends LmisTestClass {
 
     @Inject
     private CommodityService commodityService;
-    @Inject
-    private StockService stockService;
 
     private List<CommodityActionValue> mockStockLevels;
     private LmisServer mockLmisServer;
@@ -87,7 +86,7 @@ public class StockItemSnapshotServiceTest extends LmisTestClass {
         mockStockLevels = testActionValues(application);
         //when(mockLmisServer.fetchCommodities((User) anyObject())).thenReturn(defaultCategories(application));
         when(mockLmisServer.fetchCategories((User) anyObject())).thenReturn(defaultCategories(application));
-        when(mockLmisServer.fetchCommodityActionValues((User) anyObject())).thenReturn(mockStockLevels);
+        stubCommodityActionValues(mockLmisServer, mockStockLevels);
 
         setUpInjection(this, new AbstractModule() {
             @Override
@@ -105,7 +104,7 @@ public class StockItemSnapshotServiceTest extends LmisTestClass {
         int initialQuantity = commodity.getStockOnHand();
 
         int increase = 5;
-        stockService.increaseStockLevelFor(commodity, increase, new Date());
+        receive(commodity, increase, receiveService);
 
         StockItemSnapshot stockItemSnapshot = stockItemSnapshotService.get(commodity, new Date());
 
@@ -121,7 +120,7 @@ public class StockItemSnapshotServiceTest extends LmisTestClass {
         int initialQuantity = commodity.getStockOnHand();
 
         int increase = 5;
-        stockService.increaseStockLevelFor(commodity, increase, new Date());
+        receive(commodity, increase, receiveService);
 
         StockItemSnapshot stockItemSnapshot = stockItemSnapshotService.get(commodity, new Date());
         int expectedQuantity = initialQuantity + increase;
@@ -134,7 +133,7 @@ public class StockItemSnapshotServiceTest extends LmisTestClass {
         int initialQuantity = commodity.getStockOnHand();
 
         int decrease = 6;
-        stockService.reduceStockLevelFor(commodity, decrease, new Date());
+        lose(commodity, decrease, lossService);
 
         StockItemSnapshot stockItemSnapshot = stockItemSnapshotService.get(commodity, new Date());
         int expectedQuantity = initialQuantity - decrease;
@@ -147,8 +146,8 @@ public class StockItemSnapshotServiceTest extends LmisTestClass {
 
         int decrease = 6;
         int increase = 10;
-        stockService.reduceStockLevelFor(commodity, decrease, new Date());
-        stockService.increaseStockLevelFor(commodity, increase, new Date());
+        lose(commodity, decrease, lossService);
+        receive(commodity, increase, receiveService);
 
         stockItemSnapshotService.get(commodity, new Date());
     }
@@ -47,8 +47,10 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.sql.SQLException;
+import java.util.Map;
 
 import static com.j256.ormlite.dao.DaoManager.createDao;
+import static org.clintonhealthaccess.lmis.utils.LMISTestCase.receive;
 import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.setUpInjectionWithMockLmisServer;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
@@ -62,6 +64,8 @@ public class StockServiceTest extends LmisTestClass {
     @Inject
     CommodityService commodityService;
     @Inject
+    ReceiveService receiveService;
+    @Inject
     DbUtil dbUtil;
 
     private LmisSqliteOpenHelper openHelper;
@@ -112,4 +116,37 @@ public class StockServiceTest extends LmisTestClass {
             assertThat(stockService.getStockLevelFor(commodity), greaterThanOrEqualTo(0));
         }
     }
+
+    @Test
+    public void shouldNotLoseUpdatesMadeThroughStaleCommodities() throws Exception {
+        commodityService.initialise(new User("test", "pass"));
+        Commodity commodity = commodityService.all().get(0);
+        Commodity stale = commodityDao.queryForId(commodity.getId());
+        int stockOnHand = stockService.getStockLevelFor(commodity);
+
+        receive(commodity, 3, receiveService);
+        receive(stale, 2, receiveService);
+
+        assertThat(stockService.getStockLevelFor(commodity), is(stockOnHand + 5));
+        assertThat(commodity.getStockOnHand(), is(stockOnHand + 5));
+        assertThat(commodityDao.queryForId(commodity.getId()).getStockItem().getQuantity(), is(stockOnHand + 5));
+    }
+
+    @Test
+    public void shouldCorrectCommoditiesWhoseStockOnHandDriftedFromTheLedger() throws Exception {
+        commodityService.initialise(new User("test", "pass"));
+        Commodity commodity = commodityService.all().get(0);
+        receive(commodity, 10, receiveService);
+        assertThat(stockService.reconcileWithLedger().isEmpty(), is(true));
+
+        int closingBalance = stockService.getStockLevelFor(commodity);
+        commodityDao.updateRaw("UPDATE commodities SET stock_on_hand = stock_on_hand + 7 WHERE id = ?", commodity.getId());
+
+        Map<String, Integer> discrepancies = stockService.reconcileWithLedger();
+        assertThat(discrepancies.size(), is(1));
+        assertThat(discrepancies.get(commodity.getId()), is(closingBalance));
+        assertThat(stockService.getStockLevelFor(commodity), is(closingBalance));
+        assertThat(commodityService.all().get(0).getStockOnHand(), is(closingBalance));
+        assertThat(stockService.reconcileWithLedger().isEmpty(), is(true));
+    }
 }
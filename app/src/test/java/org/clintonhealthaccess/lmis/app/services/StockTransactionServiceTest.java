@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.services;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Inject;
+
+import org.clintonhealthaccess.lmis.LmisTestClass;
+import org.clintonhealthaccess.lmis.app.LmisException;
+import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.CommoditySnapshotValue;
+import org.clintonhealthaccess.lmis.app.models.DailyLedger;
+import org.clintonhealthaccess.lmis.app.models.Dispensing;
+import org.clintonhealthaccess.lmis.app.models.DispensingItem;
+import org.clintonhealthaccess.lmis.app.models.StockItem;
+import org.clintonhealthaccess.lmis.app.models.User;
+import org.clintonhealthaccess.lmis.app.remote.LmisServer;
+import org.clintonhealthaccess.lmis.app.utils.DateUtil;
+import org.clintonhealthaccess.lmis.utils.RobolectricGradleTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.clintonhealthaccess.lmis.utils.LMISTestCase.receive;
+import static org.clintonhealthaccess.lmis.utils.TestFixture.defaultCategories;
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.setUpInjection;
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.stubCommodityActionValues;
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.testActionValues;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.robolectric.Robolectric.application;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class StockTransactionServiceTest extends LmisTestClass {
+
+    @Inject
+    private StockTransactionService stockTransactionService;
+    @Inject
+    private CommodityService commodityService;
+    @Inject
+    private DispensingService dispensingService;
+    @Inject
+    private ReceiveService receiveService;
+    @Inject
+    private DailyLedgerService dailyLedgerService;
+    @Inject
+    private StockItemSnapshotService stockItemSnapshotService;
+
+    private List<Commodity> commodities;
+
+    @Before
+    public void setUp() throws Exception {
+        final LmisServer mockLmisServer = mock(LmisServer.class);
+        when(mockLmisServer.fetchCategories((User) anyObject())).thenReturn(defaultCategories(application));
+        stubCommodityActionValues(mockLmisServer, testActionValues(application));
+
+        setUpInjection(this, new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(LmisServer.class).toInstance(mockLmisServer);
+            }
+        });
+
+        commodityService.initialise(new User("test", "pass"));
+        commodities = commodityService.all();
+        for (Commodity commodity : commodities) {
+            receive(commodity, 1000, receiveService);
+        }
+    }
+
+    @Test
+    public void shouldLeaveStockUntouchedWhenTheTransactionFails() throws Exception {
+        final Commodity commodity = commodities.get(0);
+        int stockOnHand = commodity.getStockOnHand();
+        int dispensedToday = dailyLedgerService.getDailyLedgers(commodity, new Date(), new Date()).get(0).getDispensed();
+
+        Snapshotable brokenItem = new Snapshotable() {
+            @Override
+            public Commodity getCommodity() {
+                return commodity;
+            }
+
+            @Override
+            public List<CommoditySnapshotValue> getActivitiesValues() throws Exception {
+                throw new Exception("broken item");
+            }
+
+            @Override
+            public Date getDate() {
+                return new Date();
+            }
+        };
+        StockTransaction transaction = new StockTransaction()
+                .reduce(brokenItem, 10, new Date(), DailyLedger.DISPENSED);
+
+        try {
+            stockTransactionService.commit(transaction, null);
+            fail("Expected the transaction to fail");
+        } catch (LmisException expected) {
+        }
+
+        assertThat(commodityService.all().get(0).getStockOnHand(), is(stockOnHand));
+        assertThat(savedStockFor(commodity), is(stockOnHand));
+        assertThat(dailyLedgerService.getDailyLedgers(commodity, new Date(), new Date()).get(0).getDispensed(), is(dispensedToday));
+    }
+
+    @Test
+    public void shouldApplyEveryLineOfADispensing() throws Exception {
+        Commodity commodity = commodities.get(0);
+        int stockOnHand = commodity.getStockOnHand();
+
+        dispensingService.addDispensing(dispensingWith(20));
+
+        int linesForFirstCommodity = (20 + commodities.size() - 1) / commodities.size();
+        assertThat(commodityService.all().get(0).getStockOnHand(), is(stockOnHand - linesForFirstCommodity));
+        assertThat(savedStockFor(commodity), is(stockOnHand - linesForFirstCommodity));
+    }
+
+    @Test
+    public void shouldCarryABackdatedReceiveIntoEveryLaterBalance() throws Exception {
+        Commodity commodity = commodities.get(0);
+        int stockOnHand = commodity.getStockOnHand();
+        Date today = DateUtil.today();
+        Date threeDaysAgo = DateUtil.addDayOfMonth(today, -3);
+
+        receive(commodity, 10, receiveService, threeDaysAgo);
+
+        assertThat(commodityService.all().get(0).getStockOnHand(), is(stockOnHand + 10));
+        assertThat(stockItemSnapshotService.getLatestStock(commodity, threeDaysAgo, false), is(stockOnHand - 1000 + 10));
+        assertThat(stockItemSnapshotService.getLatestStock(commodity, today, false), is(stockOnHand + 10));
+        assertThat(dailyLedgerService.getDailyLedgers(commodity, today, today).get(0).getClosingBalance(), is(stockOnHand + 10));
+        assertThat(dailyLedgerService.getTotal(commodity, DailyLedger.RECEIVED, threeDaysAgo, today), is(1010));
+        assertThat(dailyLedgerService.getTotal(commodity, DailyLedger.RECEIVED, threeDaysAgo, threeDaysAgo), is(10));
+    }
+
+    @Test
+    public void shouldClearALaterStockOutThatABackdatedReceiveLifts() throws Exception {
+        Commodity commodity = commodities.get(0);
+        int stockBeforeToday = commodity.getStockOnHand() - 1000;
+        Date today = DateUtil.today();
+        Date twoDaysAgo = DateUtil.addDayOfMonth(today, -2);
+        Date yesterday = DateUtil.addDayOfMonth(today, -1);
+        receive(commodity, 5, receiveService, DateUtil.addDayOfMonth(today, -4));
+        Dispensing dispensing = new Dispensing(twoDaysAgo);
+        dispensing.addItem(new DispensingItem(commodity, stockBeforeToday + 5));
+        dispensingService.addDispensing(dispensing);
+        assertThat(stockItemSnapshotService.getStockOutDays(commodity, twoDaysAgo, yesterday), is(2));
+
+        receive(commodity, 10, receiveService, DateUtil.addDayOfMonth(today, -3));
+
+        assertThat(stockItemSnapshotService.getLatestStock(commodity, twoDaysAgo, false), is(10));
+        assertThat(stockItemSnapshotService.isStockOutDay(twoDaysAgo, commodity), is(false));
+        assertThat(stockItemSnapshotService.getStockOutDays(commodity, twoDaysAgo, yesterday), is(0));
+    }
+
+    @Test
+    public void shouldCommitDispensingsOfDifferentSizes() throws Exception {
+        int stockBefore = totalStockOnHand();
+
+        for (int lines : new int[]{1, 20, 80}) {
+            dispensingService.addDispensing(dispensingWith(lines));
+        }
+
+        assertThat(totalStockOnHand(), is(stockBefore - 101));
+    }
+
+    private Dispensing dispensingWith(int lines) {
+        Dispensing dispensing = new Dispensing(new Date());
+        for (int i = 0; i < lines; i++) {
+            dispensing.addItem(new DispensingItem(commodities.get(i % commodities.size()), 1));
+        }
+        return dispensing;
+    }
+
+    private int totalStockOnHand() {
+        int total = 0;
+        for (Commodity commodity : commodityService.all()) {
+            total += commodity.getStockOnHand();
+        }
+        return total;
+    }
+
+    private int savedStockFor(Commodity commodity) {
+        for (StockItem stockItem : new GenericDao<>(StockItem.class, application).queryForAll()) {
+            if (stockItem.getCommodity().getId().equals(commodity.getId())) {
+                return stockItem.getQuantity();
+            }
+        }
+        return -1;
+    }
+}
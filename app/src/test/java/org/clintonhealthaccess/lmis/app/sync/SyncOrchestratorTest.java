@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.sync;
+
+import com.google.inject.Inject;
+
+import org.clintonhealthaccess.lmis.app.sync.SyncStepResult.Outcome;
+import org.clintonhealthaccess.lmis.utils.RobolectricGradleTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.setUpInjection;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class SyncOrchestratorTest {
+    private static final long BACKOFF_MILLIS = 20;
+
+    @Inject
+    private SyncOrchestrator syncOrchestrator;
+
+    private List<String> ran;
+
+    @Before
+    public void setUp() throws Exception {
+        setUpInjection(this);
+        ran = new CopyOnWriteArrayList<>();
+    }
+
+    @Test
+    public void shouldRunThePriorityStepBeforePullingConcurrently() throws Exception {
+        CountDownLatch allInFlight = new CountDownLatch(3);
+
+        Map<String, SyncStepResult> results = syncOrchestrator.run(Arrays.asList(
+                new SyncStep("allocations", meet(allInFlight, "allocations")),
+                new SyncStep("push", run("push")).priority(),
+                new SyncStep("action values", meet(allInFlight, "action values")),
+                new SyncStep("indicators", meet(allInFlight, "indicators")).after("push")));
+
+        assertThat(ran.get(0), is("push"));
+        for (SyncStepResult result : results.values()) {
+            assertThat(result.getOutcome(), is(Outcome.SUCCEEDED));
+        }
+        assertThat(syncOrchestrator.getLastResult("allocations").getOutcome(), is(Outcome.SUCCEEDED));
+    }
+
+    @Test
+    public void shouldRunAStepAfterOneItFollowsWhateverItsOutcome() throws Exception {
+        Map<String, SyncStepResult> results = syncOrchestrator.run(Arrays.asList(
+                new SyncStep("metadata", new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        ran.add("metadata");
+                        throw new IllegalStateException("server down");
+                    }
+                }),
+                new SyncStep("action values", run("action values")).afterAnyOutcomeOf("metadata")));
+
+        assertThat(results.get("metadata").getOutcome(), is(Outcome.FAILED));
+        assertThat(results.get("action values").getOutcome(), is(Outcome.SUCCEEDED));
+        assertThat(ran, is(Arrays.asList("metadata", "action values")));
+    }
+
+    @Test
+    public void shouldRetryAFailedStepAndBlockItsDependents() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        Map<String, SyncStepResult> results = syncOrchestrator.run(Arrays.asList(
+                new SyncStep("push", new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        calls.incrementAndGet();
+                        throw new IllegalStateException("server down");
+                    }
+                }).priority().attempts(3).backoff(0, MILLISECONDS),
+                new SyncStep("indicators", run("indicators")).after("push")));
+
+        assertThat(calls.get(), is(3));
+        assertThat(results.get("push").getOutcome(), is(Outcome.FAILED));
+        assertThat(results.get("push").getAttempts(), is(3));
+        assertThat(results.get("indicators").getOutcome(), is(Outcome.BLOCKED));
+        assertThat(ran.isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldBackOffLongerBeforeEachRetry() throws Exception {
+        final List<Long> attemptedAt = new CopyOnWriteArrayList<>();
+        syncOrchestrator.run(Collections.singletonList(
+                new SyncStep("allocations", new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        attemptedAt.add(System.nanoTime());
+                        throw new IllegalStateException("server down");
+                    }
+                }).attempts(3).backoff(BACKOFF_MILLIS, MILLISECONDS)));
+
+        assertThat(attemptedAt.size(), is(3));
+        assertThat(MILLISECONDS.convert(attemptedAt.get(1) - attemptedAt.get(0), TimeUnit.NANOSECONDS),
+                greaterThanOrEqualTo(BACKOFF_MILLIS));
+        assertThat(MILLISECONDS.convert(attemptedAt.get(2) - attemptedAt.get(1), TimeUnit.NANOSECONDS),
+                greaterThanOrEqualTo(2 * BACKOFF_MILLIS));
+    }
+
+    @Test
+    public void shouldGiveUpOnAStepThatOutlivesItsTimeout() throws Exception {
+        Map<String, SyncStepResult> results = syncOrchestrator.run(Arrays.asList(
+                new SyncStep("allocations", new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        // only the orchestrator's interrupt at the deadline ends this wait
+                        new CountDownLatch(1).await();
+                        return null;
+                    }
+                }).timeout(1, MILLISECONDS),
+                new SyncStep("action values", run("action values"))));
+
+        assertThat(results.get("allocations").getOutcome(), is(Outcome.TIMED_OUT));
+        assertThat(results.get("action values").getOutcome(), is(Outcome.SUCCEEDED));
+    }
+
+    @Test
+    public void shouldNotRetryATimedOutStepUntilItsAttemptHasReturned() throws Exception {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger mostInFlight = new AtomicInteger();
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch retried = new CountDownLatch(1);
+
+        Map<String, SyncStepResult> results = syncOrchestrator.run(Collections.singletonList(
+                new SyncStep("allocations", new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        mostInFlight.set(Math.max(mostInFlight.get(), inFlight.incrementAndGet()));
+                        try {
+                            if (calls.incrementAndGet() == 1) {
+                                outliveTheInterrupt(retried);
+                            } else {
+                                retried.countDown();
+                            }
+                        } finally {
+                            inFlight.decrementAndGet();
+                        }
+                        return null;
+                    }
+                }).timeout(1, MILLISECONDS).attempts(2).backoff(0, MILLISECONDS)));
+
+        assertThat(calls.get(), is(2));
+        assertThat(mostInFlight.get(), is(1));
+        assertThat(results.get("allocations").getOutcome(), is(Outcome.SUCCEEDED));
+        assertThat(results.get("allocations").getAttempts(), is(2));
+    }
+
+    @Test
+    public void shouldSkipAStepWhoseFingerprintIsUnchangedSinceItLastSucceeded() throws Exception {
+        SyncStep.Fingerprint unchanged = new SyncStep.Fingerprint() {
+            @Override
+            public String compute() {
+                return "ledger-v1";
+            }
+        };
+
+        syncOrchestrator.run(Collections.singletonList(new SyncStep("reconcile", run("reconcile")).skipIfUnchanged(unchanged)));
+        Map<String, SyncStepResult> results = syncOrchestrator.run(
+                Collections.singletonList(new SyncStep("reconcile", run("reconcile")).skipIfUnchanged(unchanged)));
+
+        assertThat(results.get("reconcile").getOutcome(), is(Outcome.SKIPPED));
+        assertThat(ran.size(), is(1));
+    }
+
+    // like an HTTP call, carries on after the timeout interrupt; a retry started alongside would cut it short
+    private static void outliveTheInterrupt(CountDownLatch retried) throws InterruptedException {
+        try {
+            new CountDownLatch(1).await();
+        } catch (InterruptedException timedOut) {
+            retried.await(200, MILLISECONDS);
+        }
+        throw new IllegalStateException("timed out");
+    }
+
+    private Callable<Void> meet(final CountDownLatch allInFlight, final String step) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                allInFlight.countDown();
+                if (!allInFlight.await(10, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException(step + " never ran alongside the other steps");
+                }
+                ran.add(step);
+                return null;
+            }
+        };
+    }
+
+    private Callable<Void> run(final String step) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                ran.add(step);
+                return null;
+            }
+        };
+    }
+}
@@ -57,4 +57,28 @@ public class DateUtilTest {
         date = DateUtil.addMonth(new SimpleDateFormat("yyyyMMdd").parse("20150101"), 1);
         assertThat(month.format(date), is("02"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldNumberDaysFromTheEpochInLocalTime() throws Exception {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+        assertThat(DateUtil.toEpochDay(format.parse("1970-01-01 00:00")), is(0));
+        assertThat(DateUtil.toEpochDay(format.parse("2014-01-01 00:00")), is(16071));
+        assertThat(DateUtil.toEpochDay(format.parse("2014-01-01 23:59")), is(16071));
+        assertThat(DateUtil.toEpochDay(format.parse("1969-12-31 23:59")), is(-1));
+
+        assertThat(DateUtil.fromEpochDay(16071), is(format.parse("2014-01-01 00:00")));
+        assertTrue(DateUtil.equal(format.parse("2014-01-01 08:00"), format.parse("2014-01-01 20:00")));
+        assertFalse(DateUtil.equal(format.parse("2014-01-01 23:59"), format.parse("2014-01-02 00:00")));
+    }
+
+    @Test
+    public void shouldRoundTripDaysWithoutFormattingStrings() throws Exception {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+        for (int day = 16071; day < 16071 + 730; day++) {
+            Date date = DateUtil.fromEpochDay(day);
+            assertThat(format.parse(format.format(date)), is(date));
+            assertThat(DateUtil.toEpochDay(date), is(day));
+            assertThat(DateUtil.toEpochDay(DateUtil.addDayOfMonth(date, 1)), is(day + 1));
+        }
+    }
+}
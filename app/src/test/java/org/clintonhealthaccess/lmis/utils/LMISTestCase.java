@@ -34,6 +34,7 @@ import android.util.Log;
 import com.google.inject.Inject;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpRequest;
 import org.clintonhealthaccess.lmis.LmisTestClass;
 import org.clintonhealthaccess.lmis.app.R;
 import org.clintonhealthaccess.lmis.app.activities.viewmodels.OrderCommodityViewModel;
@@ -56,8 +57,10 @@ import org.clintonhealthaccess.lmis.app.services.GenericDao;
 import org.clintonhealthaccess.lmis.app.services.LossService;
 import org.clintonhealthaccess.lmis.app.services.OrderService;
 import org.clintonhealthaccess.lmis.app.services.ReceiveService;
+import org.clintonhealthaccess.lmis.app.services.StockHistoryService;
 import org.clintonhealthaccess.lmis.app.services.StockItemSnapshotService;
 import org.robolectric.Robolectric;
+import org.robolectric.tester.org.apache.http.RequestMatcher;
 import org.robolectric.tester.org.apache.http.TestHttpResponse;
 
 import java.io.IOException;
@@ -69,6 +72,7 @@ import java.util.Date;
 import roboguice.inject.InjectResource;
 
 import static org.robolectric.Robolectric.application;
+import static roboguice.RoboGuice.getInjector;
 
 public class LMISTestCase extends LmisTestClass {
     @Inject
@@ -91,6 +95,25 @@ public class LMISTestCase extends LmisTestClass {
         Robolectric.addHttpResponseRule("GET", String.format("%s%s", dhis2BaseUrl, uri), new TestHttpResponse(200, rootDataSetJson));
     }
 
+    protected void setUpSuccessHttpGetPathRequest(final String path, String fixtureFile) throws IOException {
+        String rootDataSetJson = readFixtureFile(fixtureFile);
+        Robolectric.addHttpResponseRule(new RequestMatcher() {
+            @Override
+            public boolean matches(HttpRequest request) {
+                String uri = request.getRequestLine().getUri();
+                return request.getRequestLine().getMethod().equals("GET") && uri.split("\\?")[0].endsWith(path);
+            }
+        }, new TestHttpResponse(200, rootDataSetJson));
+    }
+
+    protected void setUpCategoryMetadataRequests() throws IOException {
+        setUpSuccessHttpGetPathRequest("/api/dataElementGroupSets", "dataElementGroupSets.json");
+        setUpSuccessHttpGetPathRequest("/api/dataSets", "dataSets.json");
+        setUpSuccessHttpGetPathRequest("/api/indicatorGroups", "indicatorGroups.json");
+        setUpSuccessHttpGetPathRequest("/api/dataElementGroups", "metadataUnchanged.json");
+        setUpSuccessHttpGetPathRequest("/api/dataElements", "metadataUnchanged.json");
+    }
+
     protected void setUpSuccessHttpPostRequest(String uri, String fixtureFile) throws IOException {
         String rootDataSetJson = readFixtureFile(fixtureFile);
         Robolectric.addHttpResponseRule("POST", String.format("%s%s", dhis2BaseUrl, uri), new TestHttpResponse(200, rootDataSetJson));
@@ -168,7 +191,7 @@ public class LMISTestCase extends LmisTestClass {
         StockItemSnapshot stockItemSnapshot = new StockItemSnapshot(commodity,
                 date, commodity.getStockOnHand() + difference);
 
-        return new GenericDao<>(StockItemSnapshot.class, application).create(stockItemSnapshot);
+        return recordStockHistory(new GenericDao<>(StockItemSnapshot.class, application).create(stockItemSnapshot));
     }
 
     public static StockItemSnapshot createStockItemSnapshotValue(Commodity commodity, Date time, int quantity) {
@@ -176,7 +199,13 @@ public class LMISTestCase extends LmisTestClass {
 
         new GenericDao<>(StockItemSnapshot.class, application).create(stockItemSnapshot);
 
-        return stockItemSnapshot;
+        return recordStockHistory(stockItemSnapshot);
+    }
+
+    private static StockItemSnapshot recordStockHistory(StockItemSnapshot snapshot) {
+        getInjector(application).getInstance(StockHistoryService.class).record(snapshot.getCommodity(),
+                snapshot.getCreated(), snapshot.getQuantity(), snapshot.isStockOut());
+        return snapshot;
     }
 
     public static void createStockItemSnapshot(Commodity commodity, Date date) {
@@ -188,9 +217,11 @@ public class LMISTestCase extends LmisTestClass {
                 StockItemSnapshot snapshot = new StockItemSnapshot(commodity, date, commodity.getStockOnHand());
                 stockItemSnapshotGenericDao
                         .create(snapshot);
+                recordStockHistory(snapshot);
             } else {
                 stockItemSnapshot.setQuantity(commodity.getStockOnHand());
                 stockItemSnapshotGenericDao.update(stockItemSnapshot);
+                recordStockHistory(stockItemSnapshot);
             }
 
         } catch (Exception e) {
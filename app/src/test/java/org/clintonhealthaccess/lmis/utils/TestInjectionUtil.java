@@ -44,6 +44,8 @@ import org.clintonhealthaccess.lmis.app.models.CommodityActionValue;
 import org.clintonhealthaccess.lmis.app.models.User;
 import org.clintonhealthaccess.lmis.app.models.api.DataValueSetPushResponse;
 import org.clintonhealthaccess.lmis.app.remote.LmisServer;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -57,6 +59,7 @@ import roboguice.inject.RoboInjector;
 import static com.google.inject.util.Modules.override;
 import static java.util.Arrays.asList;
 import static org.mockito.Matchers.anyObject;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.robolectric.Robolectric.application;
@@ -85,7 +88,7 @@ public class TestInjectionUtil {
         final LmisServer mockLmisServer = mock(LmisServer.class);
         List<Category> categories = defaultCategories(context);
         when(mockLmisServer.fetchCategories((User) anyObject())).thenReturn(categories);
-        when(mockLmisServer.fetchCommodityActionValues((User) anyObject())).thenReturn(testActionValues(context));
+        stubCommodityActionValues(mockLmisServer, testActionValues(context));
         when(mockLmisServer.pushDataValueSet((DataValueSet) anyObject(), (User) anyObject())).thenReturn(fakePushDataValuesResponse());
         Module mockedModule = new AbstractModule() {
             @Override
@@ -99,6 +102,17 @@ public class TestInjectionUtil {
         setUpInjection(testCase, mockedModule);
     }
 
+    public static void stubCommodityActionValues(LmisServer mockLmisServer, final List<CommodityActionValue> values) {
+        when(mockLmisServer.fetchCommodityActionValues((User) anyObject())).thenReturn(values);
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                ((LmisServer.BatchHandler<CommodityActionValue>) invocation.getArguments()[1]).handle(values);
+                return null;
+            }
+        }).when(mockLmisServer).streamCommodityActionValues((User) anyObject(), (LmisServer.BatchHandler<CommodityActionValue>) anyObject());
+    }
+
     private static DataValueSetPushResponse fakePushDataValuesResponse() {
         try {
             String json = readFixtureFile("successfulSnapshotPush.json");
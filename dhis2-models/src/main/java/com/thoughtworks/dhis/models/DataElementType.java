@@ -31,9 +31,11 @@ package com.thoughtworks.dhis.models;
 
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 
 import java.util.List;
+import java.util.Map;
 
 import lombok.Getter;
 
@@ -91,15 +93,37 @@ public enum DataElementType {
         this.activity = activity;
     }
 
+    private static final Map<String, DataElementType> BY_ACTIVITY;
+    private static final List<String> ACTIVITIES = activities(false);
+    private static final List<String> INDICATOR_ACTIVITIES = activities(true);
+
+    static {
+        ImmutableMap.Builder<String, DataElementType> byActivity = ImmutableMap.builder();
+        for (DataElementType type : values()) {
+            byActivity.put(type.getActivity(), type);
+        }
+        BY_ACTIVITY = byActivity.build();
+    }
+
+    public static DataElementType forActivity(String activityString) {
+        return BY_ACTIVITY.get(activityString.trim());
+    }
+
     public static boolean dataElementActivityExists(String activityString) {
-        return getDataElementStrings(false).contains(activityString.trim());
+        DataElementType type = forActivity(activityString);
+        return type != null && !type.isIndicator();
     }
 
     public static boolean indicatorExists(String activityString) {
-        return getDataElementStrings(true).contains(activityString.trim());
+        DataElementType type = forActivity(activityString);
+        return type != null && type.isIndicator();
     }
 
     public static List<String> getDataElementStrings(boolean isIndicator) {
+        return isIndicator ? INDICATOR_ACTIVITIES : ACTIVITIES;
+    }
+
+    private static List<String> activities(boolean isIndicator) {
         return from(getDataElementTypes(isIndicator)).transform(new Function<DataElementType, String>() {
             @Override
             public String apply(DataElementType input) {